@@ -0,0 +1,123 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.benchmarks;
+
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import com.telenav.kivakit.data.formats.csv.CsvColumn;
+import com.telenav.kivakit.data.formats.csv.CsvLine;
+import com.telenav.kivakit.data.formats.csv.CsvReader;
+import com.telenav.kivakit.resource.resources.StringResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
+
+/**
+ * Measures the cost of converting column values with {@link CsvLine#get(CsvColumn)}. Lines are read into memory
+ * before measurement, so only conversion is measured, and each benchmark converts one column type on every line.
+ *
+ * @author jonathanl (shibo)
+ * @see SyntheticData#csv(int, int, double)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvLineBenchmark
+{
+    @Param({ "10000" })
+    public int rows;
+
+    @Param({ "0.0", "0.5" })
+    public double quoting;
+
+    /** The lines to convert */
+    private ObjectList<CsvLine> lines;
+
+    /** An int column */
+    private CsvColumn<Integer> integer;
+
+    /** A double column */
+    private CsvColumn<Double> decimal;
+
+    /** A string column */
+    private CsvColumn<String> string;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        var schema = SyntheticData.schema(3);
+        integer = SyntheticData.column(schema, 0);
+        decimal = SyntheticData.column(schema, 1);
+        string = SyntheticData.column(schema, 2);
+
+        lines = new ObjectList<>();
+        var resource = new StringResource(SyntheticData.csv(rows, 3, quoting));
+        try (var in = new CsvReader(resource, schema, ',', nullProgressReporter()))
+        {
+            while (in.hasNext())
+            {
+                lines.add(in.next());
+            }
+        }
+    }
+
+    @Benchmark
+    public void getDouble(Blackhole blackhole)
+    {
+        for (var line : lines)
+        {
+            blackhole.consume(line.get(decimal));
+        }
+    }
+
+    @Benchmark
+    public void getInteger(Blackhole blackhole)
+    {
+        for (var line : lines)
+        {
+            blackhole.consume(line.get(integer));
+        }
+    }
+
+    @Benchmark
+    public void getString(Blackhole blackhole)
+    {
+        for (var line : lines)
+        {
+            blackhole.consume(line.get(string));
+        }
+    }
+}
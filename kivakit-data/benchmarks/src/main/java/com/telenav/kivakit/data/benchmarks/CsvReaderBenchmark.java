@@ -0,0 +1,152 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.benchmarks;
+
+import com.telenav.kivakit.data.formats.csv.CsvReader;
+import com.telenav.kivakit.data.formats.csv.CsvSchema;
+import com.telenav.kivakit.data.formats.csv.UnquotedCsvReader;
+import com.telenav.kivakit.filesystem.File;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.MEMORY_MAPPED;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.TOKENIZED;
+
+/**
+ * Measures the throughput of {@link CsvReader} and {@link UnquotedCsvReader} reading a synthetic file from disk, in
+ * each of the reader's modes. The column at index 1 is read from every line, so that the line is really parsed, but no
+ * values are converted. The cost of conversion is measured by {@link CsvLineBenchmark}.
+ *
+ * @author jonathanl (shibo)
+ * @see SyntheticData#csv(int, int, double)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvReaderBenchmark
+{
+    /**
+     * The ways the reader can be constructed
+     */
+    public enum ReaderMode
+    {
+        /** Reads one character at a time, creating a string for each column */
+        CLASSIC,
+
+        /** Reads with {@link CsvReader.Option#TOKENIZED} */
+        TOKENIZED,
+
+        /** Reads with {@link CsvReader.Option#TOKENIZED} and {@link CsvReader.Option#MEMORY_MAPPED} */
+        MEMORY_MAPPED
+    }
+
+    @Param({ "100000" })
+    public int rows;
+
+    @Param({ "4", "16" })
+    public int columns;
+
+    @Param({ "0.0", "0.1", "0.5" })
+    public double quoting;
+
+    @Param({ "CLASSIC", "TOKENIZED", "MEMORY_MAPPED" })
+    public ReaderMode mode;
+
+    /** The file to read */
+    private File file;
+
+    /** The schema of the file */
+    private CsvSchema schema;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        schema = SyntheticData.schema(columns);
+        file = File.file(SyntheticData.temporaryFile(SyntheticData.csv(rows, columns, quoting), ".csv").toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole)
+    {
+        try (var in = reader(false))
+        {
+            read(in, blackhole);
+        }
+    }
+
+    /**
+     * Reads with {@link UnquotedCsvReader}. The quoting density has no effect on the reader, which treats quotes as
+     * ordinary characters, but it does change the number of columns it finds.
+     */
+    @Benchmark
+    public void readUnquoted(Blackhole blackhole)
+    {
+        try (var in = reader(true))
+        {
+            read(in, blackhole);
+        }
+    }
+
+    private void read(CsvReader in, Blackhole blackhole)
+    {
+        while (in.hasNext())
+        {
+            var line = in.next();
+            blackhole.consume(line.get(1));
+        }
+    }
+
+    private CsvReader reader(boolean unquoted)
+    {
+        var options = switch (mode)
+        {
+            case CLASSIC -> new CsvReader.Option[0];
+            case TOKENIZED -> new CsvReader.Option[] { TOKENIZED };
+            case MEMORY_MAPPED -> new CsvReader.Option[] { TOKENIZED, MEMORY_MAPPED };
+        };
+        return unquoted
+            ? new UnquotedCsvReader(file, schema, ',', nullProgressReporter(), options)
+            : new CsvReader(file, schema, ',', nullProgressReporter(), options);
+    }
+}
@@ -0,0 +1,147 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.benchmarks;
+
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import com.telenav.kivakit.data.formats.csv.CsvLine;
+import com.telenav.kivakit.data.formats.csv.CsvReader;
+import com.telenav.kivakit.data.formats.csv.CsvSchema;
+import com.telenav.kivakit.data.formats.csv.CsvWriter;
+import com.telenav.kivakit.resource.resources.StringResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
+
+/**
+ * Measures the throughput of {@link CsvWriter}, writing to a {@link Writer} that discards its output, so only encoding
+ * and buffering are measured. Lines are written both as {@link CsvLine}s and field by field.
+ *
+ * @author jonathanl (shibo)
+ * @see SyntheticData#csv(int, int, double)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvWriterBenchmark
+{
+    @Param({ "10000" })
+    public int rows;
+
+    @Param({ "4", "16" })
+    public int columns;
+
+    @Param({ "0.0", "0.5" })
+    public double quoting;
+
+    /** The lines to write */
+    private ObjectList<CsvLine> lines;
+
+    /** The schema of the lines */
+    private CsvSchema schema;
+
+    /** The converted values of each line, so that writing fields does not measure conversion */
+    private Object[][] values;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        schema = SyntheticData.schema(columns);
+        lines = new ObjectList<>();
+        var resource = new StringResource(SyntheticData.csv(rows, columns, quoting));
+        try (var in = new CsvReader(resource, schema, ',', nullProgressReporter()))
+        {
+            while (in.hasNext())
+            {
+                lines.add(in.next());
+            }
+        }
+
+        values = new Object[lines.size()][columns];
+        for (var row = 0; row < lines.size(); row++)
+        {
+            for (var column = 0; column < columns; column++)
+            {
+                values[row][column] = lines.get(row).get(SyntheticData.column(schema, column));
+            }
+        }
+    }
+
+    /**
+     * Writes each line as typed fields, with {@link CsvWriter#field(int)}, {@link CsvWriter#field(double)} and
+     * {@link CsvWriter#field(String)}
+     */
+    @Benchmark
+    public long writeFields()
+    {
+        try (var out = writer())
+        {
+            for (var line : values)
+            {
+                for (var column = 0; column < columns; column++)
+                {
+                    switch (column % 3)
+                    {
+                        case 0 -> out.field((int) (Integer) line[column]);
+                        case 1 -> out.field((double) (Double) line[column]);
+                        default -> out.field((String) line[column]);
+                    }
+                }
+                out.endLine();
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Writes each line with {@link CsvWriter#write(CsvLine)}
+     */
+    @Benchmark
+    public long writeLines()
+    {
+        try (var out = writer())
+        {
+            out.write(lines);
+            return rows;
+        }
+    }
+
+    private CsvWriter writer()
+    {
+        return new CsvWriter(new PrintWriter(Writer.nullWriter()), schema, nullProgressReporter());
+    }
+}
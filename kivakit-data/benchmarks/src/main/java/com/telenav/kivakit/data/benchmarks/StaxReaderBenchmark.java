@@ -0,0 +1,165 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.benchmarks;
+
+import com.telenav.kivakit.data.formats.xml.stax.StaxCursorReader;
+import com.telenav.kivakit.data.formats.xml.stax.StaxPath;
+import com.telenav.kivakit.data.formats.xml.stax.StaxReader;
+import com.telenav.kivakit.filesystem.File;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.telenav.kivakit.data.formats.xml.stax.StaxCursorReader.openXmlCursor;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPath.parseXmlPath;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxReader.openXml;
+
+/**
+ * Measures how quickly {@link StaxReader} scans a synthetic XML file, finding elements by path with
+ * {@link StaxReader#findNext(StaxPath)} and by tag name with {@link StaxReader#nextMatching(StaxReader.Matcher)}. The
+ * same scans are measured with the cursor-mode {@link StaxCursorReader}.
+ *
+ * @author jonathanl (shibo)
+ * @see SyntheticData#xml(int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StaxReaderBenchmark
+{
+    @Param({ "10000", "100000" })
+    public int records;
+
+    /** The file to read */
+    private File file;
+
+    /** The path of the elements to find */
+    private StaxPath tags;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        file = File.file(SyntheticData.temporaryFile(SyntheticData.xml(records), ".xml").toString());
+        tags = parseXmlPath("records/record/tags");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    /**
+     * Visits every event inside a &lt;tags&gt; element
+     */
+    @Benchmark
+    public int findNext(Blackhole blackhole)
+    {
+        var found = 0;
+        try (var in = openXml(file))
+        {
+            in.next();
+            for (var event = in.findNext(tags); event != null; event = in.findNext(tags))
+            {
+                blackhole.consume(event);
+                found++;
+                in.next();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Visits every &lt;tag&gt; open tag
+     */
+    @Benchmark
+    public int nextMatching(Blackhole blackhole)
+    {
+        var found = 0;
+        try (var in = openXml(file))
+        {
+            in.next();
+            StaxReader.BooleanMatcher tag = event -> event.isStartElement()
+                    && event.asStartElement().getName().getLocalPart().equals("tag");
+            for (var event = in.nextMatching(tag); event != null; event = in.nextMatching(tag))
+            {
+                blackhole.consume(event);
+                found++;
+                in.next();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Visits every event inside a &lt;tags&gt; element with a cursor-mode reader
+     */
+    @Benchmark
+    public int cursorFindNext(Blackhole blackhole)
+    {
+        var found = 0;
+        try (var in = openXmlCursor(file))
+        {
+            while (in.findNext(tags))
+            {
+                blackhole.consume(in.at());
+                found++;
+                in.next();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Visits every &lt;tag&gt; open tag with a cursor-mode reader
+     */
+    @Benchmark
+    public int cursorNextMatching(Blackhole blackhole)
+    {
+        var found = 0;
+        try (var in = openXmlCursor(file))
+        {
+            StaxCursorReader.BooleanMatcher tag = reader -> reader.isAtOpenTag("tag");
+            while (in.nextMatching(tag))
+            {
+                blackhole.consume(in.nameIdentifier());
+                found++;
+                in.next();
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,234 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.benchmarks;
+
+import com.telenav.kivakit.conversion.core.language.IdentityConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.DoubleConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.IntegerConverter;
+import com.telenav.kivakit.data.formats.csv.CsvColumn;
+import com.telenav.kivakit.data.formats.csv.CsvSchema;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static com.telenav.kivakit.core.messaging.Listener.throwingListener;
+import static com.telenav.kivakit.data.formats.csv.CsvColumn.csvColumn;
+import static com.telenav.kivakit.data.formats.csv.CsvSchema.csvSchema;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generates synthetic CSV, XML and YAML documents for benchmarks. The same arguments always produce the same document,
+ * so results are comparable between runs.
+ *
+ * <p><b>CSV</b></p>
+ *
+ * <p>
+ * Columns cycle through three types: an int column, a double column and a string column, so column 0 is always an
+ * int. The quoting density is the fraction of string fields that are quoted. A quoted field contains the delimiter and
+ * an escaped quote, so the reader has to take its slow path for it. Unquoted string fields are plain words.
+ * </p>
+ *
+ * <p><b>XML</b></p>
+ *
+ * <p>
+ * A document has a &lt;records&gt; root with one &lt;record&gt; element for each record. Each record has an id
+ * attribute, a &lt;name&gt;, a &lt;value&gt; and a &lt;tags&gt; element holding several &lt;tag&gt; elements.
+ * </p>
+ *
+ * <p><b>YAML</b></p>
+ *
+ * <p>
+ * A document is an object schema in the style of OpenAPI, with one block of properties for each property, nested a
+ * few levels deep, followed by an array of servers.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ */
+public class SyntheticData
+{
+    /** Seed for random values, so documents are reproducible */
+    private static final long SEED = 0x4b697661L;
+
+    /** Words for string fields */
+    private static final String[] WORDS = {
+        "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+        "india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa"
+    };
+
+    /**
+     * Returns a CSV document with the given number of rows and columns
+     *
+     * @param rows The number of rows
+     * @param columns The number of columns
+     * @param quoting The fraction of string fields that are quoted, from 0 to 1
+     */
+    public static String csv(int rows, int columns, double quoting)
+    {
+        var random = new Random(SEED);
+        var csv = new StringBuilder(rows * columns * 8);
+        for (var row = 0; row < rows; row++)
+        {
+            for (var column = 0; column < columns; column++)
+            {
+                if (column > 0)
+                {
+                    csv.append(',');
+                }
+                switch (column % 3)
+                {
+                    case 0 -> csv.append(column == 0 ? row : random.nextInt(1_000_000));
+                    case 1 -> csv.append(random.nextInt(100_000) / 100.0);
+                    default ->
+                    {
+                        var word = WORDS[random.nextInt(WORDS.length)];
+                        if (random.nextDouble() < quoting)
+                        {
+                            csv.append('"').append(word).append(", \\\"").append(WORDS[row % WORDS.length]).append("\\\"\"");
+                        }
+                        else
+                        {
+                            csv.append(word);
+                        }
+                    }
+                }
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Returns a schema for documents produced by {@link #csv(int, int, double)} with the given number of columns
+     */
+    public static CsvSchema schema(int columns)
+    {
+        var schema = csvSchema();
+        for (var column = 0; column < columns; column++)
+        {
+            schema.add(newColumn(column));
+        }
+        return schema;
+    }
+
+    /**
+     * Returns the column at the given index of a schema produced by {@link #schema(int)}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CsvColumn<T> column(CsvSchema schema, int index)
+    {
+        return (CsvColumn<T>) schema.columns().get(index);
+    }
+
+    /**
+     * Writes the given text to a temporary file that is deleted when the JVM exits
+     */
+    public static Path temporaryFile(String text, String suffix)
+    {
+        try
+        {
+            var file = Files.createTempFile("kivakit-benchmark-", suffix);
+            file.toFile().deleteOnExit();
+            return Files.writeString(file, text, UTF_8);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns an XML document with the given number of records
+     */
+    public static String xml(int records)
+    {
+        var random = new Random(SEED);
+        var xml = new StringBuilder(records * 160);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<records>\n");
+        for (var record = 0; record < records; record++)
+        {
+            xml.append("  <record id=\"").append(record).append("\">\n");
+            xml.append("    <name>").append(WORDS[random.nextInt(WORDS.length)]).append("</name>\n");
+            xml.append("    <value>").append(random.nextInt(100_000) / 100.0).append("</value>\n");
+            xml.append("    <tags>\n");
+            var tags = 1 + random.nextInt(4);
+            for (var tag = 0; tag < tags; tag++)
+            {
+                xml.append("      <tag>").append(WORDS[random.nextInt(WORDS.length)]).append("</tag>\n");
+            }
+            xml.append("    </tags>\n");
+            xml.append("  </record>\n");
+        }
+        xml.append("</records>\n");
+        return xml.toString();
+    }
+
+    /**
+     * Returns a YAML document with the given number of properties
+     */
+    public static String yaml(int properties)
+    {
+        var random = new Random(SEED);
+        var yaml = new StringBuilder(properties * 200);
+        yaml.append("type: object\n");
+        yaml.append("description: \"Synthetic schema\"\n");
+        yaml.append("properties:\n");
+        for (var property = 0; property < properties; property++)
+        {
+            yaml.append("  property_").append(property).append(":\n");
+            yaml.append("    type: object\n");
+            yaml.append("    description: \"").append(WORDS[random.nextInt(WORDS.length)]).append("\"\n");
+            yaml.append("    properties:\n");
+            yaml.append("      latitude:\n");
+            yaml.append("        type: number\n");
+            yaml.append("        format: double\n");
+            yaml.append("        minimum: ").append(-random.nextInt(90)).append('\n');
+            yaml.append("        maximum: ").append(random.nextInt(90)).append('\n');
+            yaml.append("      tags:\n");
+            yaml.append("        type: array\n");
+            yaml.append("        items:\n");
+            yaml.append("          - \"").append(WORDS[random.nextInt(WORDS.length)]).append("\"\n");
+            yaml.append("          - \"").append(WORDS[random.nextInt(WORDS.length)]).append("\"\n");
+        }
+        yaml.append("servers:\n");
+        for (var server = 0; server < Math.max(1, properties / 100); server++)
+        {
+            yaml.append("  - url: \"https://server-").append(server).append("/\"\n");
+            yaml.append("    description: \"").append(WORDS[server % WORDS.length]).append("\"\n");
+        }
+        return yaml.toString();
+    }
+
+    /**
+     * Returns a new column for the given index of a schema produced by {@link #schema(int)}
+     */
+    private static CsvColumn<?> newColumn(int index)
+    {
+        var name = "column" + index;
+        return switch (index % 3)
+        {
+            case 0 -> csvColumn(name, new IntegerConverter(throwingListener()));
+            case 1 -> csvColumn(name, new DoubleConverter(throwingListener()));
+            default -> csvColumn(name, new IdentityConverter(throwingListener()));
+        };
+    }
+}
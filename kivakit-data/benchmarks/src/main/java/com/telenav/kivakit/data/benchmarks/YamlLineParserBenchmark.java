@@ -0,0 +1,89 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.benchmarks;
+
+import com.telenav.kivakit.data.formats.yaml.reader.YamlLineParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link YamlLineParser} with the regular expression based parser it replaced, {@link RegexYamlLineParser},
+ * parsing every line of a synthetic YAML document.
+ *
+ * @author jonathanl (shibo)
+ * @see SyntheticData#yaml(int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YamlLineParserBenchmark
+{
+    @Param({ "1000" })
+    public int properties;
+
+    /** The lines to parse */
+    private String[] lines;
+
+    /** The single-pass parser */
+    private final YamlLineParser parser = new YamlLineParser();
+
+    /** The regular expression parser */
+    private final RegexYamlLineParser regexParser = new RegexYamlLineParser();
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        lines = SyntheticData.yaml(properties).split("\n");
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole)
+    {
+        for (var line : lines)
+        {
+            blackhole.consume(parser.parse(line));
+        }
+    }
+
+    @Benchmark
+    public void parseRegex(Blackhole blackhole)
+    {
+        for (var line : lines)
+        {
+            blackhole.consume(regexParser.parse(line));
+        }
+    }
+}
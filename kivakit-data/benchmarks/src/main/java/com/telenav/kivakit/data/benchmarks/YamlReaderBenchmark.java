@@ -0,0 +1,75 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.benchmarks;
+
+import com.telenav.kivakit.data.formats.yaml.reader.YamlReader;
+import com.telenav.kivakit.resource.Resource;
+import com.telenav.kivakit.resource.resources.StringResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.telenav.kivakit.data.formats.yaml.reader.YamlReader.yamlReader;
+
+/**
+ * Measures the time {@link YamlReader#read(Resource)} takes to read a large synthetic YAML document into a tree of
+ * nodes.
+ *
+ * @author jonathanl (shibo)
+ * @see SyntheticData#yaml(int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YamlReaderBenchmark
+{
+    @Param({ "100", "1000", "10000" })
+    public int properties;
+
+    /** The document to read */
+    private Resource resource;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        resource = new StringResource(SyntheticData.yaml(properties));
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole)
+    {
+        blackhole.consume(yamlReader().read(resource));
+    }
+}
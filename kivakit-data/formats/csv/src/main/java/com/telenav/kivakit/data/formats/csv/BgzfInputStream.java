@@ -0,0 +1,417 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * An {@link InputStream} that decompresses a BGZF file on multiple cores. BGZF is the blocked gzip format written by
+ * tools like bgzip. It is a series of gzip members of at most 64K each, where every member records its compressed size
+ * in a "BC" extra field. Since member boundaries can be found without inflating anything, batches of members are
+ * inflated in parallel on the fork-join pool and then read in their original order.
+ *
+ * <p>
+ * The number of batches in flight is bounded, so memory use stays constant no matter how large the file is. The CRC
+ * and size of each member are checked, and a malformed member causes an {@link IOException}.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ */
+final class BgzfInputStream extends InputStream
+{
+    /**
+     * A batch of whole members inflated by a single task
+     */
+    private static class Batch
+    {
+        /** The compressed members */
+        final byte[] data;
+
+        /** The number of bytes of whole members in the data */
+        final int length;
+
+        /** The total inflated size of the members */
+        final int inflatedSize;
+
+        Batch(byte[] data, int length, int inflatedSize)
+        {
+            this.data = data;
+            this.length = length;
+            this.inflatedSize = inflatedSize;
+        }
+    }
+
+    /** The approximate number of compressed bytes in each batch */
+    private static final int BATCH_SIZE = 1024 * 1024;
+
+    /** The flag bit for an extra field in a gzip header */
+    private static final int FEXTRA = 4;
+
+    /** The flag bit for a file name in a gzip header */
+    private static final int FNAME = 8;
+
+    /** The flag bit for a comment in a gzip header */
+    private static final int FCOMMENT = 16;
+
+    /** The flag bit for a header CRC in a gzip header */
+    private static final int FHCRC = 2;
+
+    /**
+     * Returns true if the given file starts with a BGZF member
+     */
+    static boolean isBgzf(Path file) throws IOException
+    {
+        try (var channel = FileChannel.open(file, READ))
+        {
+            var header = ByteBuffer.allocate(18);
+            while (header.hasRemaining() && channel.read(header) > 0)
+            {
+                // Keep reading until the header is complete
+            }
+            return !header.hasRemaining() && memberSize(header.array(), 0, header.capacity()) > 0;
+        }
+    }
+
+    /**
+     * Returns the size of the BGZF member at the given offset, or -1 if it's not a BGZF member, or 0 if the header is
+     * incomplete
+     */
+    private static int memberSize(byte[] data, int offset, int length)
+    {
+        if (length < 18)
+        {
+            return 0;
+        }
+        if (data[offset] != 0x1f || data[offset + 1] != (byte) 0x8b || data[offset + 2] != 8
+                || (data[offset + 3] & FEXTRA) == 0)
+        {
+            return -1;
+        }
+
+        // Look for the "BC" subfield in the extra field
+        var extraLength = unsigned16(data, offset + 10);
+        var at = offset + 12;
+        var end = at + extraLength;
+        if (end > offset + length)
+        {
+            return 0;
+        }
+        while (at + 4 <= end)
+        {
+            var subfieldLength = unsigned16(data, at + 2);
+            if (data[at] == 'B' && data[at + 1] == 'C' && subfieldLength == 2 && at + 6 <= end)
+            {
+                return unsigned16(data, at + 4) + 1;
+            }
+            at += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the little-endian 32-bit value at the given offset
+     */
+    private static int signed32(byte[] data, int offset)
+    {
+        return unsigned16(data, offset) | unsigned16(data, offset + 2) << 16;
+    }
+
+    /**
+     * Returns the little-endian unsigned 16-bit value at the given offset
+     */
+    private static int unsigned16(byte[] data, int offset)
+    {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8;
+    }
+
+    /** The compressed file */
+    private final FileChannel channel;
+
+    /** The offset in the file of the next batch to submit */
+    private long next;
+
+    /** The maximum number of batches in flight */
+    private final int parallelism;
+
+    /** Batches being inflated, in order */
+    private final Queue<CompletableFuture<byte[]>> inflating = new ArrayDeque<>();
+
+    /** The inflated bytes being read */
+    private byte[] inflated = new byte[0];
+
+    /** The position in the inflated bytes */
+    private int position;
+
+    BgzfInputStream(Path file) throws IOException
+    {
+        this(file, ForkJoinPool.getCommonPoolParallelism() + 1);
+    }
+
+    BgzfInputStream(Path file, int parallelism) throws IOException
+    {
+        this.channel = FileChannel.open(file, READ);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available()
+    {
+        return inflated.length - position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        inflating.forEach(batch -> batch.cancel(false));
+        inflating.clear();
+        channel.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException
+    {
+        if (position == inflated.length && !advance())
+        {
+            return -1;
+        }
+        return inflated[position++] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+        if (position == inflated.length && !advance())
+        {
+            return -1;
+        }
+        var count = Math.min(length, inflated.length - position);
+        System.arraycopy(inflated, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Moves to the next non-empty batch of inflated bytes, keeping the pipeline of batches full
+     *
+     * @return False if there are no more bytes
+     */
+    private boolean advance() throws IOException
+    {
+        while (true)
+        {
+            // Submit batches until the pipeline is full,
+            while (inflating.size() < parallelism)
+            {
+                var batch = readBatch();
+                if (batch == null)
+                {
+                    break;
+                }
+                inflating.add(CompletableFuture.supplyAsync(() -> inflate(batch)));
+            }
+
+            // then wait for the oldest batch.
+            var oldest = inflating.poll();
+            if (oldest == null)
+            {
+                return false;
+            }
+            try
+            {
+                inflated = oldest.join();
+                position = 0;
+            }
+            catch (CompletionException e)
+            {
+                throw new IOException("Unable to inflate BGZF data", e.getCause());
+            }
+            if (inflated.length > 0)
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Inflates the members in the given batch. This runs on the fork-join pool.
+     */
+    private byte[] inflate(Batch batch)
+    {
+        var output = new byte[batch.inflatedSize];
+        var inflater = new Inflater(true);
+        var crc = new CRC32();
+        try
+        {
+            var data = batch.data;
+            var at = 0;
+            var written = 0;
+            while (at < batch.length)
+            {
+                var size = memberSize(data, at, batch.length - at);
+                var inflatedSize = signed32(data, at + size - 4);
+
+                // Skip the header,
+                var flags = data[at + 3];
+                var start = at + 12 + unsigned16(data, at + 10);
+                if ((flags & FNAME) != 0)
+                {
+                    while (data[start++] != 0)
+                    {
+                        // Skip the file name
+                    }
+                }
+                if ((flags & FCOMMENT) != 0)
+                {
+                    while (data[start++] != 0)
+                    {
+                        // Skip the comment
+                    }
+                }
+                if ((flags & FHCRC) != 0)
+                {
+                    start += 2;
+                }
+
+                // inflate the member's data,
+                inflater.reset();
+                inflater.setInput(data, start, at + size - 8 - start);
+                var count = 0;
+                while (count < inflatedSize && !inflater.finished())
+                {
+                    var bytes = inflater.inflate(output, written + count, inflatedSize - count);
+                    if (bytes == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    {
+                        break;
+                    }
+                    count += bytes;
+                }
+
+                // and check its size and CRC.
+                crc.reset();
+                crc.update(output, written, count);
+                if (count != inflatedSize || (int) crc.getValue() != signed32(data, at + size - 8))
+                {
+                    throw new IllegalStateException("Corrupt BGZF member");
+                }
+
+                written += count;
+                at += size;
+            }
+            return output;
+        }
+        catch (DataFormatException e)
+        {
+            throw new IllegalStateException("Corrupt BGZF member", e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads the next batch of whole members from the file
+     *
+     * @return The batch, or null if the end of the file has been reached
+     */
+    private Batch readBatch() throws IOException
+    {
+        var data = new byte[BATCH_SIZE];
+        var filled = 0;
+        var length = 0;
+        var inflatedSize = 0L;
+        while (true)
+        {
+            // Read as much of the batch as possible,
+            var buffer = ByteBuffer.wrap(data, filled, data.length - filled);
+            while (buffer.hasRemaining() && channel.read(buffer, next + buffer.position()) > 0)
+            {
+                // Keep reading until the buffer is full or the file ends
+            }
+            filled = buffer.position();
+
+            // then take as many whole members as fit.
+            int size;
+            while ((size = memberSize(data, length, filled - length)) > 0 && length + size <= filled)
+            {
+                inflatedSize += Integer.toUnsignedLong(signed32(data, length + size - 4));
+                length += size;
+            }
+            if (size < 0)
+            {
+                throw new IOException("Not a BGZF member at offset " + (next + length));
+            }
+
+            if (length > 0 || filled < data.length)
+            {
+                break;
+            }
+
+            // A member too large for the batch can't be BGZF, but grow the batch to hold it anyway
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+
+        if (length == 0)
+        {
+            if (filled > 0)
+            {
+                throw new IOException("Truncated BGZF member at offset " + next);
+            }
+            return null;
+        }
+        if (inflatedSize > Integer.MAX_VALUE - 8)
+        {
+            throw new IOException("BGZF batch is too large");
+        }
+
+        next += length;
+        return new Batch(data, length, (int) inflatedSize);
+    }
+}
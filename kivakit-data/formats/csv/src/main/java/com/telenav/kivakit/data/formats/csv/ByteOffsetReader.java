@@ -0,0 +1,164 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A {@link Reader} that keeps track of where the characters it reads came from in the underlying UTF-8 input, so that
+ * the offset of a character in the decoded text can be turned into a byte offset that can be seeked to. This is how
+ * {@link CsvReader} finds the byte offset of each record as it builds a {@link CsvIndex}.
+ *
+ * <p>
+ * Characters are retained until {@link #byteOffset(long)} has resolved past them, so offsets must be requested in
+ * increasing order. Once {@link #stopTracking()} is called, characters are passed through without being retained. The
+ * offsets are exact for well-formed UTF-8 input.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ */
+final class ByteOffsetReader extends Reader
+{
+    /** The input */
+    private final Reader in;
+
+    /** Characters that have been read but not yet resolved to byte offsets */
+    private char[] pending = new char[8 * 1024];
+
+    /** The index of the first unresolved character in the pending buffer */
+    private int pendingStart;
+
+    /** The index after the last unresolved character in the pending buffer */
+    private int pendingEnd;
+
+    /** The offset in characters of the first unresolved character */
+    private long resolvedCharacters;
+
+    /** The offset in bytes of the first unresolved character */
+    private long resolvedBytes;
+
+    /** False once tracking has stopped */
+    private boolean tracking = true;
+
+    ByteOffsetReader(Reader in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Returns the byte offset of the character at the given offset
+     *
+     * @param characterOffset The offset in characters, which must not be less than any previously requested offset or
+     * greater than {@link #characters()}
+     */
+    long byteOffset(long characterOffset)
+    {
+        var end = pendingStart + (int) (characterOffset - resolvedCharacters);
+        var bytes = resolvedBytes;
+        for (var at = pendingStart; at < end; at++)
+        {
+            var next = pending[at];
+            bytes += next < 0x80 ? 1 : next < 0x800 || Character.isSurrogate(next) ? 2 : 3;
+        }
+        pendingStart = end;
+        resolvedCharacters = characterOffset;
+        resolvedBytes = bytes;
+        return bytes;
+    }
+
+    /**
+     * Returns the number of characters that have been read
+     */
+    long characters()
+    {
+        return resolvedCharacters + (pendingEnd - pendingStart);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException
+    {
+        var next = in.read();
+        if (next >= 0 && tracking)
+        {
+            retain(1);
+            pending[pendingEnd++] = (char) next;
+        }
+        return next;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException
+    {
+        var read = in.read(buffer, offset, length);
+        if (read > 0 && tracking)
+        {
+            retain(read);
+            System.arraycopy(buffer, offset, pending, pendingEnd, read);
+            pendingEnd += read;
+        }
+        return read;
+    }
+
+    /**
+     * Stops tracking offsets, releasing any retained characters
+     */
+    void stopTracking()
+    {
+        tracking = false;
+        pending = null;
+    }
+
+    /**
+     * Makes room for the given number of characters at the end of the pending buffer
+     */
+    private void retain(int count)
+    {
+        if (pendingEnd + count > pending.length)
+        {
+            // Discard resolved characters,
+            var unresolved = pendingEnd - pendingStart;
+            System.arraycopy(pending, pendingStart, pending, 0, unresolved);
+            pendingStart = 0;
+            pendingEnd = unresolved;
+
+            // and grow the buffer if there's still not enough room.
+            if (unresolved + count > pending.length)
+            {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, unresolved + count));
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.conversion.core.language.primitive.DoubleConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.IntegerConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.LongConverter;
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import com.telenav.kivakit.core.language.reflection.Type;
+import com.telenav.kivakit.core.language.reflection.accessors.FieldSetter;
+import com.telenav.kivakit.core.language.reflection.accessors.MethodSetter;
+import com.telenav.kivakit.core.language.reflection.property.Property;
+import com.telenav.kivakit.core.messaging.repeaters.BaseRepeater;
+import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+import com.telenav.lexakai.annotations.associations.UmlRelation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+
+import static com.telenav.kivakit.data.formats.csv.CsvNumbers.NOT_PARSED;
+import static com.telenav.kivakit.data.formats.csv.CsvNumbers.parseDouble;
+import static com.telenav.kivakit.data.formats.csv.CsvNumbers.parseLong;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Binds {@link CsvLine}s to objects of a given type without reflection. A binder is compiled once for a schema and a
+ * type by {@link CsvSchema#binder(Class)}, and then {@link #bind(CsvLine)} creates and populates an object for each
+ * line.
+ *
+ * <p><b>Compilation</b></p>
+ *
+ * <p>
+ * When a binder is compiled, the properties of the type are found in the same way as
+ * {@link CsvLine#populatedObject(Class)} finds them, using {@link CsvPropertyFilter}. Each property is then resolved to
+ * a {@link MethodHandle} that sets its field or calls its setter method, so no reflection is needed to populate an
+ * object. The type's public no-argument constructor is resolved in the same way.
+ * </p>
+ *
+ * <p><b>Primitive Columns</b></p>
+ *
+ * <p>
+ * When an int, long or double property is bound to a column using the standard {@link IntegerConverter},
+ * {@link LongConverter} or {@link DoubleConverter}, plain decimal values are parsed directly from the column's
+ * characters and passed to the property without boxing. If the line was read in {@link CsvReader.Option#TOKENIZED}
+ * mode, no {@link String} is created either. Values that are not plain decimals, such as exponents, blanks or "null",
+ * fall back to the column's converter, so the result is always the same as {@link CsvLine#get(CsvColumn)}.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see CsvSchema#binder(Class)
+ * @see CsvLine#populatedObject(Class)
+ */
+@UmlClassDiagram(diagram = DiagramCsv.class)
+@UmlRelation(label = "populates objects from", referent = CsvLine.class)
+@LexakaiJavadoc(complete = true)
+public class CsvBinder<T> extends BaseRepeater
+{
+    /**
+     * A compiled binding of a column to a property
+     */
+    private abstract static class Binding
+    {
+        /** The column to read */
+        final CsvColumn<?> column;
+
+        /** The index of the column */
+        final int index;
+
+        /** The property to set */
+        final Property property;
+
+        Binding(CsvColumn<?> column, Property property)
+        {
+            this.column = column;
+            this.index = column.index();
+            this.property = property;
+        }
+
+        /**
+         * Sets the property of the given object to the value of the column in the given line
+         */
+        abstract void bind(CsvLine line, Object object) throws Throwable;
+
+        /**
+         * Sets the property of the given object to the value of the column using the column's converter
+         */
+        void bindConverted(CsvLine line, Object object)
+        {
+            var value = line.get(column);
+            if (value != null)
+            {
+                var problem = property.set(object, () -> value);
+                if (problem != null)
+                {
+                    line.warning(problem.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds a column to a property that is not compiled, using reflection
+     */
+    private static class ReflectedBinding extends Binding
+    {
+        ReflectedBinding(CsvColumn<?> column, Property property)
+        {
+            super(column, property);
+        }
+
+        @Override
+        void bind(CsvLine line, Object object)
+        {
+            bindConverted(line, object);
+        }
+    }
+
+    /**
+     * Binds a column to a property with the column's converter
+     */
+    private static class ObjectBinding extends Binding
+    {
+        /** Setter of type (Object, Object)void */
+        private final MethodHandle setter;
+
+        ObjectBinding(CsvColumn<?> column, Property property, MethodHandle setter)
+        {
+            super(column, property);
+            this.setter = setter.asType(methodType(void.class, Object.class, Object.class));
+        }
+
+        @Override
+        void bind(CsvLine line, Object object) throws Throwable
+        {
+            var value = line.get(column);
+            if (value != null)
+            {
+                setter.invokeExact(object, (Object) value);
+            }
+        }
+    }
+
+    /**
+     * Binds an int column to an int property
+     */
+    private static class IntBinding extends Binding
+    {
+        /** Setter of type (Object, int)void */
+        private final MethodHandle setter;
+
+        IntBinding(CsvColumn<?> column, Property property, MethodHandle setter)
+        {
+            super(column, property);
+            this.setter = setter.asType(methodType(void.class, Object.class, int.class));
+        }
+
+        @Override
+        void bind(CsvLine line, Object object) throws Throwable
+        {
+            var value = parseLong(line.text(index), Integer.MIN_VALUE, Integer.MAX_VALUE);
+            if (value != NOT_PARSED)
+            {
+                setter.invokeExact(object, (int) value);
+            }
+            else
+            {
+                bindConverted(line, object);
+            }
+        }
+    }
+
+    /**
+     * Binds a long column to a long property
+     */
+    private static class LongBinding extends Binding
+    {
+        /** Setter of type (Object, long)void */
+        private final MethodHandle setter;
+
+        LongBinding(CsvColumn<?> column, Property property, MethodHandle setter)
+        {
+            super(column, property);
+            this.setter = setter.asType(methodType(void.class, Object.class, long.class));
+        }
+
+        @Override
+        void bind(CsvLine line, Object object) throws Throwable
+        {
+            var value = parseLong(line.text(index), Long.MIN_VALUE, Long.MAX_VALUE);
+            if (value != NOT_PARSED)
+            {
+                setter.invokeExact(object, value);
+            }
+            else
+            {
+                bindConverted(line, object);
+            }
+        }
+    }
+
+    /**
+     * Binds a double column to a double property
+     */
+    private static class DoubleBinding extends Binding
+    {
+        /** Setter of type (Object, double)void */
+        private final MethodHandle setter;
+
+        DoubleBinding(CsvColumn<?> column, Property property, MethodHandle setter)
+        {
+            super(column, property);
+            this.setter = setter.asType(methodType(void.class, Object.class, double.class));
+        }
+
+        @Override
+        void bind(CsvLine line, Object object) throws Throwable
+        {
+            var value = parseDouble(line.text(index));
+            if (!Double.isNaN(value))
+            {
+                setter.invokeExact(object, value);
+            }
+            else
+            {
+                bindConverted(line, object);
+            }
+        }
+    }
+
+    /** The compiled property bindings */
+    private final Binding[] bindings;
+
+    /** The public no-argument constructor of the type, of type ()Object, or null if it could not be compiled */
+    private final MethodHandle constructor;
+
+    /** The type to bind to */
+    private final Type<T> type;
+
+    /**
+     * Compiles a binder for the given schema and type
+     */
+    protected CsvBinder(CsvSchema schema, Class<T> type)
+    {
+        this.type = Type.typeForClass(type);
+        this.constructor = compileConstructor(type);
+
+        var bindings = new ObjectList<Binding>();
+        for (var property : this.type.properties(new CsvPropertyFilter(schema)))
+        {
+            var column = schema.columnForName(property.name());
+            if (column != null && property.setter() != null)
+            {
+                bindings.add(compile(column, property));
+            }
+        }
+        this.bindings = bindings.toArray(new Binding[0]);
+    }
+
+    /**
+     * Returns a new object populated with the values in the given line
+     */
+    public T bind(CsvLine line)
+    {
+        return bind(line, newInstance());
+    }
+
+    /**
+     * Populates the given object with the values in the given line
+     *
+     * @return The object
+     */
+    public T bind(CsvLine line, T object)
+    {
+        try
+        {
+            for (var binding : bindings)
+            {
+                binding.bind(line, object);
+            }
+            return object;
+        }
+        catch (Error e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException("Unable to populate " + type + " from line " + line.lineNumber(), e);
+        }
+    }
+
+    /**
+     * Returns the number of properties that are bound to columns
+     */
+    public int size()
+    {
+        return bindings.length;
+    }
+
+    /**
+     * Compiles a binding between the given column and property
+     */
+    private Binding compile(CsvColumn<?> column, Property property)
+    {
+        try
+        {
+            MethodHandle setter;
+            Class<?> propertyType;
+            var lookup = MethodHandles.lookup();
+            if (property.setter() instanceof MethodSetter)
+            {
+                var method = ((MethodSetter) property.setter()).method().method();
+                method.setAccessible(true);
+                setter = lookup.unreflect(method);
+                propertyType = method.getParameterTypes()[0];
+            }
+            else if (property.setter() instanceof FieldSetter)
+            {
+                var field = javaField(type.asJavaType(), property.name());
+                field.setAccessible(true);
+                setter = lookup.unreflectSetter(field);
+                propertyType = field.getType();
+            }
+            else
+            {
+                return new ReflectedBinding(column, property);
+            }
+
+            var converter = column.converter();
+            var converterType = converter == null ? null : converter.getClass();
+            if (propertyType == int.class && converterType == IntegerConverter.class)
+            {
+                return new IntBinding(column, property, setter);
+            }
+            if (propertyType == long.class && converterType == LongConverter.class)
+            {
+                return new LongBinding(column, property, setter);
+            }
+            if (propertyType == double.class && converterType == DoubleConverter.class)
+            {
+                return new DoubleBinding(column, property, setter);
+            }
+            var valueType = converter == null ? null : converter.toType();
+            if (valueType == null || !methodType(propertyType).wrap().returnType().isAssignableFrom(valueType))
+            {
+                // The value may need a conversion that only reflection does, such as widening an Integer to a long
+                return new ReflectedBinding(column, property);
+            }
+            return new ObjectBinding(column, property, setter);
+        }
+        catch (Exception e)
+        {
+            // The member is not accessible to method handles, so fall back to reflection
+            trace("Unable to compile binding for $: $", property, e.getMessage());
+            return new ReflectedBinding(column, property);
+        }
+    }
+
+    /**
+     * Returns a handle to the public no-argument constructor for the given type, or null if there is none
+     */
+    private MethodHandle compileConstructor(Class<T> type)
+    {
+        try
+        {
+            var constructor = type.getConstructor();
+            constructor.setAccessible(true);
+            return MethodHandles.lookup()
+                .unreflectConstructor(constructor)
+                .asType(methodType(Object.class));
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the named field, declared by the given type or one of its superclasses
+     */
+    private Field javaField(Class<?> type, String name) throws NoSuchFieldException
+    {
+        for (var at = type; at != null; at = at.getSuperclass())
+        {
+            try
+            {
+                return at.getDeclaredField(name);
+            }
+            catch (NoSuchFieldException ignored)
+            {
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    /**
+     * Returns a new instance of the type to bind to
+     */
+    @SuppressWarnings("unchecked")
+    private T newInstance()
+    {
+        if (constructor == null)
+        {
+            return type.newInstance();
+        }
+        try
+        {
+            var object = (Object) constructor.invokeExact();
+            return (T) object;
+        }
+        catch (Error e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException("Unable to create " + type, e);
+        }
+    }
+}
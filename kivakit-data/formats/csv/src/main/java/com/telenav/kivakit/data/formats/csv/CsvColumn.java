@@ -128,6 +128,14 @@ public class CsvColumn<T> extends Name
         return converter.toType();
     }
 
+    /**
+     * Returns the converter for this column, or null if it has none
+     */
+    StringConverter<T> converter()
+    {
+        return converter;
+    }
+
     /**
      * Returns the index of this column in the schema that references it
      */
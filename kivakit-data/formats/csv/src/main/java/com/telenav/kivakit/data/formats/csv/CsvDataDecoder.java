@@ -0,0 +1,130 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
+import com.telenav.kivakit.data.formats.library.DataFormat;
+import com.telenav.kivakit.data.formats.library.decoding.DataDecoder;
+import com.telenav.kivakit.data.formats.library.decoding.DecoderSettings;
+import com.telenav.kivakit.data.formats.library.decoding.RecordBatch;
+import com.telenav.kivakit.data.formats.library.decoding.RecordBatcher;
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.resource.Resource;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+import com.telenav.lexakai.annotations.associations.UmlRelation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.MEMORY_MAPPED;
+import static com.telenav.kivakit.data.formats.csv.CsvSchema.inferredCsvSchema;
+import static com.telenav.kivakit.data.formats.library.DataFormat.CSV;
+
+/**
+ * A {@link DataDecoder} for comma-separated resources that start with a header line. The schema of each resource is
+ * inferred from its header and a sample of its lines with {@link CsvSchema#inferredCsvSchema(Resource)}, and the
+ * header is not decoded as a record.
+ *
+ * <p>
+ * Local, uncompressed files are decoded by a {@link ParallelCsvReader} on a fork-join pool of up to
+ * {@link DecoderSettings#threads()} threads. Pools are shared by all decodes that use the same number of threads, so
+ * decoding many files doesn't start new threads for each one. Other resources, and any resource when only one thread is allowed, are
+ * decoded by a memory-mapped {@link CsvReader} on the calling thread.
+ * </p>
+ *
+ * <p>
+ * This decoder is registered with {@link com.telenav.kivakit.data.formats.library.decoding.DataDecoders} as a service.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see ParallelCsvReader
+ * @see CsvReader
+ */
+@UmlClassDiagram(diagram = DiagramCsv.class)
+@UmlRelation(label = "decodes", referent = CsvLine.class)
+@LexakaiJavadoc(complete = true)
+public class CsvDataDecoder implements DataDecoder<CsvLine>
+{
+    /** Fork-join pools by number of threads, which is never more than the number of processors */
+    private static final Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Files are split into chunks at line boundaries and read by a {@link ParallelCsvReader}
+     */
+    @Override
+    public boolean canSplitFiles()
+    {
+        return true;
+    }
+
+    @Override
+    public void decode(Resource resource, DecoderSettings settings, Consumer<RecordBatch<CsvLine>> consumer)
+    {
+        var schema = inferredCsvSchema(resource);
+        var batcher = new RecordBatcher<>(settings.batchSize(), consumer);
+        var threads = Math.min(settings.threads(), parallelism(resource));
+
+        // If the resource can be split,
+        if (threads > 1)
+        {
+            // read it in parallel on the shared pool of the allowed size, skipping the header line.
+            var reader = new ParallelCsvReader((File) resource, schema);
+            pools.computeIfAbsent(threads, ForkJoinPool::new).submit(() -> reader.forEachBatch(lines ->
+            {
+                for (var line : lines)
+                {
+                    if (line.lineNumber() > 1)
+                    {
+                        batcher.add(line);
+                    }
+                }
+            })).join();
+        }
+        else
+        {
+            // otherwise, read it a line at a time.
+            try (var reader = new CsvReader(resource, schema, ',', nullProgressReporter(), MEMORY_MAPPED).readHeader())
+            {
+                for (var line : reader.lines())
+                {
+                    batcher.add(line);
+                }
+            }
+        }
+
+        batcher.flush();
+    }
+
+    @Override
+    public DataFormat format()
+    {
+        return CSV;
+    }
+
+    @Override
+    public Class<CsvLine> recordType()
+    {
+        return CsvLine.class;
+    }
+}
@@ -0,0 +1,410 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * An index of the records in a CSV file, giving the byte offset and line number where each row starts, and optionally
+ * the rows for each value of a key column. An index is built by {@link CsvReader} as it reads a file with
+ * {@link CsvReader.Option#INDEXED}, and it is saved beside the file in a sidecar file with the extension ".index".
+ *
+ * <p><b>Sidecar Format</b></p>
+ *
+ * <p>
+ * The sidecar file starts with a magic number and version, followed by the size and modification time of the CSV file
+ * when the index was built. An index is stale, and is not loaded, if either of these has changed. Row offsets and line
+ * numbers are stored as variable-length deltas, which take one or two bytes per row for typical files. Keys are stored
+ * with the rows where they occur, also as deltas.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ */
+final class CsvIndex
+{
+    /**
+     * Builds an index from the records of a CSV file as they are read
+     */
+    static final class Builder
+    {
+        /** The CSV file */
+        private final Path file;
+
+        /** The size of the file when indexing started */
+        private final long fileSize;
+
+        /** The modification time of the file when indexing started */
+        private final long lastModified;
+
+        /** The name of the key column, or null if there is none */
+        private String keyColumn;
+
+        /** The rows for each key, with the number of rows in the first element */
+        private final Map<String, int[]> keys = new HashMap<>();
+
+        /** The line number where each row starts */
+        private int[] lineNumbers = new int[1024];
+
+        /** The byte offset where each row starts */
+        private long[] offsets = new long[1024];
+
+        /** The number of rows */
+        private int size;
+
+        Builder(Path file) throws IOException
+        {
+            this.file = file;
+            this.fileSize = Files.size(file);
+            this.lastModified = Files.getLastModifiedTime(file).toMillis();
+        }
+
+        /**
+         * Adds the next row to the index
+         *
+         * @param offset The byte offset where the row starts
+         * @param lineNumber The line number where the row starts
+         * @param key The value of the key column for the row, or null if there is none
+         */
+        void add(long offset, int lineNumber, String key)
+        {
+            if (size == offsets.length)
+            {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, size * 2);
+            }
+            offsets[size] = offset;
+            lineNumbers[size] = lineNumber;
+
+            if (key != null && keyColumn != null)
+            {
+                var rows = keys.get(key);
+                if (rows == null)
+                {
+                    keys.put(key, rows = new int[4]);
+                }
+                else if (rows[0] + 1 == rows.length)
+                {
+                    keys.put(key, rows = Arrays.copyOf(rows, rows.length * 2));
+                }
+                rows[++rows[0]] = size;
+            }
+
+            size++;
+        }
+
+        /**
+         * Returns the index
+         */
+        CsvIndex build()
+        {
+            var keys = new HashMap<String, int[]>(this.keys.size() * 2);
+            this.keys.forEach((key, rows) -> keys.put(key, Arrays.copyOfRange(rows, 1, rows[0] + 1)));
+            return new CsvIndex(file, fileSize, lastModified, Arrays.copyOf(offsets, size),
+                    Arrays.copyOf(lineNumbers, size), keyColumn, keys);
+        }
+
+        /**
+         * Sets the name of the column whose values are indexed
+         */
+        void keyColumn(String keyColumn)
+        {
+            this.keyColumn = keyColumn;
+        }
+
+        /**
+         * Returns the number of rows that have been added
+         */
+        int size()
+        {
+            return size;
+        }
+    }
+
+    /** Identifies a CSV index sidecar file ("CSVI") */
+    private static final int MAGIC = 0x43535649;
+
+    /** The version of the sidecar format */
+    private static final int VERSION = 1;
+
+    /**
+     * Returns the index for the given CSV file from its sidecar file
+     *
+     * @param file The CSV file
+     * @return The index, or null if there is no sidecar file, or the index is stale
+     * @throws IOException Thrown if the sidecar file cannot be read
+     */
+    static CsvIndex load(Path file) throws IOException
+    {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar(file)), 64 * 1024)))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                return null;
+            }
+            var fileSize = in.readLong();
+            var lastModified = in.readLong();
+            if (fileSize != Files.size(file) || lastModified != Files.getLastModifiedTime(file).toMillis())
+            {
+                return null;
+            }
+
+            var size = (int) readVarLong(in);
+            var offsets = new long[size];
+            var lineNumbers = new int[size];
+            long offset = 0;
+            var lineNumber = 0;
+            for (var row = 0; row < size; row++)
+            {
+                offsets[row] = offset += readVarLong(in);
+                lineNumbers[row] = lineNumber += (int) readVarLong(in);
+            }
+
+            var keyColumn = readString(in);
+            var keyCount = (int) readVarLong(in);
+            var keys = new HashMap<String, int[]>(keyCount * 2);
+            for (var index = 0; index < keyCount; index++)
+            {
+                var key = readString(in);
+                var rows = new int[(int) readVarLong(in)];
+                var row = 0;
+                for (var at = 0; at < rows.length; at++)
+                {
+                    rows[at] = row += (int) readVarLong(in);
+                }
+                keys.put(key, rows);
+            }
+
+            return new CsvIndex(file, fileSize, lastModified, offsets, lineNumbers, keyColumn, keys);
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the sidecar file for the given CSV file
+     */
+    static Path sidecar(Path file)
+    {
+        return file.resolveSibling(file.getFileName() + ".index");
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}
+     */
+    private static String readString(DataInput in) throws IOException
+    {
+        var length = (int) readVarLong(in);
+        if (length == 0)
+        {
+            return null;
+        }
+        var bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Reads a variable-length, non-negative value written by {@link #writeVarLong(DataOutput, long)}
+     */
+    private static long readVarLong(DataInput in) throws IOException
+    {
+        long value = 0;
+        for (var shift = 0; shift < 64; shift += 7)
+        {
+            var next = in.readByte();
+            value |= (long) (next & 0x7f) << shift;
+            if (next >= 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed index");
+    }
+
+    /**
+     * Writes the given string, which may be null, as its length plus one followed by its UTF-8 bytes
+     */
+    private static void writeString(DataOutput out, String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeVarLong(out, 0);
+        }
+        else
+        {
+            var bytes = value.getBytes(UTF_8);
+            writeVarLong(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Writes the given non-negative value in seven-bit groups, least significant first, with the high bit of each byte
+     * set if more bytes follow
+     */
+    private static void writeVarLong(DataOutput out, long value) throws IOException
+    {
+        while ((value & ~0x7fL) != 0)
+        {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /** The CSV file */
+    private final Path file;
+
+    /** The size of the file when it was indexed */
+    private final long fileSize;
+
+    /** The name of the key column, or null if there is none */
+    private final String keyColumn;
+
+    /** The rows for each key */
+    private final Map<String, int[]> keys;
+
+    /** The modification time of the file when it was indexed */
+    private final long lastModified;
+
+    /** The line number where each row starts */
+    private final int[] lineNumbers;
+
+    /** The byte offset where each row starts */
+    private final long[] offsets;
+
+    private CsvIndex(Path file,
+                     long fileSize,
+                     long lastModified,
+                     long[] offsets,
+                     int[] lineNumbers,
+                     String keyColumn,
+                     Map<String, int[]> keys)
+    {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.offsets = offsets;
+        this.lineNumbers = lineNumbers;
+        this.keyColumn = keyColumn;
+        this.keys = keys;
+    }
+
+    /**
+     * Returns the name of the key column, or null if keys are not indexed
+     */
+    String keyColumn()
+    {
+        return keyColumn;
+    }
+
+    /**
+     * Returns the line number where the given row starts
+     */
+    int lineNumber(int row)
+    {
+        return lineNumbers[Objects.checkIndex(row, size())];
+    }
+
+    /**
+     * Returns the byte offset where the given row starts
+     */
+    long offset(int row)
+    {
+        return offsets[Objects.checkIndex(row, size())];
+    }
+
+    /**
+     * Returns the rows where the key column has the given value, in increasing order
+     */
+    int[] rows(String key)
+    {
+        var rows = keys.get(key);
+        return rows == null ? new int[0] : rows;
+    }
+
+    /**
+     * Writes this index to the sidecar file for the CSV file
+     */
+    void save() throws IOException
+    {
+        var sidecar = sidecar(file);
+        var temporary = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+
+            writeVarLong(out, size());
+            long offset = 0;
+            var lineNumber = 0;
+            for (var row = 0; row < size(); row++)
+            {
+                writeVarLong(out, offsets[row] - offset);
+                writeVarLong(out, lineNumbers[row] - lineNumber);
+                offset = offsets[row];
+                lineNumber = lineNumbers[row];
+            }
+
+            writeString(out, keyColumn);
+            writeVarLong(out, keys.size());
+            for (var entry : keys.entrySet())
+            {
+                writeString(out, entry.getKey());
+                var rows = entry.getValue();
+                writeVarLong(out, rows.length);
+                var row = 0;
+                for (var next : rows)
+                {
+                    writeVarLong(out, next - row);
+                    row = next;
+                }
+            }
+        }
+        Files.move(temporary, sidecar, REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns the number of rows in the index
+     */
+    int size()
+    {
+        return offsets.length;
+    }
+}
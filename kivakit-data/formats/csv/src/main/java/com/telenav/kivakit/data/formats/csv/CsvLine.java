@@ -21,7 +21,6 @@ package com.telenav.kivakit.data.formats.csv;
 import com.telenav.kivakit.conversion.StringConverter;
 import com.telenav.kivakit.conversion.core.language.object.ObjectPopulator;
 import com.telenav.kivakit.core.collections.list.StringList;
-import com.telenav.kivakit.core.language.reflection.Type;
 import com.telenav.kivakit.core.language.reflection.property.Property;
 import com.telenav.kivakit.core.language.reflection.property.PropertyValue;
 import com.telenav.kivakit.core.messaging.repeaters.BaseRepeater;
@@ -29,6 +28,8 @@ import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
 import com.telenav.lexakai.annotations.LexakaiJavadoc;
 import com.telenav.lexakai.annotations.UmlClassDiagram;
 
+import java.nio.CharBuffer;
+
 import static com.telenav.kivakit.core.collections.list.StringList.stringList;
 import static com.telenav.kivakit.core.os.Console.console;
 import static com.telenav.kivakit.core.string.Strings.doubleQuoted;
@@ -46,12 +47,21 @@ import static com.telenav.kivakit.core.string.Strings.doubleQuoted;
  * {@link #get(CsvColumn)} and they can be provided with {@link #set(CsvColumn, Object)}.
  * </p>
  *
+ * <p><b>Tokenized Lines</b></p>
+ *
+ * <p>
+ * When a {@link CsvReader} is constructed with {@link CsvReader.Option#TOKENIZED}, a single line object is reused for
+ * every record, and its columns are slices of the {@link CsvTokenizer}'s character block. A {@link String} is only
+ * created for a column when it is retrieved. Such a line is only valid until the reader advances, so a line that needs
+ * to be retained should be copied with {@link #copy()}.
+ * </p>
+ *
  * <p><b>Converting a Line to an Object</b></p>
  *
  * <p>
  * A {@link CsvLine} can be converted directly to an object with {@link #populatedObject(Class)}. A new instance of the
  * class is created and its properties are populated using the {@link CsvSchema} of this line. For details, see
- * {@link #populatedObject(Class)} and {@link #propertyValue(Property)}.
+ * {@link #populatedObject(Class)} and {@link CsvBinder}.
  * </p>
  *
  * @author jonathanl (shibo)
@@ -77,8 +87,11 @@ public class CsvLine extends BaseRepeater implements PropertyValue
     /** The value separator, by default a comma */
     private final char delimiter;
 
-    /** The columns of this line */
-    private final StringList columns;
+    /** The columns of this line, or null if the columns are slices of a tokenizer block */
+    private StringList columns;
+
+    /** The tokenizer whose current record holds the columns of this line, if any */
+    private transient CsvTokenizer tokenizer;
 
     /** True if strings should be quoted */
     private boolean quoted;
@@ -95,7 +108,7 @@ public class CsvLine extends BaseRepeater implements PropertyValue
 
     public boolean add(String value)
     {
-        return columns.add(value);
+        return strings().add(value);
     }
 
     /**
@@ -103,9 +116,32 @@ public class CsvLine extends BaseRepeater implements PropertyValue
      */
     public StringList columns()
     {
+        if (tokenizer != null)
+        {
+            var copy = stringList().separator(Character.toString(delimiter));
+            for (var index = 0; index < tokenizer.columnCount(); index++)
+            {
+                copy.add(tokenizer.column(index));
+            }
+            return copy;
+        }
         return columns.copy();
     }
 
+    /**
+     * Returns a copy of this line that does not depend on any reader state, and so can be retained after a
+     * {@link CsvReader} in {@link CsvReader.Option#TOKENIZED} mode has moved on to the next line.
+     */
+    public CsvLine copy()
+    {
+        var copy = new CsvLine(schema, delimiter);
+        copy.columns.addAll(columns());
+        copy.lineNumber = lineNumber;
+        copy.quoted = quoted;
+        listenTo(copy);
+        return copy;
+    }
+
     /**
      * Returns the value of the given column
      */
@@ -128,7 +164,7 @@ public class CsvLine extends BaseRepeater implements PropertyValue
 
     public String get(int index)
     {
-        return columns.get(index);
+        return tokenizer != null ? tokenizer.column(index) : columns.get(index);
     }
 
     /**
@@ -141,17 +177,20 @@ public class CsvLine extends BaseRepeater implements PropertyValue
     }
 
     /**
-     * Returns an object of the given type with its properties populated by {@link ObjectPopulator} using
-     * {@link CsvPropertyFilter}. Properties of the object that correspond to {@link CsvColumn}s using KivaKit property
-     * naming are retrieved with {@link PropertyValue#propertyValue(Property)} (see below) and set on the new object by
-     * reflection. The result is an object corresponding to this line.
+     * Returns an object of the given type with its properties populated from this line. Properties of the object that
+     * correspond to {@link CsvColumn}s using KivaKit property naming, as determined by {@link CsvPropertyFilter}, are
+     * set to the values of those columns. The result is an object corresponding to this line.
+     *
+     * <p>
+     * The object is populated by the {@link CsvBinder} that is compiled for the type by {@link CsvSchema#binder(Class)},
+     * so properties are only discovered by reflection once per type, and not for each line.
+     * </p>
      */
     public <T> T populatedObject(Class<T> type)
     {
         try
         {
-            return new ObjectPopulator(new CsvPropertyFilter(schema()), () -> this)
-                .populate(Type.typeForClass(type).newInstance());
+            return schema().binder(type).bind(this);
         }
         catch (Exception e)
         {
@@ -161,8 +200,8 @@ public class CsvLine extends BaseRepeater implements PropertyValue
     }
 
     /**
-     * Implementation of {@link PropertyValue} used by {@link ObjectPopulator} in {@link #populatedObject(Class)} to get
-     * the value of the given property using the property name to find the {@link CsvColumn}.
+     * Implementation of {@link PropertyValue} that can be used by {@link ObjectPopulator} to get the value of the given
+     * property using the property name to find the {@link CsvColumn}.
      */
     @Override
     public Object propertyValue(Property property)
@@ -190,16 +229,25 @@ public class CsvLine extends BaseRepeater implements PropertyValue
     }
 
     /**
-     * Sets the given column to the given value
+     * Sets the given column to the given value. A null value leaves the column's text null, so that it is written as an
+     * empty field.
      */
     public <T> void set(CsvColumn<T> column, T value)
     {
-        set(column, column.asString(value));
+        set(column, value == null ? null : column.asString(value));
     }
 
     public void set(int index, String value)
     {
-        columns.set(index, value);
+        strings().set(index, value);
+    }
+
+    /**
+     * Returns the number of columns in this line
+     */
+    public int size()
+    {
+        return tokenizer != null ? tokenizer.columnCount() : columns.size();
     }
 
     /**
@@ -208,7 +256,7 @@ public class CsvLine extends BaseRepeater implements PropertyValue
     public String string(CsvColumn<?> column)
     {
         var index = column.index();
-        return index >= columns.size() ? null : columns.get(column.index());
+        return index >= size() ? null : get(index);
     }
 
     @Override
@@ -256,6 +304,14 @@ public class CsvLine extends BaseRepeater implements PropertyValue
         return delimiter;
     }
 
+    /**
+     * Returns true if strings in this line should be quoted when it is written
+     */
+    boolean isQuoted()
+    {
+        return quoted;
+    }
+
     /**
      * Used by CSV reader to set the line number for this line
      */
@@ -264,6 +320,34 @@ public class CsvLine extends BaseRepeater implements PropertyValue
         this.lineNumber = lineNumber;
     }
 
+    /**
+     * Returns the text of the given column without creating a {@link String} if the line is backed by a tokenizer, or
+     * null if there is no such column
+     */
+    CharSequence text(int index)
+    {
+        if (index >= size())
+        {
+            return null;
+        }
+        if (tokenizer != null)
+        {
+            var length = tokenizer.columnLength(index);
+            return length < 0 ? null : CharBuffer.wrap(tokenizer.buffer(), tokenizer.columnOffset(index), length);
+        }
+        return columns.get(index);
+    }
+
+    /**
+     * Used by CSV reader in {@link CsvReader.Option#TOKENIZED} mode to make this line a view of the tokenizer's current
+     * record
+     */
+    void tokenized(CsvTokenizer tokenizer)
+    {
+        this.tokenizer = tokenizer;
+        this.columns = null;
+    }
+
     /**
      * Sets the given column to the given value
      */
@@ -272,11 +356,24 @@ public class CsvLine extends BaseRepeater implements PropertyValue
         if (column != null)
         {
             var index = column.index();
-            while (index >= columns.size())
+            while (index >= size())
             {
                 add("");
             }
             set(index, value);
         }
     }
+
+    /**
+     * Returns the list of column strings, copying any columns out of the tokenizer block so the line can be modified
+     */
+    private StringList strings()
+    {
+        if (tokenizer != null)
+        {
+            columns = columns();
+            tokenizer = null;
+        }
+        return columns;
+    }
 }
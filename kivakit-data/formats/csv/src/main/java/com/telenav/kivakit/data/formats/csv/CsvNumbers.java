@@ -0,0 +1,133 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+/**
+ * Parses numbers in CSV columns without creating strings. Only plain decimals are parsed, and the value is always the
+ * same as the one that would be produced by {@link Integer#parseInt(String)}, {@link Long#parseLong(String)} or
+ * {@link Double#parseDouble(String)}. Any other text is left to the caller, who can fall back to the column's
+ * converter.
+ *
+ * @author jonathanl (shibo)
+ */
+final class CsvNumbers
+{
+    /** Value returned by the integer parsers when text is not a plain decimal in range */
+    static final long NOT_PARSED = Long.MIN_VALUE;
+
+    /** Powers of ten that are exactly representable as doubles */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Parses a plain decimal number with an optional fraction, such as -12.375. The result is exactly the value that
+     * {@link Double#parseDouble(String)} would return, because the digits form an integer that a double can represent
+     * exactly, and the result of dividing by an exact power of ten is correctly rounded.
+     *
+     * @return The value, or NaN if the text is not a plain decimal that can be parsed exactly this way
+     */
+    static double parseDouble(CharSequence text)
+    {
+        if (text == null)
+        {
+            return Double.NaN;
+        }
+        var length = text.length();
+        var at = 0;
+        var negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+'))
+        {
+            negative = text.charAt(0) == '-';
+            at++;
+        }
+        long mantissa = 0;
+        var digits = 0;
+        var fractionDigits = -1;
+        for (; at < length; at++)
+        {
+            var next = text.charAt(at);
+            if (next >= '0' && next <= '9')
+            {
+                mantissa = mantissa * 10 + (next - '0');
+                if (++digits > 15)
+                {
+                    return Double.NaN;
+                }
+                if (fractionDigits >= 0)
+                {
+                    fractionDigits++;
+                }
+            }
+            else if (next == '.' && fractionDigits < 0)
+            {
+                fractionDigits = 0;
+            }
+            else
+            {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0)
+        {
+            return Double.NaN;
+        }
+        var value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : (double) mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a plain decimal integer, such as -12, in the given range
+     *
+     * @return The value, or {@link #NOT_PARSED} if the text is not a plain decimal in the range
+     */
+    static long parseLong(CharSequence text, long minimum, long maximum)
+    {
+        if (text == null)
+        {
+            return NOT_PARSED;
+        }
+        var length = text.length();
+        var at = 0;
+        var negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+'))
+        {
+            negative = text.charAt(0) == '-';
+            at++;
+        }
+        if (at == length || length - at > 18)
+        {
+            // Values with more than 18 digits might overflow, so they are left to the converter
+            return NOT_PARSED;
+        }
+        long value = 0;
+        for (; at < length; at++)
+        {
+            var next = text.charAt(at);
+            if (next < '0' || next > '9')
+            {
+                return NOT_PARSED;
+            }
+            value = value * 10 + (next - '0');
+        }
+        value = negative ? -value : value;
+        return value < minimum || value > maximum ? NOT_PARSED : value;
+    }
+}
@@ -19,19 +19,44 @@
 package com.telenav.kivakit.data.formats.csv;
 
 import com.telenav.kivakit.core.collections.iteration.BaseIterator;
+import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.core.io.LookAheadReader;
 import com.telenav.kivakit.core.messaging.repeaters.RepeaterMixin;
 import com.telenav.kivakit.core.progress.ProgressReporter;
+import com.telenav.kivakit.core.value.count.Bytes;
 import com.telenav.kivakit.core.value.count.Count;
 import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
+import com.telenav.kivakit.filesystem.File;
 import com.telenav.kivakit.interfaces.io.Closeable;
 import com.telenav.kivakit.resource.Resource;
+import com.telenav.kivakit.resource.compression.codecs.GzipCodec;
+import com.telenav.kivakit.resource.compression.codecs.NullCodec;
 import com.telenav.lexakai.annotations.LexakaiJavadoc;
 import com.telenav.lexakai.annotations.UmlClassDiagram;
 import com.telenav.lexakai.annotations.associations.UmlAggregation;
 import com.telenav.lexakai.annotations.associations.UmlRelation;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static com.telenav.kivakit.core.collections.list.StringList.stringList;
+import static com.telenav.kivakit.core.collections.set.ObjectSet.set;
+import static com.telenav.kivakit.core.io.LookAheadReader.END_OF_STREAM;
 import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
+import static com.telenav.kivakit.core.value.count.Bytes.megabytes;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.INDEXED;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.MEMORY_MAPPED;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.TOKENIZED;
+import static com.telenav.kivakit.data.formats.csv.MappedFileReader.DEFAULT_WINDOW_SIZE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
 
 /**
  * Parses a stream of CSV information. The rules outlined
@@ -57,6 +82,81 @@ import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressRep
  * }
  * </pre>
  *
+ * <p><b>Tokenized Reading</b></p>
+ *
+ * <p>
+ * When constructed with {@link Option#TOKENIZED}, the reader parses the input with a {@link CsvTokenizer}, which scans
+ * large reusable blocks of characters instead of reading one character at a time. Columns are slices of the block, and
+ * a {@link String} is only created when a column value is retrieved from the {@link CsvLine}. To avoid allocating a
+ * line per record, a single {@link CsvLine} is reused, so a line is only valid until the reader advances. Lines that
+ * need to be retained can be copied with {@link CsvLine#copy()}.
+ * </p>
+ *
+ * <p><b>Memory-Mapped Reading</b></p>
+ *
+ * <p>
+ * When constructed with {@link Option#MEMORY_MAPPED}, a local, uncompressed {@link File} is read through a memory
+ * mapping, and its UTF-8 text is decoded directly from the mapped pages. This avoids copying the data through an input
+ * stream and a charset decoder, and combines well with {@link Option#TOKENIZED}. Resources that cannot be mapped, such
+ * as compressed files or remote resources, are read normally.
+ * </p>
+ *
+ * <p><b>Compressed Input</b></p>
+ *
+ * <p>
+ * Compressed resources, such as ".csv.gz" files, are decompressed on a separate thread into a bounded ring of buffers,
+ * so decompression overlaps with parsing. A local gzip file in the BGZF format written by tools like bgzip is made of
+ * members that record their compressed size, so its members are also inflated in parallel on multiple cores.
+ * </p>
+ *
+ * <p><b>Reading Selected Columns</b></p>
+ *
+ * <p>
+ * If the first line of the input is a header that names its columns, {@link #readHeader()} reads it and matches the
+ * columns of the {@link CsvSchema} to the columns of the input by name. From then on, each {@link CsvLine} holds only
+ * the columns in the schema, wherever they appear in the input, and other columns are not stored. When reading with
+ * {@link Option#TOKENIZED}, the other columns are skipped by the {@link CsvTokenizer} without being decoded, and the
+ * rest of a line after the last column in the schema is not parsed at all. A schema for a file with a header can be
+ * inferred from a sample of its lines with {@link CsvSchema#inferredCsvSchema(Resource, char, int)}.
+ * </p>
+ *
+ * <pre>
+ * try (var reader = new CsvReader(file, csvSchema(id, price), ',', reporter, TOKENIZED).readHeader())
+ * {
+ *     for (var line : reader)
+ *     {
+ *         var price = line.get(price);
+ *
+ *         [...]
+ *     }
+ * }
+ * </pre>
+ *
+ * <p><b>Indexed Reading</b></p>
+ *
+ * <p>
+ * When constructed with {@link Option#INDEXED}, the reader records the byte offset of each row as it reads a local,
+ * uncompressed UTF-8 {@link File}. When the whole file has been read, the index is saved beside it in a sidecar file
+ * with the extension ".index", so later readers of the same file can use it without reading the file again. A sidecar
+ * file is ignored if the size or modification time of the CSV file has changed since it was written. If a key column
+ * is given with {@link #indexKey(CsvColumn)}, the rows for each value of that column are indexed too.
+ * </p>
+ *
+ * <p>
+ * The index allows random access with {@link #seek(int)}, which positions the reader so that the next line read is
+ * the given row, and {@link #lookup(String)}, which returns the lines with a given key. Rows are numbered from zero,
+ * and include every line that the reader returns, such as a header line, but not comments. If there is no index yet,
+ * these methods first read the rest of the file to build it.
+ * </p>
+ *
+ * <pre>
+ * try (var reader = new CsvReader(file, schema, ',', reporter, INDEXED).indexKey(id))
+ * {
+ *     var line = reader.seek(1_000_000).next();
+ *     var matches = reader.lookup("ABC-123");
+ * }
+ * </pre>
+ *
  * @author jonathanl (shibo)
  * @see CsvSchema
  * @see Resource
@@ -68,14 +168,77 @@ import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressRep
 @LexakaiJavadoc(complete = true)
 public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, Closeable
 {
+    /**
+     * Options for reading CSV
+     */
+    public enum Option
+    {
+        /**
+         * Index the offset of each row of a local, uncompressed file, so it can be read with {@link #seek(int)} and
+         * {@link #lookup(String)}
+         */
+        INDEXED,
+
+        /**
+         * Read local, uncompressed files through a memory mapping, decoding UTF-8 directly from the mapped pages. Other
+         * resources are read normally.
+         */
+        MEMORY_MAPPED,
+
+        /** Parse the input in large blocks with {@link CsvTokenizer}, reusing a single {@link CsvLine} */
+        TOKENIZED
+    }
+
+    /** The size above which a remote, compressed resource is worth decompressing on a separate thread */
+    private static final Bytes MINIMUM_PIPELINED_SIZE = megabytes(4);
+
     /** The separator for CSV (can be changed with setDelimiter) */
     protected char delimiter;
 
     /** Escape character */
     protected char escape = '\\';
 
-    /** The input */
-    protected final LookAheadReader in;
+    /** The input, or null if the input is being read with a {@link CsvTokenizer} */
+    protected LookAheadReader in;
+
+    /** The text reader for the resource */
+    private Reader textReader;
+
+    /** The file being read with {@link Option#INDEXED}, or null if the reader is not indexed */
+    private final Path indexedFile;
+
+    /** The index of rows in the file, once it has been loaded or built */
+    private CsvIndex index;
+
+    /** The builder for the index while the file is being read, or null if no index is being built */
+    private CsvIndex.Builder indexBuilder;
+
+    /** True once any existing sidecar file has been checked */
+    private boolean indexChecked;
+
+    /** The column whose values are indexed, or null if there is none */
+    private CsvColumn<?> indexKey;
+
+    /** Tracks the byte offsets of characters while the index is being built */
+    private ByteOffsetReader byteOffsets;
+
+    /** The number of lines before the line where reading started, which is not zero after a seek */
+    private int lineOffset;
+
+    /** True if the file is read through a memory mapping */
+    private final boolean memoryMapped;
+
+    /** True if the input is read with a {@link CsvTokenizer} */
+    private final boolean tokenized;
+
+    /** The tokenizer when reading with {@link Option#TOKENIZED} */
+    private CsvTokenizer tokenizer;
+
+    /** The line that is reused when reading with {@link Option#TOKENIZED} */
+    private CsvLine line;
+
+    /** For each input column, the schema column it is read as or -1 to skip it, or null to read every column */
+    private int[] projection;
 
     /** The reporter for progress reading the CSV resource */
     private final ProgressReporter reporter;
@@ -107,16 +270,57 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
                      CsvSchema schema,
                      char delimiter,
                      ProgressReporter reporter)
+    {
+        this(resource, schema, delimiter, reporter, new Option[0]);
+    }
+
+    /**
+     * Constructs a reader for the given input stream and CSV schema, using the given options
+     */
+    public CsvReader(Resource resource,
+                     CsvSchema schema,
+                     char delimiter,
+                     ProgressReporter reporter,
+                     Option... options)
     {
         this.reporter = reporter;
         this.schema = schema;
         this.delimiter = delimiter;
-        var reader = resource.reader(nullProgressReporter()).textReader();
+        var optionSet = set(options);
+        memoryMapped = optionSet.contains(MEMORY_MAPPED) && isMappable(resource);
+        tokenized = optionSet.contains(TOKENIZED);
+        var reader = memoryMapped
+                ? mappedReader((File) resource)
+                : readerFor(resource);
         if (reader == null)
         {
             throw new IllegalArgumentException("Unable to read: " + resource);
         }
-        in = new LookAheadReader(reader);
+
+        if (optionSet.contains(INDEXED))
+        {
+            if (!isMappable(resource))
+            {
+                throw new IllegalArgumentException("Only local, uncompressed files can be indexed: " + resource);
+            }
+            indexedFile = ((File) resource).asJavaPath();
+            try
+            {
+                indexBuilder = new CsvIndex.Builder(indexedFile);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalArgumentException("Unable to index: " + resource, e);
+            }
+            reader = byteOffsets = new ByteOffsetReader(reader);
+        }
+        else
+        {
+            indexedFile = null;
+        }
+
+        textReader = reader;
+        in = tokenized ? null : new LookAheadReader(textReader);
     }
 
     /**
@@ -125,7 +329,24 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
     @Override
     public void close()
     {
-        in.close();
+        if (in != null)
+        {
+            in.close();
+        }
+        else if (tokenizer != null)
+        {
+            tokenizer.close();
+        }
+        else
+        {
+            try
+            {
+                textReader.close();
+            }
+            catch (IOException ignored)
+            {
+            }
+        }
     }
 
     /**
@@ -136,12 +357,35 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
         this.delimiter = delimiter;
     }
 
+    /**
+     * Sets the column whose values are indexed when reading with {@link Option#INDEXED}, so that rows can be found
+     * with {@link #lookup(String)}. This must be called before any lines are read.
+     */
+    public CsvReader indexKey(CsvColumn<?> column)
+    {
+        if (indexedFile == null)
+        {
+            throw new IllegalStateException("Reader is not indexed");
+        }
+        if (indexChecked)
+        {
+            throw new IllegalStateException("The index key must be set before reading");
+        }
+        indexKey = column;
+        indexBuilder.keyColumn(column.name());
+        return this;
+    }
+
     /**
      * Returns the current line number in the input
      */
     public int lineNumber()
     {
-        return in.lineNumber();
+        if (in == null)
+        {
+            return tokenizer == null ? lineOffset + 1 : lineOffset + tokenizer.lineNumber();
+        }
+        return lineOffset + in.lineNumber();
     }
 
     public Iterable<CsvLine> lines()
@@ -149,6 +393,32 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
         return () -> this;
     }
 
+    /**
+     * Returns the lines where the index key column has the given value, in the order they occur in the file. The
+     * lines can be retained, and the reader is left positioned after the last of them.
+     *
+     * @see #indexKey(CsvColumn)
+     */
+    public ObjectList<CsvLine> lookup(String key)
+    {
+        if (indexKey == null)
+        {
+            throw new IllegalStateException("No index key column");
+        }
+
+        var lines = new ObjectList<CsvLine>();
+        for (var row : index().rows(key))
+        {
+            seek(row);
+            var line = findNext();
+            if (line != null)
+            {
+                lines.add(tokenized ? line.copy() : line);
+            }
+        }
+        return lines;
+    }
+
     public void problem()
     {
         reporter.problem();
@@ -170,6 +440,51 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
         return this;
     }
 
+    /**
+     * Reads the next line as a header that names the columns of the input, and matches the columns of the schema to
+     * the input columns with the same names. Lines read after the header hold only the columns in the schema, and
+     * input columns that are not in the schema are skipped. A schema column that is not named by the header has no
+     * value. This must be called before any other lines are read.
+     *
+     * @return This reader
+     * @throws IllegalStateException Thrown if there is no header line
+     */
+    public CsvReader readHeader()
+    {
+        if (!hasNext())
+        {
+            throw new IllegalStateException("No header line");
+        }
+        var header = stringList();
+        for (var name : next().columns())
+        {
+            header.add(name.trim());
+        }
+
+        var projection = new int[header.size()];
+        Arrays.fill(projection, -1);
+        var identity = header.size() == schema.columns().size();
+        for (var column : schema.columns())
+        {
+            var position = header.indexOf(column.name());
+            if (position < 0)
+            {
+                warning("Column '$' is not in the header", column.name());
+                identity = false;
+            }
+            else
+            {
+                projection[position] = column.index();
+                identity &= position == column.index();
+            }
+        }
+
+        // If the header matches the schema exactly, every column is read anyway
+        this.projection = identity ? null : projection;
+        project(tokenizer);
+        return this;
+    }
+
     /**
      * Returns the schema for lines being read
      */
@@ -178,6 +493,22 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
         return schema;
     }
 
+    /**
+     * Positions the reader so that the next line read is the given row, where the first line in the file is row zero.
+     * This must not be called between {@link #hasNext()} and {@link #next()}.
+     */
+    public CsvReader seek(int row)
+    {
+        var index = index();
+        Objects.checkIndex(row, index.size());
+        close();
+        textReader = readerAt(index.offset(row));
+        lineOffset = index.lineNumber(row) - 1;
+        in = tokenized ? null : new LookAheadReader(textReader);
+        tokenizer = tokenized ? project(newTokenizer(textReader)) : null;
+        return this;
+    }
+
     /**
      * Skips the given number of lines
      */
@@ -196,6 +527,14 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
         return quote((char) -1);
     }
 
+    /**
+     * Returns a tokenizer for the given input, using the delimiter, quote and escape characters of this reader
+     */
+    protected CsvTokenizer newTokenizer(Reader reader)
+    {
+        return new CsvTokenizer(reader, delimiter, quote, escape);
+    }
+
     /**
      * Read the next CSV column from the input stream. When exiting this method the input stream should either be
      * pointing to a line end (0x0D), a column end (delimiter), or the end of the stream.
@@ -237,10 +576,23 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
     @Override
     protected CsvLine onNext()
     {
+        if (in == null)
+        {
+            return onNextTokenized();
+        }
+
+        if (!indexChecked)
+        {
+            checkIndex();
+        }
+
         if (in.hasNext())
         {
+            // The offset of the current character is the number read, less the current and look-ahead characters
+            var offset = indexBuilder == null ? 0 : byteOffsets.characters() - (in.lookAhead() == END_OF_STREAM ? 1 : 2);
+
             var line = listenTo(new CsvLine(schema, delimiter));
-            var lineNumber = in.lineNumber();
+            var lineNumber = lineOffset + in.lineNumber();
             line.lineNumber(lineNumber);
             if (lineNumber == 1)
             {
@@ -254,12 +606,22 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
                 return findNext();
             }
 
+            // If only some columns are read, make room for them.
+            if (projection != null)
+            {
+                for (var index = 0; index < schema.columns().size(); index++)
+                {
+                    line.add(null);
+                }
+            }
+
             // Loop through pulling out the columns until an end of line or end
             // of file identifier is encountered.
             String column;
+            var position = 0;
             while ((column = extractNextColumn(in)) != null)
             {
-                line.add(column);
+                add(line, position++, column);
 
                 if (in.atEndOfLine())
                 {
@@ -276,18 +638,265 @@ public class CsvReader extends BaseIterator<CsvLine> implements RepeaterMixin, C
                         // This is the case where there is a delimiter followed
                         // by the end of the file. So add an empty line and
                         // exit.
-                        line.add("");
+                        add(line, position, "");
                         break;
                     }
                 }
             }
+            indexRow(offset, line);
             reporter.next();
             return line;
         }
+        endIndex();
         reporter.end();
         return null;
     }
 
+    /**
+     * Returns the next line from the tokenizer. The same line object is returned each time, as a view of the
+     * tokenizer's current record.
+     */
+    private CsvLine onNextTokenized()
+    {
+        if (line == null)
+        {
+            if (tokenizer == null)
+            {
+                tokenizer = project(newTokenizer(textReader));
+            }
+            line = listenTo(new CsvLine(schema, delimiter));
+            reporter.start();
+        }
+        if (!indexChecked)
+        {
+            checkIndex();
+        }
+
+        try
+        {
+            if (!tokenizer.next())
+            {
+                endIndex();
+                reporter.end();
+                return null;
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            // The tokenizer has moved past the invalid record, keeping any columns before the problem
+            problem(e, "Invalid CSV format");
+        }
+
+        line.tokenized(tokenizer);
+        line.lineNumber(lineOffset + tokenizer.lineNumber());
+        if (indexBuilder != null)
+        {
+            indexRow(tokenizer.recordOffset(), line);
+        }
+        reporter.next();
+        return line;
+    }
+
+    /**
+     * Adds the value of the given input column to the line, if the column is read
+     */
+    private void add(CsvLine line, int position, String value)
+    {
+        if (projection == null)
+        {
+            line.add(value);
+        }
+        else if (position < projection.length && projection[position] >= 0)
+        {
+            line.set(projection[position], value);
+        }
+    }
+
+    /**
+     * Uses the index in the sidecar file if it is up-to-date and has the right key column, instead of building one
+     */
+    private void checkIndex()
+    {
+        indexChecked = true;
+        if (indexBuilder != null)
+        {
+            try
+            {
+                var existing = CsvIndex.load(indexedFile);
+                if (existing != null && (indexKey == null || indexKey.name().equals(existing.keyColumn())))
+                {
+                    index = existing;
+                    indexBuilder = null;
+                    byteOffsets.stopTracking();
+                }
+            }
+            catch (IOException e)
+            {
+                warning(e, "Unable to load index for $", indexedFile);
+            }
+        }
+    }
+
+    /**
+     * Finishes building the index at the end of the file, and saves it to the sidecar file
+     */
+    private void endIndex()
+    {
+        if (indexBuilder != null)
+        {
+            index = indexBuilder.build();
+            indexBuilder = null;
+            byteOffsets.stopTracking();
+            try
+            {
+                index.save();
+            }
+            catch (IOException e)
+            {
+                warning(e, "Unable to save index for $", indexedFile);
+            }
+        }
+    }
+
+    /**
+     * Returns the index, reading the rest of the file to build it if necessary
+     */
+    private CsvIndex index()
+    {
+        if (indexedFile == null)
+        {
+            throw new IllegalStateException("Reader is not indexed");
+        }
+        if (!indexChecked)
+        {
+            checkIndex();
+        }
+        while (index == null && findNext() != null)
+        {
+            // Read lines until the index is built at the end of the file
+        }
+        return index;
+    }
+
+    /**
+     * Adds the row for the given line to the index being built
+     *
+     * @param characterOffset The offset in characters where the line starts
+     */
+    private void indexRow(long characterOffset, CsvLine line)
+    {
+        if (indexBuilder != null)
+        {
+            var key = indexKey == null ? null : line.string(indexKey);
+            indexBuilder.add(byteOffsets.byteOffset(characterOffset), line.lineNumber(), key);
+        }
+    }
+
+    /**
+     * Returns true if the given resource is a local, uncompressed file that can be memory-mapped
+     */
+    private boolean isMappable(Resource resource)
+    {
+        if (resource instanceof File && resource.isLocal())
+        {
+            var codec = resource.codec();
+            return codec == null || codec instanceof NullCodec;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the given compressed resource is local, or is large enough that reading ahead pays for a thread
+     */
+    private boolean isWorthPipelining(Resource resource)
+    {
+        if (resource.isLocal())
+        {
+            return true;
+        }
+        var size = resource.sizeInBytes();
+        return size != null && size.isGreaterThan(MINIMUM_PIPELINED_SIZE);
+    }
+
+    /**
+     * Applies any projection from {@link #readHeader()} to the given tokenizer
+     *
+     * @return The tokenizer
+     */
+    private CsvTokenizer project(CsvTokenizer tokenizer)
+    {
+        if (tokenizer != null && projection != null)
+        {
+            tokenizer.project(projection, schema.columns().size());
+        }
+        return tokenizer;
+    }
+
+    /**
+     * Returns a reader for the indexed file, starting at the given byte offset
+     */
+    private Reader readerAt(long offset)
+    {
+        try
+        {
+            if (memoryMapped)
+            {
+                return new MappedFileReader(indexedFile, offset, DEFAULT_WINDOW_SIZE);
+            }
+            var channel = FileChannel.open(indexedFile, READ).position(offset);
+            return new BufferedReader(Channels.newReader(channel, UTF_8));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to seek in: " + indexedFile, e);
+        }
+    }
+
+    /**
+     * Returns a reader for the given file that decodes directly from a memory mapping of the file
+     */
+    private Reader mappedReader(File file)
+    {
+        try
+        {
+            return new MappedFileReader(file.asJavaPath());
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Unable to map: " + file, e);
+        }
+    }
+
+    /**
+     * Returns a text reader for the given resource. Compressed resources that are local or large are decompressed on a
+     * separate thread, and BGZF files are inflated on multiple cores.
+     */
+    private Reader readerFor(Resource resource)
+    {
+        var codec = resource.codec();
+        if (codec == null || codec instanceof NullCodec)
+        {
+            return resource.reader(nullProgressReporter()).textReader();
+        }
+        if (codec instanceof GzipCodec && resource instanceof File && resource.isLocal())
+        {
+            var path = ((File) resource).asJavaPath();
+            try
+            {
+                if (BgzfInputStream.isBgzf(path))
+                {
+                    return new PipelinedReader(new InputStreamReader(new BgzfInputStream(path), UTF_8));
+                }
+            }
+            catch (IOException e)
+            {
+                throw new IllegalArgumentException("Unable to read: " + resource, e);
+            }
+        }
+        var reader = resource.reader(nullProgressReporter()).textReader();
+        return reader == null || !isWorthPipelining(resource) ? reader : new PipelinedReader(reader);
+    }
+
     /**
      * Trims off the spaces at the beginning of a CSV column and copies them to the buffer.
      *
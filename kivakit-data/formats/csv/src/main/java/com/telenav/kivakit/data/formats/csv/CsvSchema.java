@@ -24,17 +24,22 @@ import com.telenav.kivakit.core.collections.set.ObjectSet;
 import com.telenav.kivakit.core.messaging.repeaters.BaseRepeater;
 import com.telenav.kivakit.core.value.count.Maximum;
 import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
+import com.telenav.kivakit.resource.Resource;
 import com.telenav.lexakai.annotations.LexakaiJavadoc;
 import com.telenav.lexakai.annotations.UmlClassDiagram;
 import com.telenav.lexakai.annotations.associations.UmlAggregation;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An ordered collection of {@link CsvColumn} objects, specifying the structure of a line in a CSV (Comma Separated
  * Data) file. {@link CsvColumn} objects are passed to the variable arguments constructor or added with
  * {@link #add(CsvColumn)}. Columns are assigned indexes in the order that they are added. The columns can then be
- * retrieved by name with {@link #columnForName(String)}.
+ * retrieved by name with {@link #columnForName(String)}. A {@link CsvBinder} that populates objects of a given type
+ * from lines in the schema can be compiled with {@link #binder(Class)}. A schema for a file with a header line can be
+ * inferred from a sample of its lines with {@link #inferredCsvSchema(Resource, char, int)}.
  *
  * @author jonathanl (shibo)
  */
@@ -47,6 +52,37 @@ public class CsvSchema extends BaseRepeater
         return new CsvSchema(columns);
     }
 
+    /**
+     * Returns a schema for the given comma-separated resource, which must start with a header line naming its columns.
+     * The type of each column is guessed from the first thousand lines after the header.
+     *
+     * @see #inferredCsvSchema(Resource, char, int)
+     */
+    public static CsvSchema inferredCsvSchema(Resource resource)
+    {
+        return inferredCsvSchema(resource, ',', 1_000);
+    }
+
+    /**
+     * Returns a schema for the given resource, which must start with a header line naming its columns. The type of
+     * each column is guessed from its values in up to the given number of lines after the header. A column has the
+     * narrowest of the types int, long, double and boolean that all of its values can be converted to, ignoring blank
+     * and "null" values, or otherwise it is a string column. The columns convert values with the standard KivaKit
+     * converters for these types.
+     *
+     * @param resource The resource to read
+     * @param delimiter The column delimiter
+     * @param sampleSize The maximum number of lines to examine after the header
+     * @throws IllegalStateException Thrown if the resource has no header line
+     */
+    public static CsvSchema inferredCsvSchema(Resource resource, char delimiter, int sampleSize)
+    {
+        return CsvSchemaInference.infer(resource, delimiter, sampleSize);
+    }
+
+    /** Compiled binders by type */
+    private final Map<Class<?>, CsvBinder<?>> binders = new ConcurrentHashMap<>();
+
     /** Columns by name */
     private final StringMap<CsvColumn<?>> columnForName = new StringMap<>(Maximum._1_000);
 
@@ -69,12 +105,13 @@ public class CsvSchema extends BaseRepeater
     }
 
     /**
-     * Adds a column to this schema
+     * Adds a column to this schema. Any binders compiled for the columns before this one are discarded.
      */
     public CsvSchema add(CsvColumn<?> column)
     {
         if (column != null)
         {
+            binders.clear();
             column.schema(this);
             column.index(index++);
             columnForName.put(column.name(), column);
@@ -108,6 +145,16 @@ public class CsvSchema extends BaseRepeater
         return this;
     }
 
+    /**
+     * Returns a binder that populates objects of the given type from lines in this schema. The binder is compiled the
+     * first time it is requested for a type, and the compiled binder is reused after that.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CsvBinder<T> binder(Class<T> type)
+    {
+        return (CsvBinder<T>) binders.computeIfAbsent(type, ignored -> listenTo(new CsvBinder<>(this, type)));
+    }
+
     /**
      * Returns the named column or null if no such column exists
      */
@@ -0,0 +1,223 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.conversion.core.language.IdentityConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.BooleanConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.DoubleConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.IntegerConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.LongConverter;
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import com.telenav.kivakit.core.messaging.Listener;
+import com.telenav.kivakit.resource.Resource;
+
+import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
+import static com.telenav.kivakit.data.formats.csv.CsvColumn.csvColumn;
+import static com.telenav.kivakit.data.formats.csv.CsvNumbers.NOT_PARSED;
+import static com.telenav.kivakit.data.formats.csv.CsvNumbers.parseDouble;
+import static com.telenav.kivakit.data.formats.csv.CsvNumbers.parseLong;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.TOKENIZED;
+import static com.telenav.kivakit.data.formats.csv.CsvSchema.csvSchema;
+
+/**
+ * Infers a {@link CsvSchema} from a resource that starts with a header line. The columns are named by the header, and
+ * the type of each column is the narrowest of int, long, double and boolean that all of its values in a sample of
+ * lines can be converted to. Blank and "null" values are ignored. A column that has some other value, or that has no
+ * values at all in the sample, is a string column.
+ *
+ * @author jonathanl (shibo)
+ * @see CsvSchema#inferredCsvSchema(Resource, char, int)
+ */
+final class CsvSchemaInference
+{
+    /**
+     * The types that the values of a column seen so far could have
+     */
+    private static final class Guess
+    {
+        /** The name of the column */
+        private final String name;
+
+        /** True if every value is an int */
+        private boolean isInteger = true;
+
+        /** True if every value is a long */
+        private boolean isLong = true;
+
+        /** True if every value is a double */
+        private boolean isDouble = true;
+
+        /** True if every value is a boolean */
+        private boolean isBoolean = true;
+
+        /** The number of values seen */
+        private int values;
+
+        Guess(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Returns a column with a converter for the guessed type
+         */
+        CsvColumn<?> column(Listener listener)
+        {
+            if (values == 0)
+            {
+                return csvColumn(name, new IdentityConverter(listener));
+            }
+            if (isInteger)
+            {
+                return csvColumn(name, new IntegerConverter(listener));
+            }
+            if (isLong)
+            {
+                return csvColumn(name, new LongConverter(listener));
+            }
+            if (isDouble)
+            {
+                return csvColumn(name, new DoubleConverter(listener));
+            }
+            if (isBoolean)
+            {
+                return csvColumn(name, new BooleanConverter(listener));
+            }
+            return csvColumn(name, new IdentityConverter(listener));
+        }
+
+        /**
+         * Narrows the guess to the types the given value can have
+         */
+        void observe(CharSequence text)
+        {
+            if (text == null || text.length() == 0 || "null".contentEquals(text) || "\"null\"".contentEquals(text))
+            {
+                return;
+            }
+            values++;
+            if (isLong)
+            {
+                var value = parseLong(text, Long.MIN_VALUE, Long.MAX_VALUE);
+                isLong = value != NOT_PARSED;
+                isInteger &= isLong && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+            }
+            if (isDouble && !isLong)
+            {
+                isDouble = isDouble(text);
+            }
+            if (isBoolean)
+            {
+                var string = text.toString();
+                isBoolean = string.equalsIgnoreCase("true") || string.equalsIgnoreCase("false")
+                        || string.equalsIgnoreCase("yes") || string.equalsIgnoreCase("no");
+            }
+        }
+
+        /**
+         * Returns true if the given text is a decimal number, possibly with an exponent
+         */
+        private boolean isDouble(CharSequence text)
+        {
+            if (!Double.isNaN(parseDouble(text)))
+            {
+                return true;
+            }
+            for (var index = 0; index < text.length(); index++)
+            {
+                if ("0123456789+-.eE".indexOf(text.charAt(index)) < 0)
+                {
+                    return false;
+                }
+            }
+            try
+            {
+                Double.parseDouble(text.toString());
+                return true;
+            }
+            catch (NumberFormatException e)
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns a schema for the given resource, guessing the type of each column from up to the given number of lines
+     * after the header
+     *
+     * @throws IllegalStateException Thrown if the resource has no header line
+     */
+    static CsvSchema infer(Resource resource, char delimiter, int sampleSize)
+    {
+        var schema = csvSchema();
+        var guesses = new ObjectList<Guess>();
+        try (var in = schema.listenTo(new CsvReader(resource, csvSchema(), delimiter, nullProgressReporter(), TOKENIZED)))
+        {
+            if (!in.hasNext())
+            {
+                throw new IllegalStateException("No header line in " + resource);
+            }
+
+            // Name the columns from the header,
+            var header = in.next();
+            for (var index = 0; index < header.size(); index++)
+            {
+                guesses.add(new Guess(name(guesses, header.get(index), index)));
+            }
+
+            // then narrow the type of each column with its values in the sample.
+            for (var lines = 0; lines < sampleSize && in.hasNext(); lines++)
+            {
+                var line = in.next();
+                for (var index = 0; index < Math.min(line.size(), guesses.size()); index++)
+                {
+                    guesses.get(index).observe(line.text(index));
+                }
+            }
+        }
+
+        for (var guess : guesses)
+        {
+            schema.add(guess.column(schema));
+        }
+        return schema;
+    }
+
+    /**
+     * Returns a unique name for the column at the given index with the given name in the header
+     */
+    private static String name(ObjectList<Guess> guesses, String name, int index)
+    {
+        var trimmed = name == null ? "" : name.trim();
+        if (trimmed.isEmpty())
+        {
+            trimmed = "column" + index;
+        }
+        for (var guess : guesses)
+        {
+            if (guess.name.equals(trimmed))
+            {
+                return trimmed + "_" + index;
+            }
+        }
+        return trimmed;
+    }
+}
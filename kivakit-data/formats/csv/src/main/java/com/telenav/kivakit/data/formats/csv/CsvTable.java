@@ -0,0 +1,702 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.conversion.core.language.primitive.DoubleConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.IntegerConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.LongConverter;
+import com.telenav.kivakit.core.collections.list.StringList;
+import com.telenav.kivakit.core.messaging.repeaters.BaseRepeater;
+import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+import com.telenav.lexakai.annotations.associations.UmlAggregation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static com.telenav.kivakit.core.collections.list.StringList.stringList;
+import static com.telenav.kivakit.data.formats.csv.CsvNumbers.NOT_PARSED;
+import static com.telenav.kivakit.data.formats.csv.CsvNumbers.parseDouble;
+import static com.telenav.kivakit.data.formats.csv.CsvNumbers.parseLong;
+
+/**
+ * An immutable, in-memory table of CSV data that is stored by column rather than by line. A table is loaded from a
+ * {@link CsvReader} with {@link #csvTable(CsvReader)}, or from any lines in a {@link CsvSchema} with
+ * {@link #csvTable(CsvSchema, Iterable)}.
+ *
+ * <p><b>Column Storage</b></p>
+ *
+ * <p>
+ * Each column of the schema is stored in a single array. Columns using the standard {@link IntegerConverter},
+ * {@link LongConverter} or {@link DoubleConverter} are stored as int[], long[] or double[] arrays of converted values.
+ * All other columns are stored as int[] arrays of codes for their text in a dictionary of the distinct values in the
+ * column, so repeated values are only stored once. This takes a small fraction of the memory of retaining
+ * {@link CsvLine}s, and scanning a column reads consecutive memory.
+ * </p>
+ *
+ * <p><b>Row Access</b></p>
+ *
+ * <p>
+ * The value of a column in a given row can be retrieved as an object with {@link #get(int, CsvColumn)}, with the same
+ * result as {@link CsvLine#get(CsvColumn)} would have. The unconverted text is available with
+ * {@link #string(int, CsvColumn)}. Values in numeric columns can be retrieved without boxing with
+ * {@link #intValue(int, CsvColumn)}, {@link #longValue(int, CsvColumn)} and {@link #doubleValue(int, CsvColumn)}. A
+ * whole row can be retrieved as a {@link CsvLine} with {@link #line(int)}.
+ * </p>
+ *
+ * <p><b>Column Scans</b></p>
+ *
+ * <p>
+ * The values in a numeric column can be streamed in row order with {@link #ints(CsvColumn)}, {@link #longs(CsvColumn)}
+ * and {@link #doubles(CsvColumn)}. The dictionary codes of a text column can be streamed with
+ * {@link #codes(CsvColumn)} and decoded with {@link #dictionary(CsvColumn)}, which allows values to be grouped or
+ * counted without comparing strings.
+ * </p>
+ *
+ * <p><b>Missing Values</b></p>
+ *
+ * <p>
+ * A value is null if the column is missing from the line, or if the converter of a numeric column produces null, as
+ * it does for blank text. Null values are read as zero by the primitive accessors and column scans, and they can be
+ * detected with {@link #isNull(int, CsvColumn)}. In text columns, missing values have the code -1.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see CsvReader
+ * @see CsvSchema
+ */
+@UmlClassDiagram(diagram = DiagramCsv.class)
+@LexakaiJavadoc(complete = true)
+public class CsvTable extends BaseRepeater
+{
+    /** The initial number of rows that columns have space for */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Returns a table holding all the lines read by the given reader
+     */
+    public static CsvTable csvTable(CsvReader reader)
+    {
+        return csvTable(reader.schema(), reader.lines());
+    }
+
+    /**
+     * Returns a table holding the given lines, which must be in the given schema
+     */
+    public static CsvTable csvTable(CsvSchema schema, Iterable<CsvLine> lines)
+    {
+        var table = new CsvTable(schema);
+        for (var line : lines)
+        {
+            table.add(line);
+        }
+        table.trim();
+        return table;
+    }
+
+    /**
+     * Storage for the values of one column
+     */
+    private abstract static class Column
+    {
+        /** The column */
+        final CsvColumn<?> column;
+
+        /** The index of the column */
+        final int index;
+
+        /** The rows that are null, if any */
+        BitSet nulls;
+
+        Column(CsvColumn<?> column)
+        {
+            this.column = column;
+            this.index = column.index();
+        }
+
+        /**
+         * Adds the value of this column in the given line as the given row
+         */
+        abstract void add(CsvLine line, int row);
+
+        /**
+         * Resizes this column to hold the given number of rows
+         */
+        abstract void capacity(int rows);
+
+        boolean isNull(int row)
+        {
+            return nulls != null && nulls.get(row);
+        }
+
+        /**
+         * Marks the given row as null
+         */
+        void setNull(int row)
+        {
+            if (nulls == null)
+            {
+                nulls = new BitSet();
+            }
+            nulls.set(row);
+        }
+
+        /**
+         * Returns the text for the given row, or null if the row is null
+         */
+        abstract String string(int row);
+
+        /**
+         * Returns the value for the given row
+         */
+        abstract Object value(int row);
+    }
+
+    /**
+     * An int column
+     */
+    private static class IntColumn extends Column
+    {
+        int[] values = new int[INITIAL_CAPACITY];
+
+        IntColumn(CsvColumn<?> column)
+        {
+            super(column);
+        }
+
+        @Override
+        void add(CsvLine line, int row)
+        {
+            var value = parseLong(line.text(index), Integer.MIN_VALUE, Integer.MAX_VALUE);
+            if (value != NOT_PARSED)
+            {
+                values[row] = (int) value;
+            }
+            else
+            {
+                var converted = (Integer) line.get(column);
+                if (converted != null)
+                {
+                    values[row] = converted;
+                }
+                else
+                {
+                    setNull(row);
+                }
+            }
+        }
+
+        @Override
+        void capacity(int rows)
+        {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        String string(int row)
+        {
+            return isNull(row) ? null : Integer.toString(values[row]);
+        }
+
+        @Override
+        Object value(int row)
+        {
+            return isNull(row) ? null : values[row];
+        }
+    }
+
+    /**
+     * A long column
+     */
+    private static class LongColumn extends Column
+    {
+        long[] values = new long[INITIAL_CAPACITY];
+
+        LongColumn(CsvColumn<?> column)
+        {
+            super(column);
+        }
+
+        @Override
+        void add(CsvLine line, int row)
+        {
+            var value = parseLong(line.text(index), Long.MIN_VALUE, Long.MAX_VALUE);
+            if (value != NOT_PARSED)
+            {
+                values[row] = value;
+            }
+            else
+            {
+                var converted = (Long) line.get(column);
+                if (converted != null)
+                {
+                    values[row] = converted;
+                }
+                else
+                {
+                    setNull(row);
+                }
+            }
+        }
+
+        @Override
+        void capacity(int rows)
+        {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        String string(int row)
+        {
+            return isNull(row) ? null : Long.toString(values[row]);
+        }
+
+        @Override
+        Object value(int row)
+        {
+            return isNull(row) ? null : values[row];
+        }
+    }
+
+    /**
+     * A double column
+     */
+    private static class DoubleColumn extends Column
+    {
+        double[] values = new double[INITIAL_CAPACITY];
+
+        DoubleColumn(CsvColumn<?> column)
+        {
+            super(column);
+        }
+
+        @Override
+        void add(CsvLine line, int row)
+        {
+            var value = parseDouble(line.text(index));
+            if (!Double.isNaN(value))
+            {
+                values[row] = value;
+            }
+            else
+            {
+                var converted = (Double) line.get(column);
+                if (converted != null)
+                {
+                    values[row] = converted;
+                }
+                else
+                {
+                    setNull(row);
+                }
+            }
+        }
+
+        @Override
+        void capacity(int rows)
+        {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        String string(int row)
+        {
+            return isNull(row) ? null : Double.toString(values[row]);
+        }
+
+        @Override
+        Object value(int row)
+        {
+            return isNull(row) ? null : values[row];
+        }
+    }
+
+    /**
+     * A dictionary-encoded text column
+     */
+    private static class TextColumn extends Column
+    {
+        /** The dictionary code of the text in each row, or -1 if the row is null */
+        int[] codes = new int[INITIAL_CAPACITY];
+
+        /** The distinct values in this column, indexed by code */
+        String[] dictionary = new String[16];
+
+        /** The number of distinct values */
+        int size;
+
+        /** Open-addressed hash table of code + 1 for each distinct value, or zero for empty slots */
+        int[] slots = new int[32];
+
+        TextColumn(CsvColumn<?> column)
+        {
+            super(column);
+        }
+
+        @Override
+        void add(CsvLine line, int row)
+        {
+            var text = line.text(index);
+            codes[row] = text == null ? -1 : code(text);
+        }
+
+        @Override
+        void capacity(int rows)
+        {
+            codes = Arrays.copyOf(codes, rows);
+        }
+
+        @Override
+        boolean isNull(int row)
+        {
+            return codes[row] < 0;
+        }
+
+        @Override
+        String string(int row)
+        {
+            var code = codes[row];
+            return code < 0 ? null : dictionary[code];
+        }
+
+        /**
+         * Discards the hash table, which is only needed while loading
+         */
+        void trim()
+        {
+            dictionary = Arrays.copyOf(dictionary, size);
+            slots = null;
+        }
+
+        @Override
+        Object value(int row)
+        {
+            var text = string(row);
+            return text == null || "\"null\"".equals(text) || "null".equals(text)
+                ? null
+                : column.asType(text);
+        }
+
+        /**
+         * Returns the code for the given text, adding it to the dictionary if it is not already there
+         */
+        private int code(CharSequence text)
+        {
+            var mask = slots.length - 1;
+            for (var slot = hash(text) & mask; ; slot = (slot + 1) & mask)
+            {
+                var entry = slots[slot];
+                if (entry == 0)
+                {
+                    // Only create a string for text that is not already in the dictionary
+                    if (size == dictionary.length)
+                    {
+                        dictionary = Arrays.copyOf(dictionary, size * 2);
+                    }
+                    dictionary[size] = text.toString();
+                    slots[slot] = ++size;
+                    if (size * 2 > slots.length)
+                    {
+                        rehash();
+                    }
+                    return size - 1;
+                }
+                if (dictionary[entry - 1].contentEquals(text))
+                {
+                    return entry - 1;
+                }
+            }
+        }
+
+        /**
+         * Returns the hash of the given text, which is the same as the hash of the string with the same characters
+         */
+        private int hash(CharSequence text)
+        {
+            var hash = 0;
+            for (var index = 0; index < text.length(); index++)
+            {
+                hash = 31 * hash + text.charAt(index);
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        /**
+         * Doubles the size of the hash table
+         */
+        private void rehash()
+        {
+            slots = new int[slots.length * 2];
+            var mask = slots.length - 1;
+            for (var code = 0; code < size; code++)
+            {
+                var slot = hash(dictionary[code]) & mask;
+                while (slots[slot] != 0)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = code + 1;
+            }
+        }
+    }
+
+    /** The storage for each column in the schema, by column index */
+    private final Column[] columns;
+
+    /** The delimiter of lines in this table */
+    private char delimiter = ',';
+
+    /** The schema of this table */
+    @UmlAggregation(label = "has")
+    private final CsvSchema schema;
+
+    /** The number of rows in this table */
+    private int size;
+
+    /** The number of rows that the columns have space for */
+    private int capacity = INITIAL_CAPACITY;
+
+    /**
+     * Constructs an empty table for the given schema
+     */
+    protected CsvTable(CsvSchema schema)
+    {
+        this.schema = schema;
+        this.columns = new Column[schema.columns().size()];
+        for (var column : schema.columns())
+        {
+            columns[column.index()] = store(column);
+        }
+    }
+
+    /**
+     * Returns the dictionary codes of the given text column, in row order
+     */
+    public IntStream codes(CsvColumn<?> column)
+    {
+        return Arrays.stream(column(column, TextColumn.class).codes, 0, size);
+    }
+
+    /**
+     * Returns the distinct values of the given text column, indexed by code
+     */
+    public StringList dictionary(CsvColumn<?> column)
+    {
+        var text = column(column, TextColumn.class);
+        return stringList(Arrays.asList(text.dictionary).subList(0, text.size));
+    }
+
+    /**
+     * Returns the value of the given double column in the given row, or zero if it is null
+     */
+    public double doubleValue(int row, CsvColumn<Double> column)
+    {
+        return column(column, DoubleColumn.class).values[checkRow(row)];
+    }
+
+    /**
+     * Returns the values of the given double column, in row order
+     */
+    public DoubleStream doubles(CsvColumn<Double> column)
+    {
+        return Arrays.stream(column(column, DoubleColumn.class).values, 0, size);
+    }
+
+    /**
+     * Returns the value of the given column in the given row
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(int row, CsvColumn<T> column)
+    {
+        return (T) column(column, Column.class).value(checkRow(row));
+    }
+
+    /**
+     * Returns the value of the given int column in the given row, or zero if it is null
+     */
+    public int intValue(int row, CsvColumn<Integer> column)
+    {
+        return column(column, IntColumn.class).values[checkRow(row)];
+    }
+
+    /**
+     * Returns the values of the given int column, in row order
+     */
+    public IntStream ints(CsvColumn<Integer> column)
+    {
+        return Arrays.stream(column(column, IntColumn.class).values, 0, size);
+    }
+
+    /**
+     * Returns true if the value of the given column in the given row is null
+     */
+    public boolean isNull(int row, CsvColumn<?> column)
+    {
+        return column(column, Column.class).isNull(checkRow(row));
+    }
+
+    /**
+     * Returns the given row as a {@link CsvLine}
+     */
+    public CsvLine line(int row)
+    {
+        checkRow(row);
+        var line = listenTo(new CsvLine(schema, delimiter));
+        for (var column : columns)
+        {
+            var text = column.string(row);
+            line.add(text == null ? "" : text);
+        }
+        line.lineNumber(row + 1);
+        return line;
+    }
+
+    /**
+     * Returns the value of the given long column in the given row, or zero if it is null
+     */
+    public long longValue(int row, CsvColumn<Long> column)
+    {
+        return column(column, LongColumn.class).values[checkRow(row)];
+    }
+
+    /**
+     * Returns the values of the given long column, in row order
+     */
+    public LongStream longs(CsvColumn<Long> column)
+    {
+        return Arrays.stream(column(column, LongColumn.class).values, 0, size);
+    }
+
+    /**
+     * Returns the schema of this table
+     */
+    public CsvSchema schema()
+    {
+        return schema;
+    }
+
+    /**
+     * Returns the number of rows in this table
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the unconverted text of the given column in the given row, or null if the column is missing. For numeric
+     * columns, this is the text of the converted value.
+     */
+    public String string(int row, CsvColumn<?> column)
+    {
+        return column(column, Column.class).string(checkRow(row));
+    }
+
+    /**
+     * Adds the given line as the next row of this table
+     */
+    private void add(CsvLine line)
+    {
+        if (size == 0)
+        {
+            delimiter = line.delimiter();
+        }
+        if (size == capacity)
+        {
+            capacity *= 2;
+            for (var column : columns)
+            {
+                column.capacity(capacity);
+            }
+        }
+        for (var column : columns)
+        {
+            column.add(line, size);
+        }
+        size++;
+    }
+
+    /**
+     * Returns the given row, if it is in this table
+     */
+    private int checkRow(int row)
+    {
+        return Objects.checkIndex(row, size);
+    }
+
+    /**
+     * Returns the storage for the given column, checking that it is of the given type
+     */
+    private <C extends Column> C column(CsvColumn<?> column, Class<C> type)
+    {
+        if (column.schema() != schema)
+        {
+            throw new IllegalArgumentException("Column " + column + " is not in schema " + schema);
+        }
+        var store = columns[column.index()];
+        if (!type.isInstance(store))
+        {
+            throw new IllegalArgumentException("Column " + column + " is not stored as a " + type.getSimpleName());
+        }
+        return type.cast(store);
+    }
+
+    /**
+     * Returns the storage for the given column, chosen by the column's converter
+     */
+    private Column store(CsvColumn<?> column)
+    {
+        var converter = column.converter();
+        var type = converter == null ? null : converter.getClass();
+        if (type == IntegerConverter.class)
+        {
+            return new IntColumn(column);
+        }
+        if (type == LongConverter.class)
+        {
+            return new LongColumn(column);
+        }
+        if (type == DoubleConverter.class)
+        {
+            return new DoubleColumn(column);
+        }
+        return new TextColumn(column);
+    }
+
+    /**
+     * Releases any space that is not used by the rows in this table
+     */
+    private void trim()
+    {
+        capacity = size;
+        for (var column : columns)
+        {
+            column.capacity(size);
+            if (column instanceof TextColumn)
+            {
+                ((TextColumn) column).trim();
+            }
+        }
+    }
+}
@@ -0,0 +1,780 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
+import com.telenav.kivakit.interfaces.io.Closeable;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits CSV text into records and columns by scanning large, reusable blocks of characters. This is the engine behind
+ * {@link CsvReader.Option#TOKENIZED}.
+ *
+ * <p><b>Records and Columns</b></p>
+ *
+ * <p>
+ * Each call to {@link #next()} advances to the next record, skipping comment lines that start with '#' or "//". The
+ * columns of the record are not copied out of the block. Instead, each column is a slice of {@link #buffer()}, given by
+ * {@link #columnOffset(int)} and {@link #columnLength(int)}. Quoted and escaped columns are decoded in place, since the
+ * decoded text is never longer than the raw text. A {@link String} is only created when {@link #column(int)} is
+ * called. The slices are valid only until the next call to {@link #next()}.
+ * </p>
+ *
+ * <p><b>CSV Rules</b></p>
+ *
+ * <p>
+ * Quoting and escaping follow the same rules as {@link CsvReader#readQuotedColumn(com.telenav.kivakit.core.io.LookAheadReader,
+ * StringBuffer)} and {@link CsvReader#readColumn(com.telenav.kivakit.core.io.LookAheadReader, StringBuffer)}. If a record
+ * is malformed, {@link #next()} throws an {@link IllegalArgumentException}. The columns before the problem remain
+ * available, and the tokenizer is positioned at the start of the next record.
+ * </p>
+ *
+ * <p><b>Projection</b></p>
+ *
+ * <p>
+ * When only some columns are needed, {@link #project(int[], int)} maps the columns of the input to the columns of each
+ * record. Input columns that are not projected are skipped without being decoded or stored, and once the last
+ * projected column of a record has been read, the rest of the record is not scanned at all. Skipped columns are not
+ * checked for errors.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see CsvReader
+ */
+@UmlClassDiagram(diagram = DiagramCsv.class)
+@LexakaiJavadoc(complete = true)
+public class CsvTokenizer implements Closeable
+{
+    /** Value for a quote or escape character that is not used */
+    public static final int NONE = -1;
+
+    /** The default size of the character block in characters */
+    private static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /** The input */
+    private final Reader in;
+
+    /** The column delimiter */
+    private final char delimiter;
+
+    /** The quote character, or {@link #NONE} */
+    private final int quote;
+
+    /** The escape character, or {@link #NONE} */
+    private final int escape;
+
+    /** The block of characters being tokenized */
+    private char[] buffer;
+
+    /** The index of the first character that has not yet been tokenized */
+    private int position;
+
+    /** The number of valid characters in the buffer */
+    private int limit;
+
+    /** True if the input has been exhausted */
+    private boolean endOfInput;
+
+    /** The line number of the next record */
+    private int nextLineNumber = 1;
+
+    /** The line number where the current record starts */
+    private int lineNumber;
+
+    /** The number of characters that have been shifted out of the start of the buffer */
+    private long shifted;
+
+    /** The offset in characters of the current record from the start of the input */
+    private long recordOffset;
+
+    /** Column offsets into the buffer for the current record */
+    private int[] offsets = new int[16];
+
+    /** Column lengths for the current record */
+    private int[] lengths = new int[16];
+
+    /** The number of columns in the current record */
+    private int columnCount;
+
+    /** The position of the next character to tokenize in the current record */
+    private int read;
+
+    /** The position where the next decoded character of the current column is written */
+    private int write;
+
+    /** For each input column, the record column it is stored as or -1 to skip it, or null to keep every column */
+    private int[] projection;
+
+    /** The number of columns in each record when there is a projection */
+    private int projectedCount;
+
+    /** The last input column that is stored in a record when there is a projection */
+    private int lastProjected;
+
+    /**
+     * Constructs a tokenizer for the given input
+     *
+     * @param in The input
+     * @param delimiter The column delimiter
+     * @param quote The quote character, or {@link #NONE}
+     * @param escape The escape character, or {@link #NONE}
+     */
+    public CsvTokenizer(Reader in, char delimiter, int quote, int escape)
+    {
+        this(in, delimiter, quote, escape, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructs a tokenizer for the given input
+     *
+     * @param in The input
+     * @param delimiter The column delimiter
+     * @param quote The quote character, or {@link #NONE}
+     * @param escape The escape character, or {@link #NONE}
+     * @param blockSize The initial size of the character block. The block grows if a single record does not fit.
+     */
+    public CsvTokenizer(Reader in, char delimiter, int quote, int escape, int blockSize)
+    {
+        this.in = in;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.escape = escape;
+        this.buffer = new char[Math.max(16, blockSize)];
+    }
+
+    /**
+     * Constructs a tokenizer for text that is already in memory. The given block is tokenized in place, so it is
+     * modified as quoted and escaped columns are decoded.
+     *
+     * @param block The text to tokenize
+     * @param length The number of characters of text in the block
+     * @param delimiter The column delimiter
+     * @param quote The quote character, or {@link #NONE}
+     * @param escape The escape character, or {@link #NONE}
+     */
+    public CsvTokenizer(char[] block, int length, char delimiter, int quote, int escape)
+    {
+        this.in = null;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.escape = escape;
+        this.buffer = block;
+        this.limit = length;
+        this.endOfInput = true;
+    }
+
+    /**
+     * Returns the character block that holds the columns of the current record
+     */
+    public char[] buffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * Closes the input
+     */
+    @Override
+    public void close()
+    {
+        try
+        {
+            if (in != null)
+            {
+                in.close();
+            }
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+
+    /**
+     * Returns the text of the given column of the current record, or null if a projected column is missing from the
+     * record
+     */
+    public String column(int index)
+    {
+        var length = lengths[index];
+        return length < 0 ? null : new String(buffer, offsets[index], length);
+    }
+
+    /**
+     * Returns the number of columns in the current record
+     */
+    public int columnCount()
+    {
+        return columnCount;
+    }
+
+    /**
+     * Returns the length of the given column of the current record, or -1 if a projected column is missing from the
+     * record
+     */
+    public int columnLength(int index)
+    {
+        return lengths[index];
+    }
+
+    /**
+     * Returns the offset in {@link #buffer()} of the given column of the current record
+     */
+    public int columnOffset(int index)
+    {
+        return offsets[index];
+    }
+
+    /**
+     * Returns the line number where the current record starts
+     */
+    public int lineNumber()
+    {
+        return lineNumber;
+    }
+
+    /**
+     * Restricts each record to the given projection of the input columns. Input column i is stored as record column
+     * projection[i], unless that value is -1, or i is beyond the end of the projection, in which case the input column
+     * is skipped. Each record then has the given number of columns, and a column that is missing from the input record
+     * has a length of -1 and a null value.
+     *
+     * @param projection The record column for each input column, or -1 to skip it
+     * @param columns The number of columns in each record
+     * @return This tokenizer
+     */
+    public CsvTokenizer project(int[] projection, int columns)
+    {
+        this.projection = projection.clone();
+        this.projectedCount = columns;
+        this.lastProjected = -1;
+        for (var column = 0; column < projection.length; column++)
+        {
+            if (projection[column] >= columns)
+            {
+                throw new IllegalArgumentException("Projected column " + projection[column] + " is out of range");
+            }
+            if (projection[column] >= 0)
+            {
+                lastProjected = column;
+            }
+        }
+        if (offsets.length < columns)
+        {
+            offsets = new int[columns];
+            lengths = new int[columns];
+        }
+        return this;
+    }
+
+    /**
+     * Returns the offset in characters of the current record from the start of the input
+     */
+    public long recordOffset()
+    {
+        return recordOffset;
+    }
+
+    /**
+     * Advances to the next record, skipping comment lines
+     *
+     * @return True if there is a record, false if the input is exhausted
+     * @throws IllegalArgumentException Thrown if the record is malformed
+     */
+    public boolean next()
+    {
+        while (true)
+        {
+            columnCount = 0;
+
+            // If there's no more input,
+            if (position >= limit && !fill())
+            {
+                // we are done.
+                return false;
+            }
+
+            // Find the end of the record,
+            var comment = isComment();
+            var end = recordEnd(comment);
+            var newline = end < limit;
+            var start = position;
+
+            // then advance past it.
+            lineNumber = nextLineNumber;
+            recordOffset = shifted + start;
+            nextLineNumber += newlines(start, end) + (newline ? 1 : 0);
+            position = newline ? end + 1 : end;
+
+            if (!comment)
+            {
+                // A carriage return before the newline is part of the line ending
+                var lineEnd = newline && end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+                if (projection == null)
+                {
+                    tokenize(start, lineEnd, end, newline);
+                }
+                else
+                {
+                    tokenizeProjected(start, lineEnd, end, newline);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Adds a column slice to the current record
+     */
+    private void addColumn(int offset, int length)
+    {
+        if (columnCount == offsets.length)
+        {
+            offsets = Arrays.copyOf(offsets, columnCount * 2);
+            lengths = Arrays.copyOf(lengths, columnCount * 2);
+        }
+        offsets[columnCount] = offset;
+        lengths[columnCount] = length;
+        columnCount++;
+    }
+
+    /**
+     * Moves unread characters to the start of the buffer, growing it if it is full, and reads more input
+     *
+     * @return True if more characters were read
+     */
+    private boolean fill()
+    {
+        if (endOfInput)
+        {
+            return false;
+        }
+
+        // Shift any unread characters to the start of the buffer,
+        if (position > 0)
+        {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            shifted += position;
+            limit -= position;
+            position = 0;
+        }
+
+        // and if the buffer is still full, the record is bigger than the block, so grow it.
+        if (limit == buffer.length)
+        {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        try
+        {
+            var read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0)
+            {
+                endOfInput = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Cannot read from input", e);
+        }
+    }
+
+    /**
+     * Returns true if the record at the current position is a comment
+     */
+    private boolean isComment()
+    {
+        var first = buffer[position];
+        if (first == '#')
+        {
+            return true;
+        }
+        if (first == '/')
+        {
+            if (position + 1 >= limit)
+            {
+                fill();
+            }
+            return position + 1 < limit && buffer[position + 1] == '/';
+        }
+        return false;
+    }
+
+    /**
+     * Returns the character after the given index, or '\n' if the index is the end of a record with a newline, or
+     * {@link #NONE} if it is the end of the input
+     */
+    private int lookAhead(int index, int end, boolean newline)
+    {
+        if (index + 1 < end)
+        {
+            return buffer[index + 1];
+        }
+        return newline ? '\n' : NONE;
+    }
+
+    /**
+     * Returns the number of newlines in the given range
+     */
+    private int newlines(int start, int end)
+    {
+        var count = 0;
+        for (var at = start; at < end; at++)
+        {
+            if (buffer[at] == '\n')
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads a non-quoted column, decoding escapes in place. This follows the rules of
+     * {@link CsvReader#readColumn(com.telenav.kivakit.core.io.LookAheadReader, StringBuffer)}.
+     */
+    private void readColumn(int lineEnd, int end)
+    {
+        while (read < lineEnd)
+        {
+            var next = buffer[read];
+            if (next == delimiter)
+            {
+                // Just catch this case and break out of the loop, it will be handled later.
+                break;
+            }
+            if (next == quote)
+            {
+                throw new IllegalArgumentException("Non quoted string contains quotes at line " + lineNumber);
+            }
+            if (next == escape)
+            {
+                if (++read >= end)
+                {
+                    break;
+                }
+                next = buffer[read];
+            }
+            buffer[write++] = next;
+            read++;
+        }
+    }
+
+    /**
+     * Reads a column that begins with a quote, decoding literal quotes and escapes in place. This follows the rules of
+     * {@link CsvReader#readQuotedColumn(com.telenav.kivakit.core.io.LookAheadReader, StringBuffer)}.
+     */
+    private void readQuotedColumn(int lineEnd, int end, boolean newline)
+    {
+        // Skip the opening quote
+        read++;
+
+        // If we're starting off with two quotes ("")
+        int terminator = quote;
+        if (read < lineEnd && buffer[read] == quote)
+        {
+            var lookAhead = lookAhead(read, end, newline);
+
+            // and the next one is a quote too ("""),
+            if (lookAhead == quote)
+            {
+                // then append the literal quote and move past it.
+                buffer[write++] = (char) quote;
+                read += 2;
+            }
+            else if (lookAhead != delimiter)
+            {
+                // otherwise, we have a column starting with something like ,""x which is not actually a quoted
+                // column, so append the quote and stop at the delimiter.
+                buffer[write++] = (char) quote;
+                read++;
+                terminator = delimiter;
+            }
+            else
+            {
+                // otherwise, the column is empty, so we append nothing.
+                read++;
+                return;
+            }
+        }
+
+        // While we haven't hit the closing quote or end of line,
+        while (read < lineEnd && buffer[read] != terminator)
+        {
+            var next = buffer[read];
+            if (next == escape)
+            {
+                if (++read >= end)
+                {
+                    break;
+                }
+                next = buffer[read];
+            }
+
+            // append the next character,
+            buffer[write++] = next;
+            read++;
+
+            // and if we're looking at "", it's a literal quote.
+            if (read + 1 < end && buffer[read] == quote && buffer[read + 1] == quote)
+            {
+                buffer[write++] = (char) quote;
+                read += 2;
+            }
+        }
+
+        if (read >= lineEnd)
+        {
+            throw new IllegalArgumentException("Quoted column never closed with matching quote at line " + lineNumber);
+        }
+
+        // Skip the close quote
+        read++;
+    }
+
+    /**
+     * Returns the index of the newline ending the record at the current position, or {@link #limit} if the input ends
+     * first. Escaped newlines do not end a record, except in comments.
+     */
+    private int recordEnd(boolean comment)
+    {
+        var at = position;
+        while (true)
+        {
+            while (at < limit)
+            {
+                var next = buffer[at];
+                if (next == '\n')
+                {
+                    return at;
+                }
+                if (next == escape && !comment)
+                {
+                    at++;
+                }
+                at++;
+            }
+
+            // The record continues past the end of the block, so read more input.
+            var offset = position;
+            if (!fill())
+            {
+                return limit;
+            }
+            at -= offset - position;
+        }
+    }
+
+    /**
+     * Moves past the column at the current position without decoding it. The column ends where
+     * {@link #readColumn(int, int)} or {@link #readQuotedColumn(int, int, boolean)} would end it, but the column is not
+     * checked for errors.
+     */
+    private void skipColumn(int lineEnd)
+    {
+        // Skip leading spaces,
+        while (read < lineEnd && buffer[read] == ' ')
+        {
+            read++;
+        }
+
+        // and if the column is not quoted,
+        if (read >= lineEnd || buffer[read] != quote)
+        {
+            // skip to the delimiter.
+            skipToDelimiter(lineEnd);
+            return;
+        }
+
+        // A column like ""x is not actually quoted, so it also ends at the delimiter.
+        read++;
+        if (read + 1 < lineEnd && buffer[read] == quote && buffer[read + 1] != quote && buffer[read + 1] != delimiter)
+        {
+            skipToDelimiter(lineEnd);
+            return;
+        }
+
+        // Otherwise, skip to the closing quote, passing over escaped characters and literal quotes.
+        while (read < lineEnd)
+        {
+            var next = buffer[read];
+            if (next == escape || (next == quote && read + 1 < lineEnd && buffer[read + 1] == quote))
+            {
+                read += 2;
+            }
+            else
+            {
+                read++;
+                if (next == quote)
+                {
+                    break;
+                }
+            }
+        }
+        read = Math.min(read, lineEnd);
+    }
+
+    /**
+     * Moves to the next delimiter in the record, passing over escaped characters
+     */
+    private void skipToDelimiter(int lineEnd)
+    {
+        while (read < lineEnd)
+        {
+            var next = buffer[read];
+            if (next == delimiter)
+            {
+                break;
+            }
+            read += next == escape ? 2 : 1;
+        }
+        read = Math.min(read, lineEnd);
+    }
+
+    /**
+     * Splits the record between start and lineEnd into column slices
+     *
+     * @param start The start of the record
+     * @param lineEnd The end of the record's content
+     * @param end The end of the record, including any carriage return
+     * @param newline True if the record is terminated by a newline, false if by the end of input
+     */
+    private void tokenize(int start, int lineEnd, int end, boolean newline)
+    {
+        read = start;
+        while (true)
+        {
+            var offset = read;
+            write = read;
+
+            // Keep leading spaces,
+            while (read < lineEnd && buffer[read] == ' ')
+            {
+                read++;
+                write++;
+            }
+
+            // then read the column.
+            if (read < lineEnd && buffer[read] == quote)
+            {
+                readQuotedColumn(lineEnd, end, newline);
+            }
+            else
+            {
+                readColumn(lineEnd, end);
+            }
+            addColumn(offset, write - offset);
+
+            // If we've reached the end of the line, we're done.
+            if (read >= lineEnd)
+            {
+                break;
+            }
+
+            // If we're at a delimiter, skip it, and if it ends the line, add a final empty column.
+            if (buffer[read] == delimiter)
+            {
+                read++;
+                if (read >= lineEnd)
+                {
+                    addColumn(read, 0);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the record between start and lineEnd into the column slices given by the projection, skipping input
+     * columns that are not projected, and stopping after the last projected column
+     *
+     * @param start The start of the record
+     * @param lineEnd The end of the record's content
+     * @param end The end of the record, including any carriage return
+     * @param newline True if the record is terminated by a newline, false if by the end of input
+     */
+    private void tokenizeProjected(int start, int lineEnd, int end, boolean newline)
+    {
+        Arrays.fill(lengths, 0, projectedCount, -1);
+        columnCount = projectedCount;
+
+        read = start;
+        for (var column = 0; column <= lastProjected; column++)
+        {
+            var slot = column < projection.length ? projection[column] : -1;
+            if (slot < 0)
+            {
+                skipColumn(lineEnd);
+            }
+            else
+            {
+                var offset = read;
+                write = read;
+
+                // Keep leading spaces,
+                while (read < lineEnd && buffer[read] == ' ')
+                {
+                    read++;
+                    write++;
+                }
+
+                // then read the column.
+                if (read < lineEnd && buffer[read] == quote)
+                {
+                    readQuotedColumn(lineEnd, end, newline);
+                }
+                else
+                {
+                    readColumn(lineEnd, end);
+                }
+                offsets[slot] = offset;
+                lengths[slot] = write - offset;
+            }
+
+            // If we've reached the end of the line, we're done.
+            if (read >= lineEnd)
+            {
+                break;
+            }
+
+            // If we're at a delimiter, skip it, and if it ends the line, the next column is empty.
+            if (buffer[read] == delimiter)
+            {
+                read++;
+                if (read >= lineEnd)
+                {
+                    var next = column + 1 < projection.length ? projection[column + 1] : -1;
+                    if (next >= 0)
+                    {
+                        offsets[next] = read;
+                        lengths[next] = 0;
+                    }
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.telenav.kivakit.data.formats.csv;
 
 import com.telenav.kivakit.core.messaging.repeaters.BaseRepeater;
 import com.telenav.kivakit.core.progress.ProgressReporter;
+import com.telenav.kivakit.core.time.Time;
 import com.telenav.kivakit.core.value.count.Count;
 import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
 import com.telenav.kivakit.interfaces.io.Closeable;
@@ -35,6 +36,51 @@ import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressRep
 /**
  * Writes {@link CsvLine}s to a {@link PrintWriter} using a given {@link CsvSchema}.
  *
+ * <p><b>Writing Lines</b></p>
+ *
+ * <p>
+ * Lines can be written one at a time with {@link #write(CsvLine)} or in a batch with {@link #write(Iterable)}. The text
+ * of each column in the schema is written, and missing, null or empty columns are left empty.
+ * </p>
+ *
+ * <p><b>Writing Fields</b></p>
+ *
+ * <p>
+ * Lines can also be written field by field, without creating a {@link CsvLine}. Values are added to the current line
+ * with {@link #field(String)}, {@link #field(int)}, {@link #field(long)}, {@link #field(double)} or
+ * {@link #field(CsvColumn, Object)}, and the line is finished with {@link #endLine()}. Numbers are encoded directly,
+ * without creating strings.
+ * </p>
+ *
+ * <pre>
+ * try (var writer = new CsvWriter(out, schema))
+ * {
+ *     for (var employee : employees)
+ *     {
+ *         writer.field(employee.name())
+ *             .field(employee.age())
+ *             .field(employee.salary())
+ *             .endLine();
+ *     }
+ * }
+ * </pre>
+ *
+ * <p><b>Encoding</b></p>
+ *
+ * <p>
+ * Text is encoded so that {@link CsvReader} reads it back unchanged. Backslashes, quotes, line breaks and delimiters are
+ * escaped with a backslash, as is a leading comment marker in the first column. When the writer is {@link #quoted()},
+ * {@link String} columns are enclosed in quotes, and delimiters within them are not escaped.
+ * </p>
+ *
+ * <p><b>Performance</b></p>
+ *
+ * <p>
+ * Output is encoded into a large reusable buffer, which is written to the {@link PrintWriter} in blocks. The
+ * {@link ProgressReporter} advances for each line, and when the writer is closed it reports the number of lines and
+ * characters that were written, and the rate at which they were written.
+ * </p>
+ *
  * @author jonathanl (shibo)
  * @see CsvSchema
  * @see CsvLine
@@ -44,19 +90,52 @@ import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressRep
 @LexakaiJavadoc(complete = true)
 public class CsvWriter extends BaseRepeater implements Closeable
 {
-    /** The CSV schema being written to */
-    @UmlAggregation(label = "uses")
-    private final CsvSchema schema;
+    /** The bits of the double value -0.0 */
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+
+    /** The number of characters to buffer before writing to the output */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The output buffer */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /** The number of characters written to the output */
+    private long characters;
+
+    /** True once this writer has been closed */
+    private boolean closed;
+
+    /** The separator for fields written with the field methods */
+    private char delimiter = ',';
+
+    /** Scratch space for encoding the digits of numbers */
+    private final char[] digits = new char[20];
+
+    /** The number of fields that have been written on the current line */
+    private int fields;
+
+    /** The number of lines written */
+    private long lines;
 
     /** The output destination */
     private final PrintWriter out;
 
-    /** Progress as CSV is being written */
-    private final ProgressReporter reporter;
+    /** The number of characters in the output buffer */
+    private int position;
 
     /** True if fields should be quoted */
     private boolean quoted;
 
+    /** Progress as CSV is being written */
+    private final ProgressReporter reporter;
+
+    /** The CSV schema being written to */
+    @UmlAggregation(label = "uses")
+    private final CsvSchema schema;
+
+    /** The time when writing started */
+    private final Time started = Time.now();
+
     /**
      * Constructs a writer with the given output destination and schema
      */
@@ -80,13 +159,114 @@ public class CsvWriter extends BaseRepeater implements Closeable
     }
 
     /**
-     * Closes output
+     * Writes any buffered output, closes the output and reports throughput. Calls after the first do nothing.
      */
     @Override
     public void close()
     {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+
+        writeBuffer();
         out.close();
-        reporter.end();
+
+        var elapsed = started.elapsedSince();
+        var seconds = Math.max(elapsed.asSeconds(), 0.001);
+        reporter.end("Wrote $ lines and $ characters in $ ($ lines per second, $ characters per second)",
+            lines, characters, elapsed, (long) (lines / seconds), (long) (characters / seconds));
+    }
+
+    /**
+     * Sets the delimiter for fields written with the field methods (it's "," by default)
+     */
+    public CsvWriter delimiter(char delimiter)
+    {
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    /**
+     * Ends the current line of fields
+     */
+    public CsvWriter endLine()
+    {
+        append('\n');
+        fields = 0;
+        lines++;
+        reporter.next();
+        return this;
+    }
+
+    /**
+     * Adds the given text to the current line
+     */
+    public CsvWriter field(String text)
+    {
+        encode(text, delimiter, quoted);
+        return this;
+    }
+
+    /**
+     * Adds the given value to the current line, converting it to text with the column's converter
+     */
+    public <T> CsvWriter field(CsvColumn<T> column, T value)
+    {
+        encode(value == null ? null : column.asString(value), delimiter, isQuoted(column, quoted));
+        return this;
+    }
+
+    /**
+     * Adds the given value to the current line
+     */
+    public CsvWriter field(int value)
+    {
+        return field((long) value);
+    }
+
+    /**
+     * Adds the given value to the current line
+     */
+    public CsvWriter field(long value)
+    {
+        separate(delimiter);
+        encode(value);
+        return this;
+    }
+
+    /**
+     * Adds the given value to the current line, as it would be formatted by {@link Double#toString(double)}
+     */
+    public CsvWriter field(double value)
+    {
+        separate(delimiter);
+        if (value == (long) value && Math.abs(value) < 1e7 && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO)
+        {
+            // Whole numbers in this range are formatted by Double.toString as the number followed by ".0"
+            encode((long) value);
+            append('.');
+            append('0');
+        }
+        else
+        {
+            var text = Double.toString(value);
+            for (var index = 0; index < text.length(); index++)
+            {
+                append(text.charAt(index));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes any buffered output to the output destination and flushes it
+     */
+    public void flush()
+    {
+        writeBuffer();
+        out.flush();
     }
 
     public void problem()
@@ -123,12 +303,24 @@ public class CsvWriter extends BaseRepeater implements Closeable
      */
     public void write(CsvLine line)
     {
-        reporter.next();
-        if (quoted)
+        var quoteStrings = quoted || line.isQuoted();
+        var delimiter = line.delimiter();
+        for (var column : schema.columns())
+        {
+            encode(line.string(column), delimiter, isQuoted(column, quoteStrings));
+        }
+        endLine();
+    }
+
+    /**
+     * Writes the given CSV lines
+     */
+    public void write(Iterable<CsvLine> lines)
+    {
+        for (var line : lines)
         {
-            line = line.quoted();
+            write(line);
         }
-        out.write(line + "\n");
     }
 
     /**
@@ -136,6 +328,128 @@ public class CsvWriter extends BaseRepeater implements Closeable
      */
     public void writeComment(String comment)
     {
-        out.println("// " + comment);
+        append('/');
+        append('/');
+        append(' ');
+        for (var index = 0; index < comment.length(); index++)
+        {
+            append(comment.charAt(index));
+        }
+        append('\n');
+    }
+
+    /**
+     * Appends the given character to the output buffer
+     */
+    private void append(char character)
+    {
+        if (position == buffer.length)
+        {
+            writeBuffer();
+        }
+        buffer[position++] = character;
+    }
+
+    /**
+     * Encodes the digits of the given value
+     */
+    private void encode(long value)
+    {
+        if (value == Long.MIN_VALUE)
+        {
+            var text = Long.toString(value);
+            for (var index = 0; index < text.length(); index++)
+            {
+                append(text.charAt(index));
+            }
+            return;
+        }
+        if (value < 0)
+        {
+            append('-');
+            value = -value;
+        }
+        var at = digits.length;
+        do
+        {
+            digits[--at] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        while (value != 0);
+        while (at < digits.length)
+        {
+            append(digits[at++]);
+        }
+    }
+
+    /**
+     * Encodes the given text as a field, escaping any characters that {@link CsvReader} would otherwise interpret
+     *
+     * @param text The text, or null for an empty field
+     * @param delimiter The field delimiter
+     * @param quote True to enclose the text in quotes
+     */
+    private void encode(String text, char delimiter, boolean quote)
+    {
+        var first = fields == 0;
+        separate(delimiter);
+        if (text == null || text.isEmpty())
+        {
+            return;
+        }
+
+        if (quote)
+        {
+            append('"');
+        }
+        var commentStart = first && !quote && (text.startsWith("#") || text.startsWith("//"));
+        var length = text.length();
+        for (var index = 0; index < length; index++)
+        {
+            var next = text.charAt(index);
+            if (next == '\\' || next == '"' || next == '\n' || next == '\r'
+                    || (next == delimiter && !quote)
+                    || (index == 0 && commentStart))
+            {
+                append('\\');
+            }
+            append(next);
+        }
+        if (quote)
+        {
+            append('"');
+        }
+    }
+
+    /**
+     * Returns true if values in the given column should be quoted, which is only the case for text columns
+     */
+    private boolean isQuoted(CsvColumn<?> column, boolean quoted)
+    {
+        return quoted && (column.converter() == null || column.type() == String.class);
+    }
+
+    /**
+     * Separates a new field from any previous field on the current line
+     */
+    private void separate(char delimiter)
+    {
+        if (fields++ > 0)
+        {
+            append(delimiter);
+        }
+    }
+
+    /**
+     * Writes the output buffer to the output destination
+     */
+    private void writeBuffer()
+    {
+        if (position > 0)
+        {
+            out.write(buffer, 0, position);
+            characters += position;
+            position = 0;
+        }
     }
 }
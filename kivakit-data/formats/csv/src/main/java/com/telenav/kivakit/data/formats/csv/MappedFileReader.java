@@ -0,0 +1,302 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A {@link Reader} that decodes UTF-8 text directly from a memory-mapped file. The file is mapped in large windows, so
+ * files of any size can be read, and bytes go straight from the page cache to the caller's buffer without an
+ * intermediate {@link java.io.InputStream} or byte buffer copy.
+ *
+ * <p>
+ * Runs of ASCII characters, which make up nearly all CSV data, are copied with a single comparison per byte. Multibyte
+ * sequences are decoded inline, and malformed sequences are replaced with U+FFFD, as the standard UTF-8 decoder does.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ */
+final class MappedFileReader extends Reader
+{
+    /** The default size of each mapped window of the file */
+    static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+    /** The replacement character for malformed input */
+    private static final char REPLACEMENT = '\uFFFD';
+
+    /** The channel for the mapped file */
+    private final FileChannel channel;
+
+    /** The size of the file */
+    private final long size;
+
+    /** The size of each mapped window of the file */
+    private final long windowSize;
+
+    /** The currently mapped window of the file */
+    private MappedByteBuffer window;
+
+    /** The offset of the current window in the file */
+    private long windowStart;
+
+    /** The position in the current window */
+    private int position;
+
+    /** The number of bytes in the current window */
+    private int limit;
+
+    /** The low surrogate of a supplementary character that did not fit in the caller's buffer, or zero */
+    private char pending;
+
+    MappedFileReader(Path path) throws IOException
+    {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedFileReader(Path path, long windowSize) throws IOException
+    {
+        this(path, 0L, windowSize);
+    }
+
+    /**
+     * @param path The file to read
+     * @param start The offset in bytes where reading starts, which must be at the start of a character
+     * @param windowSize The size of each mapped window of the file
+     */
+    MappedFileReader(Path path, long start, long windowSize) throws IOException
+    {
+        this.windowSize = windowSize;
+        channel = FileChannel.open(path, READ);
+        size = channel.size();
+        windowStart = start;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+
+        var at = offset;
+        var end = offset + length;
+
+        if (pending != 0)
+        {
+            buffer[at++] = pending;
+            pending = 0;
+        }
+
+        while (at < end)
+        {
+            // If the window is used up, map the next one, stopping at the end of the file
+            if (position == limit && !map(windowStart + position))
+            {
+                break;
+            }
+
+            // Copy ASCII characters until the window or the buffer is exhausted, or a multibyte sequence starts,
+            var window = this.window;
+            var count = Math.min(limit - position, end - at);
+            var index = position;
+            var stop = index + count;
+            byte next;
+            while (index < stop && (next = window.get(index)) >= 0)
+            {
+                buffer[at++] = (char) next;
+                index++;
+            }
+            position = index;
+
+            // then decode any multibyte sequence.
+            if (index < stop)
+            {
+                at = decode(buffer, at, end);
+            }
+        }
+
+        return at == offset ? -1 : at - offset;
+    }
+
+    /**
+     * Returns the unsigned byte at the given offset from the current position
+     */
+    private int byteAt(int offset)
+    {
+        return window.get(position + offset) & 0xff;
+    }
+
+    /**
+     * Decodes the multibyte UTF-8 sequence at the current position into the given buffer
+     *
+     * @return The index in the buffer after the decoded character(s)
+     */
+    private int decode(char[] buffer, int at, int end) throws IOException
+    {
+        var lead = byteAt(0);
+
+        // Determine the length of the sequence from the lead byte,
+        var length = lead >= 0xc2 && lead <= 0xdf ? 2 : (lead >> 4) == 0x0e ? 3 : lead >= 0xf0 && lead <= 0xf4 ? 4 : 1;
+
+        // remap the window so that it starts at the lead byte if the sequence crosses the end of the window,
+        if (limit - position < length && windowStart + limit < size)
+        {
+            map(windowStart + position);
+        }
+
+        // and replace the sequence if it is malformed.
+        var malformed = malformed(lead, length, Math.min(length, limit - position));
+        if (malformed > 0)
+        {
+            position += malformed;
+            buffer[at++] = REPLACEMENT;
+            return at;
+        }
+
+        var codePoint = lead & (0xff >> (length + 1));
+        for (var index = 1; index < length; index++)
+        {
+            codePoint = (codePoint << 6) | (byteAt(index) & 0x3f);
+        }
+        position += length;
+
+        if (codePoint < 0x10000)
+        {
+            buffer[at++] = (char) codePoint;
+        }
+        else
+        {
+            buffer[at++] = Character.highSurrogate(codePoint);
+            var low = Character.lowSurrogate(codePoint);
+            if (at < end)
+            {
+                buffer[at++] = low;
+            }
+            else
+            {
+                pending = low;
+            }
+        }
+        return at;
+    }
+
+    /**
+     * Returns true if the given byte is a continuation byte
+     */
+    private boolean isContinuation(int value)
+    {
+        return (value & 0xc0) == 0x80;
+    }
+
+    /**
+     * Determines the number of bytes to replace with a single replacement character if the sequence at the current
+     * position is malformed. The rules are those of the JDK's UTF-8 decoder, so the decoded text is the same as it
+     * would be when read through an {@link java.io.InputStreamReader}.
+     *
+     * @param lead The lead byte
+     * @param length The length of the sequence, as given by the lead byte, or 1 if the lead byte is invalid
+     * @param available The number of bytes of the sequence that are available before the end of the file
+     * @return The number of malformed bytes, or zero if the sequence is well-formed
+     */
+    private int malformed(int lead, int length, int available)
+    {
+        var second = available > 1 ? byteAt(1) : 0;
+        switch (length)
+        {
+            case 2:
+                return available < 2 || !isContinuation(second) ? 1 : 0;
+
+            case 3:
+                if (available > 1 && ((lead == 0xe0 && (second & 0xe0) == 0x80) || !isContinuation(second)))
+                {
+                    return 1;
+                }
+                if (available < 3)
+                {
+                    return available;
+                }
+                if (!isContinuation(byteAt(2)))
+                {
+                    return 2;
+                }
+                var character = ((lead & 0x0f) << 12) | ((second & 0x3f) << 6) | (byteAt(2) & 0x3f);
+                return Character.isSurrogate((char) character) ? 3 : 0;
+
+            case 4:
+                if (available > 1 && ((lead == 0xf0 && (second < 0x90 || second > 0xbf))
+                        || (lead == 0xf4 && (second & 0xf0) != 0x80)
+                        || !isContinuation(second)))
+                {
+                    return 1;
+                }
+                if (available > 2 && !isContinuation(byteAt(2)))
+                {
+                    return 2;
+                }
+                if (available < 4)
+                {
+                    return available;
+                }
+                return isContinuation(byteAt(3)) ? 0 : 3;
+
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Maps the window of the file starting at the given offset
+     *
+     * @return False if the offset is at the end of the file
+     */
+    private boolean map(long start) throws IOException
+    {
+        if (start >= size)
+        {
+            return false;
+        }
+        var length = Math.min(windowSize, size - start);
+        window = channel.map(READ_ONLY, start, length);
+        windowStart = start;
+        position = 0;
+        limit = (int) length;
+        return true;
+    }
+}
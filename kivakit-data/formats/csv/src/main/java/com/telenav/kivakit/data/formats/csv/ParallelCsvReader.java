@@ -0,0 +1,665 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import com.telenav.kivakit.core.messaging.repeaters.BaseRepeater;
+import com.telenav.kivakit.core.progress.ProgressReporter;
+import com.telenav.kivakit.core.value.count.Bytes;
+import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+import com.telenav.lexakai.annotations.associations.UmlAggregation;
+import com.telenav.lexakai.annotations.associations.UmlRelation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
+import static com.telenav.kivakit.core.value.count.Bytes.megabytes;
+import static java.nio.charset.CodingErrorAction.REPLACE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+
+/**
+ * Reads a local CSV {@link File} on multiple cores. The file is split into chunks of roughly {@link #chunkSize(Bytes)}
+ * bytes, and each chunk is parsed by a {@link CsvTokenizer} on a fork-join pool. This is the pool that the reader is
+ * used from, if it is used from a fork-join task, or the common pool otherwise.
+ *
+ * <p><b>Chunk Boundaries</b></p>
+ *
+ * <p>
+ * Chunks always start at the beginning of a record. A record ends at a newline that is not escaped, so a chunk
+ * boundary is placed after the first newline following the nominal split point that is not preceded by an odd number
+ * of escape characters. Since a quoted column cannot contain a line break (see {@link CsvReader}), an unescaped newline
+ * is always the end of a record. The file must be UTF-8 (or ASCII), in which newline and escape bytes cannot occur
+ * inside a multibyte character.
+ * </p>
+ *
+ * <p><b>Reading Lines</b></p>
+ *
+ * <p>
+ * Lines are available as a {@link Stream} with {@link #lines()}, or a chunk at a time with
+ * {@link #forEachBatch(Consumer)}. Reading starts when the first line or batch is requested. Chunks are parsed in
+ * parallel, up to twice as many chunks as the pool has threads ahead of the consumer, and the results are passed to
+ * the consumer on the calling thread. Batches are produced in their original order, unless {@link #unordered()} is
+ * called, in which case each batch is produced as soon as it has been parsed.
+ * </p>
+ *
+ * <p>
+ * Each {@link CsvLine} has the {@link CsvLine#lineNumber()} it would have had if it was read with {@link CsvReader}.
+ * The newlines in each chunk are counted when it is read, before it is parsed, and each chunk's line numbers are
+ * offset by the newlines in the chunks before it when the chunk is produced. Progress is reported a chunk at a time as
+ * chunks are produced.
+ * </p>
+ *
+ * <pre>
+ * var reader = listenTo(new ParallelCsvReader(file, schema, ',', reporter));
+ * reader.lines().forEach(line -&gt; ...);
+ * </pre>
+ *
+ * @author jonathanl (shibo)
+ * @see CsvReader
+ * @see CsvTokenizer
+ */
+@UmlClassDiagram(diagram = DiagramCsv.class)
+@UmlRelation(label = "reads", referent = CsvLine.class)
+@LexakaiJavadoc(complete = true)
+public class ParallelCsvReader extends BaseRepeater
+{
+    /**
+     * A range of bytes in the file holding whole records
+     */
+    private static class Chunk
+    {
+        /** Offset of the first byte of the chunk */
+        final long start;
+
+        /** Offset of the byte after the chunk */
+        final long end;
+
+        Chunk(long start, long end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        int size()
+        {
+            return (int) (end - start);
+        }
+    }
+
+    /**
+     * The lines parsed from a chunk, numbered from one at the start of the chunk
+     */
+    private static class Parsed
+    {
+        final ObjectList<CsvLine> lines;
+
+        /** The number of lines that could not be parsed */
+        final int problems;
+
+        Parsed(ObjectList<CsvLine> lines, int problems)
+        {
+            this.lines = lines;
+            this.problems = problems;
+        }
+    }
+
+    /**
+     * A chunk that is being read and parsed on the pool
+     */
+    private static class Task
+    {
+        /** The number of newlines in the chunk, which is known as soon as the chunk has been read */
+        final CompletableFuture<Integer> newlines = new CompletableFuture<>();
+
+        /** The parsed lines */
+        CompletableFuture<Parsed> parsed;
+    }
+
+    /** The file to read */
+    private final File file;
+
+    /** The CSV schema for lines to read */
+    @UmlAggregation(label = "uses")
+    private final CsvSchema schema;
+
+    /** The CSV delimiter */
+    private final char delimiter;
+
+    /** The reporter for progress reading the file */
+    private final ProgressReporter reporter;
+
+    /** The approximate number of bytes in each chunk */
+    private Bytes chunkSize = megabytes(16);
+
+    /** Quote character */
+    private int quote = '"';
+
+    /** Escape character */
+    private int escape = '\\';
+
+    /** True if lines should be produced in their original order */
+    private boolean ordered = true;
+
+    public ParallelCsvReader(File file, CsvSchema schema)
+    {
+        this(file, schema, ',', nullProgressReporter());
+    }
+
+    /**
+     * Constructs a parallel reader for the given file and CSV schema
+     */
+    public ParallelCsvReader(File file,
+                             CsvSchema schema,
+                             char delimiter,
+                             ProgressReporter reporter)
+    {
+        this.file = file;
+        this.schema = schema;
+        this.delimiter = delimiter;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Sets the approximate size of the chunks that are parsed in parallel (16 megabytes by default). Records are never
+     * split, so a chunk may be larger.
+     */
+    public ParallelCsvReader chunkSize(Bytes chunkSize)
+    {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Parses the file in parallel, passing the lines of each chunk to the given consumer, one batch at a time on the
+     * calling thread. If this reader is ordered (the default), batches are passed in file order. Otherwise, they are
+     * passed in the order that their chunks are parsed.
+     */
+    public void forEachBatch(Consumer<ObjectList<CsvLine>> consumer)
+    {
+        try (var batches = batches())
+        {
+            batches.forEach(consumer);
+        }
+    }
+
+    /**
+     * Returns a stream of the lines in the file, which are parsed in parallel ahead of the consumer. The stream is
+     * ordered unless {@link #unordered()} has been called. The stream should be closed if it is not consumed to the
+     * end.
+     */
+    public Stream<CsvLine> lines()
+    {
+        return batches().flatMap(ObjectList::stream);
+    }
+
+    public ParallelCsvReader quote(char quote)
+    {
+        this.quote = quote;
+        return this;
+    }
+
+    /**
+     * Returns the schema for lines being read
+     */
+    public CsvSchema schema()
+    {
+        return schema;
+    }
+
+    /**
+     * Disables quote and escape handling, like {@link UnquotedCsvReader}
+     */
+    public ParallelCsvReader unquoted()
+    {
+        this.quote = CsvTokenizer.NONE;
+        this.escape = CsvTokenizer.NONE;
+        return this;
+    }
+
+    /**
+     * Allows lines to be produced in any order, which can be faster
+     */
+    public ParallelCsvReader unordered()
+    {
+        this.ordered = false;
+        return this;
+    }
+
+    /**
+     * Returns a sequential stream of the parsed lines of each chunk, which are parsed in parallel when the stream is
+     * consumed
+     */
+    private Stream<ObjectList<CsvLine>> batches()
+    {
+        var batches = new Batches();
+        var characteristics = ordered ? ORDERED | NONNULL : NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, characteristics), false)
+            .onClose(batches::cancel);
+    }
+
+    /**
+     * Splits the file into chunks that start and end on record boundaries
+     */
+    private ObjectList<Chunk> chunks()
+    {
+        var chunks = new ObjectList<Chunk>();
+        try (var channel = FileChannel.open(file.asJavaPath(), READ))
+        {
+            var size = channel.size();
+            var step = Math.max(1, Math.min(chunkSize.asBytes(), Integer.MAX_VALUE - 8));
+            long start = 0;
+            while (start < size)
+            {
+                var end = recordStart(channel, Math.min(size, start + step), size);
+                if (end - start > Integer.MAX_VALUE - 8)
+                {
+                    throw new IllegalStateException("Record is too large to read in " + file);
+                }
+                chunks.add(new Chunk(start, end));
+                start = end;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to read " + file, e);
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns true if the newline at the given offset is preceded by an odd number of escape characters. The bytes
+     * before the newline are read backwards a block at a time.
+     */
+    private boolean isEscaped(FileChannel channel, long newline) throws IOException
+    {
+        if (escape == CsvTokenizer.NONE || escape > 0x7f)
+        {
+            return false;
+        }
+
+        var escapes = 0;
+        var buffer = ByteBuffer.allocate(256);
+        for (var end = newline; end > 0; )
+        {
+            // Read the block before the end,
+            var start = Math.max(0, end - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (end - start));
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer, start + buffer.position()) < 0)
+                {
+                    return escapes % 2 == 1;
+                }
+            }
+
+            // and count the escapes at the end of it.
+            for (var index = buffer.limit() - 1; index >= 0; index--)
+            {
+                if (buffer.get(index) != escape)
+                {
+                    return escapes % 2 == 1;
+                }
+                escapes++;
+            }
+            end = start;
+        }
+        return escapes % 2 == 1;
+    }
+
+    /**
+     * Returns the result of the given future, throwing the exception that it failed with, if any
+     */
+    private <T> T join(CompletableFuture<T> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException cause)
+            {
+                throw cause;
+            }
+            throw new IllegalStateException("Unable to read " + file, e.getCause());
+        }
+    }
+
+    /**
+     * Reads the given chunk into memory
+     */
+    private ByteBuffer load(Chunk chunk)
+    {
+        var bytes = ByteBuffer.allocate(chunk.size());
+        try (var channel = FileChannel.open(file.asJavaPath(), READ))
+        {
+            while (bytes.hasRemaining())
+            {
+                if (channel.read(bytes, chunk.start + bytes.position()) < 0)
+                {
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to read " + file, e);
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Returns the number of newlines in the given bytes
+     */
+    private int newlines(ByteBuffer bytes)
+    {
+        var count = 0;
+        var array = bytes.array();
+        for (var index = 0; index < bytes.limit(); index++)
+        {
+            if (array[index] == '\n')
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Parses the lines in the given bytes, numbering them from the start of the chunk
+     */
+    private Parsed parse(ByteBuffer bytes)
+    {
+        // Decode the bytes,
+        CharBuffer chars;
+        try
+        {
+            chars = UTF_8.newDecoder()
+                .onMalformedInput(REPLACE)
+                .onUnmappableCharacter(REPLACE)
+                .decode(bytes);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to decode " + file, e);
+        }
+
+        // and tokenize them in place.
+        var lines = new ObjectList<CsvLine>();
+        var tokenizer = new CsvTokenizer(chars.array(), chars.limit(), delimiter, quote, escape);
+        var problems = 0;
+        while (true)
+        {
+            try
+            {
+                if (!tokenizer.next())
+                {
+                    break;
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                problem(e, "Invalid CSV format");
+                problems++;
+            }
+
+            var line = listenTo(new CsvLine(schema, delimiter));
+            line.lineNumber(tokenizer.lineNumber());
+            for (var index = 0; index < tokenizer.columnCount(); index++)
+            {
+                line.add(tokenizer.column(index));
+            }
+            lines.add(line);
+        }
+        return new Parsed(lines, problems);
+    }
+
+    /**
+     * Returns the offset of the start of the first record at or after the given position
+     */
+    private long recordStart(FileChannel channel, long position, long size) throws IOException
+    {
+        if (position >= size)
+        {
+            return size;
+        }
+
+        // Search for the first unescaped newline starting with the byte before the position
+        var buffer = ByteBuffer.allocate(64 * 1024);
+        for (var at = position - 1; at < size; )
+        {
+            buffer.clear();
+            var read = channel.read(buffer, at);
+            if (read <= 0)
+            {
+                break;
+            }
+            var bytes = buffer.array();
+            for (var index = 0; index < read; index++)
+            {
+                // A newline that follows a byte other than an escape in the buffer can't be escaped
+                if (bytes[index] == '\n'
+                    && ((index > 0 && bytes[index - 1] != escape) || !isEscaped(channel, at + index)))
+                {
+                    return at + index + 1;
+                }
+            }
+            at += read;
+        }
+        return size;
+    }
+
+    /**
+     * Reads and parses chunks on the pool ahead of the consumer, producing the lines of each chunk with their line
+     * numbers in the file
+     */
+    private class Batches implements Iterator<ObjectList<CsvLine>>
+    {
+        /** The chunks of the file, or null if reading has not started */
+        private ObjectList<Chunk> chunks;
+
+        /** The line number of the first line of each chunk, for the chunks whose predecessors have been counted */
+        private int[] firstLineNumbers;
+
+        /** The number of chunks, after the first, whose first line number is known */
+        private int numbered;
+
+        /** The index of the next chunk to submit */
+        private int next;
+
+        /** The pool that chunks are parsed on */
+        private ForkJoinPool pool;
+
+        /** The number of chunks to read and parse ahead of the consumer */
+        private int lookAhead;
+
+        /** The tasks that have been submitted but not produced, by chunk index, in file order */
+        private final Deque<Integer> pending = new ArrayDeque<>();
+
+        /** The task for each chunk that has been submitted. The parsed lines are released once they are produced. */
+        private Task[] tasks;
+
+        /** True once the end of the chunks has been reported */
+        private boolean ended;
+
+        @Override
+        public boolean hasNext()
+        {
+            start();
+            if (pending.isEmpty())
+            {
+                if (!ended)
+                {
+                    ended = true;
+                    reporter.end();
+                }
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public ObjectList<CsvLine> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            // Take the next chunk in order, or if the reader is unordered, the first chunk to be parsed,
+            var index = ordered ? pending.removeFirst() : removeFirstParsed();
+            var parsed = join(tasks[index].parsed);
+            tasks[index].parsed = null;
+            submit();
+
+            // offset its line numbers by the newlines in the chunks before it,
+            var offset = firstLineNumber(index) - 1;
+            for (var line : parsed.lines)
+            {
+                line.lineNumber(line.lineNumber() + offset);
+            }
+
+            // and report progress.
+            reporter.next(parsed.lines.size());
+            reporter.problems(parsed.problems);
+            return parsed.lines;
+        }
+
+        /**
+         * Cancels the chunks that have not been produced
+         */
+        void cancel()
+        {
+            for (var index : pending)
+            {
+                tasks[index].parsed.cancel(false);
+            }
+            pending.clear();
+        }
+
+        /**
+         * Returns the line number of the first line in the given chunk. The newlines of the chunks before it are
+         * counted as soon as those chunks have been read, and all of them have been submitted, so this never waits
+         * for a chunk to be parsed.
+         */
+        private int firstLineNumber(int index)
+        {
+            while (numbered < index)
+            {
+                firstLineNumbers[numbered + 1] = firstLineNumbers[numbered] + join(tasks[numbered].newlines);
+                numbered++;
+            }
+            return firstLineNumbers[index];
+        }
+
+        /**
+         * Removes and returns the index of a pending chunk that has been parsed, waiting for one if there is none
+         */
+        private int removeFirstParsed()
+        {
+            while (true)
+            {
+                for (var iterator = pending.iterator(); iterator.hasNext(); )
+                {
+                    var index = iterator.next();
+                    if (tasks[index].parsed.isDone())
+                    {
+                        iterator.remove();
+                        return index;
+                    }
+                }
+                CompletableFuture.anyOf(pending.stream()
+                    .map(index -> tasks[index].parsed)
+                    .toArray(CompletableFuture[]::new)).exceptionally(ignored -> null).join();
+            }
+        }
+
+        /**
+         * Splits the file into chunks and starts reading, if that has not been done yet
+         */
+        private void start()
+        {
+            if (chunks == null)
+            {
+                reporter.start();
+                chunks = chunks();
+                tasks = new Task[chunks.size()];
+                firstLineNumbers = new int[chunks.size() + 1];
+                firstLineNumbers[0] = 1;
+                pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+                lookAhead = Math.max(2, pool.getParallelism() * 2);
+                submit();
+            }
+        }
+
+        /**
+         * Submits chunks to the pool until the look-ahead is full
+         */
+        private void submit()
+        {
+            while (pending.size() < lookAhead && next < chunks.size())
+            {
+                var index = next++;
+                var chunk = chunks.get(index);
+                var task = new Task();
+                task.parsed = CompletableFuture.supplyAsync(() ->
+                {
+                    var bytes = load(chunk);
+                    task.newlines.complete(newlines(bytes));
+                    return parse(bytes);
+                }, pool);
+
+                // If the chunk can't be read, its newlines can't be counted either
+                task.parsed.whenComplete((parsed, error) ->
+                {
+                    if (error != null)
+                    {
+                        task.newlines.completeExceptionally(error);
+                    }
+                });
+
+                tasks[index] = task;
+                pending.addLast(index);
+            }
+        }
+    }
+}
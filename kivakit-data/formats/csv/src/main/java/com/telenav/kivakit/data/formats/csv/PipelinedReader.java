@@ -0,0 +1,440 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.ref.Cleaner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Reader} that reads ahead from another reader on a separate thread. Characters are read into a bounded ring of
+ * large blocks, so the work done by the source reader, such as decompressing and decoding, overlaps with the work of
+ * the thread consuming the characters. When every block is full, the reading thread waits for the consumer to catch
+ * up.
+ *
+ * <p>
+ * Reading ahead starts with the first read, on a thread from a small pool that is shared by all pipelined readers. If
+ * every thread in the pool is busy, the reader reads from its source directly instead. A reader that is dropped without
+ * being closed stops reading ahead and closes its source when it is garbage collected, so an abandoned reader doesn't
+ * hold a pool thread forever.
+ * </p>
+ *
+ * <p>
+ * Any {@link IOException} or {@link RuntimeException} thrown by the source reader is thrown to the consumer when it
+ * reaches the point where the problem occurred.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ */
+final class PipelinedReader extends Reader
+{
+    /**
+     * A block of characters in the ring
+     */
+    private static class Block
+    {
+        /** The characters */
+        final char[] characters;
+
+        /** The number of characters in the block */
+        int length;
+
+        /** Any problem reading the block */
+        Exception problem;
+
+        Block(int size)
+        {
+            characters = new char[size];
+        }
+    }
+
+    /**
+     * Fills blocks from the source on a pool thread. This holds everything the reading thread needs, but not the
+     * {@link PipelinedReader} itself, so that a reader which is no longer referenced can be cleaned up.
+     */
+    private static class Filler implements Runnable
+    {
+        /** Blocks that are waiting to be filled */
+        final BlockingQueue<Block> empty;
+
+        /** Blocks that have been filled, in order */
+        final BlockingQueue<Block> filled;
+
+        /** The source of characters */
+        final Reader source;
+
+        /** Counted down when the reading thread exits */
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        /** True when reading has been stopped */
+        private boolean closed;
+
+        /** True if this filler was given to a pool thread */
+        private boolean started;
+
+        /** The pool thread running this filler, while it is running */
+        private Thread thread;
+
+        Filler(Reader source, int blockSize, int blocks)
+        {
+            this.source = source;
+            this.empty = new ArrayBlockingQueue<>(blocks);
+            this.filled = new ArrayBlockingQueue<>(blocks + 1);
+            for (var index = 0; index < blocks; index++)
+            {
+                empty.add(new Block(blockSize));
+            }
+        }
+
+        /**
+         * Stops reading ahead, waits for the reading thread to exit and closes the source reader. Calls after the first
+         * do nothing.
+         */
+        void close() throws IOException
+        {
+            boolean wait;
+            synchronized (this)
+            {
+                if (closed)
+                {
+                    return;
+                }
+                closed = true;
+                wait = started;
+                if (thread != null)
+                {
+                    thread.interrupt();
+                }
+            }
+            try
+            {
+                if (wait)
+                {
+                    stopped.await();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while closing", e);
+            }
+            finally
+            {
+                source.close();
+            }
+        }
+
+        /**
+         * Reads blocks from the source until it is exhausted or this filler is closed. This runs on a pool thread.
+         */
+        @Override
+        public void run()
+        {
+            synchronized (this)
+            {
+                if (closed)
+                {
+                    stopped.countDown();
+                    return;
+                }
+                thread = Thread.currentThread();
+            }
+            try
+            {
+                fill();
+            }
+            catch (InterruptedException ignored)
+            {
+                // Closed while waiting for a block
+            }
+            finally
+            {
+                // Clear any interrupt from close() before the thread goes back to the pool
+                synchronized (this)
+                {
+                    thread = null;
+                    Thread.interrupted();
+                }
+                stopped.countDown();
+            }
+        }
+
+        /**
+         * Starts this filler on a pool thread
+         *
+         * @return False if every pool thread is busy
+         * @throws IOException Thrown if this filler has been closed
+         */
+        synchronized boolean start() throws IOException
+        {
+            if (closed)
+            {
+                throw new IOException("Stream closed");
+            }
+            try
+            {
+                FILLERS.execute(this);
+                started = true;
+            }
+            catch (RejectedExecutionException e)
+            {
+                started = false;
+            }
+            return started;
+        }
+
+        private void fill() throws InterruptedException
+        {
+            while (!isClosed())
+            {
+                var next = empty.take();
+
+                // Fill the block as far as possible, so that blocks stay large,
+                var length = 0;
+                Exception problem = null;
+                try
+                {
+                    int read;
+                    while (length < next.characters.length
+                            && (read = source.read(next.characters, length, next.characters.length - length)) > 0)
+                    {
+                        length += read;
+                    }
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    problem = e;
+                }
+                next.length = length;
+
+                // then pass it to the consumer,
+                if (length > 0)
+                {
+                    filled.put(next);
+                }
+
+                // followed by any problem, or the end marker if the source is exhausted.
+                if (problem != null)
+                {
+                    var failed = new Block(0);
+                    failed.problem = problem;
+                    filled.put(failed);
+                    break;
+                }
+                if (length < next.characters.length)
+                {
+                    filled.put(END);
+                    break;
+                }
+            }
+        }
+
+        private synchronized boolean isClosed()
+        {
+            return closed;
+        }
+    }
+
+    /** The default size of each block in characters */
+    private static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    /** The default number of blocks in the ring */
+    private static final int DEFAULT_BLOCKS = 4;
+
+    /** Marks the end of the input */
+    private static final Block END = new Block(0);
+
+    /** The most readers that can read ahead at once */
+    private static final int MAXIMUM_FILLERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /** Pool threads that fill blocks, which exit when they have been idle for a while */
+    private static final ExecutorService FILLERS = new ThreadPoolExecutor(0, MAXIMUM_FILLERS,
+            30, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable ->
+    {
+        var thread = new Thread(runnable, "PipelinedReader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Stops the fillers of readers that are garbage collected without being closed */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /** Closes the filler when this reader is closed or garbage collected */
+    private final Cleaner.Cleanable cleanable;
+
+    /** The filler reading ahead from the source */
+    private final Filler filler;
+
+    /** The block being consumed */
+    private Block block;
+
+    /** The position in the block being consumed */
+    private int position;
+
+    /** True once reading has started */
+    private boolean started;
+
+    /** True if every pool thread was busy when reading started, so the source is read directly */
+    private boolean direct;
+
+    PipelinedReader(Reader source)
+    {
+        this(source, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+    }
+
+    PipelinedReader(Reader source, int blockSize, int blocks)
+    {
+        var filler = new Filler(source, blockSize, blocks);
+        this.filler = filler;
+        this.cleanable = CLEANER.register(this, () ->
+        {
+            try
+            {
+                filler.close();
+            }
+            catch (IOException ignored)
+            {
+                // Nothing can be done for a reader that was never closed
+            }
+        });
+    }
+
+    /**
+     * Stops reading ahead, waits for the reading thread to exit and closes the source reader
+     */
+    @Override
+    public void close() throws IOException
+    {
+        filler.close();
+        cleanable.clean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException
+    {
+        if (!started)
+        {
+            start();
+        }
+        if (direct)
+        {
+            return filler.source.read();
+        }
+        if (block == null || position == block.length)
+        {
+            if (!next())
+            {
+                return -1;
+            }
+        }
+        return block.characters[position++];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+        if (!started)
+        {
+            start();
+        }
+        if (direct)
+        {
+            return filler.source.read(buffer, offset, length);
+        }
+        if (block == null || position == block.length)
+        {
+            if (!next())
+            {
+                return -1;
+            }
+        }
+        var count = Math.min(length, block.length - position);
+        System.arraycopy(block.characters, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Returns the block being consumed to the ring, and moves to the next filled block
+     *
+     * @return False if the input is exhausted
+     * @throws IOException Thrown if the source reader failed with an {@link IOException}
+     */
+    private boolean next() throws IOException
+    {
+        if (block == END)
+        {
+            return false;
+        }
+        if (block != null)
+        {
+            filler.empty.add(block);
+        }
+
+        try
+        {
+            block = filler.filled.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading", e);
+        }
+        position = 0;
+
+        if (block.problem != null)
+        {
+            var problem = block.problem;
+            block = END;
+            if (problem instanceof IOException io)
+            {
+                throw io;
+            }
+            throw (RuntimeException) problem;
+        }
+        return block != END;
+    }
+
+    /**
+     * Starts reading ahead, or reads the source directly if there is no free pool thread
+     */
+    private void start() throws IOException
+    {
+        direct = !filler.start();
+        started = true;
+    }
+}
@@ -24,6 +24,10 @@ import com.telenav.kivakit.data.formats.csv.internal.lexakai.DiagramCsv;
 import com.telenav.kivakit.resource.Resource;
 import com.telenav.lexakai.annotations.UmlClassDiagram;
 
+import java.io.Reader;
+
+import static com.telenav.kivakit.data.formats.csv.CsvTokenizer.NONE;
+
 /**
  * Parses a stream of simplified CSV information. This class does not handle quoted entries, so the records cannot
  * contain the delimiter. The records also cannot embed a newline. This class is useful for handling CSVs that do not
@@ -45,6 +49,24 @@ public class UnquotedCsvReader extends CsvReader
         super(resource, schema, delimiter, reporter);
     }
 
+    public UnquotedCsvReader(Resource resource,
+                             CsvSchema schema,
+                             char delimiter,
+                             ProgressReporter reporter,
+                             Option... options)
+    {
+        super(resource, schema, delimiter, reporter, options);
+    }
+
+    /**
+     * Returns a tokenizer that, like this reader, does not handle quotes or escapes
+     */
+    @Override
+    protected CsvTokenizer newTokenizer(Reader reader)
+    {
+        return new CsvTokenizer(reader, delimiter, NONE, NONE);
+    }
+
     /**
      * Read the next CSV column from the input stream. When exiting this method the input stream should either be
      * pointing to a line end (0x0D), a column end (delimiter), or the end of the stream. This version ignores double
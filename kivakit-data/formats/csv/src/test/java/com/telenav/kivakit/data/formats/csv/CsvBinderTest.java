@@ -0,0 +1,94 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.conversion.core.language.IdentityConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.DoubleConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.IntegerConverter;
+import com.telenav.kivakit.resource.packages.PackageTrait;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
+import static com.telenav.kivakit.data.formats.csv.CsvColumn.csvColumn;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.TOKENIZED;
+import static com.telenav.kivakit.data.formats.csv.CsvSchema.csvSchema;
+
+public class CsvBinderTest extends UnitTest implements PackageTrait
+{
+    public static class Car
+    {
+        int year;
+
+        String make;
+
+        double price;
+
+        public Car make(String make)
+        {
+            this.make = make;
+            return this;
+        }
+    }
+
+    @Test
+    public void testBind()
+    {
+        var schema = csvSchema(
+            csvColumn("year", new IntegerConverter(this)),
+            csvColumn("make", new IdentityConverter(this)),
+            csvColumn("model"),
+            csvColumn("description"),
+            csvColumn("price", new DoubleConverter(this)));
+
+        var binder = schema.binder(Car.class);
+        ensure(binder == schema.binder(Car.class));
+
+        try (var in = new CsvReader(packageResource("SampleCsv.csv"), schema, ',', nullProgressReporter(), TOKENIZED))
+        {
+            in.skipLines(3);
+
+            var car = binder.bind(in.next());
+            ensureEqual(car.year, 1997);
+            ensureEqual(car.make, "Ford");
+            ensureEqual(car.price, 3000.0);
+
+            var jeep = in.skipLines(2).next().populatedObject(Car.class);
+            ensureEqual(jeep.year, 1996);
+            ensureEqual(jeep.make, "Jeep");
+            ensureEqual(jeep.price, 4799.0);
+        }
+    }
+
+    @Test
+    public void testBinderAfterAdd()
+    {
+        // A binder compiled before a column is added doesn't bind that column, so it is compiled again
+        var schema = csvSchema(
+            csvColumn("year", new IntegerConverter(this)),
+            csvColumn("make", new IdentityConverter(this)));
+
+        var binder = schema.binder(Car.class);
+        ensureEqual(binder.size(), 2);
+
+        schema.add(csvColumn("price", new DoubleConverter(this)));
+        ensure(binder != schema.binder(Car.class));
+        ensureEqual(schema.binder(Car.class).size(), 3);
+    }
+}
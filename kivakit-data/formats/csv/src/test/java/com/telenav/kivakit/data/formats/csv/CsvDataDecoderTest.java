@@ -0,0 +1,111 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.data.formats.library.DataFormat;
+import com.telenav.kivakit.data.formats.library.decoding.RecordBatch;
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.telenav.kivakit.data.formats.library.decoding.DataDecoders.dataDecoders;
+import static com.telenav.kivakit.data.formats.library.decoding.DecoderSettings.decoderSettings;
+import static com.telenav.kivakit.resource.Extension.CSV;
+
+public class CsvDataDecoderTest extends UnitTest
+{
+    @Test
+    public void testDecode()
+    {
+        var file = csvFile(1_000);
+        try
+        {
+            // Whether the file is read on one thread or split between several,
+            for (var threads : new int[] { 1, 4 })
+            {
+                var batches = new ArrayList<RecordBatch<CsvLine>>();
+                new CsvDataDecoder().decode(file, decoderSettings().threads(threads).batchSize(300), batches::add);
+
+                // the header is skipped and the lines come back in order, in full batches but the last.
+                ensureEqual(batches.size(), 4);
+                ensureEqual(batches.get(3).size(), 100);
+
+                var index = 0;
+                for (var batch : batches)
+                {
+                    ensureEqual(batch.sequence(), (long) index / 300);
+                    for (var line : batch)
+                    {
+                        ensureEqual(line.get(0), "key" + index);
+                        ensureEqual(line.get(1), String.valueOf(index));
+                        ensureEqual(line.lineNumber(), index + 2);
+                        index++;
+                    }
+                }
+                ensureEqual(index, 1_000);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testParallelism()
+    {
+        // Local, uncompressed files can be split, but compressed files can't
+        var decoder = new CsvDataDecoder();
+        ensureEqual(decoder.parallelism(File.file("data.csv")), Runtime.getRuntime().availableProcessors());
+        ensureEqual(decoder.parallelism(File.file("data.csv.gz")), 1);
+    }
+
+    @Test
+    public void testService()
+    {
+        // The decoder is loaded as a service
+        var file = csvFile(10);
+        try
+        {
+            var keys = new ArrayList<String>();
+            dataDecoders().decode(file, CsvLine.class, batch -> batch.forEach(line -> keys.add(line.get(0))));
+            ensureEqual(keys, List.of("key0", "key1", "key2", "key3", "key4", "key5", "key6", "key7", "key8", "key9"));
+            ensure(dataDecoders().decoder(DataFormat.CSV, CsvLine.class) instanceof CsvDataDecoder);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private File csvFile(int count)
+    {
+        var text = new StringBuilder("key,value\n");
+        for (var index = 0; index < count; index++)
+        {
+            text.append("key").append(index).append(',').append(index).append('\n');
+        }
+        var file = File.temporaryFile(CSV);
+        file.writer().saveText(text.toString());
+        return file;
+    }
+}
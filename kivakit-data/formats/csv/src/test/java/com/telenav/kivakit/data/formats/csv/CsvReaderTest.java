@@ -20,11 +20,22 @@ package com.telenav.kivakit.data.formats.csv;
 
 import com.telenav.kivakit.conversion.core.language.primitive.DoubleConverter;
 import com.telenav.kivakit.conversion.core.language.primitive.IntegerConverter;
+import com.telenav.kivakit.filesystem.File;
 import com.telenav.kivakit.resource.packages.PackageTrait;
 import com.telenav.kivakit.testing.UnitTest;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
 import static com.telenav.kivakit.data.formats.csv.CsvColumn.csvColumn;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.INDEXED;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.MEMORY_MAPPED;
+import static com.telenav.kivakit.data.formats.csv.CsvReader.Option.TOKENIZED;
+import static com.telenav.kivakit.resource.Extension.CSV;
+import static com.telenav.kivakit.resource.WriteMode.OVERWRITE;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class CsvReaderTest extends UnitTest implements PackageTrait
 {
@@ -75,4 +86,195 @@ public class CsvReaderTest extends UnitTest implements PackageTrait
             }
         }
     }
+
+    @Test
+    public void testCompressed() throws IOException
+    {
+        var model = csvColumn("model");
+        var schema = new CsvSchema(csvColumn("year"), csvColumn("make"), model, csvColumn("description"), csvColumn("price"));
+
+        var file = File.temporaryFile(CSV.gzipped());
+        try
+        {
+            try (var out = new GZIPOutputStream(file.openForWriting()))
+            {
+                out.write(packageResource("SampleCsv.csv").reader().asString().getBytes(UTF_8));
+            }
+
+            for (var tokenized : new boolean[] { false, true })
+            {
+                try (var in = tokenized
+                        ? new CsvReader(file, schema, ',', nullProgressReporter(), TOKENIZED)
+                        : new CsvReader(file, schema))
+                {
+                    in.skipLines(1);
+                    ensureEqual(in.next().string(model), "\"K\" Ct");
+                    in.skipLines(4);
+                    ensureEqual(in.next().string(model), "Grand Cherokee");
+                    ensure(!in.hasNext());
+                }
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testIndexed()
+    {
+        var make = csvColumn("make");
+        var model = csvColumn("model");
+        var schema = new CsvSchema(csvColumn("year"), make, model, csvColumn("description"), csvColumn("price"));
+
+        var file = File.temporaryFile(CSV);
+        var sidecar = File.file(CsvIndex.sidecar(file.asJavaPath()).toString());
+        packageResource("SampleCsv.csv").safeCopyTo(file, OVERWRITE);
+        try
+        {
+            // The first reader builds the index as it reads the file,
+            try (var in = new CsvReader(file, schema, ',', nullProgressReporter(), INDEXED).indexKey(make))
+            {
+                ensureEqual(in.seek(4).next().string(model), "Venture \"Extended Edition\"");
+                ensureEqual(in.next().string(model), "Venture \"Extended Edition, Very Large\"");
+                ensureEqual(in.seek(0).next().string(make), "Make");
+            }
+            ensure(sidecar.exists());
+
+            // and the next one uses the saved index.
+            try (var in = new CsvReader(file, schema, ',', nullProgressReporter(), INDEXED, TOKENIZED).indexKey(make))
+            {
+                ensureEqual(in.lookup("Chevy").size(), 4);
+                ensureEqual(in.lookup("Ford").get(0).string(model), "E350");
+                ensureEqual(in.lookup("Jeep").get(0).lineNumber(), 8);
+                ensureEqual(in.lookup("Tesla").size(), 0);
+            }
+        }
+        finally
+        {
+            sidecar.delete();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMemoryMapped()
+    {
+        var year = csvColumn("year", new IntegerConverter(this));
+        var model = csvColumn("model");
+        var description = csvColumn("description");
+        var schema = new CsvSchema(year, csvColumn("make"), model, description, csvColumn("price"));
+
+        var file = File.temporaryFile(CSV);
+        packageResource("SampleCsv.csv").safeCopyTo(file, OVERWRITE);
+        try (var in = new CsvReader(file, schema, ',', nullProgressReporter(), MEMORY_MAPPED))
+        {
+            in.skipLines(1);
+            ensureEqual(in.next().string(model), "\"K\" Ct");
+            ensureEqual(in.next().string(model), "\"Venture Extended Edition, Very Large\"");
+            ensureEqual(in.next().string(description), "ac, abs, moon");
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testProjected()
+    {
+        for (var options : new CsvReader.Option[][] { {}, { TOKENIZED } })
+        {
+            var price = csvColumn("Price", new DoubleConverter(this));
+            var description = csvColumn("Description");
+            var missing = csvColumn("Missing");
+            var schema = new CsvSchema(price, description, missing);
+
+            try (var in = new CsvReader(packageResource("SampleCsv.csv"), schema, ',', nullProgressReporter(), options).readHeader())
+            {
+                {
+                    var line = in.next();
+                    ensureEqual(line.size(), 3);
+                    ensureEqual(line.get(price), 5000.0);
+                    ensureEqual(line.string(description), "");
+                    ensureEqual(line.string(missing), null);
+                }
+
+                in.next();
+
+                {
+                    var line = in.next();
+                    ensureEqual(line.lineNumber(), 5);
+                    ensureEqual(line.get(price), 3000.0);
+                    ensureEqual(line.string(description), "ac, abs, moon");
+                }
+
+                in.next();
+                in.next();
+
+                {
+                    var line = in.next();
+                    ensureEqual(line.get(price), 4799.0);
+                    ensureEqual(line.string(description), "MUST SELL! air, moon roof, loaded");
+                }
+
+                ensure(!in.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testTokenized()
+    {
+        var year = csvColumn("year", new IntegerConverter(this));
+        var make = csvColumn("make");
+        var model = csvColumn("model");
+        var description = csvColumn("description");
+        var price = csvColumn("price", new DoubleConverter(this));
+        var schema = new CsvSchema(year, make, model, description, price);
+
+        var resource = packageResource("SampleCsv.csv");
+        try (var in = new CsvReader(resource, schema, ',', nullProgressReporter(), TOKENIZED))
+        {
+            in.skipLines(1);
+
+            ensure(in.hasNext());
+
+            CsvLine first;
+            {
+                var line = in.next();
+                ensureEqual(line.string(model), "\"K\" Ct");
+                first = line.copy();
+            }
+
+            {
+                var line = in.next();
+                ensureEqual(line.string(model), "\"Venture Extended Edition, Very Large\"");
+                ensureEqual(line.lineNumber(), 4);
+            }
+
+            {
+                var line = in.next();
+                ensureEqual(line.get(year), 1997);
+                ensureEqual(line.string(description), "ac, abs, moon");
+                ensureEqual(line.get(price), 3000.0);
+            }
+
+            in.next();
+
+            {
+                var line = in.next();
+                ensureEqual(line.string(model), "Venture \"Extended Edition, Very Large\"");
+            }
+
+            {
+                var line = in.next();
+                ensure(line.string(description).indexOf('!') >= 0);
+            }
+
+            ensure(!in.hasNext());
+            ensureEqual(first.string(model), "\"K\" Ct");
+        }
+    }
 }
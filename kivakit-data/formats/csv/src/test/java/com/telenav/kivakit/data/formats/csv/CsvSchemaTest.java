@@ -18,13 +18,15 @@
 
 package com.telenav.kivakit.data.formats.csv;
 
+import com.telenav.kivakit.resource.packages.PackageTrait;
 import com.telenav.kivakit.testing.UnitTest;
 import org.junit.Test;
 
 import static com.telenav.kivakit.data.formats.csv.CsvColumn.csvColumn;
 import static com.telenav.kivakit.data.formats.csv.CsvSchema.csvSchema;
+import static com.telenav.kivakit.data.formats.csv.CsvSchema.inferredCsvSchema;
 
-public class CsvSchemaTest extends UnitTest
+public class CsvSchemaTest extends UnitTest implements PackageTrait
 {
     @Test
     public void testColumnForName()
@@ -35,4 +37,22 @@ public class CsvSchemaTest extends UnitTest
         ensureEqual(identifierColumn, schema.columnForName("roadSectionIdentifier"));
         ensureEqual(shapesColumn, schema.columnForName("roadSectionShapes"));
     }
+
+    @Test
+    public void testInferredCsvSchema()
+    {
+        var schema = inferredCsvSchema(packageResource("SampleCsv.csv"));
+        ensureEqual(schema.columns().size(), 5);
+        ensureEqual(schema.columnForName("Year").type(), Integer.class);
+        ensureEqual(schema.columnForName("Make").type(), String.class);
+        ensureEqual(schema.columnForName("Description").type(), String.class);
+        ensureEqual(schema.columnForName("Price").type(), Double.class);
+
+        try (var in = new CsvReader(packageResource("SampleCsv.csv"), schema).readHeader())
+        {
+            var line = in.next();
+            ensureEqual(line.get(schema.columnForName("Year")), 1999);
+            ensureEqual(line.get(schema.columnForName("Price")), 5000.0);
+        }
+    }
 }
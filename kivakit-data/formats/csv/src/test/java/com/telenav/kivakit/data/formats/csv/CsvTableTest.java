@@ -0,0 +1,65 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.conversion.core.language.IdentityConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.DoubleConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.IntegerConverter;
+import com.telenav.kivakit.resource.packages.PackageTrait;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import static com.telenav.kivakit.data.formats.csv.CsvColumn.csvColumn;
+import static com.telenav.kivakit.data.formats.csv.CsvSchema.csvSchema;
+import static com.telenav.kivakit.data.formats.csv.CsvTable.csvTable;
+
+public class CsvTableTest extends UnitTest implements PackageTrait
+{
+    @Test
+    public void testTable()
+    {
+        var year = csvColumn("year", new IntegerConverter(this));
+        var make = csvColumn("make", new IdentityConverter(this));
+        var model = csvColumn("model");
+        var description = csvColumn("description");
+        var price = csvColumn("price", new DoubleConverter(this));
+        var schema = csvSchema(year, make, model, description, price);
+
+        CsvTable table;
+        try (var in = new CsvReader(packageResource("SampleCsv.csv"), schema))
+        {
+            in.skipLines(1);
+            table = csvTable(in);
+        }
+
+        ensureEqual(table.size(), 6);
+        ensureEqual(table.intValue(2, year), 1997);
+        ensureEqual(table.get(2, make), "Ford");
+        ensureEqual(table.string(2, description), "ac, abs, moon");
+        ensureEqual(table.doubleValue(5, price), 4799.0);
+        ensureEqual(table.line(5).get(make), "Jeep");
+
+        ensureEqual(table.ints(year).min().orElseThrow(), 1996);
+        ensureEqual(table.doubles(price).sum(), 27699.0);
+
+        var makes = table.dictionary(make);
+        ensureEqual(makes.size(), 3);
+        ensureEqual(table.codes(make).filter(code -> makes.get(code).equals("Chevy")).count(), 4L);
+    }
+}
@@ -0,0 +1,116 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.conversion.core.language.IdentityConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.DoubleConverter;
+import com.telenav.kivakit.conversion.core.language.primitive.IntegerConverter;
+import com.telenav.kivakit.resource.resources.StringResource;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static com.telenav.kivakit.data.formats.csv.CsvColumn.csvColumn;
+import static com.telenav.kivakit.data.formats.csv.CsvSchema.csvSchema;
+
+public class CsvWriterTest extends UnitTest
+{
+    @Test
+    public void testCloseTwice()
+    {
+        // A second close doesn't write or report anything more
+        var text = new StringWriter();
+        var out = new CsvWriter(new PrintWriter(text), csvSchema(csvColumn("name")));
+        out.field("a").endLine();
+        out.close();
+        var written = text.toString();
+        out.close();
+        ensureEqual(text.toString(), written);
+    }
+
+    @Test
+    public void testFields()
+    {
+        var year = csvColumn("year", new IntegerConverter(this));
+        var make = csvColumn("make", new IdentityConverter(this));
+        var description = csvColumn("description", new IdentityConverter(this));
+        var price = csvColumn("price", new DoubleConverter(this));
+        var schema = csvSchema(year, make, description, price);
+
+        var text = new StringWriter();
+        try (var out = new CsvWriter(new PrintWriter(text), schema))
+        {
+            out.field(1999).field(make, "Chevy").field("\"Venture\", Extended\\Large").field(5000.0).endLine();
+            out.field(1996).field("#Jeep").field((String) null).field(-4799.5).endLine();
+        }
+
+        try (var in = new CsvReader(new StringResource(text.toString()), schema))
+        {
+            var first = in.next();
+            ensureEqual(first.get(year), 1999);
+            ensureEqual(first.get(make), "Chevy");
+            ensureEqual(first.get(description), "\"Venture\", Extended\\Large");
+            ensureEqual(first.get(price), 5000.0);
+
+            var second = in.next();
+            ensureEqual(second.get(make), "#Jeep");
+            ensureEqual(second.get(description), "");
+            ensureEqual(second.get(price), -4799.5);
+        }
+    }
+
+    @Test
+    public void testNullStrings()
+    {
+        // The text "null" is a value, and only a column that was never set is written as an empty field
+        var make = csvColumn("make", new IdentityConverter(this));
+        var model = csvColumn("model", new IdentityConverter(this));
+        var trim = csvColumn("trim", new IdentityConverter(this));
+        var schema = csvSchema(make, model, trim);
+
+        var line = new CsvLine(schema, ',');
+        line.set(make, "null");
+        line.set(model, null);
+
+        var text = new StringWriter();
+        try (var out = new CsvWriter(new PrintWriter(text), schema))
+        {
+            out.write(line);
+        }
+        ensureEqual(text.toString(), "// " + schema + "\nnull,,\n");
+    }
+
+    @Test
+    public void testQuotedLines()
+    {
+        var year = csvColumn("year", new IntegerConverter(this));
+        var description = csvColumn("description", new IdentityConverter(this));
+        var schema = csvSchema(year, description);
+
+        var lines = new StringWriter();
+        try (var in = new CsvReader(new StringResource("1997,ac\\, abs\\, \\\"moon\\\"\n1999,\n"), schema);
+             var out = new CsvWriter(new PrintWriter(lines), schema).quoted())
+        {
+            out.write(in.lines());
+        }
+        ensureEqual(lines.toString(), "// " + schema + "\n1997,\"ac, abs, \\\"moon\\\"\"\n1999,\n");
+    }
+}
@@ -0,0 +1,170 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static com.telenav.kivakit.data.formats.csv.CsvColumn.csvColumn;
+import static com.telenav.kivakit.resource.Extension.CSV;
+
+public class ParallelCsvReaderTest extends UnitTest
+{
+    private final CsvColumn<String> key = csvColumn("key");
+
+    private final CsvColumn<String> value = csvColumn("value");
+
+    private final CsvSchema schema = new CsvSchema(key, value);
+
+    @Test
+    public void testEscapedNewlines()
+    {
+        // Each record holds an escaped newline, either bare or inside a quoted column, so that with a tiny chunk
+        // size many chunk boundaries fall just after an escaped newline
+        var text = new StringBuilder();
+        for (var index = 0; index < 50; index++)
+        {
+            text.append(index % 2 == 0
+                    ? "key" + index + ",first\\\nsecond\n"
+                    : "key" + index + ",\"quoted\\\nvalue\"\n");
+        }
+
+        var file = csvFile(text.toString());
+        try
+        {
+            try (var lines = new ParallelCsvReader(file, schema).chunkSize(bytes(7)).lines())
+            {
+                var index = 0;
+                for (var line : (Iterable<CsvLine>) lines::iterator)
+                {
+                    ensureEqual(line.string(key), "key" + index);
+                    ensureEqual(line.string(value), index % 2 == 0 ? "first\nsecond" : "quoted\nvalue");
+                    ensureEqual(line.lineNumber(), index * 2 + 1);
+                    index++;
+                }
+                ensureEqual(index, 50);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLineNumbers()
+    {
+        var file = csvFile(records(500));
+        try
+        {
+            // With chunks of a few records each, line numbers must carry across chunk boundaries
+            for (var chunkSize : new long[] { 1, 13, 64, 1024 })
+            {
+                var lineNumber = 1;
+                var reader = new ParallelCsvReader(file, schema).chunkSize(bytes(chunkSize));
+                try (var lines = reader.lines())
+                {
+                    for (var line : (Iterable<CsvLine>) lines::iterator)
+                    {
+                        ensureEqual(line.lineNumber(), lineNumber);
+                        ensureEqual(line.string(key), "key" + (lineNumber - 1));
+                        lineNumber++;
+                    }
+                }
+                ensureEqual(lineNumber, 501);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testOrdered()
+    {
+        var file = csvFile(records(1_000));
+        try
+        {
+            var keys = new ArrayList<String>();
+            new ParallelCsvReader(file, schema)
+                    .chunkSize(bytes(100))
+                    .forEachBatch(batch -> batch.forEach(line -> keys.add(line.string(key))));
+
+            ensureEqual(keys.size(), 1_000);
+            for (var index = 0; index < keys.size(); index++)
+            {
+                ensureEqual(keys.get(index), "key" + index);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUnordered()
+    {
+        var file = csvFile(records(1_000));
+        try
+        {
+            var keys = new HashSet<String>();
+            var lineNumbers = new HashSet<Integer>();
+            new ParallelCsvReader(file, schema)
+                    .chunkSize(bytes(100))
+                    .unordered()
+                    .forEachBatch(batch -> batch.forEach(line ->
+                    {
+                        ensureEqual(line.string(key), "key" + (line.lineNumber() - 1));
+                        keys.add(line.string(key));
+                        lineNumbers.add(line.lineNumber());
+                    }));
+
+            ensureEqual(keys.size(), 1_000);
+            ensureEqual(lineNumbers.size(), 1_000);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private File csvFile(String text)
+    {
+        var file = File.temporaryFile(CSV);
+        file.writer().saveText(text);
+        return file;
+    }
+
+    private String records(int count)
+    {
+        var text = new StringBuilder();
+        for (var index = 0; index < count; index++)
+        {
+            text.append("key").append(index).append(",value").append(index).append('\n');
+        }
+        return text.toString();
+    }
+}
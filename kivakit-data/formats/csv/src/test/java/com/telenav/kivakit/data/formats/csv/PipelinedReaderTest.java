@@ -0,0 +1,293 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.csv;
+
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.telenav.kivakit.data.formats.csv.CsvColumn.csvColumn;
+import static com.telenav.kivakit.resource.Extension.CSV;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class PipelinedReaderTest extends UnitTest
+{
+    /** The most uncompressed bytes that bgzip puts in one member */
+    private static final int MEMBER_SIZE = 65280;
+
+    @Test
+    public void testBgzf() throws IOException
+    {
+        var index = csvColumn("index");
+        var value = csvColumn("value");
+        var schema = new CsvSchema(index, value);
+
+        // Write enough incompressible lines for several batches of members, so they are inflated in parallel
+        var text = lines(200_000);
+        var file = File.temporaryFile(CSV.gzipped());
+        try
+        {
+            Files.write(file.asJavaPath(), bgzf(text.getBytes(UTF_8), -1));
+            ensure(BgzfInputStream.isBgzf(file.asJavaPath()));
+
+            try (var in = new CsvReader(file, schema))
+            {
+                var count = 0;
+                while (in.hasNext())
+                {
+                    var line = in.next();
+                    ensureEqual(line.string(index), String.valueOf(count));
+                    count++;
+                }
+                ensureEqual(count, 200_000);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBgzfCorruptMember() throws IOException
+    {
+        var text = lines(200_000);
+        var file = File.temporaryFile(CSV.gzipped());
+        try
+        {
+            // A bad CRC in a member well past the first batch must reach the consumer as an exception
+            Files.write(file.asJavaPath(), bgzf(text.getBytes(UTF_8), 40));
+
+            var failed = false;
+            try (var in = new PipelinedReader(new InputStreamReader(new BgzfInputStream(file.asJavaPath()), UTF_8),
+                    4096, 4))
+            {
+                var buffer = new char[8192];
+                while (in.read(buffer, 0, buffer.length) >= 0)
+                {
+                    // Read until the corrupt member
+                }
+            }
+            catch (IOException e)
+            {
+                failed = true;
+            }
+            ensure(failed);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException
+    {
+        // Closing part way through stops the reading thread before the source is closed
+        var source = new StringReader(lines(10_000));
+        var in = new PipelinedReader(source, 1024, 2);
+        ensure(in.read() == '0');
+        in.close();
+
+        var closed = false;
+        try
+        {
+            source.read();
+        }
+        catch (IOException e)
+        {
+            closed = true;
+        }
+        ensure(closed);
+    }
+
+    @Test
+    public void testCloseBeforeReading() throws IOException
+    {
+        // A reader that is closed before it is read never starts reading ahead, but still closes its source
+        var source = new StringReader(lines(10));
+        new PipelinedReader(source, 1024, 2).close();
+
+        var closed = false;
+        try
+        {
+            source.read();
+        }
+        catch (IOException e)
+        {
+            closed = true;
+        }
+        ensure(closed);
+    }
+
+    @Test
+    public void testManyReaders() throws IOException
+    {
+        // Readers beyond the size of the shared pool read their sources directly
+        var text = lines(1_000);
+        var readers = new ArrayList<PipelinedReader>();
+        try
+        {
+            for (var index = 0; index < 64; index++)
+            {
+                var in = new PipelinedReader(new StringReader(text), 1024, 2);
+                readers.add(in);
+                ensure(in.read() == '0');
+            }
+            for (var in : readers)
+            {
+                var read = new StringBuilder("0");
+                var buffer = new char[4096];
+                int count;
+                while ((count = in.read(buffer, 0, buffer.length)) >= 0)
+                {
+                    read.append(buffer, 0, count);
+                }
+                ensureEqual(read.toString(), text);
+            }
+        }
+        finally
+        {
+            for (var in : readers)
+            {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void testRuntimeException() throws IOException
+    {
+        // A runtime exception from the source is thrown to the consumer, rather than leaving it waiting
+        var source = new Reader()
+        {
+            private int calls;
+
+            @Override
+            public void close()
+            {
+            }
+
+            @Override
+            public int read(char[] buffer, int offset, int length)
+            {
+                if (calls++ == 2)
+                {
+                    throw new IllegalStateException("Corrupt input");
+                }
+                buffer[offset] = 'x';
+                return 1;
+            }
+        };
+
+        var failed = false;
+        try (var in = new PipelinedReader(source, 1, 4))
+        {
+            ensure(in.read() == 'x');
+            ensure(in.read() == 'x');
+            in.read();
+        }
+        catch (IllegalStateException e)
+        {
+            failed = true;
+        }
+        ensure(failed);
+    }
+
+    /**
+     * Returns the given bytes as BGZF members, as bgzip would write them, followed by the empty end-of-file member. If
+     * corruptMember is not negative, the CRC of that member is wrong.
+     */
+    private byte[] bgzf(byte[] bytes, int corruptMember)
+    {
+        var out = new ByteArrayOutputStream();
+        var member = 0;
+        for (var offset = 0; ; offset += MEMBER_SIZE)
+        {
+            var start = Math.min(offset, bytes.length);
+            var length = Math.min(MEMBER_SIZE, bytes.length - start);
+
+            // Deflate the member's bytes,
+            var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(bytes, start, length);
+            deflater.finish();
+            var compressed = new byte[length + 1024];
+            var compressedLength = deflater.deflate(compressed);
+            deflater.end();
+
+            var crc = new CRC32();
+            crc.update(bytes, start, length);
+            var crcValue = (int) crc.getValue() ^ (member == corruptMember ? 1 : 0);
+
+            // then write the header with its "BC" extra field holding the member size less one,
+            var memberSize = 18 + compressedLength + 8;
+            out.writeBytes(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0 });
+            writeShort(out, memberSize - 1);
+
+            // the deflated bytes, and the CRC and size of the member.
+            out.write(compressed, 0, compressedLength);
+            writeInt(out, crcValue);
+            writeInt(out, length);
+            member++;
+
+            if (length == 0)
+            {
+                break;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the given number of lines, each holding its index and a random value that doesn't compress well
+     */
+    private String lines(int count)
+    {
+        var random = new Random(42);
+        var text = new StringBuilder();
+        for (var index = 0; index < count; index++)
+        {
+            text.append(index).append(',').append(Long.toHexString(random.nextLong())).append('\n');
+        }
+        return text.toString();
+    }
+
+    private void writeInt(ByteArrayOutputStream out, int value)
+    {
+        writeShort(out, value & 0xffff);
+        writeShort(out, (value >>> 16) & 0xffff);
+    }
+
+    private void writeShort(ByteArrayOutputStream out, int value)
+    {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+}
@@ -26,7 +26,8 @@ import com.telenav.lexakai.annotations.UmlClassDiagram;
 import static com.telenav.kivakit.core.ensure.Ensure.fail;
 
 /**
- * Identifying values for common data formats.
+ * Identifying values for common data formats. Streaming decoders for formats are found with
+ * {@link com.telenav.kivakit.data.formats.library.decoding.DataDecoders}.
  *
  * @author jonathanl (shibo)
  */
@@ -40,6 +41,8 @@ public enum DataFormat
     Database, // The data came directly from database
     XML, // OSM XML format
     PBF, // OpenStreetMap protobuf format
+    JsonLines, // One JSON value per line
+    GenericXML, // XML format other than OSM
     ;
 
     public static DataFormat dataFormatOf(Resource input)
@@ -59,6 +62,13 @@ public enum DataFormat
             case ".osm":
                 return XML;
 
+            case ".xml":
+                return GenericXML;
+
+            case ".jsonl":
+            case ".ndjson":
+                return JsonLines;
+
             default:
                 return fail("Data format of '$' is not recognized", input);
         }
@@ -79,6 +89,11 @@ public enum DataFormat
         return this == Graph;
     }
 
+    public boolean isJsonLines()
+    {
+        return this == JsonLines;
+    }
+
     public boolean isOsm()
     {
         return this == XML;
@@ -88,4 +103,9 @@ public enum DataFormat
     {
         return this == PBF;
     }
+
+    public boolean isXml()
+    {
+        return this == XML || this == GenericXML;
+    }
 }
@@ -0,0 +1,127 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import com.telenav.kivakit.core.value.count.Bytes;
+import com.telenav.kivakit.data.formats.library.internal.lexakai.DiagramDataFormat;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static com.telenav.kivakit.core.value.count.Bytes.megabytes;
+
+/**
+ * A thread-safe pool of byte buffers of the same size, which decoders use to read raw input. Reusing buffers instead of
+ * allocating them for each chunk of input keeps large, short-lived arrays out of the garbage collector when many
+ * resources are decoded, possibly at the same time.
+ *
+ * <p>
+ * A buffer is taken from the pool with {@link #acquire()} and must be given back with {@link #release(byte[])} when
+ * the decoder is done with it. If the pool is empty, a new buffer is allocated. The pool keeps at most
+ * {@link #maximumPooled()} released buffers, and buffers released beyond that are left to the garbage collector.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see DecoderSettings#bufferPool(BufferPool)
+ */
+@UmlClassDiagram(diagram = DiagramDataFormat.class)
+@LexakaiJavadoc(complete = true)
+public class BufferPool
+{
+    /** The pool shared by all decoders that are not given a pool of their own */
+    private static final BufferPool SHARED = new BufferPool(megabytes(1),
+        Runtime.getRuntime().availableProcessors() * 4);
+
+    /**
+     * Returns a pool of buffers of the given size, which holds up to the given number of released buffers
+     */
+    public static BufferPool bufferPool(Bytes bufferSize, int maximumPooled)
+    {
+        return new BufferPool(bufferSize, maximumPooled);
+    }
+
+    /**
+     * Returns the process-wide pool of one megabyte buffers
+     */
+    public static BufferPool sharedBufferPool()
+    {
+        return SHARED;
+    }
+
+    /** The size of each buffer in bytes */
+    private final int bufferSize;
+
+    /** The maximum number of released buffers to hold */
+    private final int maximumPooled;
+
+    /** Released buffers */
+    private final BlockingQueue<byte[]> pooled;
+
+    protected BufferPool(Bytes bufferSize, int maximumPooled)
+    {
+        ensure(bufferSize.asBytes() > 0 && bufferSize.asBytes() <= Integer.MAX_VALUE,
+            "Invalid buffer size: $", bufferSize);
+        ensure(maximumPooled > 0, "Pool size must be positive: $", maximumPooled);
+
+        this.bufferSize = (int) bufferSize.asBytes();
+        this.maximumPooled = maximumPooled;
+        this.pooled = new ArrayBlockingQueue<>(maximumPooled);
+    }
+
+    /**
+     * Returns a buffer from the pool, or a new buffer if the pool is empty. The contents of the buffer are undefined.
+     */
+    public byte[] acquire()
+    {
+        var buffer = pooled.poll();
+        return buffer != null
+            ? buffer
+            : new byte[bufferSize];
+    }
+
+    /**
+     * Returns the size of the buffers in this pool
+     */
+    public Bytes bufferSize()
+    {
+        return bytes(bufferSize);
+    }
+
+    /**
+     * Returns the maximum number of released buffers this pool holds
+     */
+    public int maximumPooled()
+    {
+        return maximumPooled;
+    }
+
+    /**
+     * Returns the given buffer, which must have been acquired from this pool, to the pool
+     */
+    public void release(byte[] buffer)
+    {
+        ensure(buffer.length == bufferSize, "Buffer was not acquired from this pool");
+        pooled.offer(buffer);
+    }
+}
@@ -0,0 +1,113 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import com.telenav.kivakit.data.formats.library.DataFormat;
+import com.telenav.kivakit.data.formats.library.internal.lexakai.DiagramDataFormat;
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.resource.Resource;
+import com.telenav.kivakit.resource.compression.codecs.NullCodec;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+
+import java.util.function.Consumer;
+
+/**
+ * Service provider interface for streaming decoders of a {@link DataFormat}. A decoder reads a resource and passes the
+ * records it decodes to a consumer in {@link RecordBatch}es.
+ *
+ * <p><b>Contract</b></p>
+ *
+ * <ul>
+ *     <li>Batches are passed to the consumer one at a time, in the order of the records in the resource, even if the
+ *     decoder uses more than one thread</li>
+ *     <li>Batches hold up to {@link DecoderSettings#batchSize()} records</li>
+ *     <li>A decoder uses no more than the smaller of {@link DecoderSettings#threads()} and
+ *     {@link #parallelism(Resource)} threads</li>
+ *     <li>A decoder that reads raw bytes itself may take its buffers from {@link DecoderSettings#bufferPool()}, and
+ *     releases them before {@link #decode(Resource, DecoderSettings, Consumer)} returns. Decoders built on readers that
+ *     manage their own input, such as the CSV and XML decoders, don't use the pool.</li>
+ *     <li>Decoders are thread-safe, so one decoder can decode many resources at the same time</li>
+ * </ul>
+ *
+ * <p><b>Registration</b></p>
+ *
+ * <p>
+ * Decoders that need no configuration are listed as services of this interface, in the resource
+ * META-INF/services/com.telenav.kivakit.data.formats.library.decoding.DataDecoder, and are loaded with
+ * {@link java.util.ServiceLoader} when the {@link DataDecoders} registry is first used. Decoders that are configured by
+ * the application, such as decoders that bind records to a given type, are added with
+ * {@link DataDecoders#register(DataDecoder)}.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see DataDecoders
+ * @see RecordBatch
+ */
+@UmlClassDiagram(diagram = DiagramDataFormat.class)
+@LexakaiJavadoc(complete = true)
+public interface DataDecoder<Record>
+{
+    /**
+     * Decodes the given resource, passing batches of records to the given consumer
+     *
+     * @param resource The resource to decode
+     * @param settings Settings for decoding
+     * @param consumer The consumer of record batches
+     */
+    void decode(Resource resource, DecoderSettings settings, Consumer<RecordBatch<Record>> consumer);
+
+    /**
+     * Returns true if this decoder can split a local, uncompressed {@link File} between threads. This is false by
+     * default.
+     */
+    default boolean canSplitFiles()
+    {
+        return false;
+    }
+
+    /**
+     * Returns the format that this decoder decodes
+     */
+    DataFormat format();
+
+    /**
+     * Returns the number of threads that this decoder can usefully use to decode the given resource. By default, this
+     * is the number of processors for a local, uncompressed file if the decoder {@link #canSplitFiles() can split
+     * files}, and one otherwise.
+     */
+    default int parallelism(Resource resource)
+    {
+        if (canSplitFiles() && resource instanceof File && resource.isLocal())
+        {
+            var codec = resource.codec();
+            if (codec == null || codec instanceof NullCodec)
+            {
+                return Runtime.getRuntime().availableProcessors();
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the type of record that this decoder produces
+     */
+    Class<Record> recordType();
+}
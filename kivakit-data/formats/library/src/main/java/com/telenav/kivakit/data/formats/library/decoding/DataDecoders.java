@@ -0,0 +1,176 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import com.telenav.kivakit.core.collections.list.ObjectList;
+import com.telenav.kivakit.data.formats.library.DataFormat;
+import com.telenav.kivakit.data.formats.library.internal.lexakai.DiagramDataFormat;
+import com.telenav.kivakit.resource.Resource;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
+import static com.telenav.kivakit.core.ensure.Ensure.fail;
+import static com.telenav.kivakit.data.formats.library.DataFormat.dataFormatOf;
+import static com.telenav.kivakit.data.formats.library.decoding.DecoderSettings.decoderSettings;
+
+/**
+ * A registry of {@link DataDecoder}s, which lets applications decode any supported {@link DataFormat} through one API.
+ * A decoder is chosen by format and record type, and the format of a resource is determined by
+ * {@link DataFormat#dataFormatOf(Resource)}.
+ *
+ * <pre>
+ * dataDecoders().decode(file, CsvLine.class, batch -&gt;
+ * {
+ *     for (var line : batch)
+ *     {
+ *         ...
+ *     }
+ * });</pre>
+ *
+ * <p>
+ * The process-wide registry returned by {@link #dataDecoders()} holds the decoders on the classpath that are listed as
+ * services of {@link DataDecoder}, as well as any decoders registered with {@link #register(DataDecoder)}. Decoders
+ * registered later take precedence over earlier ones for the same format and record type.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see DataDecoder
+ * @see DecoderSettings
+ */
+@UmlClassDiagram(diagram = DiagramDataFormat.class)
+@LexakaiJavadoc(complete = true)
+public class DataDecoders
+{
+    /** The process-wide registry, created lazily */
+    private static volatile DataDecoders registry;
+
+    /**
+     * Returns the process-wide registry of decoders
+     */
+    @SuppressWarnings("rawtypes")
+    public static DataDecoders dataDecoders()
+    {
+        if (registry == null)
+        {
+            synchronized (DataDecoders.class)
+            {
+                if (registry == null)
+                {
+                    var decoders = new DataDecoders();
+                    for (DataDecoder decoder : ServiceLoader.load(DataDecoder.class))
+                    {
+                        decoders.register(decoder);
+                    }
+                    registry = decoders;
+                }
+            }
+        }
+        return registry;
+    }
+
+    /** The registered decoders, in the order they were registered */
+    private final List<DataDecoder<?>> decoders = new CopyOnWriteArrayList<>();
+
+    protected DataDecoders()
+    {
+    }
+
+    /**
+     * Decodes the given resource with the decoder for its format and the given record type, using the default
+     * settings
+     *
+     * @see #decode(Resource, Class, DecoderSettings, Consumer)
+     */
+    public <Record> void decode(Resource resource, Class<Record> recordType, Consumer<RecordBatch<Record>> consumer)
+    {
+        decode(resource, recordType, decoderSettings(), consumer);
+    }
+
+    /**
+     * Decodes the given resource with the decoder for its format and the given record type
+     *
+     * @param resource The resource to decode
+     * @param recordType The type of records to decode
+     * @param settings Settings for decoding
+     * @param consumer The consumer of record batches
+     * @throws IllegalStateException Thrown if the format of the resource is not recognized, or there is no decoder
+     * for it
+     */
+    public <Record> void decode(Resource resource,
+                                Class<Record> recordType,
+                                DecoderSettings settings,
+                                Consumer<RecordBatch<Record>> consumer)
+    {
+        decoder(dataFormatOf(resource), recordType).decode(resource, settings, consumer);
+    }
+
+    /**
+     * Returns the most recently registered decoder for the given format and record type
+     *
+     * @throws IllegalStateException Thrown if there is no such decoder
+     */
+    @SuppressWarnings("unchecked")
+    public <Record> DataDecoder<Record> decoder(DataFormat format, Class<Record> recordType)
+    {
+        for (int i = decoders.size() - 1; i >= 0; i--)
+        {
+            var decoder = decoders.get(i);
+            if (decoder.format() == format && recordType.isAssignableFrom(decoder.recordType()))
+            {
+                return (DataDecoder<Record>) decoder;
+            }
+        }
+        return fail("No $ decoder for $ records", format, recordType.getSimpleName());
+    }
+
+    /**
+     * Returns all the decoders for the given format, most recently registered first
+     */
+    public ObjectList<DataDecoder<?>> decoders(DataFormat format)
+    {
+        var matching = new ObjectList<DataDecoder<?>>();
+        for (int i = decoders.size() - 1; i >= 0; i--)
+        {
+            var decoder = decoders.get(i);
+            if (decoder.format() == format)
+            {
+                matching.add(decoder);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Adds the given decoder to this registry
+     *
+     * @return This registry, for chaining
+     */
+    public DataDecoders register(DataDecoder<?> decoder)
+    {
+        decoders.add(ensureNotNull(decoder));
+        return this;
+    }
+}
@@ -0,0 +1,117 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import com.telenav.kivakit.data.formats.library.internal.lexakai.DiagramDataFormat;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.data.formats.library.decoding.BufferPool.sharedBufferPool;
+
+/**
+ * Settings for decoding a resource with a {@link DataDecoder}. By default, batches hold 1,024 records, decoders may
+ * use as many threads as there are processors, and buffers come from the {@link BufferPool#sharedBufferPool()}.
+ *
+ * <pre>
+ * dataDecoders().decode(file, CsvLine.class, decoderSettings().threads(4), batch -&gt; ...);</pre>
+ *
+ * @author jonathanl (shibo)
+ * @see DataDecoder
+ */
+@UmlClassDiagram(diagram = DiagramDataFormat.class)
+@LexakaiJavadoc(complete = true)
+public class DecoderSettings
+{
+    /**
+     * Returns the default settings
+     */
+    public static DecoderSettings decoderSettings()
+    {
+        return new DecoderSettings();
+    }
+
+    /** The number of records in each batch */
+    private int batchSize = 1_024;
+
+    /** The maximum number of threads a decoder may use */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** The pool of buffers for reading raw input */
+    private BufferPool bufferPool = sharedBufferPool();
+
+    protected DecoderSettings()
+    {
+    }
+
+    /**
+     * Returns the number of records in each batch
+     */
+    public int batchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of records in each batch
+     */
+    public DecoderSettings batchSize(int batchSize)
+    {
+        ensure(batchSize > 0, "Batch size must be positive: $", batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Returns the pool of buffers for decoders that read raw input themselves
+     */
+    public BufferPool bufferPool()
+    {
+        return bufferPool;
+    }
+
+    /**
+     * Sets the pool of buffers for reading raw input
+     */
+    public DecoderSettings bufferPool(BufferPool bufferPool)
+    {
+        this.bufferPool = bufferPool;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of threads a decoder may use. A decoder uses fewer if it can't split a resource that
+     * many ways, as reported by {@link DataDecoder#parallelism(com.telenav.kivakit.resource.Resource)}.
+     */
+    public int threads()
+    {
+        return threads;
+    }
+
+    /**
+     * Sets the maximum number of threads a decoder may use
+     */
+    public DecoderSettings threads(int threads)
+    {
+        ensure(threads > 0, "Thread count must be positive: $", threads);
+        this.threads = threads;
+        return this;
+    }
+}
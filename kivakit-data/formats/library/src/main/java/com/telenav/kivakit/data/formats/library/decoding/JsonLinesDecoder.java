@@ -0,0 +1,146 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import com.telenav.kivakit.data.formats.library.DataFormat;
+import com.telenav.kivakit.resource.Resource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static com.telenav.kivakit.core.ensure.Ensure.fail;
+import static com.telenav.kivakit.data.formats.library.DataFormat.JsonLines;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Decodes JSON Lines (also known as newline-delimited JSON) into the text of each JSON value, one record per line.
+ * Lines are split on the raw bytes of the input, which is read with a buffer from the {@link BufferPool}, and only
+ * whole lines are decoded from UTF-8. A carriage return before a newline is removed, and blank lines are skipped. The
+ * JSON itself is not parsed, so applications can use the JSON library of their choice.
+ *
+ * @author jonathanl (shibo)
+ */
+public class JsonLinesDecoder implements DataDecoder<String>
+{
+    @Override
+    public void decode(Resource resource, DecoderSettings settings, Consumer<RecordBatch<String>> consumer)
+    {
+        var batcher = new RecordBatcher<>(settings.batchSize(), consumer);
+        var pool = settings.bufferPool();
+        var buffer = pool.acquire();
+        try (var in = resource.openForReading())
+        {
+            // The start of a line that was cut off at the end of the buffer, if any
+            var partial = new byte[0];
+            var partialLength = 0;
+
+            int read;
+            while ((read = in.read(buffer)) >= 0)
+            {
+                // Go through each line that ends in the buffer,
+                var start = 0;
+                for (int at = 0; at < read; at++)
+                {
+                    if (buffer[at] == '\n')
+                    {
+                        // and if the line started in an earlier buffer,
+                        if (partialLength > 0)
+                        {
+                            // join the two parts of the line,
+                            partial = append(partial, partialLength, buffer, start, at);
+                            partialLength += at - start;
+                            line(partial, 0, partialLength, batcher);
+                            partialLength = 0;
+                        }
+                        else
+                        {
+                            // otherwise, decode the line right out of the buffer.
+                            line(buffer, start, at, batcher);
+                        }
+                        start = at + 1;
+                    }
+                }
+
+                // Keep any line that doesn't end in this buffer.
+                partial = append(partial, partialLength, buffer, start, read);
+                partialLength += read - start;
+            }
+
+            // Decode any last line that has no newline.
+            line(partial, 0, partialLength, batcher);
+        }
+        catch (IOException e)
+        {
+            fail(e, "Unable to read: $", resource);
+        }
+        finally
+        {
+            pool.release(buffer);
+        }
+        batcher.flush();
+    }
+
+    @Override
+    public DataFormat format()
+    {
+        return JsonLines;
+    }
+
+    @Override
+    public Class<String> recordType()
+    {
+        return String.class;
+    }
+
+    /**
+     * Returns the given array with the given range of bytes appended after its first length bytes, growing it if
+     * necessary
+     */
+    private byte[] append(byte[] to, int length, byte[] from, int start, int end)
+    {
+        var needed = length + (end - start);
+        if (needed > to.length)
+        {
+            to = Arrays.copyOf(to, Math.max(needed, to.length * 2));
+        }
+        System.arraycopy(from, start, to, length, end - start);
+        return to;
+    }
+
+    /**
+     * Adds the line in the given range of bytes to the given batcher, unless it is blank
+     */
+    private void line(byte[] bytes, int start, int end, RecordBatcher<String> batcher)
+    {
+        if (end > start && bytes[end - 1] == '\r')
+        {
+            end--;
+        }
+        for (int at = start; at < end; at++)
+        {
+            if (!Character.isWhitespace(bytes[at]))
+            {
+                batcher.add(new String(bytes, start, end - start, UTF_8));
+                return;
+            }
+        }
+    }
+}
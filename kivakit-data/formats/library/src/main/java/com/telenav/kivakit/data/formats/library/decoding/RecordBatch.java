@@ -0,0 +1,154 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import com.telenav.kivakit.data.formats.library.internal.lexakai.DiagramDataFormat;
+import com.telenav.lexakai.annotations.LexakaiJavadoc;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+
+/**
+ * A batch of records decoded by a {@link DataDecoder}. Decoders hand records to applications a batch at a time, so
+ * the per-record cost of passing records between threads and calling consumers is spread over many records. Each batch
+ * has a {@link #sequence()} number, which is its position in the sequence of batches decoded from a resource.
+ *
+ * @author jonathanl (shibo)
+ * @see DataDecoder
+ * @see RecordBatcher
+ */
+@UmlClassDiagram(diagram = DiagramDataFormat.class)
+@LexakaiJavadoc(complete = true)
+public class RecordBatch<Record> implements Iterable<Record>
+{
+    /** The records */
+    private final Object[] records;
+
+    /** The number of records in this batch */
+    private int size;
+
+    /** The position of this batch in the batches decoded from a resource */
+    private final long sequence;
+
+    /**
+     * Creates an empty batch that can hold the given number of records
+     *
+     * @param sequence The position of this batch in the batches decoded from a resource
+     * @param capacity The maximum number of records in the batch
+     */
+    public RecordBatch(long sequence, int capacity)
+    {
+        ensure(capacity > 0, "Batch capacity must be positive: $", capacity);
+        this.sequence = sequence;
+        this.records = new Object[capacity];
+    }
+
+    /**
+     * Adds the given record to the end of this batch
+     *
+     * @throws IllegalStateException Thrown if the batch is full
+     */
+    public void add(Record record)
+    {
+        ensure(!isFull(), "Batch is full");
+        records[size++] = record;
+    }
+
+    /**
+     * Returns the maximum number of records in this batch
+     */
+    public int capacity()
+    {
+        return records.length;
+    }
+
+    /**
+     * Returns the record at the given index
+     */
+    @SuppressWarnings("unchecked")
+    public Record get(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (Record) records[index];
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean isFull()
+    {
+        return size == records.length;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> iterator()
+    {
+        return new Iterator<>()
+        {
+            private int next;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Record next()
+            {
+                if (next >= size)
+                {
+                    throw new NoSuchElementException();
+                }
+                return (Record) records[next++];
+            }
+        };
+    }
+
+    /**
+     * Returns the position of this batch in the batches decoded from a resource, starting at zero
+     */
+    public long sequence()
+    {
+        return sequence;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[RecordBatch sequence = " + sequence + ", size = " + size + "]";
+    }
+}
@@ -0,0 +1,97 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import java.util.function.Consumer;
+
+/**
+ * Collects records into {@link RecordBatch}es of a fixed size, passing each batch to a consumer when it is full. The
+ * last, partial batch is passed to the consumer by {@link #flush()}. Batches are numbered in the order they are
+ * passed to the consumer. A batcher is used from one thread at a time.
+ *
+ * <pre>
+ * var batcher = new RecordBatcher&lt;&gt;(settings.batchSize(), consumer);
+ * for (var record : records)
+ * {
+ *     batcher.add(record);
+ * }
+ * batcher.flush();</pre>
+ *
+ * @author jonathanl (shibo)
+ * @see RecordBatch
+ */
+public class RecordBatcher<Record> implements Consumer<Record>
+{
+    /** The number of records in each batch */
+    private final int batchSize;
+
+    /** The consumer of batches */
+    private final Consumer<RecordBatch<Record>> consumer;
+
+    /** The batch being filled, or null if no records have been added since the last batch was passed on */
+    private RecordBatch<Record> batch;
+
+    /** The sequence number of the next batch */
+    private long sequence;
+
+    public RecordBatcher(int batchSize, Consumer<RecordBatch<Record>> consumer)
+    {
+        this.batchSize = batchSize;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Adds the given record to the current batch, passing the batch to the consumer if it becomes full
+     */
+    @Override
+    public void accept(Record record)
+    {
+        add(record);
+    }
+
+    /**
+     * Adds the given record to the current batch, passing the batch to the consumer if it becomes full
+     */
+    public void add(Record record)
+    {
+        if (batch == null)
+        {
+            batch = new RecordBatch<>(sequence++, batchSize);
+        }
+        batch.add(record);
+        if (batch.isFull())
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Passes any partial batch to the consumer
+     */
+    public void flush()
+    {
+        if (batch != null)
+        {
+            var full = batch;
+            batch = null;
+            consumer.accept(full);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import com.telenav.kivakit.data.formats.library.DataFormat;
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.resource.Resource;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+import static com.telenav.kivakit.data.formats.library.DataFormat.CSV;
+import static com.telenav.kivakit.data.formats.library.DataFormat.GenericXML;
+import static com.telenav.kivakit.data.formats.library.DataFormat.JsonLines;
+import static com.telenav.kivakit.data.formats.library.DataFormat.XML;
+import static com.telenav.kivakit.data.formats.library.DataFormat.dataFormatOf;
+import static com.telenav.kivakit.data.formats.library.decoding.DataDecoders.dataDecoders;
+import static com.telenav.kivakit.data.formats.library.decoding.JsonLinesDecoderTest.jsonLinesFile;
+
+public class DataDecodersTest extends UnitTest
+{
+    /**
+     * A decoder that yields nothing, for testing lookup
+     */
+    private static class TestDecoder<Record> implements DataDecoder<Record>
+    {
+        private final DataFormat format;
+
+        private final Class<Record> recordType;
+
+        TestDecoder(DataFormat format, Class<Record> recordType)
+        {
+            this.format = format;
+            this.recordType = recordType;
+        }
+
+        @Override
+        public void decode(Resource resource, DecoderSettings settings, Consumer<RecordBatch<Record>> consumer)
+        {
+        }
+
+        @Override
+        public DataFormat format()
+        {
+            return format;
+        }
+
+        @Override
+        public Class<Record> recordType()
+        {
+            return recordType;
+        }
+    }
+
+    @Test
+    public void testDataFormats()
+    {
+        ensureEqual(dataFormatOf(File.file("data.csv")), CSV);
+        ensureEqual(dataFormatOf(File.file("data.jsonl")), JsonLines);
+        ensureEqual(dataFormatOf(File.file("data.ndjson")), JsonLines);
+        ensureEqual(dataFormatOf(File.file("data.osm")), XML);
+
+        // A generic XML file is XML, but not OSM.
+        var format = dataFormatOf(File.file("data.xml"));
+        ensureEqual(format, GenericXML);
+        ensure(format.isXml());
+        ensure(!format.isOsm());
+    }
+
+    @Test
+    public void testDecode() throws IOException
+    {
+        // The registry decodes a resource with the service-loaded decoder for its format
+        var file = jsonLinesFile("{\"id\":1}\n{\"id\":2}\n");
+        try
+        {
+            var lines = new ArrayList<String>();
+            dataDecoders().decode(file, String.class, batch -> batch.forEach(lines::add));
+            ensureEqual(lines.size(), 2);
+            ensureEqual(lines.get(1), "{\"id\":2}");
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLookup()
+    {
+        var decoders = new DataDecoders();
+        var csvStrings = new TestDecoder<>(CSV, String.class);
+        var csvIntegers = new TestDecoder<>(CSV, Integer.class);
+        var json = new TestDecoder<>(JsonLines, String.class);
+        decoders.register(csvStrings).register(csvIntegers).register(json);
+
+        // Decoders are found by format and record type,
+        ensure(decoders.decoder(CSV, String.class) == csvStrings);
+        ensure(decoders.decoder(CSV, Integer.class) == csvIntegers);
+        ensure(decoders.decoder(JsonLines, String.class) == json);
+
+        // a record type matches decoders of its subtypes,
+        ensure(decoders.decoder(CSV, Number.class) == (DataDecoder<?>) csvIntegers);
+
+        // and there is no decoder for other formats or types.
+        ensure(lookupFails(decoders, XML, String.class));
+        ensure(lookupFails(decoders, JsonLines, Integer.class));
+
+        // Decoders registered later take precedence.
+        var replacement = new TestDecoder<>(CSV, String.class);
+        decoders.register(replacement);
+        ensure(decoders.decoder(CSV, String.class) == replacement);
+        ensureEqual(decoders.decoders(CSV).size(), 3);
+        ensure(decoders.decoders(CSV).get(0) == replacement);
+    }
+
+    @Test
+    public void testParallelism()
+    {
+        // Decoders that can't split files use one thread
+        ensureEqual(new TestDecoder<>(CSV, String.class).parallelism(File.file("data.csv")), 1);
+        ensureEqual(new JsonLinesDecoder().parallelism(File.file("data.jsonl")), 1);
+    }
+
+    @Test
+    public void testServices()
+    {
+        var decoders = dataDecoders().decoders(JsonLines);
+        ensure(decoders.stream().anyMatch(decoder -> decoder instanceof JsonLinesDecoder));
+    }
+
+    private boolean lookupFails(DataDecoders decoders, DataFormat format, Class<?> recordType)
+    {
+        try
+        {
+            decoders.decoder(format, recordType);
+            return false;
+        }
+        catch (Exception e)
+        {
+            return true;
+        }
+    }
+}
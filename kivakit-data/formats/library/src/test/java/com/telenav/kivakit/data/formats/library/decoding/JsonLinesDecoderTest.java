@@ -0,0 +1,125 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static com.telenav.kivakit.data.formats.library.decoding.BufferPool.bufferPool;
+import static com.telenav.kivakit.data.formats.library.decoding.DecoderSettings.decoderSettings;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class JsonLinesDecoderTest extends UnitTest
+{
+    @Test
+    public void testBatches() throws IOException
+    {
+        var text = new StringBuilder();
+        for (var index = 0; index < 100; index++)
+        {
+            text.append("{\"id\":").append(index).append("}\n");
+        }
+
+        var file = jsonLinesFile(text.toString());
+        try
+        {
+            var batches = new ArrayList<RecordBatch<String>>();
+            new JsonLinesDecoder().decode(file, decoderSettings()
+                    .batchSize(30)
+                    .bufferPool(bufferPool(bytes(10), 1)), batches::add);
+
+            ensureEqual(batches.size(), 4);
+            ensureEqual(batches.get(3).size(), 10);
+
+            var index = 0;
+            for (var batch : batches)
+            {
+                for (var line : batch)
+                {
+                    ensureEqual(line, "{\"id\":" + index++ + "}");
+                }
+            }
+            ensureEqual(index, 100);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLines() throws IOException
+    {
+        // Lines longer and shorter than the buffer, with multibyte characters, carriage returns and blank lines,
+        // and a last line with no newline
+        var lines = List.of(
+                "{\"id\":1}",
+                "{\"name\":\"café ☃ 😀\"}",
+                "{\"text\":\"a line that is longer than several buffers\"}",
+                "[]",
+                "{\"id\":5}");
+        var text = lines.get(0) + "\n"
+                + lines.get(1) + "\r\n"
+                + "\n  \n"
+                + lines.get(2) + "\n"
+                + lines.get(3) + "\r\n"
+                + lines.get(4);
+
+        var file = jsonLinesFile(text);
+        try
+        {
+            // Read with buffers of many small sizes, so that lines and characters are cut at every position
+            for (var bufferSize = 1; bufferSize <= 16; bufferSize++)
+            {
+                var pool = bufferPool(bytes(bufferSize), 1);
+                var buffer = pool.acquire();
+                pool.release(buffer);
+                ensureEqual(decode(file, pool), lines);
+
+                // and the pooled buffer is used and given back.
+                ensure(pool.acquire() == buffer);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private List<String> decode(File file, BufferPool pool)
+    {
+        var lines = new ArrayList<String>();
+        new JsonLinesDecoder().decode(file, decoderSettings().bufferPool(pool), batch -> batch.forEach(lines::add));
+        return lines;
+    }
+
+    static File jsonLinesFile(String text) throws IOException
+    {
+        var path = Files.createTempFile("records", ".jsonl");
+        Files.writeString(path, text, UTF_8);
+        return File.file(path.toString());
+    }
+}
@@ -0,0 +1,122 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.data.formats.library.decoding;
+
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RecordBatcherTest extends UnitTest
+{
+    @Test
+    public void testBatch()
+    {
+        var batch = new RecordBatch<String>(7, 3);
+        ensure(batch.isEmpty());
+        ensureEqual(batch.sequence(), 7L);
+        ensureEqual(batch.capacity(), 3);
+
+        batch.add("a");
+        batch.add("b");
+        ensureEqual(batch.size(), 2);
+        ensureEqual(batch.get(1), "b");
+        ensure(!batch.isFull());
+
+        batch.add("c");
+        ensure(batch.isFull());
+        ensureEqual(records(batch), List.of("a", "b", "c"));
+
+        // A full batch can't be added to, and records past the end can't be read.
+        var failed = false;
+        try
+        {
+            batch.add("d");
+        }
+        catch (Exception e)
+        {
+            failed = true;
+        }
+        ensure(failed);
+
+        failed = false;
+        try
+        {
+            batch.get(3);
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            failed = true;
+        }
+        ensure(failed);
+    }
+
+    @Test
+    public void testBatcher()
+    {
+        var batches = new ArrayList<RecordBatch<Integer>>();
+        var batcher = new RecordBatcher<Integer>(4, batches::add);
+        for (var index = 0; index < 10; index++)
+        {
+            batcher.add(index);
+        }
+
+        // Full batches are passed on as they fill,
+        ensureEqual(batches.size(), 2);
+
+        // and the last, partial batch when the batcher is flushed, but only once.
+        batcher.flush();
+        batcher.flush();
+        ensureEqual(batches.size(), 3);
+
+        for (var index = 0; index < batches.size(); index++)
+        {
+            ensureEqual(batches.get(index).sequence(), (long) index);
+        }
+        ensureEqual(records(batches.get(0)), List.of(0, 1, 2, 3));
+        ensureEqual(records(batches.get(1)), List.of(4, 5, 6, 7));
+        ensureEqual(records(batches.get(2)), List.of(8, 9));
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        // A batcher with no records passes on no batches
+        var batches = new ArrayList<RecordBatch<Integer>>();
+        var batcher = new RecordBatcher<Integer>(4, batches::add);
+        batcher.flush();
+        ensure(batches.isEmpty());
+
+        // and a batch that exactly fills is not passed on again by flushing.
+        for (var index = 0; index < 4; index++)
+        {
+            batcher.accept(index);
+        }
+        batcher.flush();
+        ensureEqual(batches.size(), 1);
+    }
+
+    private <T> List<T> records(RecordBatch<T> batch)
+    {
+        var records = new ArrayList<T>();
+        batch.forEach(records::add);
+        return records;
+    }
+}
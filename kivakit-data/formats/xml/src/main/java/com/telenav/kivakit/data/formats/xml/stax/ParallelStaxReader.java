@@ -0,0 +1,819 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import com.telenav.kivakit.component.BaseComponent;
+import com.telenav.kivakit.core.value.count.Bytes;
+import com.telenav.kivakit.filesystem.File;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.value.count.Bytes.megabytes;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPathMatcher.WILDCARD;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPathMatcher.staxPathMatcher;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+
+/**
+ * <p>
+ * Reads the repeated records of a large local XML {@link File} on multiple cores. Records are the elements at a given
+ * {@link StaxPath}, such as osm/node in an OpenStreetMap dump, which may contain wildcards as described in
+ * {@link StaxPathMatcher}. Each record is mapped to an object by a function that is given a {@link StaxCursorReader}
+ * positioned at the record's open tag.
+ * </p>
+ *
+ * <p><b>Splitting</b></p>
+ *
+ * <p>
+ * A splitting thread scans the raw bytes of the file, tracking only element depth and the open tags above the record
+ * level. It cuts the run of records into chunks of roughly {@link #chunkSize(Bytes)} bytes, always before a record's
+ * open tag, and also wherever the records' parent element closes. Each chunk is parsed by a worker on a pool of
+ * {@link #threads(int)} threads. Before parsing, the chunk is wrapped in copies of the open tags of its ancestor
+ * elements (with their attributes and namespace declarations) and the matching close tags, so the paths that workers
+ * see are the same as they would be in the whole document. The file's XML declaration is copied as well.
+ * </p>
+ *
+ * <p>
+ * The file must use an encoding in which the ASCII characters of markup are single bytes, such as UTF-8. Entities
+ * declared in a document type declaration are not available to workers, and content other than records between
+ * chunks, such as comments and elements that don't match the record path, is skipped.
+ * </p>
+ *
+ * <p><b>Results</b></p>
+ *
+ * <p>
+ * Mapped objects are produced in file order by {@link #records()} or {@link #forEach(Consumer)}. Parsed chunks wait in
+ * a bounded queue of {@link #queueSize(int)} chunks, so if the consumer is slower than the workers, splitting and
+ * parsing pause and memory use stays constant. A mapping function that returns null skips the record. After the
+ * function returns, the worker skips any part of the record that the function did not read. The function may also
+ * read past the record's close tag, as far as the open tag of the next record.
+ * </p>
+ *
+ * <p>
+ * If a chunk can't be parsed, for example because it refers to an entity declared in a document type declaration,
+ * the stream throws an exception when it reaches the chunk, rather than leaving out the rest of its records.
+ * </p>
+ *
+ * <pre>
+ * var reader = listenTo(new ParallelStaxReader&lt;&gt;(file, parseXmlPath("osm/node"), in -&gt; in.attribute("id")));
+ * try (var identifiers = reader.records())
+ * {
+ *     identifiers.forEach(...);
+ * }
+ * </pre>
+ *
+ * @author jonathanl (shibo)
+ * @see StaxCursorReader
+ * @see StaxPathMatcher
+ */
+@SuppressWarnings("unused")
+public class ParallelStaxReader<T> extends BaseComponent
+{
+    /**
+     * A range of bytes in the file holding whole records, and the markup needed to parse it on its own
+     */
+    private static class Chunk
+    {
+        /** Offset of the first byte of the chunk */
+        final long start;
+
+        /** Offset of the byte after the chunk */
+        final long end;
+
+        /** The XML declaration and ancestor open tags */
+        final byte[] prefix;
+
+        /** The ancestor close tags */
+        final byte[] suffix;
+
+        Chunk(long start, long end, byte[] prefix, byte[] suffix)
+        {
+            this.start = start;
+            this.end = end;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        int size()
+        {
+            return (int) (end - start);
+        }
+    }
+
+    /** Marks the end of the chunks */
+    private static final CompletableFuture<?> END = CompletableFuture.completedFuture(null);
+
+    /** The file to read */
+    private final File file;
+
+    /** The path of the records to read */
+    private final StaxPath records;
+
+    /** The elements of the record path */
+    private final List<String> elements = new ArrayList<>();
+
+    /** The function that maps each record to an object */
+    private final Function<StaxCursorReader, T> mapper;
+
+    /** The factory for the stream readers that parse chunks */
+    private final XMLInputFactory factory = StaxCursorReader.inputFactory();
+
+    /** The approximate number of bytes in each chunk */
+    private Bytes chunkSize = megabytes(16);
+
+    /** The number of worker threads */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** The maximum number of chunks being parsed or waiting to be consumed, or zero for twice the number of threads */
+    private int queueSize;
+
+    /**
+     * @param file The XML file to read
+     * @param records The path of the records to read, which must be below the root element
+     * @param mapper A thread-safe function that maps the record that the given reader is at to an object
+     */
+    public ParallelStaxReader(File file, StaxPath records, Function<StaxCursorReader, T> mapper)
+    {
+        this.file = file;
+        this.records = records;
+        this.mapper = mapper;
+
+        for (var element : records.elements())
+        {
+            if (!element.isEmpty())
+            {
+                elements.add(element);
+            }
+        }
+        ensure(elements.size() >= 2, "Records must be below the root element: $", records);
+    }
+
+    /**
+     * Sets the approximate size of the chunks that are parsed in parallel (16 megabytes by default). Records are never
+     * split, so a chunk may be larger.
+     */
+    public ParallelStaxReader<T> chunkSize(Bytes chunkSize)
+    {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Maps each record in the file, passing the results to the given consumer in file order
+     */
+    public void forEach(Consumer<T> consumer)
+    {
+        try (var records = records())
+        {
+            records.forEach(consumer);
+        }
+    }
+
+    /**
+     * Sets the maximum number of chunks that can be parsed or waiting to be consumed at once (twice the number of
+     * threads by default)
+     */
+    public ParallelStaxReader<T> queueSize(int queueSize)
+    {
+        ensure(queueSize > 0);
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * Returns a sequential stream of the mapped records, in file order. Reading starts when this method is called. The
+     * stream should be closed, so that reading stops if the stream is not consumed to the end.
+     */
+    public Stream<T> records()
+    {
+        var executor = Executors.newFixedThreadPool(threads, runnable ->
+        {
+            var thread = new Thread(runnable, "ParallelStaxReader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var queue = new ArrayBlockingQueue<CompletableFuture<List<T>>>(queueSize > 0 ? queueSize : threads * 2);
+
+        var splitter = new Thread(() -> split(queue, executor), "ParallelStaxReader-splitter");
+        splitter.setDaemon(true);
+        splitter.start();
+
+        var iterator = new Iterator<T>()
+        {
+            private Iterator<T> batch = Collections.emptyIterator();
+
+            private boolean done;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (!batch.hasNext() && !done)
+                {
+                    var next = take(queue);
+                    if (next == END)
+                    {
+                        done = true;
+                        executor.shutdown();
+                    }
+                    else
+                    {
+                        batch = join(next).iterator();
+                    }
+                }
+                return batch.hasNext();
+            }
+
+            @Override
+            public T next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return batch.next();
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, ORDERED | NONNULL), false)
+                .onClose(() ->
+                {
+                    splitter.interrupt();
+                    executor.shutdownNow();
+                });
+    }
+
+    /**
+     * Sets the number of worker threads (the number of processors by default)
+     */
+    public ParallelStaxReader<T> threads(int threads)
+    {
+        ensure(threads > 0);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Returns the results of the given chunk, throwing an exception if it failed
+     */
+    private List<T> join(CompletableFuture<List<T>> chunk)
+    {
+        try
+        {
+            return chunk.join();
+        }
+        catch (CompletionException e)
+        {
+            throw new IllegalStateException("Unable to read " + file, e.getCause());
+        }
+    }
+
+    /**
+     * Parses the records in the given chunk. This runs on a worker thread.
+     */
+    private List<T> parse(Chunk chunk)
+    {
+        // Read the chunk into memory,
+        var bytes = ByteBuffer.allocate(chunk.size());
+        try (var channel = FileChannel.open(file.asJavaPath(), READ))
+        {
+            while (bytes.hasRemaining())
+            {
+                if (channel.read(bytes, chunk.start + bytes.position()) < 0)
+                {
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to read " + file, e);
+        }
+
+        // wrap it in its ancestor elements,
+        var in = new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(chunk.prefix),
+                new ByteArrayInputStream(bytes.array(), 0, bytes.position()),
+                new ByteArrayInputStream(chunk.suffix))));
+
+        // and map each record in it.
+        var results = new ArrayList<T>();
+        var matcher = staxPathMatcher(records);
+        try (var reader = StaxCursorReader.openXmlCursor(file, in, factory))
+        {
+            while (reader.hasNext())
+            {
+                if (reader.isAtOpenTag() && reader.state(matcher).isAt())
+                {
+                    var event = reader.events();
+                    var result = mapper.apply(reader);
+                    if (result != null)
+                    {
+                        results.add(result);
+                    }
+
+                    // Skip whatever is left of the record,
+                    if (reader.events() == event)
+                    {
+                        reader.next();
+                    }
+                    while (reader.state(matcher).isInside() && reader.hasNext())
+                    {
+                        reader.next();
+                    }
+
+                    // unless the function has read as far as the next record, which is mapped without moving on.
+                    if (reader.isAtOpenTag() && reader.state(matcher).isAt())
+                    {
+                        continue;
+                    }
+                }
+                reader.next();
+            }
+
+            // If the chunk could not be parsed, fail rather than dropping the rest of its records
+            if (reader.failure() != null)
+            {
+                throw new IllegalStateException("Unable to parse bytes " + chunk.start + " to " + chunk.end
+                        + " of " + file, reader.failure());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Splits the file into chunks, submitting each chunk to the executor and queueing its result. This runs on the
+     * splitting thread.
+     */
+    @SuppressWarnings("unchecked")
+    private void split(BlockingQueue<CompletableFuture<List<T>>> queue, ExecutorService executor)
+    {
+        try
+        {
+            try (var channel = FileChannel.open(file.asJavaPath(), READ))
+            {
+                new Splitter(channel, chunk -> queue.put(CompletableFuture.supplyAsync(() -> parse(chunk), executor))).split();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                queue.put(CompletableFuture.failedFuture(e));
+            }
+            queue.put((CompletableFuture<List<T>>) END);
+        }
+        catch (InterruptedException ignored)
+        {
+            // The stream was closed
+        }
+    }
+
+    /**
+     * Returns the next chunk result from the queue
+     */
+    private CompletableFuture<List<T>> take(BlockingQueue<CompletableFuture<List<T>>> queue)
+    {
+        try
+        {
+            return queue.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading " + file, e);
+        }
+    }
+
+    /**
+     * Receives chunks from the {@link Splitter}
+     */
+    private interface ChunkConsumer
+    {
+        void accept(Chunk chunk) throws InterruptedException;
+    }
+
+    /**
+     * Scans the bytes of the file for record boundaries
+     */
+    private class Splitter
+    {
+        /** The file */
+        private final FileChannel channel;
+
+        /** The consumer of chunks */
+        private final ChunkConsumer chunks;
+
+        /** The bytes being scanned */
+        private final byte[] buffer = new byte[1024 * 1024];
+
+        /** The number of bytes in the buffer */
+        private int limit;
+
+        /** The index of the next byte in the buffer */
+        private int index;
+
+        /** The offset in the file of the first byte in the buffer */
+        private long base;
+
+        /** The number of open elements */
+        private int depth;
+
+        /** The record depth, which is the number of elements in the record path */
+        private final int recordDepth = elements.size();
+
+        /** The raw open tag of each ancestor of the records */
+        private final byte[][] ancestorTags = new byte[recordDepth - 1][];
+
+        /** The qualified name of each ancestor of the records */
+        private final String[] ancestorNames = new String[recordDepth - 1];
+
+        /** True if the current ancestors match the record path */
+        private boolean ancestorsMatch;
+
+        /** True if an ancestor has changed since the prefix and suffix were built */
+        private boolean ancestorsChanged;
+
+        /** The local name of records, or null for a wildcard */
+        private final byte[] recordName;
+
+        /** The qualified name of the tag being scanned */
+        private byte[] name = new byte[64];
+
+        /** The length of the name */
+        private int nameLength;
+
+        /** The XML declaration, if any */
+        private byte[] declaration = new byte[0];
+
+        /** The start of the chunk being scanned, or -1 if records have not been reached */
+        private long chunkStart = -1;
+
+        /** The prefix and suffix for the chunk being scanned */
+        private byte[] prefix;
+
+        private byte[] suffix;
+
+        Splitter(FileChannel channel, ChunkConsumer chunks)
+        {
+            this.channel = channel;
+            this.chunks = chunks;
+
+            var last = elements.get(recordDepth - 1);
+            this.recordName = last.equals(WILDCARD) ? null : last.getBytes(UTF_8);
+        }
+
+        /**
+         * Scans the file, passing each chunk to the consumer
+         */
+        void split() throws IOException, InterruptedException
+        {
+            int c;
+            while ((c = read()) >= 0)
+            {
+                if (c == '<')
+                {
+                    tag(position() - 1);
+                }
+            }
+            if (chunkStart >= 0)
+            {
+                end(position());
+            }
+        }
+
+        /**
+         * Returns true if the current ancestors match the record path
+         */
+        private boolean ancestorsMatch()
+        {
+            for (var index = 0; index < recordDepth - 1; index++)
+            {
+                var element = elements.get(index);
+                if (!element.equals(WILDCARD) && !element.equals(localName(ancestorNames[index])))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the bytes of the file between the given offsets
+         */
+        private byte[] bytes(long start, long end) throws IOException
+        {
+            var bytes = ByteBuffer.allocate((int) (end - start));
+            while (bytes.hasRemaining())
+            {
+                if (channel.read(bytes, start + bytes.position()) < 0)
+                {
+                    break;
+                }
+            }
+            return bytes.array();
+        }
+
+        /**
+         * Ends the current chunk at the given offset
+         */
+        private void end(long end) throws InterruptedException
+        {
+            if (end > chunkStart)
+            {
+                chunks.accept(new Chunk(chunkStart, end, prefix, suffix));
+            }
+            chunkStart = -1;
+        }
+
+        /**
+         * Returns true if the local part of the current tag name is the record name
+         */
+        private boolean isRecordName()
+        {
+            if (recordName == null)
+            {
+                return true;
+            }
+            var start = 0;
+            for (var index = 0; index < nameLength; index++)
+            {
+                if (name[index] == ':')
+                {
+                    start = index + 1;
+                }
+            }
+            return nameLength - start == recordName.length
+                    && Arrays.equals(name, start, nameLength, recordName, 0, recordName.length);
+        }
+
+        private String localName(String qualified)
+        {
+            return qualified.substring(qualified.indexOf(':') + 1);
+        }
+
+        /**
+         * Scans an open tag starting at the given offset, whose first name character has been read
+         */
+        private void openTag(long start, int c) throws IOException, InterruptedException
+        {
+            // Read the tag name,
+            nameLength = 0;
+            while (c >= 0 && c != '>' && c != '/' && !Character.isWhitespace(c))
+            {
+                if (nameLength == name.length)
+                {
+                    name = Arrays.copyOf(name, nameLength * 2);
+                }
+                name[nameLength++] = (byte) c;
+                c = read();
+            }
+
+            // skip any attributes, noting whether the tag closes itself,
+            var selfClosing = false;
+            while (c >= 0 && c != '>')
+            {
+                if (c == '"' || c == '\'')
+                {
+                    var quote = c;
+                    do
+                    {
+                        c = read();
+                    }
+                    while (c >= 0 && c != quote);
+                }
+                selfClosing = c == '/';
+                c = read();
+            }
+
+            // and if the tag is an ancestor of the records,
+            if (depth < recordDepth - 1)
+            {
+                // save it.
+                ancestorTags[depth] = bytes(start, position());
+                ancestorNames[depth] = new String(name, 0, nameLength, UTF_8);
+                if (depth == recordDepth - 2)
+                {
+                    ancestorsMatch = ancestorsMatch();
+                }
+            }
+
+            // If the tag is a record,
+            if (depth == recordDepth - 1 && ancestorsMatch && isRecordName())
+            {
+                // and records have just been reached,
+                if (chunkStart < 0)
+                {
+                    // start a chunk,
+                    start(start);
+                }
+                else if (start - chunkStart >= chunkSize.asBytes())
+                {
+                    // or if the chunk is big enough, end it and start another.
+                    end(start);
+                    start(start);
+                }
+            }
+
+            if (!selfClosing)
+            {
+                depth++;
+            }
+        }
+
+        /**
+         * Returns the offset in the file of the next byte
+         */
+        private long position()
+        {
+            return base + index;
+        }
+
+        /**
+         * Returns the next byte of the file, or -1 at the end of the file
+         */
+        private int read() throws IOException
+        {
+            if (index == limit)
+            {
+                base += limit;
+                index = 0;
+                limit = Math.max(0, channel.read(ByteBuffer.wrap(buffer)));
+                if (limit == 0)
+                {
+                    return -1;
+                }
+            }
+            return buffer[index++] & 0xff;
+        }
+
+        /**
+         * Skips past the given terminator
+         */
+        private void skipPast(String terminator) throws IOException
+        {
+            var matched = 0;
+            int c;
+            while ((c = read()) >= 0)
+            {
+                if (c == terminator.charAt(matched))
+                {
+                    if (++matched == terminator.length())
+                    {
+                        return;
+                    }
+                }
+                else if (matched > 0 && c == terminator.charAt(0) && c == terminator.charAt(matched - 1))
+                {
+                    // A repeated first character, as in "]]]>", keeps the current match
+                }
+                else
+                {
+                    matched = c == terminator.charAt(0) ? 1 : 0;
+                }
+            }
+        }
+
+        /**
+         * Skips a declaration such as a document type, which may have an internal subset in brackets
+         */
+        private void skipDeclaration() throws IOException
+        {
+            var brackets = 0;
+            int c;
+            while ((c = read()) >= 0)
+            {
+                switch (c)
+                {
+                    case '"', '\'' ->
+                    {
+                        var quote = c;
+                        do
+                        {
+                            c = read();
+                        }
+                        while (c >= 0 && c != quote);
+                    }
+                    case '[' -> brackets++;
+                    case ']' -> brackets--;
+                    case '>' ->
+                    {
+                        if (brackets <= 0)
+                        {
+                            return;
+                        }
+                    }
+                    default ->
+                    {
+                    }
+                }
+            }
+        }
+
+        /**
+         * Starts a chunk at the given offset, with the current ancestors
+         */
+        private void start(long start)
+        {
+            chunkStart = start;
+            if (prefix == null || ancestorsChanged)
+            {
+                var out = new ByteArrayOutputStream();
+                out.writeBytes(declaration);
+                for (var tag : ancestorTags)
+                {
+                    out.writeBytes(tag);
+                }
+                prefix = out.toByteArray();
+
+                var close = new StringBuilder();
+                for (var index = ancestorNames.length - 1; index >= 0; index--)
+                {
+                    close.append("</").append(ancestorNames[index]).append('>');
+                }
+                suffix = close.toString().getBytes(UTF_8);
+                ancestorsChanged = false;
+            }
+        }
+
+        /**
+         * Scans markup starting at the given offset, just after its '&lt;' was read
+         */
+        private void tag(long start) throws IOException, InterruptedException
+        {
+            var c = read();
+            switch (c)
+            {
+                case '?' ->
+                {
+                    skipPast("?>");
+                    if (start == 0)
+                    {
+                        declaration = bytes(start, position());
+                    }
+                }
+
+                case '!' ->
+                {
+                    c = read();
+                    if (c == '-')
+                    {
+                        skipPast("-->");
+                    }
+                    else if (c == '[')
+                    {
+                        skipPast("]]>");
+                    }
+                    else
+                    {
+                        skipDeclaration();
+                    }
+                }
+
+                case '/' ->
+                {
+                    skipPast(">");
+                    depth--;
+
+                    // If the parent of the records closed, end the chunk
+                    if (depth < recordDepth - 1 && chunkStart >= 0)
+                    {
+                        end(start);
+                    }
+                }
+
+                default ->
+                {
+                    if (c >= 0)
+                    {
+                        if (depth < recordDepth - 1)
+                        {
+                            ancestorsChanged = true;
+                        }
+                        openTag(start, c);
+                    }
+                }
+            }
+        }
+    }
+}
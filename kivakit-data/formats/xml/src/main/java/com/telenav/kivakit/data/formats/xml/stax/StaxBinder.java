@@ -0,0 +1,689 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import com.telenav.kivakit.component.BaseComponent;
+import com.telenav.kivakit.resource.Resource;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
+import static com.telenav.kivakit.core.ensure.Ensure.fail;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxCursorReader.openXmlCursor;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPath.parseXmlPath;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPathMatcher.staxPathMatcher;
+import static java.lang.invoke.MethodType.methodType;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+
+/**
+ * <p>
+ * Binds XML records to objects of a given type in a single streaming pass, using {@link XmlPath} annotations. The
+ * type's {@link XmlPath} gives the path of its records, and each annotated field gives the location of its value
+ * relative to the record element:
+ * </p>
+ *
+ * <pre>
+ * &#64;XmlPath("osm/way")
+ * public class Way
+ * {
+ *     &#64;XmlPath("@id")
+ *     long identifier;
+ *
+ *     &#64;XmlPath("nd@ref")
+ *     List&lt;Long&gt; nodes;
+ *
+ *     &#64;XmlPath("tag@k")
+ *     List&lt;String&gt; keys;
+ * }
+ *
+ * try (var ways = staxBinder(Way.class).objects(resource))
+ * {
+ *     ways.forEach(...);
+ * }
+ * </pre>
+ *
+ * <p><b>Values</b></p>
+ *
+ * <p>
+ * A field path ending in an attribute, like "nd@ref", is bound to that attribute of each matching element. Otherwise
+ * it is bound to the text enclosed by each matching element. Fields may be String, int, long, double, float, boolean,
+ * their wrapper types, or enums, or a {@link List} of any of these. A scalar field receives the last matching value,
+ * and a list field receives every matching value in document order. A value that cannot be converted is skipped with
+ * a warning. Text can only be bound from an element that has no child elements. If a matching element has children,
+ * its text is skipped with a warning, and the bindings inside it are still applied.
+ * </p>
+ *
+ * <p><b>Compilation</b></p>
+ *
+ * <p>
+ * A binder is compiled once for each type and cached, so {@link #staxBinder(Class)} is cheap. Compiling resolves each
+ * field to a {@link MethodHandle} setter and the type's no-argument constructor to a {@link MethodHandle}, so
+ * reflection is not used while binding. The field paths are compiled into a {@link StaxPathMatcher} over paths
+ * relative to the record, and while a record is read, each element costs one automaton transition. Bindings for the
+ * element are only looked up when the automaton reaches a bound path. Binders are thread-safe, so
+ * {@link #bind(StaxCursorReader)} can be used as the mapper of a {@link ParallelStaxReader}.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see XmlPath
+ * @see StaxCursorReader
+ * @see ParallelStaxReader
+ */
+@SuppressWarnings("unused")
+public class StaxBinder<T> extends BaseComponent
+{
+    /** Compiled binders by type */
+    private static final Map<Class<?>, StaxBinder<?>> binders = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the binder for the given type, which must have an {@link XmlPath} annotation, compiling it if necessary
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> StaxBinder<T> staxBinder(Class<T> type)
+    {
+        return (StaxBinder<T>) binders.computeIfAbsent(type, StaxBinder::new);
+    }
+
+    /**
+     * A compiled binding of a value location to a field
+     */
+    private abstract static class Binding
+    {
+        /** The field */
+        final Field field;
+
+        /** The attribute to read, or null to read the enclosed text */
+        final String attribute;
+
+        Binding(Field field, String attribute)
+        {
+            this.field = field;
+            this.attribute = attribute;
+        }
+
+        /**
+         * Sets the field of the given object to the given value
+         */
+        abstract void bind(Object object, String value) throws Throwable;
+    }
+
+    /**
+     * Binds a value to an int field
+     */
+    private static class IntBinding extends Binding
+    {
+        /** Setter of type (Object, int)void */
+        private final MethodHandle setter;
+
+        IntBinding(Field field, String attribute, MethodHandle setter)
+        {
+            super(field, attribute);
+            this.setter = setter.asType(methodType(void.class, Object.class, int.class));
+        }
+
+        @Override
+        void bind(Object object, String value) throws Throwable
+        {
+            setter.invokeExact(object, Integer.parseInt(value.trim()));
+        }
+    }
+
+    /**
+     * Binds a value to a long field
+     */
+    private static class LongBinding extends Binding
+    {
+        /** Setter of type (Object, long)void */
+        private final MethodHandle setter;
+
+        LongBinding(Field field, String attribute, MethodHandle setter)
+        {
+            super(field, attribute);
+            this.setter = setter.asType(methodType(void.class, Object.class, long.class));
+        }
+
+        @Override
+        void bind(Object object, String value) throws Throwable
+        {
+            setter.invokeExact(object, Long.parseLong(value.trim()));
+        }
+    }
+
+    /**
+     * Binds a value to a double field
+     */
+    private static class DoubleBinding extends Binding
+    {
+        /** Setter of type (Object, double)void */
+        private final MethodHandle setter;
+
+        DoubleBinding(Field field, String attribute, MethodHandle setter)
+        {
+            super(field, attribute);
+            this.setter = setter.asType(methodType(void.class, Object.class, double.class));
+        }
+
+        @Override
+        void bind(Object object, String value) throws Throwable
+        {
+            setter.invokeExact(object, Double.parseDouble(value.trim()));
+        }
+    }
+
+    /**
+     * Binds a value to a field of any other type, converting it first
+     */
+    private static class ObjectBinding extends Binding
+    {
+        /** Setter of type (Object, Object)void */
+        private final MethodHandle setter;
+
+        /** Converts values to the type of the field */
+        private final Function<String, Object> converter;
+
+        ObjectBinding(Field field, String attribute, MethodHandle setter, Function<String, Object> converter)
+        {
+            super(field, attribute);
+            this.setter = setter.asType(methodType(void.class, Object.class, Object.class));
+            this.converter = converter;
+        }
+
+        @Override
+        void bind(Object object, String value) throws Throwable
+        {
+            setter.invokeExact(object, converter.apply(value));
+        }
+    }
+
+    /**
+     * Adds values to a list field, creating the list if the field is null
+     */
+    private static class ListBinding extends Binding
+    {
+        /** Getter of type (Object)Object */
+        private final MethodHandle getter;
+
+        /** Setter of type (Object, Object)void */
+        private final MethodHandle setter;
+
+        /** Converts values to the element type of the list */
+        private final Function<String, Object> converter;
+
+        ListBinding(Field field,
+                    String attribute,
+                    MethodHandle getter,
+                    MethodHandle setter,
+                    Function<String, Object> converter)
+        {
+            super(field, attribute);
+            this.getter = getter.asType(methodType(Object.class, Object.class));
+            this.setter = setter.asType(methodType(void.class, Object.class, Object.class));
+            this.converter = converter;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void bind(Object object, String value) throws Throwable
+        {
+            var converted = converter.apply(value);
+            var list = (List<Object>) (Object) getter.invokeExact(object);
+            if (list == null)
+            {
+                list = new ArrayList<>();
+                setter.invokeExact(object, (Object) list);
+            }
+            list.add(converted);
+        }
+    }
+
+    /**
+     * The per-thread state of a binder, since matchers build their states lazily
+     */
+    private class Context
+    {
+        /** The matcher for field paths relative to the record */
+        final StaxPathMatcher matcher = staxPathMatcher(paths);
+
+        /** The stack of matcher states for the elements in the record */
+        StaxPathMatcher.State[] states = new StaxPathMatcher.State[16];
+    }
+
+    /** The type to bind to */
+    private final Class<T> type;
+
+    /** The path of the records */
+    private final StaxPath records;
+
+    /** The distinct field paths, relative to the record element */
+    private final List<StaxPath> paths = new ArrayList<>();
+
+    /** The attribute bindings for each path */
+    private final Binding[][] attributeBindings;
+
+    /** The text bindings for each path */
+    private final Binding[][] textBindings;
+
+    /** The no-argument constructor of the type, of type ()Object */
+    private final MethodHandle constructor;
+
+    /** The per-thread state of this binder */
+    private final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+
+    /**
+     * Compiles a binder for the given type
+     */
+    protected StaxBinder(Class<?> type)
+    {
+        @SuppressWarnings("unchecked")
+        var bound = (Class<T>) type;
+        this.type = bound;
+
+        var annotation = ensureNotNull(type.getAnnotation(XmlPath.class), "$ has no @XmlPath annotation", type);
+        this.records = parseXmlPath(annotation.value());
+        this.constructor = compileConstructor(type);
+
+        // Group the bindings of the type's fields by path
+        var pathIndexes = new ArrayList<String>();
+        var attributes = new ArrayList<List<Binding>>();
+        var texts = new ArrayList<List<Binding>>();
+        for (var at = type; at != null && at != Object.class; at = at.getSuperclass())
+        {
+            for (var field : at.getDeclaredFields())
+            {
+                var path = field.getAnnotation(XmlPath.class);
+                if (path != null)
+                {
+                    var value = path.value();
+                    var separator = value.lastIndexOf('@');
+                    var elements = separator < 0 ? value : value.substring(0, separator);
+                    var attribute = separator < 0 ? null : value.substring(separator + 1);
+
+                    var index = pathIndexes.indexOf(elements);
+                    if (index < 0)
+                    {
+                        index = pathIndexes.size();
+                        pathIndexes.add(elements);
+                        paths.add(parseXmlPath(elements));
+                        attributes.add(new ArrayList<>());
+                        texts.add(new ArrayList<>());
+                    }
+                    var binding = compile(field, attribute);
+                    (attribute == null ? texts : attributes).get(index).add(binding);
+                }
+            }
+        }
+        ensure(!paths.isEmpty(), "$ has no @XmlPath fields", type);
+
+        attributeBindings = toArrays(attributes);
+        textBindings = toArrays(texts);
+    }
+
+    /**
+     * Binds the record that the given reader is at to a new object. The reader must be at the open tag of a record,
+     * and is advanced to its close tag.
+     */
+    public T bind(StaxCursorReader reader)
+    {
+        ensure(reader.isAtOpenTag());
+
+        var object = newInstance();
+        var context = contexts.get();
+        var states = context.states;
+        var top = 0;
+
+        // Bind values at the record element itself,
+        states[0] = context.matcher.start();
+        var advanced = apply(states[0], reader, object);
+
+        // then go through the elements in the record, until the record's close tag is reached.
+        if (!reader.isAtCloseTag())
+        {
+            while (advanced || reader.hasNext())
+            {
+                // If binding text stopped at a child element, that element is handled without moving on
+                if (!advanced)
+                {
+                    reader.next();
+                }
+                advanced = false;
+
+                if (reader.isAtOpenTag())
+                {
+                    // Push the state for the element, and bind any values at it,
+                    var state = states[top].next(reader.name());
+                    if (++top == states.length)
+                    {
+                        states = context.states = Arrays.copyOf(states, top * 2);
+                    }
+                    states[top] = state;
+                    advanced = apply(state, reader, object);
+
+                    // and if binding text advanced to the element's close tag, pop the state.
+                    if (reader.isAtCloseTag())
+                    {
+                        top--;
+                    }
+                }
+                else if (reader.isAtCloseTag())
+                {
+                    if (top == 0)
+                    {
+                        break;
+                    }
+                    top--;
+                }
+            }
+        }
+        return object;
+    }
+
+    /**
+     * Binds each record that is read by the given reader, passing the objects to the given consumer. The reader is
+     * closed when the end of the stream is reached.
+     */
+    public void forEach(StaxCursorReader reader, Consumer<T> consumer)
+    {
+        try (var objects = objects(reader))
+        {
+            objects.forEach(consumer);
+        }
+    }
+
+    /**
+     * Returns a stream of the records in the given resource, bound to objects. The stream should be closed to close the
+     * resource.
+     */
+    public Stream<T> objects(Resource resource)
+    {
+        return objects(openXmlCursor(resource));
+    }
+
+    /**
+     * Returns a stream of the records read by the given reader, bound to objects. Objects are bound as the stream is
+     * consumed, one record at a time. Closing the stream closes the reader.
+     */
+    public Stream<T> objects(StaxCursorReader reader)
+    {
+        var matcher = staxPathMatcher(records);
+        var iterator = new Iterator<T>()
+        {
+            private T next;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (next == null && reader.hasNext())
+                {
+                    if (reader.isAtOpenTag() && reader.state(matcher).isAt())
+                    {
+                        next = bind(reader);
+                    }
+                    reader.next();
+                }
+                return next != null;
+            }
+
+            @Override
+            public T next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                var next = this.next;
+                this.next = null;
+                return next;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, ORDERED | NONNULL), false)
+                .onClose(reader::close);
+    }
+
+    /**
+     * Returns the path of the records that this binder binds
+     */
+    public StaxPath records()
+    {
+        return records;
+    }
+
+    /**
+     * Returns the type that this binder binds to
+     */
+    public Class<T> type()
+    {
+        return type;
+    }
+
+    /**
+     * Binds the values at the given state to the given object. Attributes are bound first, since binding text advances
+     * the reader to the element's close tag.
+     *
+     * @return True if the element has child elements and the reader was advanced to the open tag of the first one
+     */
+    private boolean apply(StaxPathMatcher.State state, StaxCursorReader reader, Object object)
+    {
+        var at = state.at();
+        if (at.length == 0)
+        {
+            return false;
+        }
+
+        for (var path : at)
+        {
+            for (var binding : attributeBindings[path])
+            {
+                var value = reader.attribute(binding.attribute);
+                if (value != null)
+                {
+                    bind(binding, object, value);
+                }
+            }
+        }
+
+        String text = null;
+        var skipped = false;
+        for (var path : at)
+        {
+            for (var binding : textBindings[path])
+            {
+                if (text == null && !skipped)
+                {
+                    text = enclosedText(reader, binding);
+                    skipped = text == null;
+                }
+                if (text != null)
+                {
+                    bind(binding, object, text);
+                }
+            }
+        }
+        return skipped && reader.isAtOpenTag();
+    }
+
+    /**
+     * Binds the given value with the given binding, warning if the value could not be converted
+     */
+    private void bind(Binding binding, Object object, String value)
+    {
+        try
+        {
+            binding.bind(object, value);
+        }
+        catch (IllegalArgumentException e)
+        {
+            warning("Unable to bind '$' to $: $", value, binding.field, e.getMessage());
+        }
+        catch (Throwable e)
+        {
+            fail(e, "Unable to bind $", binding.field);
+        }
+    }
+
+    /**
+     * Compiles a binding of the given attribute, or of text if the attribute is null, to the given field
+     */
+    private Binding compile(Field field, String attribute)
+    {
+        try
+        {
+            field.setAccessible(true);
+            var lookup = MethodHandles.lookup();
+            var setter = lookup.unreflectSetter(field);
+            var fieldType = field.getType();
+
+            if (fieldType == List.class)
+            {
+                var elementType = field.getGenericType() instanceof ParameterizedType parameterized
+                        && parameterized.getActualTypeArguments()[0] instanceof Class<?> element
+                        ? element
+                        : String.class;
+                return new ListBinding(field, attribute, lookup.unreflectGetter(field), setter, converter(elementType));
+            }
+            if (fieldType == int.class)
+            {
+                return new IntBinding(field, attribute, setter);
+            }
+            if (fieldType == long.class)
+            {
+                return new LongBinding(field, attribute, setter);
+            }
+            if (fieldType == double.class)
+            {
+                return new DoubleBinding(field, attribute, setter);
+            }
+            return new ObjectBinding(field, attribute, setter, converter(fieldType));
+        }
+        catch (IllegalAccessException e)
+        {
+            return fail(e, "Unable to compile binding for $", field);
+        }
+    }
+
+    /**
+     * Returns a handle to the no-argument constructor for the given type
+     */
+    private MethodHandle compileConstructor(Class<?> type)
+    {
+        try
+        {
+            var constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return MethodHandles.lookup()
+                    .unreflectConstructor(constructor)
+                    .asType(methodType(Object.class));
+        }
+        catch (Exception e)
+        {
+            return fail(e, "$ has no accessible no-argument constructor", type);
+        }
+    }
+
+    /**
+     * Returns the text enclosed by the element at the reader's open tag, advancing the reader to the element's close
+     * tag. If the element has a child element, a warning is broadcast, null is returned and the reader is left at the
+     * child's open tag.
+     */
+    private String enclosedText(StaxCursorReader reader, Binding binding)
+    {
+        var name = reader.name();
+        var text = "";
+        while (reader.hasNext())
+        {
+            reader.next();
+            if (reader.isAtCloseTag())
+            {
+                return text;
+            }
+            if (reader.isAtCharacters())
+            {
+                text = text.isEmpty() ? reader.text() : text + reader.text();
+            }
+            else if (reader.isAtOpenTag())
+            {
+                warning("Unable to bind the text of <$> to $, since it has child elements", name, binding.field);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a function that converts text to the given type
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Function<String, Object> converter(Class<?> type)
+    {
+        if (type == String.class || type == Object.class)
+        {
+            return value -> value;
+        }
+        if (type == int.class || type == Integer.class)
+        {
+            return value -> Integer.valueOf(value.trim());
+        }
+        if (type == long.class || type == Long.class)
+        {
+            return value -> Long.valueOf(value.trim());
+        }
+        if (type == double.class || type == Double.class)
+        {
+            return value -> Double.valueOf(value.trim());
+        }
+        if (type == float.class || type == Float.class)
+        {
+            return value -> Float.valueOf(value.trim());
+        }
+        if (type == boolean.class || type == Boolean.class)
+        {
+            return value -> Boolean.valueOf(value.trim());
+        }
+        if (type.isEnum())
+        {
+            var enumType = (Class<? extends Enum>) type;
+            return value -> Enum.valueOf(enumType, value.trim());
+        }
+        return fail("Unsupported field type: $", type);
+    }
+
+    /**
+     * Returns a new instance of the type to bind to
+     */
+    @SuppressWarnings("unchecked")
+    private T newInstance()
+    {
+        try
+        {
+            return (T) (Object) constructor.invokeExact();
+        }
+        catch (Throwable e)
+        {
+            return fail(e, "Unable to create $", type);
+        }
+    }
+
+    private Binding[][] toArrays(List<List<Binding>> bindings)
+    {
+        var arrays = new Binding[bindings.size()][];
+        for (var index = 0; index < arrays.length; index++)
+        {
+            arrays[index] = bindings.get(index).toArray(new Binding[0]);
+        }
+        return arrays;
+    }
+}
@@ -0,0 +1,725 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import com.telenav.kivakit.component.BaseComponent;
+import com.telenav.kivakit.core.io.IO;
+import com.telenav.kivakit.resource.Resource;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
+import static com.telenav.kivakit.core.ensure.Ensure.fail;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxReader.Match.FOUND;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxReader.Match.NOT_FOUND;
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.END_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.SPACE;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * <p>
+ * A cursor-mode variant of {@link StaxReader}, built on {@link XMLStreamReader} instead of
+ * {@link javax.xml.stream.XMLEventReader}. The reader exposes the same navigation API as {@link StaxReader}, but it does
+ * not allocate an event object for each tag and character run. Instead, the reader itself is the current event, and
+ * its state is queried with methods like {@link #isAtOpenTag(String)}, {@link #name()}, {@link #attribute(String)} and
+ * {@link #text()}.
+ * </p>
+ *
+ * <p>
+ * The current element path is held as a stack of int name identifiers from a {@link StaxNameTable}, rather than as a
+ * {@link StaxPath} of strings. A {@link StaxPath} passed to {@link #isAt(StaxPath)} or {@link #isInside(StaxPath)} is
+ * compiled to identifiers the first time it is seen. As with a {@link StaxPathMatcher}, a leading slash is ignored and
+ * the wildcard "*" matches any single element. A path passed to {@link #findNext(StaxPath)} or
+ * {@link #nextAtOrInside(StaxPath, Matcher)} is compiled to a {@link StaxPathMatcher}. Both are kept in small caches
+ * keyed by the elements of the path, so a path that is rebuilt for each call is compiled once, and a reader given many
+ * different paths only keeps the most recently used ones. The {@link #path()} method materializes
+ * a {@link StaxPath} and is intended for diagnostics, not for use in a scanning loop.
+ * </p>
+ *
+ * <p><b>Using a {@link StaxCursorReader}</b></p>
+ *
+ * <p>
+ * A cursor reader is created with {@link #openXmlCursor(Resource)} and closed with {@link #close()}. Text is coalesced,
+ * so the text between an open and a close tag is always a single characters event. If the XML is malformed, a problem
+ * is broadcast and the reader moves to the end of the document.
+ * </p>
+ *
+ * <pre>
+ * var records = parseXmlPath("records/record");
+ * try (var in = openXmlCursor(resource))
+ * {
+ *     while (in.findNext(records))
+ *     {
+ *         if (in.isAtOpenTag("name"))
+ *         {
+ *             names.add(in.enclosedText());
+ *         }
+ *         in.next();
+ *     }
+ * }
+ * </pre>
+ *
+ * <p><b>Reader State</b></p>
+ *
+ * <ul>
+ *     <li>{@link #at()} - The current {@link XMLStreamReader} event type</li>
+ *     <li>{@link #name()} - The local name of the current open or close tag</li>
+ *     <li>{@link #nameIdentifier()} - The name identifier of the current open or close tag</li>
+ *     <li>{@link #attribute(String)} - The value of an attribute of the current open tag</li>
+ *     <li>{@link #text()} - The text of the current characters event</li>
+ *     <li>{@link #depth()} - The number of elements in the current path</li>
+ *     <li>{@link #path()} - A copy of the current path</li>
+ * </ul>
+ *
+ * <p><b>Moving Through the Stream</b></p>
+ *
+ * <ul>
+ *     <li>{@link #hasNext()} - True if the reader has more events</li>
+ *     <li>{@link #next()} - Advances the reader to the next event</li>
+ *     <li>{@link #nextCharacters()} - Advances to the next text event</li>
+ *     <li>{@link #nextCloseTag()} - Advances to the next close tag</li>
+ *     <li>{@link #nextMatching(Matcher)} - Advances to the next event matching the given matcher</li>
+ *     <li>{@link #nextOpenTag()} - Advances to the next open tag</li>
+ *     <li>{@link #nextAtOrInside(StaxPath, Matcher)} - Advances to the next event matching the given matcher that is at or under the given path</li>
+ *     <li>{@link #enclosedText()} - If the stream is at an open tag followed by text, returns the text and advances to the close tag</li>
+ * </ul>
+ *
+ * @author jonathanl (shibo)
+ * @see StaxReader
+ * @see StaxNameTable
+ * @see XMLStreamReader
+ */
+@SuppressWarnings("unused")
+public class StaxCursorReader extends BaseComponent implements Closeable
+{
+    /**
+     * Returns a cursor-mode STAX reader for the given resource, or an exception will be thrown
+     */
+    public static StaxCursorReader openXmlCursor(Resource resource)
+    {
+        ensureNotNull(resource);
+
+        var in = ensureNotNull(resource.openForReading(), "Could not open for reading: $", resource);
+        return openXmlCursor(resource, in);
+    }
+
+    /**
+     * Returns a cursor-mode STAX reader for the given input, which is read from the given resource
+     */
+    static StaxCursorReader openXmlCursor(Resource resource, InputStream in)
+    {
+        return openXmlCursor(resource, in, inputFactory());
+    }
+
+    /**
+     * Returns a cursor-mode STAX reader for the given input, created by the given factory from
+     * {@link #inputFactory()}
+     */
+    static StaxCursorReader openXmlCursor(Resource resource, InputStream in, XMLInputFactory factory)
+    {
+        try
+        {
+            return new StaxCursorReader(resource, factory.createXMLStreamReader(in), in);
+        }
+        catch (XMLStreamException e)
+        {
+            return fail(e, "Unable to read XML resource: $", resource);
+        }
+    }
+
+    /**
+     * Returns a factory for the stream readers used by cursor readers, which coalesces text
+     */
+    static XMLInputFactory inputFactory()
+    {
+        var factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * A {@link Matcher} implementation for a boolean function
+     */
+    public interface BooleanMatcher extends Predicate<StaxCursorReader>, Matcher
+    {
+        @Override
+        default StaxReader.Match matcher(StaxCursorReader reader)
+        {
+            return test(reader) ? FOUND : NOT_FOUND;
+        }
+    }
+
+    /**
+     * Returns a {@link StaxReader.Match} for the reader's current event
+     */
+    public interface Matcher
+    {
+        StaxReader.Match matcher(StaxCursorReader reader);
+    }
+
+    /** The maximum number of compiled paths to keep */
+    private static final int MAXIMUM_COMPILED_PATHS = 64;
+
+    /** The identifier that a compiled path has for a wildcard element, which matches any element */
+    private static final int WILDCARD = StaxNameTable.NO_NAME;
+
+    /** The STAX stream reader */
+    private final XMLStreamReader reader;
+
+    /** The resource that this reader is reading from */
+    private final Resource resource;
+
+    /** The input stream to auto-close at the end of reading */
+    private final InputStream in;
+
+    /** Element name identifiers */
+    private final StaxNameTable names = new StaxNameTable();
+
+    /** Paths that have been compiled to name identifiers, by their elements, in least recently used order */
+    private final Map<List<String>, int[]> compiled = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, int[]> eldest)
+        {
+            return size() > MAXIMUM_COMPILED_PATHS;
+        }
+    };
+
+    /** Compiled paths for findNext and nextAtOrInside, and matchers being dispatched */
+    private final StaxPathTracker.Trackers trackers = new StaxPathTracker.Trackers();
+
+    /** The current path, as a stack of name identifiers */
+    private int[] path = new int[32];
+
+    /** The number of name identifiers on the path stack */
+    private int depth;
+
+    /** The name identifier of the current open or close tag */
+    private int nameIdentifier = StaxNameTable.NO_NAME;
+
+    /** The current event type, or END_DOCUMENT if reading has ended */
+    private int at;
+
+    /** The number of events read */
+    private long events;
+
+    /** The exception that ended reading, or null if the XML has been read without error */
+    private XMLStreamException failure;
+
+    /**
+     * @param resource The resource being read
+     * @param reader The Java STAX stream reader
+     * @param in The input stream that the reader is processing
+     */
+    protected StaxCursorReader(Resource resource, XMLStreamReader reader, InputStream in)
+    {
+        this.resource = resource;
+        this.reader = reader;
+        this.in = in;
+        this.at = reader.getEventType();
+    }
+
+    /**
+     * Returns the current event type, as defined by {@link javax.xml.stream.XMLStreamConstants}
+     */
+    public int at()
+    {
+        return at;
+    }
+
+    /**
+     * Returns the value of the given attribute of the current open tag, or null if there is no such attribute
+     */
+    public String attribute(String name)
+    {
+        ensure(isAtOpenTag());
+        return reader.getAttributeValue(null, name);
+    }
+
+    /**
+     * Returns the number of attributes of the current open tag
+     */
+    public int attributeCount()
+    {
+        ensure(isAtOpenTag());
+        return reader.getAttributeCount();
+    }
+
+    /**
+     * Returns the local name of the attribute at the given index of the current open tag
+     */
+    public String attributeName(int index)
+    {
+        ensure(isAtOpenTag());
+        return reader.getAttributeLocalName(index);
+    }
+
+    /**
+     * Returns the value of the attribute at the given index of the current open tag
+     */
+    public String attributeValue(int index)
+    {
+        ensure(isAtOpenTag());
+        return reader.getAttributeValue(index);
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            reader.close();
+        }
+        catch (XMLStreamException ignored)
+        {
+        }
+        IO.close(resource, in);
+    }
+
+    /**
+     * Returns the number of elements in the current path
+     */
+    public int depth()
+    {
+        return currentDepth();
+    }
+
+    /**
+     * Returns the text enclosed by an open/end tag pair. Must be called at an open tag. The following character data is
+     * read and the XML stream is advanced to the close tag. An element with no content has the empty string as its
+     * text.
+     */
+    public String enclosedText()
+    {
+        // Skip current open tag,
+        ensure(isAtOpenTag());
+        next();
+
+        // and if the element is empty,
+        if (isAtCloseTag())
+        {
+            // it has no text.
+            return "";
+        }
+
+        // Otherwise, read character data,
+        ensure(isAtCharacters());
+        var data = reader.getText();
+
+        // skip to close tag
+        next();
+        ensure(isAtCloseTag());
+
+        // and return the character data.
+        return data;
+    }
+
+    /**
+     * Advances to the next event under the given path, returning false if the end of the stream is reached first. The
+     * path is compiled into a {@link StaxPathMatcher}, so testing each event is constant time.
+     */
+    public boolean findNext(StaxPath path)
+    {
+        var tracker = trackers.tracker(path);
+        return nextMatching(ignored -> tracker.state().isInside() ? FOUND : NOT_FOUND);
+    }
+
+    /**
+     * Returns true if there is a next event
+     */
+    public boolean hasNext()
+    {
+        try
+        {
+            return !isAtEnd() && reader.hasNext();
+        }
+        catch (XMLStreamException e)
+        {
+            failed(e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if this reader is at, but not under, the given path
+     */
+    public boolean isAt(StaxPath path)
+    {
+        return isAt(compile(path));
+    }
+
+    /**
+     * Returns true if this reader is at a characters event
+     */
+    public boolean isAtCharacters()
+    {
+        return at == CHARACTERS || at == CDATA || at == SPACE;
+    }
+
+    /**
+     * Returns true if this reader is at a close tag
+     */
+    public boolean isAtCloseTag()
+    {
+        return at == END_ELEMENT;
+    }
+
+    /**
+     * Returns true if this reader is at a close tag with the given name
+     */
+    public boolean isAtCloseTag(String tagName)
+    {
+        return isAtCloseTag() && name().equals(tagName);
+    }
+
+    /**
+     * Returns true if the current position is the end of the document
+     */
+    public boolean isAtEnd()
+    {
+        return at == END_DOCUMENT;
+    }
+
+    /**
+     * Returns true if this reader is at an open tag
+     */
+    public boolean isAtOpenTag()
+    {
+        return at == START_ELEMENT;
+    }
+
+    /**
+     * Returns true if this reader is at an open tag with the given name
+     */
+    public boolean isAtOpenTag(String tagName)
+    {
+        return isAtOpenTag() && name().equals(tagName);
+    }
+
+    /**
+     * Returns true if this reader is at, or under, the given path
+     */
+    public boolean isAtOrInside(StaxPath path)
+    {
+        var identifiers = compile(path);
+        return isAt(identifiers) || isInside(identifiers);
+    }
+
+    /**
+     * Returns true if the current path is hierarchically "under" the given path. For example, if the current path is
+     * a/b/c and the given path is /a/b, this method would return true. However, if the current path was a/b/c, and the
+     * given path was /a/b/c or /a/b/c/d, it would return false.
+     */
+    public boolean isInside(StaxPath path)
+    {
+        return isInside(compile(path));
+    }
+
+    /**
+     * Returns true if this reader is above the given path
+     */
+    public boolean isOutside(StaxPath path)
+    {
+        return !isAtOrInside(path);
+    }
+
+    /**
+     * Returns the local name of the current open or close tag
+     */
+    public String name()
+    {
+        return names.name(nameIdentifier);
+    }
+
+    /**
+     * Returns the name identifier of the current open or close tag
+     */
+    public int nameIdentifier()
+    {
+        return nameIdentifier;
+    }
+
+    /**
+     * Returns the table of element name identifiers used by this reader
+     */
+    public StaxNameTable names()
+    {
+        return names;
+    }
+
+    /**
+     * Advances to the next event and returns its type. Returns END_DOCUMENT if there are no more events, or if the XML
+     * could not be read, in which case a problem is broadcast.
+     */
+    public int next()
+    {
+        try
+        {
+            // If the reader was at a close tag, pop the closed element,
+            if (at == END_ELEMENT)
+            {
+                depth--;
+            }
+
+            at = reader.next();
+            events++;
+            switch (at)
+            {
+                case START_ELEMENT ->
+                {
+                    var name = reader.getLocalName();
+                    nameIdentifier = names.identifier(name);
+                    trackers.push(name);
+                    if (depth == path.length)
+                    {
+                        path = Arrays.copyOf(path, depth * 2);
+                    }
+                    path[depth++] = nameIdentifier;
+                }
+
+                case END_ELEMENT ->
+                {
+                    // The closed element stays on the stack until the next event, so that its name is available,
+                    // but it is not part of the current path (see currentDepth()).
+                    nameIdentifier = path[depth - 1];
+                    trackers.pop();
+                }
+
+                default ->
+                {
+                }
+            }
+        }
+        catch (XMLStreamException e)
+        {
+            failed(e);
+        }
+        catch (NoSuchElementException e)
+        {
+            at = END_DOCUMENT;
+        }
+
+        return at;
+    }
+
+    /**
+     * @param path The path to stay at or under (inside)
+     * @param matcher The matcher to call
+     * @return True if a matching event was found inside the given path, or false if the event couldn't be found before
+     * leaving the scope represented by the given path. If the event isn't found, the reader will be positioned at the
+     * event after the close tag where matching had to stop.
+     */
+    public boolean nextAtOrInside(StaxPath path, Matcher matcher)
+    {
+        var tracker = trackers.tracker(path);
+        return nextMatching(ignored ->
+        {
+            // If we aren't under the given path anymore,
+            var state = tracker.state();
+            if (!state.isAt() && !state.isInside())
+            {
+                // then advance to the next event,
+                next();
+
+                // and stop.
+                return StaxReader.Match.STOP;
+            }
+
+            // Otherwise, delegate to the given matcher
+            return matcher.matcher(this);
+        });
+    }
+
+    /**
+     * Advances to the next characters event, returning false if the end of the stream is reached first
+     */
+    public boolean nextCharacters()
+    {
+        return nextMatching((BooleanMatcher) StaxCursorReader::isAtCharacters);
+    }
+
+    /**
+     * Advances to the next close tag, returning false if the end of the stream is reached first
+     */
+    public boolean nextCloseTag()
+    {
+        return nextMatching((BooleanMatcher) StaxCursorReader::isAtCloseTag);
+    }
+
+    /**
+     * @param matcher The matcher
+     * @return True if the reader was advanced to an event matching the matcher, or false if the matcher asked to stop
+     * or the end of the XML stream was reached.
+     */
+    public boolean nextMatching(Matcher matcher)
+    {
+        for (; hasNext(); next())
+        {
+            switch (matcher.matcher(this))
+            {
+                case FOUND ->
+                {
+                    return true;
+                }
+                case STOP ->
+                {
+                    return false;
+                }
+                case NOT_FOUND ->
+                {
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Advances to the next open tag, returning false if the end of the stream is reached first
+     */
+    public boolean nextOpenTag()
+    {
+        return nextMatching((BooleanMatcher) StaxCursorReader::isAtOpenTag);
+    }
+
+    /**
+     * Returns a copy of the current XML path. This method allocates, and is intended for diagnostics.
+     */
+    public StaxPath path()
+    {
+        var path = StaxPath.staxPath();
+        for (var index = 0; index < currentDepth(); index++)
+        {
+            path.push(names.name(this.path[index]));
+        }
+        return path;
+    }
+
+    /**
+     * Returns the state of the given matcher at the current path. The first time a matcher is passed to this method,
+     * the reader starts tracking its state, and later calls only make a transition for each element opened since the
+     * last call.
+     */
+    public StaxPathMatcher.State state(StaxPathMatcher matcher)
+    {
+        return trackers.tracker(matcher).state();
+    }
+
+    /**
+     * Returns the text of the current characters event
+     */
+    public String text()
+    {
+        ensure(isAtCharacters());
+        return reader.getText();
+    }
+
+    @Override
+    public String toString()
+    {
+        return resource.path() + ":" + path() + " => " + at;
+    }
+
+    /**
+     * Returns the number of events that have been read
+     */
+    long events()
+    {
+        return events;
+    }
+
+    /**
+     * Returns the exception that ended reading, or null if there has been none
+     */
+    XMLStreamException failure()
+    {
+        return failure;
+    }
+
+    /**
+     * Returns the given path as an array of name identifiers, compiling it if it has not been seen before. Empty
+     * elements, like the one before a leading slash, are skipped, and wildcards are compiled to {@link #WILDCARD}.
+     */
+    private int[] compile(StaxPath path)
+    {
+        var elements = path.elements();
+        var identifiers = compiled.get(elements);
+        if (identifiers == null)
+        {
+            var compiling = new int[elements.size()];
+            var length = 0;
+            for (var element : elements)
+            {
+                if (!element.isEmpty())
+                {
+                    compiling[length++] = element.equals(StaxPathMatcher.WILDCARD)
+                            ? WILDCARD
+                            : names.identifier(element);
+                }
+            }
+            identifiers = Arrays.copyOf(compiling, length);
+            compiled.put(List.copyOf(elements), identifiers);
+        }
+        return identifiers;
+    }
+
+    /**
+     * Returns the depth of the current path. At a close tag, the closed element is not part of the path.
+     */
+    private int currentDepth()
+    {
+        return at == END_ELEMENT ? depth - 1 : depth;
+    }
+
+    /**
+     * Broadcasts a problem for the given exception, and ends reading
+     */
+    private void failed(XMLStreamException e)
+    {
+        if (failure == null)
+        {
+            failure = e;
+            problem(e, "Unable to read XML resource: $", resource);
+        }
+        at = END_DOCUMENT;
+    }
+
+    /**
+     * Returns true if the first length elements of the current path are the given identifiers, where a
+     * {@link #WILDCARD} matches any element
+     */
+    private boolean startsWith(int[] identifiers)
+    {
+        for (var index = identifiers.length - 1; index >= 0; index--)
+        {
+            var identifier = identifiers[index];
+            if (identifier != WILDCARD && path[index] != identifier)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAt(int[] identifiers)
+    {
+        return currentDepth() == identifiers.length && startsWith(identifiers);
+    }
+
+    private boolean isInside(int[] identifiers)
+    {
+        return currentDepth() > identifiers.length && startsWith(identifiers);
+    }
+}
@@ -0,0 +1,115 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import com.telenav.kivakit.data.formats.library.DataFormat;
+import com.telenav.kivakit.data.formats.library.decoding.DataDecoder;
+import com.telenav.kivakit.data.formats.library.decoding.DecoderSettings;
+import com.telenav.kivakit.data.formats.library.decoding.RecordBatch;
+import com.telenav.kivakit.data.formats.library.decoding.RecordBatcher;
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.resource.Resource;
+
+import java.util.function.Consumer;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.data.formats.library.DataFormat.GenericXML;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxBinder.staxBinder;
+
+/**
+ * A {@link DataDecoder} that decodes the records of an XML resource into objects of a type annotated with
+ * {@link XmlPath}, using a {@link StaxBinder}. Local, uncompressed files are decoded by a {@link ParallelStaxReader}
+ * with up to {@link DecoderSettings#threads()} threads. Other resources are streamed on the calling thread. Decoders
+ * are for {@link DataFormat#GenericXML} resources unless another XML format, such as {@link DataFormat#XML} for OSM
+ * files, is given.
+ *
+ * <p>
+ * Since each decoder is for a single bound type, XML decoders are not service-loaded. They are registered by the
+ * application for the types it reads:
+ * </p>
+ *
+ * <pre>
+ * dataDecoders().register(staxDataDecoder(Way.class));
+ *
+ * dataDecoders().decode(file, Way.class, batch -&gt; ...);</pre>
+ *
+ * @author jonathanl (shibo)
+ * @see StaxBinder
+ * @see ParallelStaxReader
+ */
+public class StaxDataDecoder<T> implements DataDecoder<T>
+{
+    /**
+     * Returns a decoder for records of the given type in generic XML resources
+     */
+    public static <T> StaxDataDecoder<T> staxDataDecoder(Class<T> type)
+    {
+        return staxDataDecoder(type, GenericXML);
+    }
+
+    /**
+     * Returns a decoder for records of the given type in resources of the given XML format
+     */
+    public static <T> StaxDataDecoder<T> staxDataDecoder(Class<T> type, DataFormat format)
+    {
+        return new StaxDataDecoder<>(staxBinder(type), format);
+    }
+
+    /** The binder that maps records to objects */
+    private final StaxBinder<T> binder;
+
+    /** The XML format that this decoder decodes */
+    private final DataFormat format;
+
+    protected StaxDataDecoder(StaxBinder<T> binder, DataFormat format)
+    {
+        ensure(format.isXml(), "Not an XML format: $", format);
+        this.binder = binder;
+        this.format = format;
+    }
+
+    /**
+     * Files are split into chunks at record boundaries and parsed by a {@link ParallelStaxReader}
+     */
+    @Override
+    public boolean canSplitFiles()
+    {
+        return true;
+    }
+
+    @Override
+    public void decode(Resource resource, DecoderSettings settings, Consumer<RecordBatch<T>> consumer)
+    {
+        var batcher = new RecordBatcher<>(settings.batchSize(), consumer);
+        var threads = Math.min(settings.threads(), parallelism(resource));
+
+        // If the resource can be split,
+        if (threads > 1)
+        {
+            // parse it in chunks on the allowed number of threads,
+            new ParallelStaxReader<>((File) resource, binder.records(), binder::bind)
+                    .threads(threads)
+                    .forEach(batcher);
+        }
+        else
+        {
+            // otherwise, stream its records on this thread.
+            try (var objects = binder.objects(resource))
+            {
+                objects.forEach(batcher);
+            }
+        }
+
+        batcher.flush();
+    }
+
+    @Override
+    public DataFormat format()
+    {
+        return format;
+    }
+
+    @Override
+    public Class<T> recordType()
+    {
+        return binder.type();
+    }
+}
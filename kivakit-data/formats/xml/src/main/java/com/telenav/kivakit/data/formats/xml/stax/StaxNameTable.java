@@ -0,0 +1,97 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Assigns small integer identifiers to XML element names, so that element paths can be held and compared as arrays of
+ * ints instead of lists of strings.
+ * </p>
+ *
+ * <p>
+ * Identifiers are assigned in the order names are first seen, starting at zero, and never change for the life of the
+ * table. Because Java's STAX implementation returns names from its own symbol table, the same {@link String} instance
+ * is usually seen for every occurrence of a name, so lookups first check the most recently resolved name by identity.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see StaxCursorReader
+ */
+@SuppressWarnings("unused")
+public class StaxNameTable
+{
+    /** Identifier returned for names that are not in the table */
+    public static final int NO_NAME = -1;
+
+    /** Identifiers by name */
+    private final Map<String, Integer> identifiers = new HashMap<>();
+
+    /** Names by identifier */
+    private String[] names = new String[64];
+
+    /** The number of names in the table */
+    private int size;
+
+    /** The last name that was resolved, and its identifier */
+    private String lastName;
+
+    private int lastIdentifier = NO_NAME;
+
+    /**
+     * Returns the identifier for the given name, adding it to the table if it is not already there
+     */
+    public int identifier(String name)
+    {
+        var identifier = identifierOf(name);
+        if (identifier == NO_NAME)
+        {
+            if (size == names.length)
+            {
+                names = Arrays.copyOf(names, size * 2);
+            }
+            identifier = size++;
+            names[identifier] = name;
+            identifiers.put(name, identifier);
+            lastName = name;
+            lastIdentifier = identifier;
+        }
+        return identifier;
+    }
+
+    /**
+     * Returns the identifier for the given name, or {@link #NO_NAME} if the name is not in the table
+     */
+    public int identifierOf(String name)
+    {
+        if (name == lastName)
+        {
+            return lastIdentifier;
+        }
+        var identifier = identifiers.get(name);
+        if (identifier == null)
+        {
+            return NO_NAME;
+        }
+        lastName = name;
+        lastIdentifier = identifier;
+        return identifier;
+    }
+
+    /**
+     * Returns the name with the given identifier
+     */
+    public String name(int identifier)
+    {
+        return names[identifier];
+    }
+
+    /**
+     * Returns the number of names in this table
+     */
+    public int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,102 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPathMatcher.staxPathMatcher;
+
+/**
+ * <p>
+ * Dispatches the open tags of an XML stream to callbacks subscribed to {@link StaxPath} patterns, in a single pass.
+ * </p>
+ *
+ * <p>
+ * Patterns are subscribed with {@link #onOpenTag(StaxPath, Consumer)} and may contain wildcards, as described in
+ * {@link StaxPathMatcher}. When {@link #dispatch(StaxCursorReader)} is called, all the patterns are compiled into one
+ * matcher, so the cost of finding the callbacks for each open tag is the same no matter how many patterns are
+ * subscribed.
+ * </p>
+ *
+ * <pre>
+ * var nodes = new MutableCount();
+ * var tags = new MutableCount();
+ *
+ * staxPathDispatcher()
+ *     .onOpenTag(parseXmlPath("/osm/node"), in -&gt; nodes.increment())
+ *     .onOpenTag(parseXmlPath("/osm/*&#47;tag"), in -&gt; tags.increment())
+ *     .dispatch(openXmlCursor(resource));
+ * </pre>
+ *
+ * <p>
+ * A callback is called with the reader positioned at the open tag. It may read attributes and it may advance the
+ * reader, for example with {@link StaxCursorReader#enclosedText()}, but any open tags it advances past are not
+ * dispatched.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see StaxPathMatcher
+ * @see StaxCursorReader
+ */
+@SuppressWarnings("unused")
+public class StaxPathDispatcher
+{
+    /**
+     * Returns a new dispatcher with no subscriptions
+     */
+    public static StaxPathDispatcher staxPathDispatcher()
+    {
+        return new StaxPathDispatcher();
+    }
+
+    /** The subscribed patterns */
+    private final List<StaxPath> patterns = new ArrayList<>();
+
+    /** The callback for each pattern */
+    private final List<Consumer<StaxCursorReader>> callbacks = new ArrayList<>();
+
+    protected StaxPathDispatcher()
+    {
+    }
+
+    /**
+     * Reads the given reader to the end, calling the subscribed callbacks at each open tag whose path is at one or more
+     * subscribed patterns. Callbacks for the same open tag are called in the order they were subscribed. The reader is
+     * closed when the end of the stream is reached.
+     */
+    public void dispatch(StaxCursorReader reader)
+    {
+        ensure(!patterns.isEmpty(), "No subscriptions to dispatch");
+
+        var matcher = staxPathMatcher(patterns);
+        var callbacks = this.callbacks.toArray(new Consumer[0]);
+        try (reader)
+        {
+            for (; reader.hasNext(); reader.next())
+            {
+                if (reader.isAtOpenTag())
+                {
+                    for (var pattern : reader.state(matcher).at())
+                    {
+                        @SuppressWarnings("unchecked")
+                        Consumer<StaxCursorReader> callback = callbacks[pattern];
+                        callback.accept(reader);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscribes the given callback to open tags at the given pattern
+     *
+     * @return This dispatcher, for chaining
+     */
+    public StaxPathDispatcher onOpenTag(StaxPath pattern, Consumer<StaxCursorReader> callback)
+    {
+        patterns.add(pattern);
+        callbacks.add(callback);
+        return this;
+    }
+}
@@ -0,0 +1,396 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+
+/**
+ * <p>
+ * A compiled set of {@link StaxPath} patterns that can be matched against an XML element stream in constant time per
+ * element.
+ * </p>
+ *
+ * <p><b>Patterns</b></p>
+ *
+ * <p>
+ * A pattern is a {@link StaxPath} whose elements are either element names or the wildcard "*", which matches any
+ * single element. For example, the pattern /osm/*&#47;tag matches osm/node/tag and osm/way/tag, but not osm/tag or
+ * osm/way/nd/tag. A leading slash is allowed and ignored, since patterns always start at the root element.
+ * </p>
+ *
+ * <p><b>Matching</b></p>
+ *
+ * <p>
+ * The patterns are compiled into a deterministic automaton whose input symbols are interned element names. Each
+ * {@link State} of the automaton corresponds to an element path, and knows which patterns that path is <i>at</i> and
+ * which it is <i>inside</i>, with the same meanings as {@link StaxPath#isAt(StaxPath)} and
+ * {@link StaxPath#isInside(StaxPath)}. When an open tag is read, the state for the new element is found with
+ * {@link State#next(String)}, which is a hash lookup of the element name and an array index. States are built lazily,
+ * the first time they are reached, so wildcard patterns do not cause the automaton to be built for every possible
+ * combination of element names up front.
+ * </p>
+ *
+ * <p>
+ * Since an XML path is a stack, a reader keeps a stack of states, pushing the next state at each open tag and popping
+ * it at each close tag. {@link StaxReader} and {@link StaxCursorReader} do this when {@link StaxReader#findNext(StaxPath)}
+ * or {@link StaxReader#nextAtOrInside(StaxPath, StaxReader.Matcher)} are called, and {@link StaxPathDispatcher} uses a
+ * matcher to dispatch many subscribed patterns in a single pass.
+ * </p>
+ *
+ * <p>
+ * A matcher builds states as it is used, so it is not thread-safe. Each reader should use its own matcher.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see StaxPath
+ * @see StaxPathDispatcher
+ */
+@SuppressWarnings("unused")
+public class StaxPathMatcher
+{
+    /** The wildcard pattern element, which matches any single element */
+    public static final String WILDCARD = "*";
+
+    /** The symbol used for wildcards and for element names that are not in any pattern */
+    private static final int OTHER = 0;
+
+    /**
+     * Returns a matcher for the given patterns. Pattern indexes reported by {@link State#at()} are indexes into the
+     * given array.
+     */
+    public static StaxPathMatcher staxPathMatcher(StaxPath... patterns)
+    {
+        return new StaxPathMatcher(List.of(patterns));
+    }
+
+    /**
+     * Returns a matcher for the given patterns. Pattern indexes reported by {@link State#at()} are indexes into the
+     * given list.
+     */
+    public static StaxPathMatcher staxPathMatcher(List<StaxPath> patterns)
+    {
+        return new StaxPathMatcher(patterns);
+    }
+
+    /**
+     * <p>
+     * A state of the automaton, corresponding to an element path.
+     * </p>
+     *
+     * <p>
+     * Internally, a state is the set of pattern positions that its path can have reached. Position i of a pattern
+     * means that the first i elements of the pattern matched. A pattern whose last element matched is at its full
+     * length, and any element under it moves to one past its length, where it stays.
+     * </p>
+     */
+    public class State
+    {
+        /** The (pattern, position) pairs in this state, encoded by {@link #node(int, int)}, in ascending order */
+        private final int[] nodes;
+
+        /** The indexes of the patterns this state is at */
+        private final int[] at;
+
+        /** True if this state is inside any pattern */
+        private final boolean inside;
+
+        /** True if no pattern can be matched from this state or any state after it */
+        private final boolean dead;
+
+        /** Transitions to following states, by symbol */
+        private State[] next;
+
+        State(int[] nodes)
+        {
+            this.nodes = nodes;
+
+            var at = new int[nodes.length];
+            var atCount = 0;
+            var inside = false;
+            for (var node : nodes)
+            {
+                var pattern = node / stride;
+                var position = node % stride;
+                var length = patterns[pattern].length;
+                if (position == length)
+                {
+                    at[atCount++] = pattern;
+                }
+                if (position == length + 1)
+                {
+                    inside = true;
+                }
+            }
+            this.at = Arrays.copyOf(at, atCount);
+            this.inside = inside;
+            this.dead = nodes.length == 0;
+            this.next = new State[symbols.size() + 1];
+        }
+
+        /**
+         * Returns the indexes of the patterns that this state is at. The returned array must not be modified.
+         */
+        public int[] at()
+        {
+            return at;
+        }
+
+        /**
+         * Returns true if this state is at any pattern
+         */
+        public boolean isAt()
+        {
+            return at.length > 0;
+        }
+
+        /**
+         * Returns true if this state is at the given pattern
+         */
+        public boolean isAt(int pattern)
+        {
+            return contains(node(pattern, patterns[pattern].length));
+        }
+
+        /**
+         * Returns true if this state is at or inside the given pattern
+         */
+        public boolean isAtOrInside(int pattern)
+        {
+            return isAt(pattern) || isInside(pattern);
+        }
+
+        /**
+         * Returns true if this state is inside any pattern
+         */
+        public boolean isInside()
+        {
+            return inside;
+        }
+
+        /**
+         * Returns true if this state is inside the given pattern
+         */
+        public boolean isInside(int pattern)
+        {
+            return contains(node(pattern, patterns[pattern].length + 1));
+        }
+
+        /**
+         * Returns the state reached from this state by an open tag with the given element name
+         */
+        public State next(String name)
+        {
+            return next(symbol(name));
+        }
+
+        /**
+         * Returns the state reached from this state by an open tag with the given symbol
+         */
+        State next(int symbol)
+        {
+            if (dead)
+            {
+                return this;
+            }
+            var state = next[symbol];
+            if (state == null)
+            {
+                state = transition(this, symbol);
+                next[symbol] = state;
+            }
+            return state;
+        }
+
+        private boolean contains(int node)
+        {
+            return Arrays.binarySearch(nodes, node) >= 0;
+        }
+    }
+
+    /**
+     * Wraps a node array so it can be used as a map key
+     */
+    private static class StateKey
+    {
+        private final int[] nodes;
+
+        private final int hash;
+
+        StateKey(int[] nodes)
+        {
+            this.nodes = nodes;
+            this.hash = Arrays.hashCode(nodes);
+        }
+
+        @Override
+        public boolean equals(Object object)
+        {
+            return object instanceof StateKey that && Arrays.equals(nodes, that.nodes);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /** The patterns, as arrays of symbols, where {@link #OTHER} is a wildcard */
+    private final int[][] patterns;
+
+    /** The number of positions in each pattern's node range, which is the longest pattern's length plus two */
+    private final int stride;
+
+    /** Symbols by element name. Names not in this map have the symbol {@link #OTHER}. */
+    private final Map<String, Integer> symbols = new HashMap<>();
+
+    /** States that have been built, by node set */
+    private final Map<StateKey, State> states = new HashMap<>();
+
+    /** The state at the start of the document, before the root element */
+    private final State start;
+
+    /** The last name that was resolved to a symbol, and its symbol */
+    private String lastName;
+
+    private int lastSymbol;
+
+    protected StaxPathMatcher(List<StaxPath> patterns)
+    {
+        ensure(!patterns.isEmpty(), "No patterns to match");
+
+        this.patterns = new int[patterns.size()][];
+        var longest = 0;
+        for (var index = 0; index < patterns.size(); index++)
+        {
+            var elements = new ArrayList<String>();
+            for (var element : patterns.get(index).elements())
+            {
+                if (!element.isEmpty())
+                {
+                    elements.add(element);
+                }
+            }
+
+            var pattern = new int[elements.size()];
+            for (var position = 0; position < pattern.length; position++)
+            {
+                var element = elements.get(position);
+                pattern[position] = element.equals(WILDCARD)
+                        ? OTHER
+                        : symbols.computeIfAbsent(element, ignored -> symbols.size() + 1);
+            }
+            this.patterns[index] = pattern;
+            longest = Math.max(longest, pattern.length);
+        }
+        this.stride = longest + 2;
+
+        var nodes = new int[patterns.size()];
+        for (var pattern = 0; pattern < nodes.length; pattern++)
+        {
+            nodes[pattern] = node(pattern, 0);
+        }
+        this.start = state(nodes);
+    }
+
+    /**
+     * Returns the number of patterns in this matcher
+     */
+    public int size()
+    {
+        return patterns.length;
+    }
+
+    /**
+     * Returns the state at the start of the document, before the root element is read
+     */
+    public State start()
+    {
+        return start;
+    }
+
+    /**
+     * Returns the state for the given element path
+     */
+    public State state(StaxPath path)
+    {
+        var state = start;
+        for (var element : path.elements())
+        {
+            if (!element.isEmpty())
+            {
+                state = state.next(element);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Returns the symbol for the given element name
+     */
+    int symbol(String name)
+    {
+        // Names usually come from the STAX parser's symbol table, so repeated names are often the same instance
+        if (name == lastName)
+        {
+            return lastSymbol;
+        }
+        var symbol = symbols.get(name);
+        lastName = name;
+        lastSymbol = symbol == null ? OTHER : symbol;
+        return lastSymbol;
+    }
+
+    /**
+     * Returns the node for the given position in the given pattern
+     */
+    private int node(int pattern, int position)
+    {
+        return pattern * stride + position;
+    }
+
+    /**
+     * Returns the unique state for the given nodes
+     */
+    private State state(int[] nodes)
+    {
+        return states.computeIfAbsent(new StateKey(nodes), ignored -> new State(nodes));
+    }
+
+    /**
+     * Returns the state reached from the given state by the given symbol
+     */
+    private State transition(State from, int symbol)
+    {
+        var nodes = new int[from.nodes.length];
+        var count = 0;
+        for (var node : from.nodes)
+        {
+            var pattern = node / stride;
+            var position = node % stride;
+            var length = patterns[pattern].length;
+
+            // If the pattern has matched, the element is inside it,
+            if (position >= length)
+            {
+                nodes[count++] = node(pattern, length + 1);
+            }
+            else
+            {
+                // otherwise, the pattern advances if the element matches its next element.
+                var expected = patterns[pattern][position];
+                if (expected == OTHER || expected == symbol)
+                {
+                    nodes[count++] = node(pattern, position + 1);
+                }
+            }
+        }
+
+        // Nodes stay in ascending order, since each pattern has at most one node and patterns are in order
+        return state(Arrays.copyOf(nodes, count));
+    }
+}
@@ -0,0 +1,178 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPathMatcher.staxPathMatcher;
+
+/**
+ * Tracks the {@link StaxPathMatcher.State} of a reader's current element path, as a stack of states with one state
+ * for each open element.
+ *
+ * <p>
+ * A tracker is not updated as the reader moves. Instead, the reader's {@link Trackers} keep the names of the open
+ * elements, with a serial number for each, and a tracker catches up with them when its {@link #state()} is asked for.
+ * An element that is still open has the same serial number in the reader and in the tracker, and since the elements
+ * under it can only be open if it is, the tracker only needs to pop the states above the deepest element that it shares
+ * with the reader and push states for the elements opened since. When a tracker is asked for its state at each event,
+ * this is one transition for each open tag, no matter how many other trackers the reader has.
+ * </p>
+ *
+ * @author jonathanl (shibo)
+ * @see StaxPathMatcher
+ */
+class StaxPathTracker
+{
+    /**
+     * The trackers of a reader, one for each path passed to {@link StaxReader#findNext(StaxPath)} or
+     * {@link StaxReader#nextAtOrInside(StaxPath, StaxReader.Matcher)}, and one for each matcher dispatched by a
+     * {@link StaxPathDispatcher}. Paths are cached by their elements, so a path that is rebuilt for each call shares
+     * one tracker, and matchers are cached by identity. Only the most recently used trackers are kept. Since a tracker
+     * catches up with the reader's path by itself, a tracker that has been evicted can still be used by a caller that
+     * holds it, and is rebuilt the next time it is needed by one that doesn't.
+     */
+    static class Trackers
+    {
+        /** The maximum number of trackers to keep */
+        private static final int MAXIMUM_TRACKERS = 32;
+
+        /** Trackers by path elements or matcher, in least recently used order */
+        private final Map<Object, StaxPathTracker> byKey = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, StaxPathTracker> eldest)
+            {
+                return size() > MAXIMUM_TRACKERS;
+            }
+        };
+
+        /** The number of open elements */
+        private int depth;
+
+        /** The names of the open elements, from index one */
+        private String[] names = new String[32];
+
+        /** The serial number of each open element, from index one, where index zero is the document */
+        private long[] serials = new long[32];
+
+        /** The serial number of the last element opened */
+        private long serial;
+
+        /**
+         * Pops the element that was closed
+         */
+        void pop()
+        {
+            if (depth > 0)
+            {
+                depth--;
+            }
+        }
+
+        /**
+         * Pushes an open tag with the given name
+         */
+        void push(String name)
+        {
+            if (++depth == names.length)
+            {
+                names = Arrays.copyOf(names, depth * 2);
+                serials = Arrays.copyOf(serials, depth * 2);
+            }
+            names[depth] = name;
+            serials[depth] = ++serial;
+        }
+
+        /**
+         * Returns the tracker for the given path, creating it if it doesn't exist yet
+         */
+        StaxPathTracker tracker(StaxPath path)
+        {
+            var tracker = byKey.get(path.elements());
+            if (tracker == null)
+            {
+                tracker = new StaxPathTracker(this, staxPathMatcher(path));
+                byKey.put(List.copyOf(path.elements()), tracker);
+            }
+            return tracker;
+        }
+
+        /**
+         * Returns the tracker for the given matcher, creating it if it doesn't exist yet
+         */
+        StaxPathTracker tracker(StaxPathMatcher matcher)
+        {
+            var tracker = byKey.get(matcher);
+            if (tracker == null)
+            {
+                tracker = new StaxPathTracker(this, matcher);
+                byKey.put(matcher, tracker);
+            }
+            return tracker;
+        }
+    }
+
+    /** The matcher whose states are tracked */
+    private final StaxPathMatcher matcher;
+
+    /** The trackers of the reader, which hold its open elements */
+    private final Trackers trackers;
+
+    /** The serial number of the element that each state is for */
+    private long[] serials = new long[32];
+
+    /** The stack of states, where the bottom of the stack is the matcher's start state */
+    private StaxPathMatcher.State[] states = new StaxPathMatcher.State[32];
+
+    /** The index of the top of the stack */
+    private int top;
+
+    /**
+     * @param trackers The trackers of the reader, which hold its open elements
+     * @param matcher The matcher to track
+     */
+    StaxPathTracker(Trackers trackers, StaxPathMatcher matcher)
+    {
+        this.trackers = trackers;
+        this.matcher = matcher;
+        states[0] = matcher.start();
+    }
+
+    /**
+     * Returns the matcher being tracked
+     */
+    StaxPathMatcher matcher()
+    {
+        return matcher;
+    }
+
+    /**
+     * Returns the state of the reader's current path
+     */
+    StaxPathMatcher.State state()
+    {
+        // Pop the states of elements that have been closed since this tracker was last used,
+        var depth = trackers.depth;
+        top = Math.min(top, depth);
+        while (top > 0 && serials[top] != trackers.serials[top])
+        {
+            top--;
+        }
+
+        // then push states for the elements that have been opened.
+        while (top < depth)
+        {
+            var next = states[top].next(trackers.names[top + 1]);
+            if (++top == states.length)
+            {
+                states = Arrays.copyOf(states, top * 2);
+                serials = Arrays.copyOf(serials, top * 2);
+            }
+            states[top] = next;
+            serials[top] = trackers.serials[top];
+        }
+        return states[top];
+    }
+}
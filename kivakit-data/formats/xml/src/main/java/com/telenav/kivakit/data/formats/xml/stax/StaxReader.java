@@ -93,15 +93,24 @@ import static com.telenav.kivakit.data.formats.xml.stax.StaxReader.Match.NOT_FOU
  * </p>
  *
  * <ul>
- *     <li>{@link #findNext(StaxPath)} - Advances the reader to the next location where {@link #path()} matches the given path</li>
+ *     <li>{@link #findNext(StaxPath)} - Advances the reader to the next location where {@link #path()} is inside the given path</li>
  *     <li>{@link #isAt(StaxPath)} - True if the reader is at the level of the given {@link StaxPath}</li>
  *     <li>{@link #isInside(StaxPath)} - True if the reader is under the given {@link StaxPath}</li>
  *     <li>{@link #isAtOrInside(StaxPath)} - True if the reader is at or under the level of the given {@link StaxPath}</li>
  *     <li>{@link #isOutside(StaxPath)} - True if the reader is above the given {@link StaxPath}</li>
  * </ul>
  *
+ * <p><b>Cursor Mode</b></p>
+ *
+ * <p>
+ * This reader allocates an {@link XMLEvent} for every tag and character run, and copies its {@link StaxPath} on each
+ * call to {@link #path()}. For very large documents, {@link StaxCursorReader} offers the same navigation API on top of
+ * {@link javax.xml.stream.XMLStreamReader}, without per-event objects.
+ * </p>
+ *
  * @author jonathanl (shibo)
  * @see StaxPath
+ * @see StaxCursorReader
  * @see XMLEventReader
  * @see XMLEvent
  * @see Matcher
@@ -171,6 +180,9 @@ public class StaxReader extends BaseComponent implements Closeable
     /** The current XML path */
     private final StaxPath path = new StaxPath();
 
+    /** Compiled paths for findNext and nextAtOrInside */
+    private final StaxPathTracker.Trackers trackers = new StaxPathTracker.Trackers();
+
     /** The current event */
     private XMLEvent at;
 
@@ -225,11 +237,14 @@ public class StaxReader extends BaseComponent implements Closeable
     }
 
     /**
-     * Finds the next element under the given path, or an exception is thrown
+     * Finds the next element under the given path, or an exception is thrown. The path is compiled into a
+     * {@link StaxPathMatcher} the first time it is seen, so testing each element is constant time. Compiled paths are
+     * cached by their elements, and only the most recently used ones are kept.
      */
     public XMLEvent findNext(StaxPath path)
     {
-        return nextMatching(ignored -> this.path.isInside(path) ? FOUND : NOT_FOUND);
+        var tracker = trackers.tracker(path);
+        return nextMatching(ignored -> tracker.state().isInside() ? FOUND : NOT_FOUND);
     }
 
     /**
@@ -333,11 +348,14 @@ public class StaxReader extends BaseComponent implements Closeable
             events++;
             if (at.isStartElement())
             {
-                path.push(at.asStartElement().getName().getLocalPart());
+                var name = at.asStartElement().getName().getLocalPart();
+                path.push(name);
+                trackers.push(name);
             }
             if (at.isEndElement())
             {
                 path.pop();
+                trackers.pop();
             }
             if (at.isEndDocument())
             {
@@ -357,14 +375,17 @@ public class StaxReader extends BaseComponent implements Closeable
      * @param matcher The matcher to call
      * @return The next matching element inside the given path, or null if the element couldn't be found before leaving
      * the scope represented by the given path. If the element isn't found, the element returned by {@link #at()} will
-     * be the one after the close tag where matching had to stop.
+     * be the one after the close tag where matching had to stop. The path is compiled in the same way as it is by
+     * {@link #findNext(StaxPath)}.
      */
     public XMLEvent nextAtOrInside(StaxPath path, Matcher matcher)
     {
+        var tracker = trackers.tracker(path);
         return nextMatching(event ->
         {
             // If we aren't under the given path anymore,
-            if (!isAtOrInside(path))
+            var state = tracker.state();
+            if (!state.isAt() && !state.isInside())
             {
                 // then advance to the next element,
                 next();
@@ -0,0 +1,27 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Binds a type or a field to a location in an XML document, for {@link StaxBinder}. On a type, the value is the
+ * {@link StaxPath} of the records that the type is bound to, like "osm/way". On a field, the value is a path relative
+ * to the record element, optionally followed by an attribute name, like "nd@ref", "@id" or "name". Path elements may be
+ * the wildcard "*".
+ *
+ * @author jonathanl (shibo)
+ * @see StaxBinder
+ */
+@Retention(RUNTIME)
+@Target({ TYPE, FIELD })
+public @interface XmlPath
+{
+    /**
+     * Returns the path of the records or value that the type or field is bound to
+     */
+    String value();
+}
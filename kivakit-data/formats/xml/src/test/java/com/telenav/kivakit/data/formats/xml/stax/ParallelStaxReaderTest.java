@@ -0,0 +1,149 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPath.parseXmlPath;
+import static com.telenav.kivakit.resource.Extension.XML;
+
+public class ParallelStaxReaderTest extends UnitTest
+{
+    @Test
+    public void testAdjacentRecords()
+    {
+        // Records with no space between them, read by a function that moves on to the next record's open tag
+        var xml = new StringBuilder("<osm>");
+        for (var index = 0; index < 500; index++)
+        {
+            xml.append("<node id=\"").append(index).append("\"><tag>").append(index).append("</tag></node>");
+        }
+        xml.append("</osm>");
+
+        var file = xmlFile(xml.toString());
+        try
+        {
+            for (var chunkSize : new long[] { 1, 100, 1024 * 1024 })
+            {
+                var identifiers = read(file, chunkSize, in ->
+                {
+                    var identifier = in.attribute("id");
+                    while (!in.isAtCloseTag("node"))
+                    {
+                        in.next();
+                    }
+                    in.next();
+                    return identifier;
+                });
+                ensureEqual(identifiers, sequence(500));
+            }
+
+            // and by a function that only reads part of each record.
+            var text = read(file, 100, in ->
+            {
+                in.next();
+                return in.enclosedText();
+            });
+            ensureEqual(text, sequence(500));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testChunkBoundaries()
+    {
+        // Records with content between them, cut into chunks of many sizes, which must come back whole and in order
+        var xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<osm version=\"0.6\">\n");
+        for (var index = 0; index < 1_000; index++)
+        {
+            xml.append("  <node id=\"").append(index).append("\">\n    <tag k=\"name\" v=\"node ")
+                    .append(index).append("\"/>\n  </node>\n");
+            if (index % 100 == 0)
+            {
+                xml.append("  <!-- comment -->\n");
+            }
+        }
+        xml.append("</osm>\n");
+
+        var file = xmlFile(xml.toString());
+        try
+        {
+            for (var chunkSize : new long[] { 1, 50, 777, 64 * 1024 })
+            {
+                ensureEqual(read(file, chunkSize, in -> in.attribute("id")), sequence(1_000));
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMalformedChunk()
+    {
+        // An entity from the document type declaration is undefined in a chunk, which must fail rather than be cut short
+        var xml = new StringBuilder("<!DOCTYPE osm [<!ENTITY name \"value\">]>\n<osm>\n");
+        for (var index = 0; index < 100; index++)
+        {
+            xml.append("<node id=\"").append(index).append("\">")
+                    .append(index == 50 ? "&name;" : "text")
+                    .append("</node>\n");
+        }
+        xml.append("</osm>\n");
+
+        var file = xmlFile(xml.toString());
+        try
+        {
+            var failed = false;
+            try
+            {
+                read(file, 100, in -> in.attribute("id"));
+            }
+            catch (IllegalStateException e)
+            {
+                failed = true;
+            }
+            ensure(failed);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private List<String> read(File file, long chunkSize, Function<StaxCursorReader, String> mapper)
+    {
+        var results = new ArrayList<String>();
+        new ParallelStaxReader<>(file, parseXmlPath("osm/node"), mapper)
+                .chunkSize(bytes(chunkSize))
+                .threads(4)
+                .forEach(results::add);
+        return results;
+    }
+
+    private List<String> sequence(int count)
+    {
+        var sequence = new ArrayList<String>();
+        for (var index = 0; index < count; index++)
+        {
+            sequence.add(String.valueOf(index));
+        }
+        return sequence;
+    }
+
+    private File xmlFile(String xml)
+    {
+        var file = File.temporaryFile(XML);
+        file.writer().saveText(xml);
+        return file;
+    }
+}
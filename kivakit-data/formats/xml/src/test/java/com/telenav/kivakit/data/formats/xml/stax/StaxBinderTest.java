@@ -0,0 +1,190 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxBinder.staxBinder;
+import static com.telenav.kivakit.resource.Extension.XML;
+
+public class StaxBinderTest extends UnitTest
+{
+    public enum Kind
+    {
+        PRIMARY,
+        SECONDARY
+    }
+
+    @XmlPath("osm/way")
+    public static class Way
+    {
+        @XmlPath("@id")
+        long identifier;
+
+        @XmlPath("@kind")
+        Kind kind;
+
+        @XmlPath("@visible")
+        Boolean visible;
+
+        @XmlPath("name")
+        String name;
+
+        @XmlPath("nd@ref")
+        List<Long> nodes;
+
+        @XmlPath("tag@k")
+        List<String> keys;
+    }
+
+    @XmlPath("osm/way")
+    public static class Text
+    {
+        @XmlPath("")
+        String text;
+
+        @XmlPath("nd@ref")
+        List<Long> nodes;
+    }
+
+    @Test
+    public void testBind()
+    {
+        var file = xmlFile("<osm>"
+                + "<way id=\"1\" kind=\"PRIMARY\" visible=\"true\"><name>First</name>"
+                + "<nd ref=\"10\"/><nd ref=\"11\"/><tag k=\"highway\" v=\"primary\"/></way>"
+                + "<way id=\"2\" kind=\"SECONDARY\"><nd ref=\"20\"/><name> Second </name></way>"
+                + "</osm>");
+        try
+        {
+            try (var objects = staxBinder(Way.class).objects(file))
+            {
+                var ways = objects.toList();
+                ensureEqual(ways.size(), 2);
+
+                var first = ways.get(0);
+                ensureEqual(first.identifier, 1L);
+                ensureEqual(first.kind, Kind.PRIMARY);
+                ensureEqual(first.visible, true);
+                ensureEqual(first.name, "First");
+                ensureEqual(first.nodes, List.of(10L, 11L));
+                ensureEqual(first.keys, List.of("highway"));
+
+                var second = ways.get(1);
+                ensureEqual(second.identifier, 2L);
+                ensureEqual(second.kind, Kind.SECONDARY);
+                ensure(second.visible == null);
+                ensureEqual(second.name, " Second ");
+                ensureEqual(second.nodes, List.of(20L));
+                ensure(second.keys == null);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testConversionFailure()
+    {
+        // A value that can't be converted is skipped, and the rest of the record and the stream are still bound
+        var file = xmlFile("<osm>"
+                + "<way id=\"x\"><nd ref=\"10\"/><nd ref=\"y\"/><nd ref=\"12\"/></way>"
+                + "<way id=\"2\" kind=\"TERTIARY\"><nd ref=\"20\"/></way>"
+                + "</osm>");
+        try
+        {
+            try (var objects = staxBinder(Way.class).objects(file))
+            {
+                var ways = objects.toList();
+                ensureEqual(ways.size(), 2);
+                ensureEqual(ways.get(0).identifier, 0L);
+                ensureEqual(ways.get(0).nodes, List.of(10L, 12L));
+                ensureEqual(ways.get(1).identifier, 2L);
+                ensure(ways.get(1).kind == null);
+                ensureEqual(ways.get(1).nodes, List.of(20L));
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testParallel()
+    {
+        var xml = new StringBuilder("<osm>\n");
+        for (var index = 0; index < 1_000; index++)
+        {
+            xml.append("<way id=\"").append(index).append("\"><nd ref=\"").append(index * 2)
+                    .append("\"/><name>way ").append(index).append("</name></way>\n");
+        }
+        xml.append("</osm>\n");
+
+        var file = xmlFile(xml.toString());
+        try
+        {
+            var binder = staxBinder(Way.class);
+            var ways = new ArrayList<Way>();
+            new ParallelStaxReader<>(file, binder.records(), binder::bind)
+                    .chunkSize(bytes(500))
+                    .threads(4)
+                    .forEach(ways::add);
+
+            ensureEqual(ways.size(), 1_000);
+            for (var index = 0; index < ways.size(); index++)
+            {
+                var way = ways.get(index);
+                ensureEqual(way.identifier, (long) index);
+                ensureEqual(way.name, "way " + index);
+                ensureEqual(way.nodes, List.of(index * 2L));
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTextWithChildElements()
+    {
+        // Text can't be bound from an element with children, but the bindings inside it still are
+        var file = xmlFile("<osm>"
+                + "<way>text<nd ref=\"1\"/><nd ref=\"2\"/></way>"
+                + "<way><nd ref=\"3\"/></way>"
+                + "<way>only text</way>"
+                + "</osm>");
+        try
+        {
+            try (var objects = staxBinder(Text.class).objects(file))
+            {
+                var records = objects.toList();
+                ensureEqual(records.size(), 3);
+                ensure(records.get(0).text == null);
+                ensureEqual(records.get(0).nodes, List.of(1L, 2L));
+                ensure(records.get(1).text == null);
+                ensureEqual(records.get(1).nodes, List.of(3L));
+                ensureEqual(records.get(2).text, "only text");
+                ensure(records.get(2).nodes == null);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private File xmlFile(String xml)
+    {
+        var file = File.temporaryFile(XML);
+        file.writer().saveText(xml);
+        return file;
+    }
+}
@@ -0,0 +1,96 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.telenav.kivakit.data.formats.xml.stax.StaxCursorReader.openXmlCursor;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPath.parseXmlPath;
+import static com.telenav.kivakit.resource.Extension.XML;
+
+public class StaxCursorReaderTest extends UnitTest
+{
+    @Test
+    public void testCloseTag()
+    {
+        // At a close tag, the closed element is not part of the path
+        var file = xmlFile("<a><b></b></a>");
+        try (var reader = openXmlCursor(file))
+        {
+            reader.nextCloseTag();
+            ensure(reader.isAtCloseTag("b"));
+            ensure(reader.isAt(parseXmlPath("a")));
+            ensure(!reader.isAtOrInside(parseXmlPath("a/b")));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLeadingSlash()
+    {
+        // A leading slash is ignored, as in the example for isInside
+        var file = xmlFile("<a><b><c/></b></a>");
+        try (var reader = openXmlCursor(file))
+        {
+            reader.nextMatching((StaxCursorReader.BooleanMatcher) in -> in.isAtOpenTag("c"));
+            for (var prefix : List.of("", "/"))
+            {
+                ensure(reader.isInside(parseXmlPath(prefix + "a/b")));
+                ensure(!reader.isInside(parseXmlPath(prefix + "a/b/c")));
+                ensure(!reader.isInside(parseXmlPath(prefix + "a/b/c/d")));
+                ensure(reader.isAt(parseXmlPath(prefix + "a/b/c")));
+                ensure(!reader.isAt(parseXmlPath(prefix + "a/b")));
+                ensure(reader.isAtOrInside(parseXmlPath(prefix + "a")));
+                ensure(!reader.isAtOrInside(parseXmlPath(prefix + "b")));
+                ensure(reader.isOutside(parseXmlPath(prefix + "x")));
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWildcards()
+    {
+        // A wildcard matches any single element
+        var names = new ArrayList<String>();
+        var file = xmlFile("<osm><node><tag k=\"a\"/></node><tag k=\"b\"/><way><nd><tag k=\"x\"/></nd><tag k=\"c\"/></way></osm>");
+        try (var reader = openXmlCursor(file))
+        {
+            for (; reader.nextOpenTag(); reader.next())
+            {
+                if (reader.isAt(parseXmlPath("/osm/*/tag")))
+                {
+                    names.add(reader.attribute("k"));
+                }
+                if (reader.isAtOpenTag("nd"))
+                {
+                    ensure(reader.isAtOrInside(parseXmlPath("osm/*")));
+                    ensure(reader.isInside(parseXmlPath("*")));
+                    ensure(reader.isAt(parseXmlPath("*/*/*")));
+                    ensure(!reader.isAt(parseXmlPath("*/*")));
+                }
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+        ensureEqual(names, List.of("a", "c"));
+    }
+
+    private File xmlFile(String xml)
+    {
+        var file = File.temporaryFile(XML);
+        file.writer().saveText(xml);
+        return file;
+    }
+}
@@ -0,0 +1,160 @@
+package com.telenav.kivakit.data.formats.xml.stax;
+
+import com.telenav.kivakit.data.formats.xml.stax.StaxCursorReader.BooleanMatcher;
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.testing.UnitTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.telenav.kivakit.data.formats.xml.stax.StaxCursorReader.openXmlCursor;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPath.parseXmlPath;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPathDispatcher.staxPathDispatcher;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxPathMatcher.staxPathMatcher;
+import static com.telenav.kivakit.data.formats.xml.stax.StaxReader.Match.NOT_FOUND;
+import static com.telenav.kivakit.resource.Extension.XML;
+
+public class StaxPathMatcherTest extends UnitTest
+{
+    private static final String GROUPS = "<root>\n"
+            + "  <group id=\"1\"><item>a</item><other/><item>b</item></group>\n"
+            + "  <group id=\"2\"><item>c</item></group>\n"
+            + "  <item>outside</item>\n"
+            + "</root>";
+
+    @Test
+    public void testEviction()
+    {
+        // A tracker that is held while many other paths are used still follows the reader
+        var items = new ArrayList<String>();
+        var file = xmlFile(GROUPS);
+        try (var reader = openXmlCursor(file))
+        {
+            reader.nextMatching((BooleanMatcher) in -> in.isAtOpenTag("group"));
+            reader.nextAtOrInside(parseXmlPath("root/group"), in ->
+            {
+                for (var index = 0; index < 100; index++)
+                {
+                    in.state(staxPathMatcher(parseXmlPath("root/path" + index)));
+                }
+                if (in.isAtOpenTag("item"))
+                {
+                    items.add(in.enclosedText());
+                }
+                return NOT_FOUND;
+            });
+        }
+        finally
+        {
+            file.delete();
+        }
+        ensureEqual(items, List.of("a", "b"));
+    }
+
+    @Test
+    public void testLeadingSlash()
+    {
+        // A leading slash is ignored
+        for (var pattern : List.of("a/b", "/a/b"))
+        {
+            var matcher = staxPathMatcher(parseXmlPath(pattern));
+            ensure(!matcher.state(parseXmlPath("a")).isAtOrInside(0));
+            ensure(matcher.state(parseXmlPath("a/b")).isAt(0));
+            ensure(matcher.state(parseXmlPath("/a/b")).isAt(0));
+            ensure(matcher.state(parseXmlPath("a/b/c")).isInside(0));
+            ensure(!matcher.state(parseXmlPath("b")).isAtOrInside(0));
+        }
+    }
+
+    @Test
+    public void testNestedNextAtOrInside()
+    {
+        // An inner search that stops at the end of a group leaves the outer search to find the next group
+        var items = new ArrayList<String>();
+        var file = xmlFile(GROUPS);
+        try (var reader = openXmlCursor(file))
+        {
+            reader.nextOpenTag();
+            reader.nextAtOrInside(parseXmlPath("root"), outer ->
+            {
+                if (outer.isAtOpenTag("group"))
+                {
+                    var group = outer.attribute("id");
+                    outer.next();
+                    outer.nextAtOrInside(parseXmlPath("root/group"), inner ->
+                    {
+                        if (inner.isAtOpenTag("item"))
+                        {
+                            items.add(group + inner.enclosedText());
+                        }
+                        return NOT_FOUND;
+                    });
+                }
+                return NOT_FOUND;
+            });
+        }
+        finally
+        {
+            file.delete();
+        }
+        ensureEqual(items, List.of("1a", "1b", "2c"));
+    }
+
+    @Test
+    public void testPatterns()
+    {
+        // Each state reports the indexes of the patterns it is at and whether it is inside them
+        var matcher = staxPathMatcher(parseXmlPath("osm/node"), parseXmlPath("osm/way"), parseXmlPath("osm/*"));
+        ensureEqual(matcher.size(), 3);
+
+        var node = matcher.state(parseXmlPath("osm/node"));
+        ensure(node.isAt(0));
+        ensure(!node.isAt(1));
+        ensure(node.isAt(2));
+        ensureEqual(node.at().length, 2);
+
+        var tag = node.next("tag");
+        ensure(tag.isInside(0));
+        ensure(tag.isInside());
+        ensure(!tag.isAt());
+
+        ensure(!matcher.start().isAtOrInside(0));
+        ensure(matcher.start().next("osm") == matcher.state(parseXmlPath("osm")));
+    }
+
+    @Test
+    public void testWildcards()
+    {
+        // A wildcard matches any single element
+        var matcher = staxPathMatcher(parseXmlPath("/osm/*/tag"));
+        ensure(matcher.state(parseXmlPath("osm/node/tag")).isAt(0));
+        ensure(matcher.state(parseXmlPath("osm/way/tag")).isAt(0));
+        ensure(matcher.state(parseXmlPath("osm/way/tag/x")).isInside(0));
+        ensure(!matcher.state(parseXmlPath("osm/tag")).isAtOrInside(0));
+        ensure(!matcher.state(parseXmlPath("osm/way/nd/tag")).isAtOrInside(0));
+        ensure(!matcher.state(parseXmlPath("other/way/tag")).isAtOrInside(0));
+
+        // and when dispatching the open tags of a stream.
+        var names = new ArrayList<String>();
+        var file = xmlFile("<osm><node><tag k=\"a\"/></node><tag k=\"b\"/><way><nd/><tag k=\"c\"/></way></osm>");
+        try
+        {
+            staxPathDispatcher()
+                    .onOpenTag(parseXmlPath("/osm/*/tag"), in -> names.add(in.attribute("k")))
+                    .dispatch(openXmlCursor(file));
+        }
+        finally
+        {
+            file.delete();
+        }
+        ensureEqual(names, List.of("a", "c"));
+    }
+
+    private File xmlFile(String xml)
+    {
+        var file = File.temporaryFile(XML);
+        file.writer().saveText(xml);
+        return file;
+    }
+}
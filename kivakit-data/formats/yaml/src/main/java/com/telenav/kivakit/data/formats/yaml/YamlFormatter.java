@@ -1,45 +1,35 @@
 package com.telenav.kivakit.data.formats.yaml;
 
 import com.telenav.kivakit.core.collections.list.StringList;
+import com.telenav.kivakit.core.messaging.messages.status.Problem;
 import com.telenav.kivakit.data.formats.yaml.model.YamlArray;
 import com.telenav.kivakit.data.formats.yaml.model.YamlBlock;
 import com.telenav.kivakit.data.formats.yaml.model.YamlLiteral;
 import com.telenav.kivakit.data.formats.yaml.model.YamlNode;
 import com.telenav.kivakit.data.formats.yaml.model.YamlScalar;
 
+import java.io.IOException;
+
 import static com.telenav.kivakit.core.collections.list.StringList.stringList;
 import static com.telenav.kivakit.core.ensure.Ensure.fail;
 import static com.telenav.kivakit.core.string.Strings.doubleQuoted;
 
 /**
- * Converts {@link YamlNode}s to text, in the form of a {@link StringList}.
+ * Converts {@link YamlNode}s to text. The tree is walked once, and each line is written straight to an
+ * {@link Appendable}, like a {@link java.io.Writer}, with its indentation. No intermediate lines or lists are built,
+ * so the cost of formatting is proportional to the size of the output, no matter how deeply the tree is nested.
  *
  * @author Jonathan Locke
  */
 public class YamlFormatter
 {
     /**
-     * Returns the yaml for the given node
+     * Returns the yaml for the given node, which has no lines if the node writes nothing
      */
     public StringList asStringList(YamlNode node)
     {
-        if (node instanceof YamlLiteral literal)
-        {
-            return asStringList(literal);
-        }
-        if (node instanceof YamlScalar scalar)
-        {
-            return asStringList(scalar);
-        }
-        if (node instanceof YamlBlock block)
-        {
-            return asStringList(block);
-        }
-        if (node instanceof YamlArray array)
-        {
-            return asStringList(array);
-        }
-        return fail("Unrecognized node type: $", node.getClass());
+        var yaml = format(node);
+        return yaml.isEmpty() ? stringList() : stringList(yaml.split("\n"));
     }
 
     /**
@@ -47,7 +37,7 @@ public class YamlFormatter
      */
     public StringList asStringList(YamlLiteral literal)
     {
-        return stringList(literal.name() + ": " + literal.value());
+        return asStringList((YamlNode) literal);
     }
 
     /**
@@ -55,87 +45,231 @@ public class YamlFormatter
      */
     public StringList asStringList(YamlBlock block)
     {
-        var yaml = stringList();
+        return asStringList((YamlNode) block);
+    }
+
+    /**
+     * Returns the yaml for the given scalar
+     */
+    public StringList asStringList(YamlScalar scalar)
+    {
+        return asStringList((YamlNode) scalar);
+    }
 
-        // Add the yaml for each element of the block,
-        for (var child : block.elements())
+    /**
+     * Returns the yaml for the given array
+     */
+    public StringList asStringList(YamlArray array)
+    {
+        return asStringList((YamlNode) array);
+    }
+
+    /**
+     * Returns the yaml for the given node, with lines separated by newlines
+     */
+    public String format(YamlNode node)
+    {
+        var yaml = new StringBuilder();
+        format(node, yaml);
+
+        // Remove the newline after the last line.
+        if (yaml.length() > 0)
         {
-            yaml.addAll(asStringList(child));
+            yaml.setLength(yaml.length() - 1);
         }
+        return yaml.toString();
+    }
 
-        // then if the block is named,
-        if (block.isNamed())
+    /**
+     * Writes the yaml for the given node to the given output, ending each line with a newline
+     *
+     * @param node The node to format
+     * @param out The output to write to
+     */
+    public void format(YamlNode node, Appendable out)
+    {
+        try
         {
-            // indent the elements and add the label.
-            yaml = yaml.indented(2)
-                .prepending(block.name() + ":");
+            new Output(out).node(node, 0);
+        }
+        catch (IOException e)
+        {
+            throw new Problem(e, "Unable to write YAML for: $", node.name()).asException();
         }
-
-        return yaml;
     }
 
     /**
-     * Returns the yaml for the given scalar
+     * Writes lines of yaml to an {@link Appendable}
      */
-    public StringList asStringList(YamlScalar scalar)
+    private static class Output
     {
-        var label = scalar.name() == null
-            ? ""
-            : scalar.name() + ": ";
+        /** The output */
+        private final Appendable out;
+
+        /**
+         * The array element indicators and indentation that the next line should start with, instead of its own
+         * indentation, or null if there are none. The first line of an array element starts with the hyphen list
+         * indicator, and the first line of an array element that is itself an array starts with two of them.
+         */
+        private StringBuilder prefix;
 
-        if (scalar.isEnum())
+        Output(Appendable out)
         {
-            return stringList(scalar.string());
+            this.out = out;
         }
-        if (scalar.isNumber())
+
+        /**
+         * Writes the given array at the given indent
+         */
+        void array(YamlArray array, int indent) throws IOException
         {
-            return stringList(label + scalar.number());
+            // If the array is named,
+            if (array.isNamed())
+            {
+                // write the label and indent the elements.
+                line(indent, array.name(), ":");
+                indent += 2;
+            }
+
+            // Write each element of the array,
+            for (var element : array.elements())
+            {
+                // starting its first line with the hyphen list indicator,
+                var unprefixed = prefix == null ? -1 : prefix.length();
+                if (prefix == null)
+                {
+                    prefix = new StringBuilder();
+                }
+                indent(prefix, indent - prefix.length());
+                prefix.append("- ");
+
+                // and indenting the remaining lines past the indicator.
+                node(element, indent + 2);
+
+                // If the element wrote no lines, its indicator wasn't used, so remove it rather than start the next
+                // element's first line with it.
+                if (prefix != null)
+                {
+                    if (unprefixed < 0)
+                    {
+                        prefix = null;
+                    }
+                    else
+                    {
+                        prefix.setLength(unprefixed);
+                    }
+                }
+            }
         }
-        if (scalar.isBoolean())
+
+        /**
+         * Writes the given block at the given indent
+         */
+        void block(YamlBlock block, int indent) throws IOException
         {
-            return stringList(label + scalar.truth());
+            // If the block is named,
+            if (block.isNamed())
+            {
+                // write the label and indent the elements.
+                line(indent, block.name(), ":");
+                indent += 2;
+            }
+
+            // Write each element of the block.
+            for (var child : block.elements())
+            {
+                node(child, indent);
+            }
         }
-        if (scalar.isString())
+
+        /**
+         * Writes the given node at the given indent
+         */
+        void node(YamlNode node, int indent) throws IOException
         {
-            return stringList(label + doubleQuoted(scalar.string()));
+            if (node instanceof YamlLiteral literal)
+            {
+                line(indent, literal.name() + ": ", literal.value());
+            }
+            else if (node instanceof YamlScalar scalar)
+            {
+                scalar(scalar, indent);
+            }
+            else if (node instanceof YamlBlock block)
+            {
+                block(block, indent);
+            }
+            else if (node instanceof YamlArray array)
+            {
+                array(array, indent);
+            }
+            else
+            {
+                fail("Unrecognized node type: $", node.getClass());
+            }
         }
 
-        return fail("Unsupported scalar: $", scalar.toString());
-    }
-
-    /**
-     * Returns the yaml for the given array
-     */
-    public StringList asStringList(YamlArray array)
-    {
-        var yaml = stringList();
-
-        // Add the yaml for each element of the array,
-        for (var element : array.elements())
+        /**
+         * Writes the given scalar at the given indent
+         */
+        void scalar(YamlScalar scalar, int indent) throws IOException
         {
-            var values = asStringList(element);
-            yaml.addAll(arrayize(values));
+            var label = scalar.name() == null
+                ? ""
+                : scalar.name() + ": ";
+
+            if (scalar.isEnum())
+            {
+                line(indent, "", scalar.string());
+            }
+            else if (scalar.isNumber())
+            {
+                line(indent, label, String.valueOf(scalar.number()));
+            }
+            else if (scalar.isBoolean())
+            {
+                line(indent, label, String.valueOf(scalar.truth()));
+            }
+            else if (scalar.isString())
+            {
+                line(indent, label, doubleQuoted(scalar.string()));
+            }
+            else
+            {
+                fail("Unsupported scalar: $", scalar.toString());
+            }
         }
 
-        // and if the array is named,
-        if (array.isNamed())
+        /**
+         * Writes the given number of spaces to the given output
+         */
+        private void indent(Appendable out, int spaces) throws IOException
         {
-            // indent the elements and add the label.
-            yaml = yaml.indented(2)
-                .prepending(array.name() + ":");
+            for (int i = 0; i < spaces; i++)
+            {
+                out.append(' ');
+            }
         }
 
-        return yaml;
-    }
+        /**
+         * Writes a line at the given indent, consisting of the given label and value
+         */
+        private void line(int indent, String label, String value) throws IOException
+        {
+            // If there are array element indicators to start the line with,
+            if (prefix != null)
+            {
+                // write them in place of the indentation,
+                out.append(prefix);
+                prefix = null;
+            }
+            else
+            {
+                // otherwise, indent the line.
+                indent(out, indent);
+            }
 
-    /**
-     * Returns the given yaml string list with the hyphen list indicator and element indentation added
-     */
-    private static StringList arrayize(StringList yaml)
-    {
-        var first = yaml.first();
-        var rest = yaml.tail();
-        return stringList("- " + first)
-            .with(rest.indented(2));
+            out.append(label).append(value).append('\n');
+        }
     }
 }
@@ -3,6 +3,15 @@ package com.telenav.kivakit.data.formats.yaml.model;
 import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.core.value.count.Count;
 
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
+
+/**
+ * An array of YAML elements. Like {@link YamlBlock}, arrays are immutable and {@link #with(YamlNode)} copies the
+ * array, so larger arrays should be built with a {@link Builder}.
+ *
+ * @author Jonathan Locke
+ */
 public class YamlArray extends YamlNode implements YamlNodeContainer
 {
     public static YamlArray yamlArray(String name)
@@ -15,6 +24,69 @@ public class YamlArray extends YamlNode implements YamlNodeContainer
         return new YamlArray(UNNAMED);
     }
 
+    /**
+     * Returns a builder for an array with the given name
+     */
+    public static Builder yamlArrayBuilder(String name)
+    {
+        return new Builder(new YamlArray(name));
+    }
+
+    /**
+     * Returns a builder for an unnamed array
+     */
+    public static Builder yamlArrayBuilder()
+    {
+        return new Builder(new YamlArray(UNNAMED));
+    }
+
+    /**
+     * Builds a {@link YamlArray} by adding elements to it in place. A builder can build only one array, and it cannot
+     * be used after {@link #build()} is called.
+     */
+    public static class Builder
+    {
+        /** The array being built, or null if it has been built */
+        private YamlArray array;
+
+        private Builder(YamlArray array)
+        {
+            this.array = array;
+        }
+
+        /**
+         * Adds the given node to the end of the array
+         *
+         * @return This builder, for chaining
+         */
+        public Builder add(YamlNode node)
+        {
+            ensure(array != null, "Array has already been built");
+            array.add(node);
+            return this;
+        }
+
+        /**
+         * Returns the finished array
+         */
+        public YamlArray build()
+        {
+            ensure(array != null, "Array has already been built");
+            var built = array;
+            array = null;
+            return built;
+        }
+
+        /**
+         * Returns the number of elements added so far
+         */
+        public int size()
+        {
+            ensure(array != null, "Array has already been built");
+            return array.size();
+        }
+    }
+
     private ObjectList<YamlNode> elements;
 
     private YamlArray(String name)
@@ -39,6 +111,17 @@ public class YamlArray extends YamlNode implements YamlNodeContainer
         return elements.count();
     }
 
+    @Override
+    public YamlArray deepCopy()
+    {
+        var copy = new YamlArray(name());
+        for (var element : elements)
+        {
+            copy.add(element.deepCopy());
+        }
+        return copy;
+    }
+
     @Override
     public ObjectList<YamlNode> elements()
     {
@@ -79,4 +162,16 @@ public class YamlArray extends YamlNode implements YamlNodeContainer
         copy.elements = elements.with(node);
         return copy;
     }
+
+    /**
+     * Adds the given node to this array in place, for {@link Builder}
+     */
+    private void add(YamlNode node)
+    {
+        ensureNotNull(node);
+
+        node.parent(this);
+
+        elements.add(node);
+    }
 }
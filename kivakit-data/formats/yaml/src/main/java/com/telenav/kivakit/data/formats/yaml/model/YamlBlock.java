@@ -4,9 +4,32 @@ import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.core.collections.map.StringMap;
 
 import static com.telenav.kivakit.core.collections.list.ObjectList.list;
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
 import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlScalar;
 
+/**
+ * A block of YAML elements, some of which may be named.
+ *
+ * <p><b>Building</b></p>
+ *
+ * <p>
+ * Blocks are immutable. Each call to {@link #with(YamlNode)} copies the block, which is convenient for small blocks,
+ * but building a block of n elements this way takes quadratic time. Code that builds larger blocks, like {@link
+ * com.telenav.kivakit.data.formats.yaml.reader.YamlReader}, should use a {@link Builder} instead, which adds elements in
+ * place and hands off the finished block without copying it:
+ * </p>
+ *
+ * <pre>
+ * var builder = yamlBlockBuilder("schemas");
+ * for (var schema : schemas)
+ * {
+ *     builder.add(schema.yaml());
+ * }
+ * var block = builder.build();</pre>
+ *
+ * @author Jonathan Locke
+ */
 public class YamlBlock extends YamlNode implements YamlNodeContainer
 {
     public static YamlBlock yamlBlock(String name)
@@ -19,6 +42,69 @@ public class YamlBlock extends YamlNode implements YamlNodeContainer
         return new YamlBlock();
     }
 
+    /**
+     * Returns a builder for a block with the given name
+     */
+    public static Builder yamlBlockBuilder(String name)
+    {
+        return new Builder(new YamlBlock(name));
+    }
+
+    /**
+     * Returns a builder for an unnamed block
+     */
+    public static Builder yamlBlockBuilder()
+    {
+        return new Builder(new YamlBlock());
+    }
+
+    /**
+     * Builds a {@link YamlBlock} by adding elements to it in place. A builder can build only one block, and it cannot
+     * be used after {@link #build()} is called.
+     */
+    public static class Builder
+    {
+        /** The block being built, or null if it has been built */
+        private YamlBlock block;
+
+        private Builder(YamlBlock block)
+        {
+            this.block = block;
+        }
+
+        /**
+         * Adds the given node to the end of the block
+         *
+         * @return This builder, for chaining
+         */
+        public Builder add(YamlNode node)
+        {
+            ensure(block != null, "Block has already been built");
+            block.add(node);
+            return this;
+        }
+
+        /**
+         * Returns the finished block
+         */
+        public YamlBlock build()
+        {
+            ensure(block != null, "Block has already been built");
+            var built = block;
+            block = null;
+            return built;
+        }
+
+        /**
+         * Returns the number of elements added so far
+         */
+        public int size()
+        {
+            ensure(block != null, "Block has already been built");
+            return block.size();
+        }
+    }
+
     /** Elements by name */
     private final StringMap<YamlNode> nameToElement;
 
@@ -58,6 +144,17 @@ public class YamlBlock extends YamlNode implements YamlNodeContainer
         return new YamlBlock(this);
     }
 
+    @Override
+    public YamlBlock deepCopy()
+    {
+        var copy = new YamlBlock(name());
+        for (var element : elements)
+        {
+            copy.add(element.deepCopy());
+        }
+        return copy;
+    }
+
     @Override
     public ObjectList<YamlNode> elements()
     {
@@ -130,4 +227,20 @@ public class YamlBlock extends YamlNode implements YamlNodeContainer
         }
         return copy;
     }
+
+    /**
+     * Adds the given node to this block in place, for {@link Builder}
+     */
+    private void add(YamlNode node)
+    {
+        ensureNotNull(node);
+
+        node.parent(this);
+
+        elements.add(node);
+        if (node.isNamed())
+        {
+            nameToElement.put(node.name(), node);
+        }
+    }
 }
@@ -15,6 +15,12 @@ public class YamlLiteral extends YamlNode
         this.value = value;
     }
 
+    @Override
+    public YamlLiteral deepCopy()
+    {
+        return new YamlLiteral(name(), value);
+    }
+
     @Override
     public String toString()
     {
@@ -42,6 +42,11 @@ public abstract class YamlNode implements Named
         return (YamlScalar) this;
     }
 
+    /**
+     * Returns a copy of this node and all the nodes under it, which shares no nodes with this one
+     */
+    public abstract YamlNode deepCopy();
+
     @Override
     public boolean equals(Object object)
     {
@@ -87,8 +92,6 @@ public abstract class YamlNode implements Named
     @Override
     public String toString()
     {
-        return new YamlFormatter()
-            .asStringList(this)
-            .join("\n");
+        return new YamlFormatter().format(this);
     }
 }
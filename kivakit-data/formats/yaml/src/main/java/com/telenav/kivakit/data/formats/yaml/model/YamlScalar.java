@@ -84,6 +84,15 @@ public class YamlScalar extends YamlNode
         this.truth = ensureNotNull(value);
     }
 
+    private YamlScalar(YamlScalar that)
+    {
+        super(that.name());
+        this.truth = that.truth;
+        this.string = that.string;
+        this.number = that.number;
+        this.isEnum = that.isEnum;
+    }
+
     public Bytes asBytes()
     {
         return bytes(asInt());
@@ -119,6 +128,12 @@ public class YamlScalar extends YamlNode
         return function.apply(string());
     }
 
+    @Override
+    public YamlScalar deepCopy()
+    {
+        return new YamlScalar(this);
+    }
+
     public boolean isBoolean()
     {
         return truth != null;
@@ -0,0 +1,63 @@
+package com.telenav.kivakit.data.formats.yaml.reader;
+
+import com.telenav.kivakit.data.formats.yaml.model.YamlLiteral;
+import com.telenav.kivakit.data.formats.yaml.model.YamlNode;
+import com.telenav.kivakit.data.formats.yaml.model.YamlScalar;
+
+/**
+ * Receives the structure of a YAML document from {@link YamlReader#read(com.telenav.kivakit.resource.Resource,
+ * YamlEventHandler)} as a series of events, in document order, without a {@link YamlNode} tree being built. Each start
+ * event is matched by an end event with the same name, and the elements of a block or array are reported between its
+ * start and end events. Blocks and arrays that have no label are reported with the name {@link YamlNode#UNNAMED}.
+ *
+ * <p>
+ * All methods do nothing by default, so handlers need only override the events they are interested in.
+ * </p>
+ *
+ * @author Jonathan Locke
+ * @see YamlReader
+ */
+public interface YamlEventHandler
+{
+    /**
+     * Called at the end of an array
+     */
+    default void onArrayEnd(String name)
+    {
+    }
+
+    /**
+     * Called at the start of an array
+     */
+    default void onArrayStart(String name)
+    {
+    }
+
+    /**
+     * Called at the end of a block
+     */
+    default void onBlockEnd(String name)
+    {
+    }
+
+    /**
+     * Called at the start of a block
+     */
+    default void onBlockStart(String name)
+    {
+    }
+
+    /**
+     * Called for each literal value
+     */
+    default void onLiteral(YamlLiteral literal)
+    {
+    }
+
+    /**
+     * Called for each scalar value
+     */
+    default void onScalar(YamlScalar scalar)
+    {
+    }
+}
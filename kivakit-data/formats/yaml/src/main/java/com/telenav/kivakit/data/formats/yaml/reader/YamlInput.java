@@ -1,21 +1,50 @@
 package com.telenav.kivakit.data.formats.yaml.reader;
 
-import com.telenav.kivakit.core.collections.list.ObjectList;
 import com.telenav.kivakit.core.collections.list.Stack;
 import com.telenav.kivakit.core.language.trait.TryCatchTrait;
 import com.telenav.kivakit.core.messaging.messages.status.Problem;
 import com.telenav.kivakit.resource.Resource;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
 import static com.telenav.kivakit.core.ensure.Ensure.ensure;
 
-public class YamlInput implements TryCatchTrait
+/**
+ * Reads {@link YamlLine}s from a resource, skipping comments and blank lines. The input is streamed: only the
+ * previous, current and lookahead lines are held in memory, so the size of the document being read does not matter.
+ * The resource is closed when the end of input is reached, or when {@link #close()} is called.
+ *
+ * @author Jonathan Locke
+ */
+public class YamlInput implements TryCatchTrait, Closeable
 {
-    /** The list of lines */
-    private final ObjectList<YamlLine> lines = new ObjectList<>();
+    /** The text lines being read, or null if the end of input has been reached */
+    private BufferedReader in;
+
+    /** The line parser */
+    private final YamlLineParser parser = new YamlLineParser();
 
-    /** The index of the current line */
+    /** The number of lines read from the resource (not including comments or blank lines) */
     private int at;
 
+    /** The line number of the next text line */
+    private int lineNumber = 1;
+
+    /**
+     * The indentation of enclosing arrays. The spaces for array elements increase the indentation one level beyond the
+     * true indentation level. For example, element-1 below has indentation of 0, but so does element-2:
+     *
+     * <pre>
+     * - element-1
+     *   element-2 </pre>
+     */
+    private final Stack<Integer> arrayIndentLevel = new Stack<>();
+
+    /** The last line read from the resource, used to ensure that indentation never increases by more than one level */
+    private YamlLine last;
+
     /** The line most recently read */
     private YamlLine current;
 
@@ -28,11 +57,11 @@ public class YamlInput implements TryCatchTrait
     /** True if read() has not been called yet */
     private boolean atStartOfInput = true;
 
-    /** The resourc being read */
+    /** The resource being read */
     private final Resource resource;
 
     /**
-     * Creates YAML input from the lines in the given resource
+     * Creates YAML input that streams the lines in the given resource
      *
      * @param resource The resource
      * @throws RuntimeException Thrown if block indentation is not valid
@@ -40,11 +69,9 @@ public class YamlInput implements TryCatchTrait
     public YamlInput(Resource resource)
     {
         this.resource = resource;
+        this.in = new BufferedReader(resource.reader().textReader());
 
-        // Read all lines from the input resource,
-        readLines(resource);
-
-        // prime the lookahead value,
+        // Prime the lookahead value,
         advance();
 
         // and if there is more,
@@ -56,13 +83,34 @@ public class YamlInput implements TryCatchTrait
     }
 
     /**
-     * Returns the current index in the input
+     * Returns the number of lines that have been read from the resource so far, including the current and lookahead
+     * lines
      */
     public int at()
     {
         return at;
     }
 
+    /**
+     * Closes the resource being read
+     */
+    @Override
+    public void close()
+    {
+        if (in != null)
+        {
+            try
+            {
+                in.close();
+            }
+            catch (IOException e)
+            {
+                throw new Problem(e, "Unable to close: $", resource).asException();
+            }
+            in = null;
+        }
+    }
+
     /**
      * Returns the current line in the input
      */
@@ -147,16 +195,16 @@ public class YamlInput implements TryCatchTrait
     }
 
     /**
-     * Returns the number of lines (not including comments or blank lines)
+     * Returns the number of lines that have been read from the resource so far (not including comments or blank lines)
      */
     public int size()
     {
-        return lines.size();
+        return at;
     }
 
     /**
      * Advances to the next (non-comment, non-blank) line. The current line becomes the previous line, the current line
-     * becomes the lookahead line, and the lookahead is set to the next line in the array of lines (if there is one).
+     * becomes the lookahead line, and the lookahead is set to the next line in the resource (if there is one).
      */
     private void advance()
     {
@@ -166,45 +214,28 @@ public class YamlInput implements TryCatchTrait
         // advance the current line to the lookahead line,
         current = lookahead;
 
-        // then read a new lookahead line,
-        lookahead = at < size()
-            ? lines.get(at++)
-            : null;
+        // then read a new lookahead line.
+        lookahead = readLine();
     }
 
     /**
-     * Reads all lines from the given resource into the lines field
+     * Reads the next (non-comment, non-blank) line from the resource, closing the resource when there are no more
+     * lines.
      *
-     * @param resource The resource to read
+     * @return The next line, or null if there are no more lines
      */
-    private void readLines(Resource resource)
+    private YamlLine readLine()
     {
-        // We are at line number 1.
-        var lineNumber = 1;
-
-        // We will track the previous line, so we can ensure that indentation never increases or
-        // decreases by more than one level.
-        YamlLine previous = null;
-
-        // We will track the indentation of arrays because the spaces for array elements
-        // increases the indentation one level beyond the true indentation level. For example,
-        // element-1 below has indentation of 0, but so does element-2:
-        //
-        // - element-1
-        //   element-2
-        //
-        var arrayIndentLevel = new Stack<Integer>();
-
-        // Go through each line in the resource,
-        var parser = new YamlLineParser();
-        for (var line : resource.reader().readLines())
+        try
         {
-            try
+            // While there are text lines in the resource,
+            String line;
+            while (in != null && (line = in.readLine()) != null)
             {
-                // Parse the line into a YamlLine model.
+                // parse the line into a YamlLine model.
                 var yaml = parser.parse(line)
                     .lineNumber(lineNumber++)
-                    .ordinal(lines.size());
+                    .ordinal(at);
 
                 // If we aren't looking at a comment or a blank line,
                 if (!yaml.isComment() && !yaml.isBlank())
@@ -213,7 +244,7 @@ public class YamlInput implements TryCatchTrait
                     if (yaml.isArrayElement())
                     {
                         // and our indent level increased (we aren't at another list element at the same level),
-                        if (yaml.rawIndentLevel() > previous.rawIndentLevel())
+                        if (yaml.rawIndentLevel() > last.rawIndentLevel())
                         {
                             // then we push the current indent level,
                             arrayIndentLevel.push(yaml.rawIndentLevel());
@@ -234,22 +265,29 @@ public class YamlInput implements TryCatchTrait
                     var offset = yaml.isArrayElement() ? 1 : 0;
                     yaml.outdent(arrayIndentLevel.size() - offset);
 
-                    // Add the current line.
-                    lines.add(yaml);
+                    // Count the line,
+                    at++;
 
-                    // Make sure that the indent level has not increased by more than one level.
-                    if (previous != null)
+                    // and make sure that the indent level has not increased by more than one level.
+                    if (last != null)
                     {
-                        var delta = yaml.indentLevel() - previous.indentLevel();
-                        ensure(delta <= 1, "Invalid indentation at line $", lines.size());
+                        var delta = yaml.indentLevel() - last.indentLevel();
+                        ensure(delta <= 1, "Invalid indentation at line $", at);
                     }
-                    previous = yaml;
+                    last = yaml;
+
+                    return yaml;
                 }
             }
-            catch (Exception e)
-            {
-                throw new Problem(e, "Unable to parse: $", resource).asException();
-            }
         }
+        catch (Exception e)
+        {
+            close();
+            throw new Problem(e, "Unable to parse: $", resource).asException();
+        }
+
+        // We have reached the end of input.
+        close();
+        return null;
     }
 }
@@ -14,9 +14,17 @@ import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.STRING;
 
 public class YamlLine implements TryCatchTrait
 {
-    /** The line */
+    /** The line, without leading or trailing whitespace, or null if it has not been extracted from the text yet */
     private String line;
 
+    /** The text that the line was parsed from */
+    private String text;
+
+    /** The bounds of the line in the text */
+    private int start;
+
+    private int end;
+
     /** The indent level of the line */
     private int rawIndentLevel;
 
@@ -119,6 +127,10 @@ public class YamlLine implements TryCatchTrait
 
     public String line()
     {
+        if (line == null && text != null)
+        {
+            line = text.substring(start, end);
+        }
         return line;
     }
 
@@ -128,6 +140,18 @@ public class YamlLine implements TryCatchTrait
         return this;
     }
 
+    /**
+     * Sets the line to the given range of the given text, without copying it until {@link #line()} is called
+     */
+    public YamlLine line(String text, int start, int end)
+    {
+        this.text = ensureNotNull(text);
+        this.start = start;
+        this.end = end;
+        this.line = null;
+        return this;
+    }
+
     public int lineNumber()
     {
         return lineNumber;
@@ -2,59 +2,45 @@ package com.telenav.kivakit.data.formats.yaml.reader;
 
 import com.telenav.kivakit.core.language.trait.TryCatchTrait;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import static com.telenav.kivakit.core.ensure.Ensure.ensure;
 import static com.telenav.kivakit.core.ensure.Ensure.fail;
-import static com.telenav.kivakit.core.function.Functions.firstSuccessfulFunction;
 import static com.telenav.kivakit.core.string.Strings.isInteger;
 import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.BLANK;
 import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.BLOCK_LABEL;
 import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.COMMENT;
-import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.LITERAL;
 import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.ENUM_VALUE;
+import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.LITERAL;
 import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.NUMBER;
 import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.STRING;
 import static java.lang.Double.parseDouble;
 import static java.lang.Long.parseLong;
-import static java.util.regex.Pattern.compile;
 
 /**
  * A parser to turn text lines into the model object, {@link YamlLine}.
  *
+ * <p>
+ * Lines are classified in a single scan, without regular expressions. The line forms that are recognized are:
+ * </p>
+ *
+ * <ul>
+ *     <li>label: - A {@link YamlLineType#BLOCK_LABEL}</li>
+ *     <li>label: "text" - A {@link YamlLineType#STRING}</li>
+ *     <li>label: 7.5 - A {@link YamlLineType#NUMBER}</li>
+ *     <li>label: identifier - A {@link YamlLineType#LITERAL}</li>
+ *     <li>- "identifier" - An array element {@link YamlLineType#ENUM_VALUE}</li>
+ *     <li>- "text" - An array element {@link YamlLineType#STRING}</li>
+ *     <li>- 7.5 - An array element {@link YamlLineType#NUMBER}</li>
+ * </ul>
+ *
+ * <p>
+ * Labels are made of letters, digits and underscores, and any of the labeled forms may be an array element by starting
+ * with a dash, like "- label: 7". Numbers may be signed and may have a fraction and an exponent.
+ * </p>
+ *
  * @author Jonathan Locke
  */
 public class YamlLineParser implements TryCatchTrait
 {
-    // Regexes
-
-    private static final String REGEX_IS_ARRAY_ELEMENT = "(?<isArrayElement>\\s*-\\s+)?";
-
-    private static final String REGEX_NUMBER = "(?<number>[-+]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?)";
-
-    private static final String REGEX_STRING = "\"(?<string>.*)\"";
-
-    private static final String REGEX_IDENTIFIER = "(?<identifier>[a-zA-Z0-9_]+)";
-
-    private static final String REGEX_LABEL = REGEX_IS_ARRAY_ELEMENT + "(?<label>[a-zA-Z0-9_]+):";
-
-    // Patterns
-
-    private static final Pattern LABEL_PATTERN = compile(REGEX_LABEL + "\\s*");
-
-    private static final Pattern SCALAR_STRING_PATTERN = compile(REGEX_LABEL + "\\s+" + REGEX_STRING);
-
-    private static final Pattern SCALAR_NUMBER_PATTERN = compile(REGEX_LABEL + "\\s+" + REGEX_NUMBER);
-
-    private static final Pattern LITERAL_PATTERN = compile(REGEX_LABEL + "\\s+" + REGEX_IDENTIFIER);
-
-    private static final Pattern STRING_ARRAY_ELEMENT = compile("- " + REGEX_STRING);
-
-    private static final Pattern NUMERIC_ARRAY_ELEMENT = compile("- " + REGEX_NUMBER);
-
-    private static final Pattern ENUM_ARRAY_ELEMENT = compile("- \"" + REGEX_IDENTIFIER + "\"");
-
     /**
      * Parses the given line text into a {@link YamlLine}
      *
@@ -66,159 +52,266 @@ public class YamlLineParser implements TryCatchTrait
     {
         return tryCatchRethrow(() ->
         {
-            var indentLevel = indentLevel(line);
+            // Find the indentation and the bounds of the trimmed line,
+            var length = line.length();
+            var start = 0;
+            while (start < length && Character.isWhitespace(line.charAt(start)))
+            {
+                start++;
+            }
+            ensure(start % 2 == 0, "Indentation must be two spaces");
+            var indentLevel = start / 2;
+
+            var end = length;
+            while (end > 0 && line.charAt(end - 1) <= ' ')
+            {
+                end--;
+            }
+            var from = Math.min(start, end);
 
-            // Create the YAML line,
+            // create the YAML line,
             var yaml = new YamlLine()
                 .rawIndentLevel(indentLevel)
                 .indentLevel(indentLevel)
-                .line(line.trim());
+                .line(line, from, end);
 
             // If the line is blank,
-            if (line.isBlank())
+            if (from == end)
             {
                 // return it as a BLANK line.
                 return yaml.type(BLANK);
             }
 
             // If the line starts with '#',
-            if (line.startsWith("#"))
+            if (line.charAt(0) == '#')
             {
                 // return it as a COMMENT.
                 return yaml.type(COMMENT);
             }
 
-            yaml = firstSuccessfulFunction(yaml,
-                this::numericArrayElement,
-                this::enumArrayElement,
-                this::stringArrayElement,
-                this::label,
-                this::string,
-                this::number,
-                this::literal);
-
-            // If we failed to determine the type,
-            if (yaml == null)
+            // If the line is an unlabeled array element,
+            var at = from;
+            if (line.charAt(at) == '-' && at + 1 < end && line.charAt(at + 1) == ' ' && element(yaml, line, at + 2, end))
             {
-                // then the
-                fail("Unrecognized YAML line syntax: $", line);
+                // we're done.
+                return yaml;
             }
 
+            // If the line is a labeled array element, skip the dash,
+            if (line.charAt(at) == '-' && at + 1 < end && isSpace(line.charAt(at + 1)))
+            {
+                yaml.arrayElement(true);
+                at = skipSpaces(line, at + 1, end);
+            }
+
+            // then parse the label and its value.
+            if (!labeled(yaml, line, at, end))
+            {
+                fail("Unrecognized YAML line syntax: $", line);
+            }
             return yaml;
         }, "Unable to parse line: \"$\"", line);
     }
 
-    private static Number parseNumber(String text)
+    private static boolean isIdentifier(String line, int from, int to)
     {
-        if (isInteger(text))
+        if (from >= to)
         {
-            return parseLong(text);
+            return false;
         }
-        else
+        for (var at = from; at < to; at++)
         {
-            return parseDouble(text);
+            if (!isIdentifierCharacter(line.charAt(at)))
+            {
+                return false;
+            }
         }
+        return true;
+    }
+
+    private static boolean isIdentifierCharacter(char character)
+    {
+        return (character >= 'a' && character <= 'z')
+            || (character >= 'A' && character <= 'Z')
+            || (character >= '0' && character <= '9')
+            || character == '_';
     }
 
-    private YamlLine enumArrayElement(YamlLine yaml)
+    private static boolean isDigit(char character)
+    {
+        return character >= '0' && character <= '9';
+    }
+
+    /**
+     * Returns true if the given text is a number, like -7, 3.5, .5 or 6.02e23
+     */
+    private static boolean isNumber(String line, int from, int to)
     {
-        var matcher = ENUM_ARRAY_ELEMENT.matcher(yaml.line());
-        if (matcher.matches())
+        var at = from;
+        if (at < to && (line.charAt(at) == '-' || line.charAt(at) == '+'))
         {
-            return yaml
-                .type(ENUM_VALUE)
-                .string(matcher.group("identifier"))
-                .arrayElement(true);
+            at++;
+        }
+
+        // Integer part, which is required if there is no fraction,
+        var digits = 0;
+        while (at < to && isDigit(line.charAt(at)))
+        {
+            at++;
+            digits++;
         }
-        return null;
+
+        // fraction,
+        if (at < to && line.charAt(at) == '.')
+        {
+            at++;
+            digits = 0;
+            while (at < to && isDigit(line.charAt(at)))
+            {
+                at++;
+                digits++;
+            }
+        }
+        if (digits == 0)
+        {
+            return false;
+        }
+
+        // and exponent.
+        if (at < to && (line.charAt(at) == 'e' || line.charAt(at) == 'E'))
+        {
+            at++;
+            if (at < to && (line.charAt(at) == '-' || line.charAt(at) == '+'))
+            {
+                at++;
+            }
+            var exponent = 0;
+            while (at < to && isDigit(line.charAt(at)))
+            {
+                at++;
+                exponent++;
+            }
+            if (exponent == 0)
+            {
+                return false;
+            }
+        }
+        return at == to;
     }
 
-    private YamlLine extractLabel(YamlLine yaml, Matcher matcher)
+    private static boolean isQuoted(String line, int from, int to)
     {
-        var isArrayElement = matcher.group("isArrayElement");
-        yaml.arrayElement(isArrayElement != null && isArrayElement.trim().equals("-"));
-        yaml.label(matcher.group("label"));
-        return yaml;
+        return to - from >= 2 && line.charAt(from) == '"' && line.charAt(to - 1) == '"';
     }
 
-    private int indentLevel(String line)
+    private static boolean isSpace(char character)
     {
-        var spaces = line.length() - line.stripLeading().length();
-        ensure(spaces % 2 == 0, "Indentation must be two spaces");
-        return spaces / 2;
+        return character == ' ' || character == '\t' || character == '\n'
+            || character == '\u000B' || character == '\f' || character == '\r';
     }
 
-    private YamlLine label(YamlLine yaml)
+    private static Number parseNumber(String text)
     {
-        var matcher = LABEL_PATTERN.matcher(yaml.line());
-        if (matcher.matches())
+        if (isInteger(text))
         {
-            // make a note of that,
-            return extractLabel(yaml, matcher)
-                .type(BLOCK_LABEL);
+            return parseLong(text);
         }
-        return null;
-    }
-
-    private YamlLine literal(YamlLine yaml)
-    {
-        var matcher = LITERAL_PATTERN.matcher(yaml.line());
-        if (matcher.matches())
+        else
         {
-            return extractLabel(yaml, matcher)
-                .type(LITERAL)
-                .string(matcher.group("identifier"));
+            return parseDouble(text);
         }
-        return null;
     }
 
-    private YamlLine number(YamlLine yaml)
+    private static int skipSpaces(String line, int from, int to)
     {
-        var matcher = SCALAR_NUMBER_PATTERN.matcher(yaml.line());
-        if (matcher.matches())
+        var at = from;
+        while (at < to && isSpace(line.charAt(at)))
         {
-            return extractLabel(yaml, matcher)
-                .type(NUMBER)
-                .number(parseNumber(matcher.group("number")));
+            at++;
         }
-        return null;
+        return at;
     }
 
-    private YamlLine numericArrayElement(YamlLine yaml)
+    /**
+     * Parses the value of an unlabeled array element, like - "text", - "identifier" or - 7
+     *
+     * @return True if the value was recognized
+     */
+    private boolean element(YamlLine yaml, String line, int from, int to)
     {
-        var matcher = NUMERIC_ARRAY_ELEMENT.matcher(yaml.line());
-        if (matcher.matches())
+        if (isNumber(line, from, to))
         {
-            return yaml
-                .type(NUMBER)
-                .number(parseNumber(matcher.group("number")))
+            yaml.type(NUMBER)
+                .number(parseNumber(line.substring(from, to)))
                 .arrayElement(true);
+            return true;
         }
-        return null;
+        if (isQuoted(line, from, to))
+        {
+            yaml.type(isIdentifier(line, from + 1, to - 1) ? ENUM_VALUE : STRING)
+                .string(line.substring(from + 1, to - 1))
+                .arrayElement(true);
+            return true;
+        }
+        return false;
     }
 
-    private YamlLine string(YamlLine yaml)
+    /**
+     * Parses a label and any value after it, like label:, label: "text", label: 7 or label: identifier
+     *
+     * @return True if the label and value were recognized
+     */
+    private boolean labeled(YamlLine yaml, String line, int from, int to)
     {
-        var matcher = SCALAR_STRING_PATTERN.matcher(yaml.line());
-        if (matcher.matches())
+        // Read the label up to the colon,
+        var at = from;
+        while (at < to && isIdentifierCharacter(line.charAt(at)))
         {
-            return extractLabel(yaml, matcher)
-                .type(STRING)
-                .string(matcher.group("string"));
+            at++;
         }
-        return null;
-    }
+        if (at == from || at == to || line.charAt(at) != ':')
+        {
+            return false;
+        }
+        var label = line.substring(from, at);
+        at++;
 
-    private YamlLine stringArrayElement(YamlLine yaml)
-    {
-        var matcher = STRING_ARRAY_ELEMENT.matcher(yaml.line());
-        if (matcher.matches())
+        // and if there's nothing after it,
+        var value = skipSpaces(line, at, to);
+        if (value == to)
         {
-            return yaml
+            // it's a block label.
+            yaml.label(label).type(BLOCK_LABEL);
+            return true;
+        }
+
+        // Otherwise, the value must be separated from the colon by whitespace
+        if (value == at)
+        {
+            return false;
+        }
+
+        if (isQuoted(line, value, to))
+        {
+            yaml.label(label)
                 .type(STRING)
-                .string(matcher.group("identifier"))
-                .arrayElement(true);
+                .string(line.substring(value + 1, to - 1));
+            return true;
+        }
+        if (isNumber(line, value, to))
+        {
+            yaml.label(label)
+                .type(NUMBER)
+                .number(parseNumber(line.substring(value, to)));
+            return true;
+        }
+        if (isIdentifier(line, value, to))
+        {
+            yaml.label(label)
+                .type(LITERAL)
+                .string(line.substring(value, to));
+            return true;
         }
-        return null;
+        return false;
     }
-}
\ No newline at end of file
+}
@@ -10,14 +10,15 @@ import com.telenav.kivakit.resource.Resource;
 import com.telenav.kivakit.resource.resources.StringResource;
 
 import java.lang.annotation.Annotation;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import static com.telenav.kivakit.core.ensure.Ensure.ensure;
 import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
 import static com.telenav.kivakit.core.ensure.Ensure.fail;
-import static com.telenav.kivakit.data.formats.yaml.model.YamlArray.yamlArray;
-import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlock;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlLiteral.yamlLiteral;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlNode.UNNAMED;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlEnumValue;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlScalar;
 import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.LITERAL;
@@ -33,8 +34,18 @@ import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.LITERAL;
  *     <li>Does not support multiline strings</li>
  * </ol>
  *
+ * <p><b>Streaming</b></p>
+ *
+ * <p>
+ * Input is streamed from the resource by {@link YamlInput}, which holds only a few lines at a time. To process a
+ * document without building a {@link YamlNode} tree, pass a {@link YamlEventHandler} to
+ * {@link #read(Resource, YamlEventHandler)}, which reports the blocks, arrays and values in the document as they are
+ * read.
+ * </p>
+ *
  * @author Jonathan Locke
  * @see YamlInput
+ * @see YamlEventHandler
  * @see YamlNode
  * @see YamlBlock
  * @see YamlArray
@@ -44,25 +55,35 @@ import static com.telenav.kivakit.data.formats.yaml.reader.YamlLineType.LITERAL;
 @SuppressWarnings("DuplicatedCode")
 public class YamlReader
 {
+    /** YAML read from annotations, by annotated type and then annotation type */
+    private static final Map<Class<?>, Map<Class<? extends Annotation>, YamlNode>> typeToAnnotationYaml = new ConcurrentHashMap<>();
+
     /**
-     * Reads a {@link YamlNode} from the given annotation on the given type
+     * Reads a {@link YamlNode} from the given annotation on the given type. The annotation text is parsed only the
+     * first time it is read in this process. The parsed tree is cached by type and annotation type, and each call
+     * returns a copy of it, which the caller is free to modify. The given callback must therefore always return the
+     * same text for the same annotation.
      *
      * @param type The type
      * @param annotationType The annotation
      * @param toText A callback to convert the annotation to text
-     * @return The {@link YamlNode} from the annotated type
+     * @return The {@link YamlNode} from the annotated type, or null if the type does not have the annotation
      */
     public static <T extends Annotation> YamlNode readYamlAnnotation(Class<?> type,
                                                                      Class<T> annotationType,
                                                                      Function<T, String> toText)
     {
-        var annotation = ensureNotNull(type).getAnnotation(annotationType);
-        if (annotation != null)
-        {
-            var text = toText.apply(annotation);
-            return new YamlReader().read(new YamlInput(new StringResource(text)));
-        }
-        return null;
+        var yaml = typeToAnnotationYaml
+            .computeIfAbsent(ensureNotNull(type), ignored -> new ConcurrentHashMap<>())
+            .computeIfAbsent(annotationType, ignored ->
+            {
+                var annotation = type.getAnnotation(annotationType);
+                return annotation == null
+                    ? null
+                    : new YamlReader().read(new StringResource(toText.apply(annotation)));
+            });
+
+        return yaml == null ? null : yaml.deepCopy();
     }
 
     public static YamlReader yamlReader()
@@ -94,56 +115,73 @@ public class YamlReader
      */
     public YamlNode read(Resource resource)
     {
-        // Create the YAML input to read the resource,
-        var in = new YamlInput(resource);
+        var tree = new YamlTreeBuilder();
+        read(resource, tree);
+        return tree.root();
+    }
 
-        // and if the document is an array,
-        if (in.lookahead() != null && in.lookahead().isArrayElement())
+    /**
+     * Reads the given resource, reporting the structure of the document to the given handler as it is read, without
+     * building a YAML tree.
+     *
+     * @param resource The resource to read
+     * @param handler The handler to call
+     */
+    public void read(Resource resource, YamlEventHandler handler)
+    {
+        // Create the YAML input to stream the resource,
+        try (var in = new YamlInput(resource))
         {
-            // then we read the array,
-            return readArray(in);
+            // and if the document is an array,
+            if (in.lookahead() != null && in.lookahead().isArrayElement())
+            {
+                // then we read the array,
+                readArray(in, handler);
+            }
+            else
+            {
+                // otherwise, the document is a block (labeled or not).
+                readBlock(in, handler);
+            }
         }
-
-        // otherwise, the document is a block (labeled or not).
-        return readBlock(in);
     }
 
     /**
      * Reads the next node from the input
      *
      * @param in The input
-     * @return The next {@link YamlNode} in the input
+     * @param handler The handler to call
      */
-    private YamlNode read(YamlInput in)
+    private void read(YamlInput in, YamlEventHandler handler)
     {
         // Make sure we have some input to read.
         ensure(in.hasMore());
 
         // If the current line type
-        return switch (in.current().type())
-            {
-                // is a scalar, read that,
-                case STRING, NUMBER, ENUM_VALUE -> readScalar(in);
+        switch (in.current().type())
+        {
+            // is a scalar, read that,
+            case STRING, NUMBER, ENUM_VALUE -> handler.onScalar(readScalar(in));
 
-                // and if it's a literal then read that,
-                case LITERAL -> readLiteral(in);
+            // and if it's a literal then read that,
+            case LITERAL -> handler.onLiteral(readLiteral(in));
 
-                // otherwise it must be an array or block (either labeled or unlabeled).
-                default ->
+            // otherwise it must be an array or block (either labeled or unlabeled).
+            default ->
+            {
+                // If the next line is an array element,
+                if (in.lookahead().isArrayElement())
+                {
+                    // then read the input as an array,
+                    readArray(in, handler);
+                }
+                else
                 {
-                    // If the next line is an array element,
-                    if (in.lookahead().isArrayElement())
-                    {
-                        // then read the input as an array,
-                        yield readArray(in);
-                    }
-                    else
-                    {
-                        // otherwise read it as a block.
-                        yield readBlock(in);
-                    }
+                    // otherwise read it as a block.
+                    readBlock(in, handler);
                 }
-            };
+            }
+        }
     }
 
     /**
@@ -151,9 +189,9 @@ public class YamlReader
      * must be at the start of input (which would be an unlabeled array).
      *
      * @param in The input
-     * @return The {@link YamlArray}
+     * @param handler The handler to call
      */
-    private YamlArray readArray(YamlInput in)
+    private void readArray(YamlInput in, YamlEventHandler handler)
     {
         // Determine if the array is labeled,
         var labeled = in.current().isLabel();
@@ -167,10 +205,11 @@ public class YamlReader
         // Save the indent level of the block.
         var blockIndent = in.indentLevel();
 
-        // Create an array,
-        var array = labeled
-            ? yamlArray(in.read().label())
-            : yamlArray();
+        // Start the array,
+        var name = labeled
+            ? in.read().label()
+            : UNNAMED;
+        handler.onArrayStart(name);
 
         // and if it's labeled,
         if (labeled)
@@ -186,25 +225,25 @@ public class YamlReader
             if (in.lookahead() != null && in.lookahead().isArrayElement())
             {
                 // then we are looking at a lone scalar,
-                array = array.with(readScalar(in));
+                handler.onScalar(readScalar(in));
             }
             else
             {
                 // otherwise, we are looking at an (unlabeled) block element.
-                array = array.with(readArrayBlock(in));
+                readArrayBlock(in, handler);
             }
         }
 
-        return array;
+        handler.onArrayEnd(name);
     }
 
     /**
      * Reads an array element {@link YamlBlock} from the input.
      *
      * @param in The input
-     * @return The {@link YamlBlock}
+     * @param handler The handler to call
      */
-    private YamlBlock readArrayBlock(YamlInput in)
+    private void readArrayBlock(YamlInput in, YamlEventHandler handler)
     {
         // Make sure that there's more input,
         ensure(in.hasMore());
@@ -215,26 +254,27 @@ public class YamlReader
         // Save the indent level of the block.
         var blockIndent = in.indentLevel();
 
-        // Create the unlabeled block,
-        var block = in.current().isLabel()
-            ? yamlBlock(in.current().label())
-            : yamlBlock();
+        // Start the unlabeled block,
+        var name = in.current().isLabel()
+            ? in.current().label()
+            : UNNAMED;
+        handler.onBlockStart(name);
 
         // then loop through elements at the same indent level or higher,
         while (in.hasMore() && in.indentLevel() == blockIndent)
         {
             // adding each element to the array element block.
-            block = block.with(read(in));
+            read(in, handler);
 
             // If we are not at the end of input, and we are looking at the next array element,
             if (!in.hasMore() || in.current().isArrayElement())
             {
-                // then return the finished block.
-                return block;
+                // then the block is finished.
+                break;
             }
         }
 
-        return block;
+        handler.onBlockEnd(name);
     }
 
     /**
@@ -242,9 +282,9 @@ public class YamlReader
      * must be at the start of input (which is an unlabeled block).
      *
      * @param in The input
-     * @return The {@link YamlBlock}
+     * @param handler The handler to call
      */
-    private YamlBlock readBlock(YamlInput in)
+    private void readBlock(YamlInput in, YamlEventHandler handler)
     {
         // Determine if we are looking at a labeled block,
         var labeled = in.current().isLabel();
@@ -258,10 +298,11 @@ public class YamlReader
         // Save the indent level of the block.
         var blockIndent = in.indentLevel();
 
-        // Create a block,
-        var block = labeled
-            ? yamlBlock(in.read().label())
-            : yamlBlock();
+        // Start the block,
+        var name = labeled
+            ? in.read().label()
+            : UNNAMED;
+        handler.onBlockStart(name);
 
         // and if it's labeled,
         if (labeled)
@@ -273,11 +314,11 @@ public class YamlReader
         // While we have more input at the same indent level,
         while (in.hasMore() && in.indentLevel() == blockIndent)
         {
-            // add the next element to the block.
-            block = block.with(read(in));
+            // read the next element of the block.
+            read(in, handler);
         }
 
-        return block;
+        handler.onBlockEnd(name);
     }
 
     /**
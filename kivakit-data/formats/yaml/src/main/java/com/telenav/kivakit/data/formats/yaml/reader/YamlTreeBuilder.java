@@ -0,0 +1,94 @@
+package com.telenav.kivakit.data.formats.yaml.reader;
+
+import com.telenav.kivakit.data.formats.yaml.model.YamlArray;
+import com.telenav.kivakit.data.formats.yaml.model.YamlBlock;
+import com.telenav.kivakit.data.formats.yaml.model.YamlLiteral;
+import com.telenav.kivakit.data.formats.yaml.model.YamlNode;
+import com.telenav.kivakit.data.formats.yaml.model.YamlScalar;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlArray.yamlArrayBuilder;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlockBuilder;
+
+/**
+ * A {@link YamlEventHandler} that builds a {@link YamlNode} tree from the events it receives, for {@link YamlReader}.
+ *
+ * @author Jonathan Locke
+ */
+class YamlTreeBuilder implements YamlEventHandler
+{
+    /** The builders for the blocks and arrays that are open, innermost first */
+    private final Deque<Object> open = new ArrayDeque<>();
+
+    /** The root node, once it has been built */
+    private YamlNode root;
+
+    @Override
+    public void onArrayEnd(String name)
+    {
+        add(((YamlArray.Builder) open.pop()).build());
+    }
+
+    @Override
+    public void onArrayStart(String name)
+    {
+        open.push(yamlArrayBuilder(name));
+    }
+
+    @Override
+    public void onBlockEnd(String name)
+    {
+        add(((YamlBlock.Builder) open.pop()).build());
+    }
+
+    @Override
+    public void onBlockStart(String name)
+    {
+        open.push(yamlBlockBuilder(name));
+    }
+
+    @Override
+    public void onLiteral(YamlLiteral literal)
+    {
+        add(literal);
+    }
+
+    @Override
+    public void onScalar(YamlScalar scalar)
+    {
+        add(scalar);
+    }
+
+    /**
+     * Returns the root of the tree
+     */
+    YamlNode root()
+    {
+        ensure(open.isEmpty() && root != null, "YAML tree is incomplete");
+        return root;
+    }
+
+    /**
+     * Adds the given node to the innermost open block or array, or makes it the root if there is none
+     */
+    private void add(YamlNode node)
+    {
+        var parent = open.peek();
+        if (parent instanceof YamlBlock.Builder block)
+        {
+            block.add(node);
+        }
+        else if (parent instanceof YamlArray.Builder array)
+        {
+            array.add(node);
+        }
+        else
+        {
+            ensure(root == null, "YAML document has more than one root");
+            root = node;
+        }
+    }
+}
@@ -2,8 +2,45 @@ package com.telenav.kivakit.data.formats.yaml;
 
 import org.junit.Test;
 
+import java.io.StringWriter;
+
+import static com.telenav.kivakit.data.formats.yaml.model.YamlArray.yamlArray;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlock;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlScalar;
+
 public class YamlFormatterTest extends BaseYamlTest
 {
+    @Test
+    public void testEmpty()
+    {
+        ensure(new YamlFormatter().asStringList(yamlBlock()).isEmpty());
+    }
+
+    @Test
+    public void testEmptyElements()
+    {
+        // Elements that write no lines don't leave their list indicators on the next element
+        var array = yamlArray("array")
+            .with(yamlBlock())
+            .with(yamlBlock().with(yamlScalar("a", 1)))
+            .with(yamlArray()
+                .with(yamlBlock())
+                .with(yamlBlock().with(yamlScalar("b", 2))));
+
+        ensureEqual(new YamlFormatter().format(array), """
+            array:
+              - a: 1
+              - - b: 2""");
+    }
+
+    @Test
+    public void testFormatToWriter()
+    {
+        var out = new StringWriter();
+        new YamlFormatter().format(mooArray(), out);
+        ensureEqual(out.toString(), mooArray().toString() + "\n");
+    }
+
     /**
      * <pre>
      * array:
@@ -5,10 +5,54 @@ import org.junit.Test;
 
 import static com.telenav.kivakit.core.value.count.Count._2;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlArray.yamlArray;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlArray.yamlArrayBuilder;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlScalar;
 
 public class YamlArrayTest extends BaseYamlTest
 {
+    @Test
+    public void testBuilder()
+    {
+        var builder = yamlArrayBuilder("duck")
+            .add(yamlScalar("color", "red"))
+            .add(yamlScalar("age", 3));
+        ensureEqual(builder.size(), 2);
+
+        var array = builder.build();
+        ensureEqual(array.name(), "duck");
+        ensureEqual(array.size(), 2);
+        ensure(((YamlScalar) array.get(0)).string().equals("red"));
+        ensure(((YamlScalar) array.get(1)).number().intValue() == 3);
+        ensure(array.get(0).parent() == array);
+
+        try
+        {
+            builder.add(yamlScalar("size", 7));
+        }
+        catch (RuntimeException e)
+        {
+            ensureEqual(array.size(), 2);
+            return;
+        }
+        ensure(false, "Builder was used after build()");
+    }
+
+    @Test
+    public void testBuilderSizeAfterBuild()
+    {
+        var builder = yamlArrayBuilder("duck").add(yamlScalar("color", "red"));
+        builder.build();
+        try
+        {
+            builder.size();
+        }
+        catch (RuntimeException e)
+        {
+            return;
+        }
+        ensure(false, "Builder was used after build()");
+    }
+
     @Test
     public void testCreation()
     {
@@ -4,10 +4,47 @@ import com.telenav.kivakit.data.formats.yaml.BaseYamlTest;
 import org.junit.Test;
 
 import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlock;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlockBuilder;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlScalar;
 
 public class YamlBlockTest extends BaseYamlTest
 {
+    @Test
+    public void testBuilder()
+    {
+        var builder = yamlBlockBuilder("duck")
+            .add(yamlScalar("color", "red"))
+            .add(yamlScalar("age", 3));
+        ensureEqual(builder.size(), 2);
+
+        var block = builder.build();
+        ensureEqual(block.name(), "duck");
+        ensureEqual(block.size(), 2);
+        ensure(block.scalar("color").string().equals("red"));
+        ensure(block.scalar("age").number().intValue() == 3);
+        ensure(block.get("age").parent() == block);
+
+        var larger = block.with(yamlScalar("size", 7));
+        ensureEqual(block.size(), 2);
+        ensureEqual(larger.size(), 3);
+    }
+
+    @Test
+    public void testBuilderSizeAfterBuild()
+    {
+        var builder = yamlBlockBuilder("duck").add(yamlScalar("color", "red"));
+        builder.build();
+        try
+        {
+            builder.size();
+        }
+        catch (RuntimeException e)
+        {
+            return;
+        }
+        ensure(false, "Builder was used after build()");
+    }
+
     @Test
     public void testCreation()
     {
@@ -15,6 +52,20 @@ public class YamlBlockTest extends BaseYamlTest
         ensure(yamlBlock("tuffy").isNamed());
     }
 
+    @Test
+    public void testDeepCopy()
+    {
+        var root = tuffyBlock();
+        var copy = root.deepCopy();
+        ensureEqual(copy.toString(), root.toString());
+        ensure(copy.block("block1") != root.block("block1"));
+        ensure(copy.scalar("a") != root.scalar("a"));
+        ensure(copy.block("block1").get("x").parent() == copy.block("block1"));
+
+        copy.block("block1").addReference("Tuffy");
+        ensure(root.block("block1").has("block2"));
+    }
+
     /**
      * <pre>
      * root
@@ -0,0 +1,98 @@
+package com.telenav.kivakit.data.formats.yaml.reader;
+
+import com.telenav.kivakit.data.formats.yaml.BaseYamlTest;
+import org.junit.Test;
+
+public class YamlLineParserTest extends BaseYamlTest
+{
+    @Test
+    public void testArrayElements()
+    {
+        var number = parse("    - -5.5e3");
+        ensure(number.isNumber());
+        ensure(number.isArrayElement());
+        ensureEqual(number.rawIndentLevel(), 2);
+        ensureEqual(number.number(), -5500.0);
+
+        var enumValue = parse("- \"BLUE\"");
+        ensure(enumValue.isEnumValue());
+        ensure(enumValue.isArrayElement());
+        ensureEqual(enumValue.string(), "BLUE");
+
+        var string = parse("- \"light blue\"");
+        ensure(string.isString());
+        ensure(string.isArrayElement());
+        ensureEqual(string.string(), "light blue");
+
+        var labeled = parse("  - url: \"https://server/\"");
+        ensure(labeled.isString());
+        ensure(labeled.isArrayElement());
+        ensureEqual(labeled.label(), "url");
+        ensureEqual(labeled.string(), "https://server/");
+    }
+
+    @Test
+    public void testBlankAndComment()
+    {
+        ensure(parse("").isBlank());
+        ensure(parse("    ").isBlank());
+        ensure(parse("# comment").isComment());
+    }
+
+    @Test
+    public void testInvalid()
+    {
+        ensureInvalid("label");
+        ensureInvalid("label:value");
+        ensureInvalid("label: two words");
+        ensureInvalid("label: \"unterminated");
+        ensureInvalid(" odd: 1");
+    }
+
+    @Test
+    public void testLabels()
+    {
+        var label = parse("  properties:");
+        ensure(label.isLabel());
+        ensure(!label.isArrayElement());
+        ensureEqual(label.label(), "properties");
+        ensureEqual(label.indentLevel(), 1);
+        ensureEqual(label.line(), "properties:");
+
+        var string = parse("description: \"A \"quoted\" word\"");
+        ensure(string.isString());
+        ensureEqual(string.label(), "description");
+        ensureEqual(string.string(), "A \"quoted\" word");
+
+        var integer = parse("minimum: -90");
+        ensure(integer.isNumber());
+        ensureEqual(integer.number(), -90L);
+
+        var real = parse("maximum: .5");
+        ensure(real.isNumber());
+        ensureEqual(real.number(), 0.5);
+
+        var literal = parse("type: object");
+        ensure(literal.isLiteral());
+        ensureEqual(literal.label(), "type");
+        ensureEqual(literal.string(), "object");
+    }
+
+    private void ensureInvalid(String line)
+    {
+        try
+        {
+            parse(line);
+        }
+        catch (RuntimeException e)
+        {
+            return;
+        }
+        ensure(false, "Parsed invalid line: $", line);
+    }
+
+    private YamlLine parse(String line)
+    {
+        return new YamlLineParser().parse(line);
+    }
+}
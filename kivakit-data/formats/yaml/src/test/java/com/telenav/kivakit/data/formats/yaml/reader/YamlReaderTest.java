@@ -1,10 +1,111 @@
 package com.telenav.kivakit.data.formats.yaml.reader;
 
+import com.telenav.kivakit.core.collections.list.StringList;
 import com.telenav.kivakit.data.formats.yaml.BaseYamlTest;
+import com.telenav.kivakit.data.formats.yaml.model.YamlLiteral;
+import com.telenav.kivakit.data.formats.yaml.model.YamlScalar;
 import org.junit.Test;
 
+import java.lang.annotation.Retention;
+
+import static com.telenav.kivakit.core.collections.list.StringList.stringList;
+import static com.telenav.kivakit.data.formats.yaml.reader.YamlReader.readYamlAnnotation;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
 public class YamlReaderTest extends BaseYamlTest
 {
+    @Retention(RUNTIME)
+    @interface Schema
+    {
+        String value();
+    }
+
+    @Schema("""
+        type: object
+        properties:
+          name:
+            type: Name
+        """)
+    static class Annotated
+    {
+    }
+
+    @Test
+    public void testEvents()
+    {
+        var events = new StringList();
+        new YamlReader().read(packageResource("resources/ArrayIndentTest.yml"), new YamlEventHandler()
+        {
+            @Override
+            public void onArrayEnd(String name)
+            {
+                events.add("]" + name);
+            }
+
+            @Override
+            public void onArrayStart(String name)
+            {
+                events.add("[" + name);
+            }
+
+            @Override
+            public void onBlockEnd(String name)
+            {
+                events.add("}" + name);
+            }
+
+            @Override
+            public void onBlockStart(String name)
+            {
+                events.add("{" + name);
+            }
+
+            @Override
+            public void onLiteral(YamlLiteral literal)
+            {
+                events.add(literal.name());
+            }
+
+            @Override
+            public void onScalar(YamlScalar scalar)
+            {
+                events.add(scalar.name());
+            }
+        });
+
+        ensureEqual(events, stringList(
+            "{", "type", "description",
+            "{properties",
+            "{animals", "type", "description",
+            "[items",
+            "{", "element", "name", "occupation",
+            "{friends", "type", "description",
+            "[items", "name", "name", "]items",
+            "}friends",
+            "}",
+            "{", "element", "name", "occupation", "}",
+            "]items",
+            "}animals",
+            "}properties",
+            "}"));
+    }
+
+    @Test
+    public void testReadYamlAnnotation()
+    {
+        var first = readYamlAnnotation(Annotated.class, Schema.class, Schema::value).asBlock();
+        var second = readYamlAnnotation(Annotated.class, Schema.class, Schema::value).asBlock();
+        ensure(first != second);
+        ensureEqual(first.toString(), second.toString());
+
+        // Modifying the YAML that was read should not affect the YAML read later.
+        first.block("properties").block("name").addReference("Name");
+        var third = readYamlAnnotation(Annotated.class, Schema.class, Schema::value).asBlock();
+        ensureEqual(third.toString(), second.toString());
+
+        ensure(readYamlAnnotation(YamlReaderTest.class, Schema.class, Schema::value) == null);
+    }
+
     @Test
     public void testRead()
     {
@@ -0,0 +1,279 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.filesystems.s3fs;
+
+import com.telenav.kivakit.core.progress.ProgressReporter;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import static com.telenav.kivakit.core.ensure.Ensure.fail;
+import static com.telenav.kivakit.filesystems.s3fs.S3FileSystemService.executor;
+
+/**
+ * <b>Not public API</b>
+ * <p>
+ * Copies and deletes many objects in one bucket. Objects are copied on the server, so no data passes through this
+ * process. Copies run concurrently, with at most a fixed number in flight at once. Objects larger than a single
+ * CopyObject request allows are copied in parts with UploadPartCopy, and the parts of each object are copied
+ * concurrently in the same way. Deletes are sent in batches of up to 1000 keys per DeleteObjects request.
+ *
+ * <p>
+ * Progress is reported to a {@link ProgressReporter} with one step for each object copied or deleted. The caller
+ * starts and ends the reporter, so that one reporter can cover several operations. The metadata cache entries for the
+ * changed keys are invalidated.
+ *
+ * @author jonathanl (shibo)
+ */
+class S3BulkOperations
+{
+    /** The largest object that a single CopyObject request can copy */
+    private static final long MAXIMUM_SINGLE_COPY = 5L * 1024 * 1024 * 1024;
+
+    /** The size of each part when copying an object in parts */
+    private static final long COPY_PART_SIZE = 512L * 1024 * 1024;
+
+    /** The largest number of keys that one DeleteObjects request accepts */
+    private static final int MAXIMUM_DELETE_BATCH = 1000;
+
+    /** The default number of copies in flight at once */
+    static final int DEFAULT_WINDOW = 32;
+
+    /** The bucket holding the objects */
+    private final String bucket;
+
+    /** The shared client for the bucket's region, which must not be closed */
+    private final S3Client client;
+
+    /** The metadata cache for the bucket's region */
+    private final S3MetadataCache metadataCache;
+
+    /** The maximum number of copies in flight at once */
+    private final int window;
+
+    S3BulkOperations(S3Client client, S3MetadataCache metadataCache, String bucket, int window)
+    {
+        this.client = client;
+        this.metadataCache = metadataCache;
+        this.bucket = bucket;
+        this.window = window;
+    }
+
+    /**
+     * Copies each of the given objects to the key given by the destination function
+     */
+    void copy(List<S3Object> sources, Function<String, String> destinationKey, ProgressReporter reporter)
+    {
+        var inFlight = new ArrayDeque<CompletableFuture<Void>>();
+        try
+        {
+            for (var source : sources)
+            {
+                // If the window is full, wait for the oldest copy,
+                if (inFlight.size() == window)
+                {
+                    join(inFlight.removeFirst());
+                    reporter.next();
+                }
+
+                // then start copying the next object.
+                var destination = destinationKey.apply(source.key());
+                inFlight.addLast(CompletableFuture.runAsync(() -> copy(source, destination), executor()));
+            }
+
+            while (!inFlight.isEmpty())
+            {
+                join(inFlight.removeFirst());
+                reporter.next();
+            }
+        }
+        finally
+        {
+            inFlight.forEach(copy -> copy.cancel(false));
+        }
+    }
+
+    /**
+     * Deletes the objects with the given keys, in batches
+     */
+    void delete(List<String> keys, ProgressReporter reporter)
+    {
+        for (int start = 0; start < keys.size(); start += MAXIMUM_DELETE_BATCH)
+        {
+            var batch = keys.subList(start, Math.min(keys.size(), start + MAXIMUM_DELETE_BATCH));
+
+            var identifiers = new ArrayList<ObjectIdentifier>();
+            for (var key : batch)
+            {
+                identifiers.add(ObjectIdentifier.builder().key(key).build());
+            }
+
+            var response = client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucket)
+                    .delete(Delete.builder().objects(identifiers).quiet(true).build())
+                    .build());
+
+            batch.forEach(key -> metadataCache.invalidate(bucket, key));
+
+            if (!response.errors().isEmpty())
+            {
+                var error = response.errors().get(0);
+                fail("Unable to delete $ of $ objects in $, including $: $", response.errors().size(),
+                        batch.size(), bucket, error.key(), error.message());
+            }
+
+            reporter.next(batch.size());
+        }
+    }
+
+    /**
+     * Copies the given object to the given key, in parts if it is too large for a single request
+     */
+    private void copy(S3Object source, String destination)
+    {
+        try
+        {
+            if (source.size() != null && source.size() > MAXIMUM_SINGLE_COPY)
+            {
+                copyInParts(source, destination);
+            }
+            else
+            {
+                client.copyObject(CopyObjectRequest.builder()
+                        .sourceBucket(bucket)
+                        .sourceKey(source.key())
+                        .destinationBucket(bucket)
+                        .destinationKey(destination)
+                        .build());
+            }
+        }
+        finally
+        {
+            metadataCache.invalidate(bucket, destination);
+        }
+    }
+
+    /**
+     * Copies the given object to the given key with a multipart upload whose parts are copied from ranges of the
+     * source. Parts are copied concurrently, with at most the window size in flight at once. Since the parts don't
+     * carry the source's content type and user metadata, the upload is created with the ones from a HEAD request. The
+     * upload is aborted if any part fails.
+     */
+    private void copyInParts(S3Object source, String destination)
+    {
+        var head = client.headObject(HeadObjectRequest.builder()
+                .bucket(bucket)
+                .key(source.key())
+                .build());
+
+        var uploadId = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(destination)
+                .contentType(head.contentType())
+                .metadata(head.metadata())
+                .build()).uploadId();
+
+        var inFlight = new ArrayDeque<CompletableFuture<CompletedPart>>();
+        try
+        {
+            var parts = new ArrayList<CompletedPart>();
+            var size = source.size();
+            var partNumber = 0;
+            for (long start = 0; start < size; start += COPY_PART_SIZE)
+            {
+                // If the window is full, wait for the oldest part,
+                if (inFlight.size() == window)
+                {
+                    parts.add(join(inFlight.removeFirst()));
+                }
+
+                // then start copying the next part.
+                var number = ++partNumber;
+                var request = UploadPartCopyRequest.builder()
+                        .sourceBucket(bucket)
+                        .sourceKey(source.key())
+                        .destinationBucket(bucket)
+                        .destinationKey(destination)
+                        .uploadId(uploadId)
+                        .partNumber(number)
+                        .copySourceRange("bytes=" + start + "-" + (Math.min(size, start + COPY_PART_SIZE) - 1))
+                        .build();
+                inFlight.addLast(CompletableFuture.supplyAsync(() -> CompletedPart.builder()
+                        .partNumber(number)
+                        .eTag(client.uploadPartCopy(request).copyPartResult().eTag())
+                        .build(), executor()));
+            }
+
+            while (!inFlight.isEmpty())
+            {
+                parts.add(join(inFlight.removeFirst()));
+            }
+
+            client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(destination)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        }
+        catch (RuntimeException e)
+        {
+            inFlight.forEach(part -> part.cancel(false));
+            client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(destination)
+                    .uploadId(uploadId)
+                    .build());
+            throw e;
+        }
+    }
+
+    private <T> T join(CompletableFuture<T> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException cause)
+            {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -101,6 +101,26 @@ public class S3File extends S3FileSystemObject implements FileService
         return new S3Output(this);
     }
 
+    /**
+     * Returns a reader that downloads this file with concurrent range requests, using parts of 8 megabytes, eight at a
+     * time
+     */
+    public S3RangeReader rangeReader()
+    {
+        return rangeReader(S3RangeReader.DEFAULT_PART_SIZE, S3RangeReader.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Returns a reader that downloads this file with concurrent range requests
+     *
+     * @param partSize The size of each range
+     * @param parallelism The number of ranges to fetch at once
+     */
+    public S3RangeReader rangeReader(Bytes partSize, int parallelism)
+    {
+        return new S3RangeReader(this, partSize, parallelism);
+    }
+
     public boolean renameTo(S3File that)
     {
         if (canRenameTo(that))
@@ -128,10 +148,6 @@ public class S3File extends S3FileSystemObject implements FileService
 
     public void write(String line)
     {
-        if (exists())
-        {
-            delete();
-        }
         var printWriter = printWriter();
         printWriter.println(line);
         printWriter.close();
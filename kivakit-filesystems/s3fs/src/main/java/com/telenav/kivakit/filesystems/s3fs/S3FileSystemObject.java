@@ -25,6 +25,7 @@ import com.telenav.kivakit.core.value.count.Bytes;
 import com.telenav.kivakit.filesystem.FilePath;
 import com.telenav.kivakit.filesystem.spi.FileSystemObjectService;
 import com.telenav.kivakit.filesystem.spi.FolderService;
+import com.telenav.kivakit.filesystems.s3fs.S3MetadataCache.ObjectMetadata;
 import com.telenav.kivakit.filesystems.s3fs.internal.lexakai.DiagramS3;
 import com.telenav.kivakit.resource.WriteMode;
 import com.telenav.kivakit.resource.Resource;
@@ -36,8 +37,6 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
-import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
@@ -51,6 +50,7 @@ import java.util.regex.Pattern;
 import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
 import static com.telenav.kivakit.core.ensure.Ensure.unsupported;
 import static com.telenav.kivakit.core.language.Patterns.patternMatches;
+import static com.telenav.kivakit.filesystems.s3fs.S3MetadataCache.metadataCacheFor;
 
 /**
  * Base functionality common to both {@link S3File} and {@link S3Folder}.
@@ -99,9 +99,6 @@ public abstract class S3FileSystemObject extends BaseWritableResource implements
     // Name of s3 object key
     private final String key;
 
-    // Metadata attached to the object
-    private Map<String, String> metadata;
-
     // True if it's a folder
     private final boolean isFolder;
 
@@ -154,6 +151,7 @@ public abstract class S3FileSystemObject extends BaseWritableResource implements
                 .build();
 
         client().putObject(request, RequestBody.fromInputStream(in, resource.sizeInBytes().asBytes()));
+        invalidateMetadata();
     }
 
     @Override
@@ -165,6 +163,7 @@ public abstract class S3FileSystemObject extends BaseWritableResource implements
                 .build();
 
         client().deleteObject(request);
+        invalidateMetadata();
         return !exists();
     }
 
@@ -181,7 +180,7 @@ public abstract class S3FileSystemObject extends BaseWritableResource implements
     @Override
     public boolean exists()
     {
-        return metadata() != null;
+        return head().exists();
     }
 
     @Override
@@ -318,18 +317,22 @@ public abstract class S3FileSystemObject extends BaseWritableResource implements
                 .sourceKey(key())
 
                 .destinationBucket(that.bucket())
-                .destinationKey(key())
+                .destinationKey(that.key())
                 .build();
 
-        try (var client = client())
+        try
         {
-            client .copyObject(request);
+            client().copyObject(request);
             return true;
         }
         catch (Exception e)
         {
             return false;
         }
+        finally
+        {
+            that.invalidateMetadata();
+        }
     }
 
     boolean inSameBucket(S3FileSystemObject that)
@@ -342,39 +345,31 @@ public abstract class S3FileSystemObject extends BaseWritableResource implements
         return key;
     }
 
-    Bytes length()
+    /**
+     * Returns the cached metadata of this object, reading it with a HEAD request if it is not cached
+     */
+    ObjectMetadata head()
     {
-        var object = object();
-        return Bytes.bytes(object != null ? object.contentLength() : 0);
+        return metadataCacheFor(region()).metadata(this);
     }
 
-    Map<String, String> metadata()
+    /**
+     * Removes this object from the metadata cache, after it has been written, deleted or renamed
+     */
+    void invalidateMetadata()
     {
-        if (metadata == null)
-        {
-            var object = object();
-            if (object != null)
-            {
-                metadata = object.metadata();
-            }
-        }
-        return metadata;
+        metadataCacheFor(region()).invalidate(this);
     }
 
-    GetObjectResponse object()
+    Bytes length()
     {
-        var request = GetObjectRequest.builder().bucket(bucket()).key(key()).build();
-
-        GetObjectResponse response = null;
-        try (var inputStream = client().getObject(request))
-        {
-            response = inputStream.response();
-        }
-        catch (Exception ignored)
-        {
-        }
+        return Bytes.bytes(head().size());
+    }
 
-        return response;
+    Map<String, String> metadata()
+    {
+        var head = head();
+        return head.exists() ? head.metadata() : null;
     }
 
     Region region()
@@ -31,7 +31,13 @@ import com.telenav.lexakai.annotations.UmlClassDiagram;
 import com.telenav.lexakai.annotations.associations.UmlRelation;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
 import static com.telenav.kivakit.core.ensure.Ensure.unsupported;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * <b>Not public API</b>
@@ -52,6 +58,27 @@ import static com.telenav.kivakit.core.ensure.Ensure.unsupported;
 @UmlClassDiagram(diagram = DiagramS3.class)
 public class S3FileSystemService implements FileSystemService
 {
+    /** The most threads sending S3 requests in the background at once */
+    private static final int MAXIMUM_THREADS = 64;
+
+    /** Threads shared by uploads, read-ahead, copies and listings, which exit when they have been idle for a while */
+    private static final ExecutorService executor = new ThreadPoolExecutor(0, MAXIMUM_THREADS, 30, SECONDS,
+            new SynchronousQueue<>(), runnable ->
+    {
+        var thread = new Thread(runnable, "S3FileSystem");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+    /**
+     * Returns the executor for S3 requests that are sent in the background. When all of its threads are busy, a task
+     * runs on the thread that submits it, so tasks never wait in a queue behind tasks that are waiting for them.
+     */
+    static Executor executor()
+    {
+        return executor;
+    }
+
     @Override
     public boolean accepts(@NotNull FilePath path)
     {
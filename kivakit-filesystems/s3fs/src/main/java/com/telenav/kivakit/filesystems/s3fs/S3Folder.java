@@ -20,6 +20,7 @@ package com.telenav.kivakit.filesystems.s3fs;
 
 import com.telenav.kivakit.core.logging.Logger;
 import com.telenav.kivakit.core.logging.LoggerFactory;
+import com.telenav.kivakit.core.progress.ProgressReporter;
 import com.telenav.kivakit.core.thread.Monitor;
 import com.telenav.kivakit.core.time.Time;
 import com.telenav.kivakit.core.value.count.Bytes;
@@ -32,20 +33,35 @@ import com.telenav.kivakit.interfaces.comparison.Matcher;
 import com.telenav.kivakit.resource.FileName;
 import com.telenav.lexakai.annotations.UmlClassDiagram;
 import org.jetbrains.annotations.NotNull;
-import software.amazon.awssdk.services.s3.model.ListBucketsRequest;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
 
 import static com.telenav.kivakit.core.ensure.Ensure.fail;
 import static com.telenav.kivakit.core.ensure.Ensure.unsupported;
+import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
+import static com.telenav.kivakit.core.value.count.Count.count;
+import static com.telenav.kivakit.filesystems.s3fs.S3FileSystemService.executor;
+import static com.telenav.kivakit.filesystems.s3fs.S3MetadataCache.metadataCacheFor;
 
 /**
  * <b>Not public API</b>
  * <p>
  * Implementation of {@link FolderService} used to provide {@link S3FileSystemService}.
+ * <p>
+ * A folder is a key prefix ending in "/". Its files and sub-folders are listed with ListObjectsV2 requests that use "/"
+ * as a delimiter, so the objects directly in the folder are returned as contents and each sub-folder is returned once
+ * as a common prefix. Pages of results are requested only as they are consumed, so checks like {@link #hasFiles()} and
+ * {@link #isEmpty()} stop after the first page. {@link #nestedFiles(Matcher)} lists each sub-folder of this folder in
+ * parallel.
  *
  * @author jonathanl (shibo)
  */
@@ -79,20 +95,39 @@ public class S3Folder extends S3FileSystemObject implements FolderService
     @Override
     public S3Folder clear()
     {
-        for (var folder : folders())
-        {
-            folder.clear();
-            folder.delete();
-        }
+        return clear(nullProgressReporter());
+    }
 
-        for (var file : files())
+    /**
+     * Deletes everything in this folder, except its own marker and metadata file, with batched delete requests
+     */
+    public S3Folder clear(ProgressReporter reporter)
+    {
+        var metadataKey = metadataFile().key();
+        var keys = nestedObjects().stream()
+                .map(S3Object::key)
+                .filter(key -> !key.equals(prefix()) && !key.equals(metadataKey))
+                .toList();
+
+        reportProgress(reporter, keys.size(), () -> bulkOperations().delete(keys, reporter));
+        return this;
+    }
+
+    /**
+     * Copies everything in this folder to the given folder in the same bucket, on the server
+     *
+     * @return False if the folder can't be copied to the given folder
+     */
+    public boolean copyTo(S3Folder that, ProgressReporter reporter)
+    {
+        if (canBulkCopyTo(that))
         {
-            if (!isMetadata(file.fileName()))
-            {
-                file.delete();
-            }
+            var objects = nestedObjects();
+            reportProgress(reporter, objects.size(), () ->
+                    bulkOperations().copy(objects, key -> that.prefix() + key.substring(prefix().length()), reporter));
+            return true;
         }
-        return this;
+        return false;
     }
 
     @Override
@@ -142,40 +177,30 @@ public class S3Folder extends S3FileSystemObject implements FolderService
         return new S3File(path().withChild(fileName.name()));
     }
 
+    /**
+     * Returns the files directly in this folder in batches, one for each page of listing results. Pages are requested
+     * as the stream is consumed.
+     */
+    public Stream<List<S3File>> fileBatches()
+    {
+        return list(prefix(), false).stream().map(page -> page.contents().stream()
+                .filter(this::isFile)
+                .map(this::file)
+                .toList());
+    }
+
     @Override
     public List<FileService> files()
     {
-        var request = ListObjectsV2Request.builder()
-                .bucket(bucket())
-                .prefix(key())
-                .build();
-
-        var response = client().listObjectsV2Paginator(request);
-
-        List<FileService> files = new ArrayList<>();
-        for (var page : response)
-        {
-            page.contents().forEach(object ->
-            {
-                var path = S3FileSystemObject.path(this, scheme(), region(), bucket(), object.key());
-                files.add(new S3File(path));
-            });
-        }
-        return files;
+        return new ArrayList<>(fileStream().toList());
     }
 
     @Override
     public List<FileService> files(@NotNull Matcher<FilePath> matcher)
     {
-        List<FileService> files = new ArrayList<>();
-        for (var file : files())
-        {
-            if (matcher.matches(file.path()))
-            {
-                files.add(file);
-            }
-        }
-        return files;
+        return new ArrayList<>(fileStream()
+                .filter(file -> matcher.matches(file.path()))
+                .toList());
     }
 
     @Override
@@ -193,45 +218,38 @@ public class S3Folder extends S3FileSystemObject implements FolderService
     @Override
     public List<FolderService> folders()
     {
-        var request = ListBucketsRequest.builder().build();
-        var response = client().listBuckets(request);
-
-        List<FolderService> folders = new ArrayList<>();
-        for (var bucket : response.buckets())
-        {
-            var path = S3FileSystemObject.path(this, scheme(), region(), bucket.name(), "");
-            folders.add(new S3Folder(path));
-        }
-        return folders;
+        return new ArrayList<>(folderStream().toList());
     }
 
     @Override
     public boolean hasFiles()
     {
-        return exists() && files().iterator().hasNext();
+        return exists() && fileStream().findAny().isPresent();
     }
 
     @Override
     public boolean hasSubFolders()
     {
-        return exists() && folders().iterator().hasNext();
+        return exists() && folderStream().findAny().isPresent();
     }
 
     @Override
     public boolean isEmpty()
     {
-        Iterable<FolderService> folders = folders();
-        if (folders != null && folders.iterator().hasNext())
+        // The folder is empty if the first page with anything in it has only the metadata file
+        for (var page : list(prefix(), false))
         {
-            return false;
-        }
-
-        for (var file : files())
-        {
-            if (!file.fileName().equals(METADATA))
+            if (!page.commonPrefixes().isEmpty())
             {
                 return false;
             }
+            for (var object : page.contents())
+            {
+                if (isFile(object) && !isMetadata(file(object).fileName()))
+                {
+                    return false;
+                }
+            }
         }
         return true;
     }
@@ -258,13 +276,33 @@ public class S3Folder extends S3FileSystemObject implements FolderService
     public List<FileService> nestedFiles(@NotNull Matcher<FilePath> matcher)
     {
         List<FileService> files = new ArrayList<>();
-        for (var file : nestedFiles(this, new ArrayList<>()))
+        var shards = new ArrayList<CompletableFuture<List<S3File>>>();
+
+        // List the files directly in this folder, and for each sub-folder,
+        for (var page : list(prefix(), false))
         {
-            if (matcher.matches(file.path()))
+            page.contents().stream()
+                    .filter(this::isFile)
+                    .map(this::file)
+                    .filter(file -> matcher.matches(file.path()))
+                    .forEach(files::add);
+
+            // start listing everything below it, without a delimiter, on another thread.
+            for (var prefix : page.commonPrefixes())
             {
-                files.add(file);
+                shards.add(CompletableFuture.supplyAsync(() -> list(prefix.prefix(), true).contents().stream()
+                        .filter(this::isFile)
+                        .map(this::file)
+                        .filter(file -> matcher.matches(file.path()))
+                        .toList(), executor()));
             }
         }
+
+        // Then add the files in each sub-folder, in order.
+        for (var shard : shards)
+        {
+            files.addAll(join(shard));
+        }
         return files;
     }
 
@@ -272,13 +310,7 @@ public class S3Folder extends S3FileSystemObject implements FolderService
     public List<FolderService> nestedFolders(@NotNull Matcher<FilePath> matcher)
     {
         List<FolderService> folders = new ArrayList<>();
-        for (var at : nestedFolders(this, new ArrayList<>()))
-        {
-            if (matcher.matches(at.path()))
-            {
-                folders.add(at);
-            }
-        }
+        nestedFolders(this, matcher, folders);
         return folders;
     }
 
@@ -295,17 +327,32 @@ public class S3Folder extends S3FileSystemObject implements FolderService
 
     public boolean renameTo(S3Folder that)
     {
-        if (exists() && canRenameTo(that))
+        return renameTo(that, nullProgressReporter());
+    }
+
+    /**
+     * Moves everything in this folder, including its marker and metadata file, to the given folder in the same bucket.
+     * All objects are copied on the server before any are deleted, so a failed copy leaves this folder intact. The
+     * reporter has one step for each object copied and one for each object deleted.
+     *
+     * <p>
+     * The given folder must be empty, rather than not existing, since {@link #exists()} is true for every S3 folder.
+     * For the same reason, this folder is not checked for existence, and moving a folder with no objects does nothing.
+     * </p>
+     *
+     * @return False if the folder can't be moved to the given folder
+     */
+    public boolean renameTo(S3Folder that, ProgressReporter reporter)
+    {
+        if (canBulkCopyTo(that))
         {
-            for (var file : files())
+            var objects = nestedObjects();
+            var bulk = bulkOperations();
+            reportProgress(reporter, objects.size() * 2L, () ->
             {
-                file.renameTo(that.file(file.fileName()));
-            }
-            for (var folder : folders())
-            {
-                folder.renameTo(that.folder(folder.fileName()));
-            }
-            metadataFile().renameTo(that.metadataFile());
+                bulk.copy(objects, key -> that.prefix() + key.substring(prefix().length()), reporter);
+                bulk.delete(objects.stream().map(S3Object::key).toList(), reporter);
+            });
             return true;
         }
         return false;
@@ -359,6 +406,35 @@ public class S3Folder extends S3FileSystemObject implements FolderService
         }
     }
 
+    private S3BulkOperations bulkOperations()
+    {
+        return new S3BulkOperations(client(), metadataCacheFor(region()), bucket(), S3BulkOperations.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Returns true if the contents of this folder can be copied to the given folder, which must be a different, empty
+     * folder in the same bucket that is not inside this one
+     */
+    private boolean canBulkCopyTo(S3Folder that)
+    {
+        if (!inSameBucket(that))
+        {
+            warning("Can't move S3 objects from bucket $ to another bucket $", bucket(), that.bucket());
+            return false;
+        }
+        if (that.prefix().startsWith(prefix()))
+        {
+            warning("Can't copy $ to itself or to a folder inside it: $", this, that);
+            return false;
+        }
+        if (!that.isEmpty())
+        {
+            warning("Can't copy $ to a folder that isn't empty: $", this, that);
+            return false;
+        }
+        return true;
+    }
+
     private FilePath child(FileName child)
     {
         return path().withChild(child.name());
@@ -369,33 +445,122 @@ public class S3Folder extends S3FileSystemObject implements FolderService
         return path().withChild(folder.toString());
     }
 
+    private S3File file(S3Object object)
+    {
+        return new S3File(S3FileSystemObject.path(this, scheme(), region(), bucket(), object.key()));
+    }
+
+    private Stream<S3File> fileStream()
+    {
+        return list(prefix(), false).contents().stream()
+                .filter(this::isFile)
+                .map(this::file);
+    }
+
+    private S3Folder folder(CommonPrefix prefix)
+    {
+        // The folder constructor adds the trailing delimiter back to the key
+        var key = prefix.prefix().substring(0, prefix.prefix().length() - 1);
+        return new S3Folder(S3FileSystemObject.path(this, scheme(), region(), bucket(), key));
+    }
+
+    private Stream<S3Folder> folderStream()
+    {
+        return list(prefix(), false).commonPrefixes().stream().map(this::folder);
+    }
+
+    /**
+     * Returns true if the given object is a file, rather than the marker object for this folder or a folder inside it
+     */
+    private boolean isFile(S3Object object)
+    {
+        return !object.key().endsWith("/");
+    }
+
     private boolean isMetadata(FileName fileName)
     {
         return fileName.equals(METADATA);
     }
 
+    private <T> T join(CompletableFuture<T> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException cause)
+            {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a lazy listing of the objects under the given prefix. If nested is false, "/" is used as a delimiter, so
+     * only the objects directly under the prefix are returned as contents, and sub-folders are returned as common
+     * prefixes.
+     */
+    private ListObjectsV2Iterable list(String prefix, boolean nested)
+    {
+        var request = ListObjectsV2Request.builder()
+                .bucket(bucket())
+                .prefix(prefix);
+
+        if (!nested)
+        {
+            request.delimiter("/");
+        }
+
+        return client().listObjectsV2Paginator(request.build());
+    }
+
     private S3File metadataFile()
     {
         return file(METADATA);
     }
 
-    private List<FileService> nestedFiles(FolderService folder, List<FileService> files)
+    private void nestedFolders(S3Folder folder, Matcher<FilePath> matcher, List<FolderService> folders)
     {
-        files.addAll(folder.files());
-        for (var at : folders())
+        if (matcher.matches(folder.path()))
         {
-            nestedFiles(at, files);
+            folders.add(folder);
         }
-        return files;
+        folder.folderStream().forEach(at -> nestedFolders(at, matcher, folders));
+    }
+
+    /**
+     * Returns all the objects under this folder's prefix, including those in sub-folders
+     */
+    private List<S3Object> nestedObjects()
+    {
+        return list(prefix(), true).contents().stream().toList();
+    }
+
+    /**
+     * Returns the key prefix of the objects in this folder, which is empty for the root of a bucket
+     */
+    private String prefix()
+    {
+        return "/".equals(key()) ? "" : key();
     }
 
-    private List<FolderService> nestedFolders(FolderService folder, List<FolderService> folders)
+    /**
+     * Runs the given code, starting and ending the given reporter around it, with the given number of steps
+     */
+    private void reportProgress(ProgressReporter reporter, long steps, Runnable code)
     {
-        folders.add(this);
-        for (var at : folder.folders())
+        reporter.steps(count(steps));
+        reporter.start();
+        try
         {
-            nestedFolders(at, folders);
+            code.run();
+        }
+        finally
+        {
+            reporter.end();
         }
-        return folders;
     }
 }
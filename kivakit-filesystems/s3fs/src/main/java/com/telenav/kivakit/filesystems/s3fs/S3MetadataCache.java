@@ -0,0 +1,176 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.filesystems.s3fs;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <b>Not public API</b>
+ * <p>
+ * A cache of the metadata of S3 objects in one region, read with HEAD requests. Entries, including entries for objects
+ * that don't exist, expire after a fixed time, and the least recently used entries are evicted when the cache is full.
+ * Writes, deletes and renames made through {@link S3FileSystemObject} invalidate the entries for the objects they
+ * change, but changes made by other clients are only seen once an entry expires.
+ *
+ * @author jonathanl (shibo)
+ */
+class S3MetadataCache
+{
+    /** The cache for each region */
+    private static final Map<String, S3MetadataCache> cacheForRegion = new ConcurrentHashMap<>();
+
+    /** The maximum number of entries in each cache */
+    private static final int MAXIMUM_ENTRIES = 10_000;
+
+    /** The time after which an entry is read again */
+    private static final Duration TIME_TO_LIVE = Duration.ofSeconds(30);
+
+    /**
+     * Returns the cache for the given region
+     */
+    static S3MetadataCache metadataCacheFor(Region region)
+    {
+        return cacheForRegion.computeIfAbsent(region != null ? region.id() : "default-region",
+                ignored -> new S3MetadataCache());
+    }
+
+    /**
+     * The metadata of an object
+     *
+     * @param exists True if the object exists
+     * @param size The size of the object in bytes
+     * @param eTag The entity tag of the object
+     * @param lastModified The time the object was last modified
+     * @param metadata The user metadata attached to the object
+     */
+    record ObjectMetadata(boolean exists, long size, String eTag, Instant lastModified, Map<String, String> metadata)
+    {
+        /** The metadata of an object that doesn't exist */
+        static final ObjectMetadata MISSING = new ObjectMetadata(false, 0, null, null, null);
+    }
+
+    /**
+     * An entry in the cache
+     *
+     * @param metadata The metadata of the object
+     * @param expiresAt The time when the entry expires
+     */
+    private record Entry(ObjectMetadata metadata, Instant expiresAt)
+    {
+    }
+
+    /** Entries by bucket and key, in least recently used order */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+        {
+            return size() > MAXIMUM_ENTRIES;
+        }
+    };
+
+    /**
+     * Removes any entry for the given object
+     */
+    void invalidate(S3FileSystemObject object)
+    {
+        invalidate(object.bucket(), object.key());
+    }
+
+    /**
+     * Removes any entry for the object with the given key in the given bucket
+     */
+    void invalidate(String bucket, String key)
+    {
+        synchronized (entries)
+        {
+            entries.remove(bucket + "/" + key);
+        }
+    }
+
+    /**
+     * Returns the metadata of the given object, sending a HEAD request if there is no live entry for it
+     */
+    ObjectMetadata metadata(S3FileSystemObject object)
+    {
+        var key = keyOf(object);
+        var now = Instant.now();
+        synchronized (entries)
+        {
+            var entry = entries.get(key);
+            if (entry != null && now.isBefore(entry.expiresAt()))
+            {
+                return entry.metadata();
+            }
+        }
+
+        var metadata = head(object);
+        if (metadata != null)
+        {
+            synchronized (entries)
+            {
+                entries.put(key, new Entry(metadata, now.plus(TIME_TO_LIVE)));
+            }
+            return metadata;
+        }
+        return ObjectMetadata.MISSING;
+    }
+
+    /**
+     * Reads the metadata of the given object with a HEAD request
+     *
+     * @return The metadata, {@link ObjectMetadata#MISSING} if the object doesn't exist, or null if the request failed
+     * for some other reason, in which case the result should not be cached
+     */
+    private ObjectMetadata head(S3FileSystemObject object)
+    {
+        var request = HeadObjectRequest.builder()
+                .bucket(object.bucket())
+                .key(object.key())
+                .build();
+
+        try
+        {
+            var response = object.client().headObject(request);
+            return new ObjectMetadata(true, response.contentLength() != null ? response.contentLength() : 0,
+                    response.eTag(), response.lastModified(), response.metadata());
+        }
+        catch (S3Exception e)
+        {
+            return e.statusCode() == 404 ? ObjectMetadata.MISSING : null;
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    private String keyOf(S3FileSystemObject object)
+    {
+        return object.bucket() + "/" + object.key();
+    }
+}
@@ -18,44 +18,107 @@
 
 package com.telenav.kivakit.filesystems.s3fs;
 
-import com.telenav.kivakit.core.io.IO;
-import com.telenav.kivakit.core.logging.Logger;
-import com.telenav.kivakit.core.logging.LoggerFactory;
-import com.telenav.kivakit.filesystem.File;
-import com.telenav.kivakit.filesystem.FilePath;
-import com.telenav.kivakit.filesystem.Folder;
+import com.telenav.kivakit.core.value.count.Bytes;
 import org.jetbrains.annotations.NotNull;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
-import static com.telenav.kivakit.core.messaging.Listener.consoleListener;
-import static com.telenav.kivakit.core.progress.ProgressReporter.nullProgressReporter;
-import static com.telenav.kivakit.filesystem.File.parseFile;
-import static com.telenav.kivakit.filesystem.Folder.FolderType.CLEAN_UP_ON_EXIT;
-import static com.telenav.kivakit.filesystem.Folder.temporaryFolderForProcess;
-import static com.telenav.kivakit.resource.WriteMode.OVERWRITE;
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.value.count.Bytes.megabytes;
+import static com.telenav.kivakit.filesystems.s3fs.S3FileSystemService.executor;
 
 /**
- * OutputStream that appends to an existing S3 object
+ * OutputStream that writes an S3 object with a multipart upload. Bytes are collected in fixed-size parts, and each
+ * full part is uploaded on a background thread while the caller goes on writing. A stream holds at most a fixed number
+ * of part buffers at once, so the memory it uses is bounded by the part size times the number of buffers. When all of
+ * its buffers are in use, writing blocks until a part has been uploaded.
+ *
+ * <p>
+ * Bytes are first collected in a small heap buffer, which grows as needed up to the part size. Only when a whole part
+ * has been written does the stream start a multipart upload, and the parts after the first are collected in direct
+ * buffers. Direct buffers are taken from a bounded pool that is shared by all streams with the same part size, and are
+ * returned to it when their part has been uploaded, so small objects never allocate direct memory, and streams that
+ * are opened one after another reuse the same buffers.
+ * </p>
+ *
+ * <p>
+ * Closing the stream uploads the last part and completes the upload, at which point the object replaces any existing
+ * object with the same key. An object smaller than one part is written with a single put instead. If a part fails to
+ * upload, the upload is aborted, and the next write or the close throws an {@link IOException}.
+ * </p>
  *
  * @author songg
  */
 public class S3Output extends OutputStream
 {
-    // The temporary cache folder for storing materialized files
-    private static final Folder cacheFolder = temporaryFolderForProcess(CLEAN_UP_ON_EXIT).ensureExists();
+    /** The default size of each part */
+    private static final Bytes DEFAULT_PART_SIZE = megabytes(8);
+
+    /** The default number of part buffers in each stream */
+    private static final int DEFAULT_BUFFERS = 4;
+
+    /** The smallest part that S3 accepts, other than the last part */
+    private static final Bytes MINIMUM_PART_SIZE = megabytes(5);
+
+    /** The largest number of parts that S3 accepts in one upload */
+    private static final int MAXIMUM_PARTS = 10_000;
+
+    /** The size of the heap buffer that bytes are first collected in */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    /** The maximum number of free direct buffers of each part size that are kept for reuse */
+    private static final int POOLED_BUFFERS = 8;
+
+    /** Free direct buffers, by part size */
+    private static final Map<Integer, BlockingQueue<ByteBuffer>> pools = new ConcurrentHashMap<>();
 
-    private static final Logger LOGGER = LoggerFactory.newLogger();
+    /** The buffer being filled, or null if there is none */
+    private ByteBuffer buffer;
 
-    // The cache file
-    private final File cacheFile;
+    /** True once this stream has been closed */
+    private boolean closed;
+
+    /** The first error that occurred while uploading a part, or null if there has been none */
+    private volatile Throwable failure;
 
     /** The {@link S3FileSystemObject} this stream writes to */
     private final S3FileSystemObject object;
 
-    // The underline output stream
-    private final OutputStream outputStream;
+    /** The size of each part, in bytes */
+    private final int partSize;
+
+    /** The parts being uploaded or already uploaded, in part number order */
+    private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+
+    /** Permits for the buffers that this stream may hold, one for each buffer being filled or uploaded */
+    private final Semaphore permits;
+
+    /** The shared pool of free direct buffers of this stream's part size */
+    private final BlockingQueue<ByteBuffer> pool;
+
+    /** The multipart upload identifier, or null if no part has been uploaded yet */
+    private String uploadId;
 
     /**
      * Create an {@link OutputStream} writing to an {@link S3FileSystemObject}
@@ -64,46 +127,353 @@ public class S3Output extends OutputStream
      */
     protected S3Output(S3FileSystemObject object)
     {
+        this(object, DEFAULT_PART_SIZE, DEFAULT_BUFFERS);
+    }
+
+    /**
+     * Create an {@link OutputStream} writing to an {@link S3FileSystemObject}
+     *
+     * @param object The {@link S3FileSystemObject} to which this stream is writing
+     * @param partSize The size of each uploaded part, which must be at least 5 megabytes
+     * @param buffers The number of part buffers, one of which is being filled while the others are uploaded
+     */
+    protected S3Output(S3FileSystemObject object, Bytes partSize, int buffers)
+    {
+        ensure(partSize.asBytes() >= MINIMUM_PART_SIZE.asBytes(), "Part size must be at least $", MINIMUM_PART_SIZE);
+        ensure(buffers >= 2, "At least two buffers are required");
+
         this.object = object;
-        cacheFile = cacheFile(object.path());
-        outputStream = cacheFile.onOpenForWriting(OVERWRITE);
+        this.partSize = (int) partSize.asBytes();
+        this.permits = new Semaphore(buffers);
+        this.pool = pools.computeIfAbsent(this.partSize, size -> new ArrayBlockingQueue<>(POOLED_BUFFERS));
     }
 
-    /** Close this stream and release the lease */
+    /**
+     * Uploads the last part and completes the upload, or aborts the upload if any part failed
+     */
     @Override
     public void close() throws IOException
     {
-        outputStream.close();
-        if (object.exists())
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+
+        try
+        {
+            checkFailure();
+
+            // If no part has been uploaded,
+            if (uploadId == null)
+            {
+                // write the whole object with a single put,
+                put();
+            }
+            else
+            {
+                // otherwise, upload any last part, wait for all the parts and complete the upload.
+                if (buffer != null && buffer.position() > 0)
+                {
+                    uploadPart();
+                }
+                complete();
+            }
+        }
+        catch (Exception e)
+        {
+            abort();
+            throw e instanceof IOException io ? io : new IOException("Unable to write " + object, e);
+        }
+        finally
         {
-            object.delete();
+            // Give back any direct buffer that was not uploaded.
+            if (buffer != null)
+            {
+                release(buffer);
+                buffer = null;
+            }
+            object.invalidateMetadata();
         }
-        object.copyFrom(cacheFile, OVERWRITE, nullProgressReporter());
     }
 
+    /**
+     * Does nothing, since S3 only accepts parts of at least 5 megabytes. Bytes are uploaded as parts fill up and when
+     * the stream is closed.
+     */
     @Override
     public void flush()
     {
-        IO.flush(LOGGER, outputStream);
     }
 
     @Override
     public void write(byte @NotNull [] bytes, int offset, int length) throws IOException
     {
-        outputStream.write(bytes, offset, length);
+        while (length > 0)
+        {
+            var buffer = buffer();
+            var count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+            if (buffer.position() == partSize)
+            {
+                uploadPart();
+            }
+        }
     }
 
     @Override
     public void write(int b) throws IOException
     {
-        outputStream.write(b);
+        var buffer = buffer();
+        buffer.put((byte) b);
+        if (buffer.position() == partSize)
+        {
+            uploadPart();
+        }
     }
 
-    private File cacheFile(FilePath filePath)
+    /**
+     * Waits for any parts being uploaded and aborts the upload, so that S3 discards the parts
+     */
+    private void abort()
     {
-        // Flatten path being cached into a long filename by turning all file
-        // system meta characters into underscores.
-        // For example, "a/b/c.txt" becomes "a_b_c.txt"
-        return parseFile(consoleListener(), cacheFolder + "/" + filePath.toString().replaceAll("[/:]", "_"));
+        for (var part : parts)
+        {
+            try
+            {
+                part.join();
+            }
+            catch (Exception ignored)
+            {
+            }
+        }
+
+        if (uploadId != null)
+        {
+            try
+            {
+                object.client().abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(object.bucket())
+                        .key(object.key())
+                        .uploadId(uploadId)
+                        .build());
+            }
+            catch (Exception e)
+            {
+                object.warning(e, "Unable to abort upload $ of $", uploadId, object);
+            }
+        }
+    }
+
+    /**
+     * Returns the buffer being filled, with room for at least one byte. If there is no buffer, waits until this stream
+     * may hold another one, and then takes a small heap buffer if no part has been uploaded yet, or a direct buffer
+     * from the pool otherwise. A full heap buffer that is smaller than a part is replaced with one twice its size.
+     */
+    private ByteBuffer buffer() throws IOException
+    {
+        ensureOpen();
+        if (buffer == null)
+        {
+            try
+            {
+                permits.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                throw new InterruptedIOException("Interrupted while writing " + object);
+            }
+            if (uploadId == null)
+            {
+                buffer = ByteBuffer.allocate(Math.min(INITIAL_BUFFER_SIZE, partSize));
+            }
+            else
+            {
+                buffer = pool.poll();
+                if (buffer == null)
+                {
+                    buffer = ByteBuffer.allocateDirect(partSize);
+                }
+            }
+            checkFailure();
+        }
+        else if (!buffer.hasRemaining())
+        {
+            buffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, partSize)).put(buffer.flip());
+        }
+        return buffer;
+    }
+
+    /**
+     * Throws an exception if a part failed to upload
+     */
+    private void checkFailure() throws IOException
+    {
+        if (failure != null)
+        {
+            throw new IOException("Unable to upload part of " + object, failure);
+        }
+    }
+
+    /**
+     * Waits for all parts to be uploaded, then completes the upload
+     */
+    private void complete()
+    {
+        var completed = new ArrayList<CompletedPart>();
+        for (var part : parts)
+        {
+            completed.add(part.join());
+        }
+        completed.sort(Comparator.comparing(CompletedPart::partNumber));
+
+        object.client().completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(object.bucket())
+                .key(object.key())
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                .build());
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("Stream is closed: " + object);
+        }
+    }
+
+    /**
+     * Writes the bytes in the buffer, if any, as the whole object
+     */
+    private void put()
+    {
+        var bytes = buffer != null ? buffer.flip() : ByteBuffer.allocate(0);
+
+        var request = PutObjectRequest.builder()
+                .bucket(object.bucket())
+                .key(object.key())
+                .build();
+
+        object.client().putObject(request, requestBody(bytes));
+    }
+
+    /**
+     * Returns the given buffer to the shared pool if it is a direct buffer and the pool has room for it
+     */
+    private void release(ByteBuffer bytes)
+    {
+        if (bytes.isDirect())
+        {
+            pool.offer(bytes.clear());
+        }
+    }
+
+    /**
+     * Returns the given buffer as a request body. The SDK may read the body more than once, for example, to retry a
+     * request, so each read is from a new view of the buffer.
+     */
+    private RequestBody requestBody(ByteBuffer bytes)
+    {
+        return RequestBody.fromContentProvider(() -> new ByteBufferInput(bytes.duplicate()), bytes.remaining(),
+                "application/octet-stream");
+    }
+
+    /**
+     * Starts uploading the buffer being filled as the next part, on a background thread. When the upload ends, a direct
+     * buffer is returned to the shared pool, and the stream may take another buffer.
+     */
+    private void uploadPart() throws IOException
+    {
+        checkFailure();
+
+        // Start the multipart upload when the first part is ready,
+        var client = object.client();
+        if (uploadId == null)
+        {
+            uploadId = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(object.bucket())
+                    .key(object.key())
+                    .build()).uploadId();
+        }
+
+        var partNumber = parts.size() + 1;
+        if (partNumber > MAXIMUM_PARTS)
+        {
+            throw new IOException("Object is too large for " + MAXIMUM_PARTS + " parts of " + partSize + " bytes: "
+                    + object);
+        }
+
+        // then hand the buffer to an uploader thread.
+        var bytes = buffer.flip();
+        buffer = null;
+
+        var request = UploadPartRequest.builder()
+                .bucket(object.bucket())
+                .key(object.key())
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) bytes.remaining())
+                .build();
+
+        var part = CompletableFuture
+                .supplyAsync(() -> CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(client.uploadPart(request, requestBody(bytes)).eTag())
+                        .build(), executor())
+                .whenComplete((completed, error) ->
+                {
+                    if (error != null && failure == null)
+                    {
+                        failure = error;
+                    }
+                    release(bytes);
+                    permits.release();
+                });
+
+        parts.add(part);
+    }
+
+    /**
+     * An input stream that reads the remaining bytes of a buffer
+     */
+    private static class ByteBufferInput extends InputStream
+    {
+        private final ByteBuffer bytes;
+
+        ByteBufferInput(ByteBuffer bytes)
+        {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int available()
+        {
+            return bytes.remaining();
+        }
+
+        @Override
+        public int read()
+        {
+            return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte @NotNull [] destination, int offset, int length)
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+            if (!bytes.hasRemaining())
+            {
+                return -1;
+            }
+            var count = Math.min(length, bytes.remaining());
+            bytes.get(destination, offset, count);
+            return count;
+        }
     }
 }
@@ -0,0 +1,368 @@
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+//
+// © 2011-2021 Telenav, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+package com.telenav.kivakit.filesystems.s3fs;
+
+import com.telenav.kivakit.core.value.count.Bytes;
+import com.telenav.kivakit.filesystem.File;
+import com.telenav.kivakit.filesystems.s3fs.internal.lexakai.DiagramS3;
+import com.telenav.lexakai.annotations.UmlClassDiagram;
+import org.jetbrains.annotations.NotNull;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.telenav.kivakit.core.ensure.Ensure.ensure;
+import static com.telenav.kivakit.core.value.count.Bytes.megabytes;
+import static com.telenav.kivakit.filesystems.s3fs.S3FileSystemService.executor;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Reads an {@link S3File} with concurrent byte-range GETs, so that large downloads are not limited by the throughput of
+ * a single connection. The object is divided into parts of a fixed size, and up to a given number of parts are fetched
+ * at once.
+ *
+ * <p>
+ * {@link #open()} returns an input stream that reads the parts in order, fetching the parts after the one being read
+ * ahead of time. {@link #copyTo(FileChannel)} writes each part straight to its place in a file as it arrives. If the
+ * connection for a part fails, only the rest of that part is fetched again, up to a number of retries. All the parts are
+ * fetched from the version of the object that existed when reading started, so a download fails rather than mixing
+ * two versions if the object is replaced part way through.
+ * </p>
+ *
+ * <pre>
+ * file.rangeReader(megabytes(16), 8).copyTo(localFile);</pre>
+ *
+ * @author jonathanl (shibo)
+ * @see S3File#rangeReader()
+ */
+@UmlClassDiagram(diagram = DiagramS3.class)
+public class S3RangeReader
+{
+    /** The default size of each part */
+    static final Bytes DEFAULT_PART_SIZE = megabytes(8);
+
+    /** The default number of parts to fetch at once */
+    static final int DEFAULT_PARALLELISM = 8;
+
+    /** The file to read */
+    private final S3File file;
+
+    /** The number of parts to fetch at once */
+    private final int parallelism;
+
+    /** The size of each part, in bytes */
+    private final int partSize;
+
+    /** The number of times to resume a part whose connection fails */
+    private int retries = 3;
+
+    S3RangeReader(S3File file, Bytes partSize, int parallelism)
+    {
+        ensure(partSize.asBytes() > 0 && partSize.asBytes() <= Integer.MAX_VALUE, "Invalid part size: $", partSize);
+        ensure(parallelism > 0, "Parallelism must be positive");
+
+        this.file = file;
+        this.partSize = (int) partSize.asBytes();
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Downloads the object to the given local file, replacing any existing contents
+     */
+    public void copyTo(File destination) throws IOException
+    {
+        try (var channel = FileChannel.open(destination.asJavaPath(), CREATE, WRITE, TRUNCATE_EXISTING))
+        {
+            copyTo(channel);
+        }
+    }
+
+    /**
+     * Downloads the object to the given channel, writing each part at its offset as soon as it arrives. Parts may
+     * arrive in any order.
+     */
+    public void copyTo(FileChannel channel) throws IOException
+    {
+        var version = version();
+        var inFlight = new ArrayDeque<CompletableFuture<byte[]>>();
+        try
+        {
+            for (long start = 0; start < version.size; start += partSize)
+            {
+                // If as many parts as allowed are being fetched, wait for the oldest one,
+                if (inFlight.size() == parallelism)
+                {
+                    join(inFlight.removeFirst());
+                }
+
+                // then fetch the next part and write it to the channel.
+                var partStart = start;
+                inFlight.addLast(CompletableFuture.supplyAsync(() ->
+                {
+                    var bytes = fetch(version, partStart);
+                    write(channel, bytes, partStart);
+                    return bytes;
+                }, executor()));
+            }
+
+            while (!inFlight.isEmpty())
+            {
+                join(inFlight.removeFirst());
+            }
+        }
+        finally
+        {
+            inFlight.forEach(part -> part.cancel(false));
+        }
+    }
+
+    /**
+     * Returns an input stream that reads the object in order, fetching parts ahead of the reader
+     */
+    public InputStream open()
+    {
+        return new RangeInput(version());
+    }
+
+    /**
+     * Sets the number of times to resume a part whose connection fails (three by default)
+     */
+    public S3RangeReader retries(int retries)
+    {
+        ensure(retries >= 0);
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * Fetches the part that starts at the given offset. If the connection fails, the part is resumed from the first
+     * byte that was not received.
+     */
+    private byte[] fetch(Version version, long start)
+    {
+        var length = (int) Math.min(partSize, version.size - start);
+        var bytes = new byte[length];
+        var received = 0;
+        for (var attempt = 0; ; attempt++)
+        {
+            var request = GetObjectRequest.builder()
+                    .bucket(file.bucket())
+                    .key(file.key())
+                    .range("bytes=" + (start + received) + "-" + (start + length - 1))
+                    .ifMatch(version.eTag)
+                    .build();
+
+            try (var in = file.client().getObject(request))
+            {
+                while (received < length)
+                {
+                    var count = in.read(bytes, received, length - received);
+                    if (count < 0)
+                    {
+                        throw new IOException("Range ended after " + received + " of " + length + " bytes");
+                    }
+                    received += count;
+                }
+                return bytes;
+            }
+            catch (IOException | SdkClientException e)
+            {
+                if (attempt >= retries)
+                {
+                    throw new IllegalStateException("Unable to read bytes " + start + " to " + (start + length - 1)
+                            + " of " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bytes of the given part, throwing an {@link IOException} if it could not be fetched
+     */
+    private byte[] join(CompletableFuture<byte[]> part) throws IOException
+    {
+        try
+        {
+            return part.join();
+        }
+        catch (CompletionException e)
+        {
+            throw new IOException("Unable to read " + file, e.getCause());
+        }
+    }
+
+    /**
+     * Returns the size and entity tag of the object as it is now
+     */
+    private Version version()
+    {
+        var head = file.client().headObject(HeadObjectRequest.builder()
+                .bucket(file.bucket())
+                .key(file.key())
+                .build());
+
+        return new Version(head.contentLength(), head.eTag());
+    }
+
+    /**
+     * Writes the given bytes to the given channel at the given position
+     */
+    private void write(FileChannel channel, byte[] bytes, long position)
+    {
+        try
+        {
+            var buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer, position + buffer.position());
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to write bytes at " + position + " from " + file, e);
+        }
+    }
+
+    /**
+     * The version of an object that is being read
+     *
+     * @param size The size of the object
+     * @param eTag The entity tag that each range request must match
+     */
+    private record Version(long size, String eTag)
+    {
+    }
+
+    /**
+     * An input stream over the parts of an object, which keeps the given number of parts fetched or being fetched
+     * ahead of the reader
+     */
+    private class RangeInput extends InputStream
+    {
+        /** The parts being fetched, in order */
+        private final Deque<CompletableFuture<byte[]>> ahead = new ArrayDeque<>();
+
+        /** True once this stream is closed */
+        private boolean closed;
+
+        /** The part being read, or null if there is none */
+        private byte[] part;
+
+        /** The position of the next byte in the part being read */
+        private int position;
+
+        /** The offset of the next part to fetch */
+        private long next;
+
+        /** The version of the object being read */
+        private final Version version;
+
+        RangeInput(Version version)
+        {
+            this.version = version;
+            fetchAhead();
+        }
+
+        @Override
+        public int available()
+        {
+            return part != null ? part.length - position : 0;
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+            ahead.forEach(part -> part.cancel(false));
+            ahead.clear();
+            part = null;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            return nextPart() ? part[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte @NotNull [] destination, int offset, int length) throws IOException
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+            if (!nextPart())
+            {
+                return -1;
+            }
+            var count = Math.min(length, part.length - position);
+            System.arraycopy(part, position, destination, offset, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * Starts fetching parts until the given number are ahead of the reader, or the end of the object is reached
+         */
+        private void fetchAhead()
+        {
+            while (ahead.size() < parallelism && next < version.size)
+            {
+                var start = next;
+                ahead.addLast(CompletableFuture.supplyAsync(() -> fetch(version, start), executor()));
+                next += partSize;
+            }
+        }
+
+        /**
+         * Makes sure that there are bytes left in the part being read, moving to the next part if needed
+         *
+         * @return False if the end of the object has been reached
+         */
+        private boolean nextPart() throws IOException
+        {
+            if (closed)
+            {
+                throw new IOException("Stream is closed: " + file);
+            }
+            while (part == null || position == part.length)
+            {
+                if (ahead.isEmpty())
+                {
+                    return false;
+                }
+                part = join(ahead.removeFirst());
+                position = 0;
+                fetchAhead();
+            }
+            return true;
+        }
+    }
+}
@@ -18,12 +18,17 @@
 
 package com.telenav.kivakit.filesystems.s3fs;
 
+import com.telenav.kivakit.resource.FileName;
 import com.telenav.kivakit.testing.SlowTest;
 import com.telenav.kivakit.testing.UnitTest;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.io.IOException;
+
+import static com.telenav.kivakit.core.value.count.Bytes.bytes;
+import static com.telenav.kivakit.resource.WriteMode.OVERWRITE;
 import static org.junit.Assume.assumeTrue;
 
 @Category({ SlowTest.class })
@@ -43,4 +48,33 @@ public class S3FileTest extends UnitTest
     {
         ensure("123".equals(file.reader().asString().trim()));
     }
+
+    @Test
+    public void testRangeReader() throws IOException
+    {
+        // Read the file one byte per range, three ranges at a time
+        try (var in = file.rangeReader(bytes(1), 3).open())
+        {
+            ensure("123".equals(new String(in.readAllBytes()).trim()));
+        }
+    }
+
+    @Test
+    public void testWriteMultipart() throws IOException
+    {
+        var large = new S3File("s3://default-region/kivakit/test-data/large-" + FileName.kivakitFileNameForNow() + ".bin");
+
+        // Write three and a half 8 megabyte parts
+        var part = new byte[1024 * 1024];
+        try (var out = large.onOpenForWriting(OVERWRITE))
+        {
+            for (int i = 0; i < 28; i++)
+            {
+                out.write(part);
+            }
+        }
+
+        ensureEqual(large.sizeInBytes().asBytes(), 28L * part.length);
+        large.delete();
+    }
 }
@@ -70,6 +70,25 @@ public class S3FolderTest extends UnitTest
         ensure(!folder.exists());
     }
 
+    @Test
+    public void testListing()
+    {
+        var folder = new S3Folder("s3://default-region/kivakit/test-data/list-" + FileName.kivakitFileNameForNow());
+        var child = folder.folder(FileName.parseFileName(this, "child"));
+        folder.file(FileName.parseFileName(this, "a.txt")).write("a");
+        child.file(FileName.parseFileName(this, "b.txt")).write("b");
+
+        ensureEqual(folder.files().size(), 1);
+        ensureEqual(folder.folders().size(), 1);
+        ensureEqual(folder.nestedFiles(file -> true).size(), 2);
+        ensure(folder.hasFiles());
+        ensure(folder.hasSubFolders());
+        ensureFalse(folder.isEmpty());
+
+        folder.clear();
+        ensure(folder.isEmpty());
+    }
+
     @Test
     public void testRename()
     {
@@ -92,4 +111,27 @@ public class S3FolderTest extends UnitTest
         folder.delete();
         ensure(!folder.exists());
     }
+
+    @Test
+    public void testRenameToNonEmptyFolder()
+    {
+        // A folder can't be moved onto a folder that has objects in it, and neither folder is changed
+        var folder = new S3Folder("s3://default-region/kivakit/test-data/from-" + FileName.kivakitFileNameForNow());
+        var that = new S3Folder("s3://default-region/kivakit/test-data/to-" + FileName.kivakitFileNameForNow());
+        folder.file(FileName.parseFileName(this, "a.txt")).write("a");
+        that.file(FileName.parseFileName(this, "b.txt")).write("b");
+
+        ensureFalse(folder.renameTo(that));
+        ensureEqual(folder.files().size(), 1);
+        ensureEqual(that.files().size(), 1);
+
+        // but once the destination is empty, it can.
+        that.clear();
+        ensure(folder.renameTo(that));
+        ensure(folder.isEmpty());
+        ensureEqual(that.files().size(), 1);
+        ensure(that.file(FileName.parseFileName(this, "a.txt")).exists());
+
+        that.clear();
+    }
 }
@@ -10,7 +10,7 @@ import com.telenav.kivakit.microservice.protocols.rest.openapi.OpenApi;
 
 import static com.telenav.kivakit.core.collections.list.ObjectList.list;
 import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
-import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlock;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlockBuilder;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlScalar;
 import static com.telenav.kivakit.data.formats.yaml.reader.YamlReader.readYamlAnnotation;
 import static com.telenav.kivakit.microservice.internal.protocols.rest.plugins.jetty.openapi.OpenApiSchemas.openApiSchemas;
@@ -49,12 +49,13 @@ public class OpenApiBuilder extends BaseComponent
             var restServiceClass = require(RestService.class).getClass();
             var servers = readYamlAnnotation(restServiceClass, OpenApi.class, OpenApi::value);
 
-            yaml = yamlBlock()
-                .with(yamlScalar("openapi", "3.0.0"))
-                .with(openApiInfo().yaml())
-                .with(servers)
-                .with(openApiPaths().yaml())
-                .with(openApiComponents(schemas).yaml());
+            yaml = yamlBlockBuilder()
+                .add(yamlScalar("openapi", "3.0.0"))
+                .add(openApiInfo().yaml())
+                .add(servers)
+                .add(openApiPaths().yaml())
+                .add(openApiComponents(schemas).yaml())
+                .build();
         }
         return yaml;
     }
@@ -1,11 +1,12 @@
 package com.telenav.kivakit.microservice.internal.protocols.rest.plugins.jetty.openapi;
 
 import com.telenav.kivakit.core.messaging.Listener;
+import com.telenav.kivakit.data.formats.yaml.YamlFormatter;
+import com.telenav.kivakit.data.formats.yaml.model.YamlBlock;
 import com.telenav.kivakit.microservice.microservlet.BaseMicroservletResponse;
 import com.telenav.kivakit.microservice.protocols.rest.http.RestSerializer;
 
 import java.io.PrintWriter;
-import java.io.Writer;
 
 import static com.telenav.kivakit.microservice.internal.protocols.rest.plugins.jetty.openapi.OpenApiBuilder.openApiBuilder;
 
@@ -27,15 +28,15 @@ public class OpenApiResponse extends BaseMicroservletResponse
             @Override
             public void serializeResponse(PrintWriter out, OpenApiResponse response)
             {
-                out.println(response.api);
+                new YamlFormatter().format(response.api, out);
             }
         };
     }
 
-    private final String api;
+    private final YamlBlock api;
 
     public OpenApiResponse(Listener listener)
     {
-        api = listener.listenTo(openApiBuilder()).buildYaml().toString();
+        api = listener.listenTo(openApiBuilder()).buildYaml();
     }
 }
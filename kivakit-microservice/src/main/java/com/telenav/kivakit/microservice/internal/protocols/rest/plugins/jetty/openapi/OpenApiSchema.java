@@ -4,13 +4,12 @@ import com.telenav.kivakit.core.messaging.Listener;
 import com.telenav.kivakit.data.formats.yaml.model.YamlNode;
 import com.telenav.kivakit.data.formats.yaml.model.YamlNodeContainer;
 import com.telenav.kivakit.microservice.protocols.rest.openapi.OpenApi;
-import com.telenav.kivakit.resource.resources.StringResource;
 import org.jetbrains.annotations.NotNull;
 
 import static com.telenav.kivakit.core.ensure.Ensure.ensureNotNull;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlock;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlLiteral.yamlLiteral;
-import static com.telenav.kivakit.data.formats.yaml.reader.YamlReader.yamlReader;
+import static com.telenav.kivakit.data.formats.yaml.reader.YamlReader.readYamlAnnotation;
 
 public class OpenApiSchema implements Comparable<OpenApiSchema>
 {
@@ -23,11 +22,9 @@ public class OpenApiSchema implements Comparable<OpenApiSchema>
     {
         listener.trace("Reading schema $", type.getSimpleName());
         ensureNotNull(name);
-        var annotation = ensureNotNull(type).getAnnotation(OpenApi.class);
-        if (annotation != null)
+        var node = readYamlAnnotation(ensureNotNull(type), OpenApi.class, OpenApi::value);
+        if (node != null)
         {
-            var text = annotation.value();
-            var node = yamlReader().read(new StringResource(text));
             if (node instanceof YamlNodeContainer elements)
             {
                 var object = yamlLiteral("type", "object");
@@ -4,6 +4,7 @@ import com.telenav.kivakit.data.formats.yaml.model.YamlBlock;
 import com.telenav.kivakit.microservice.internal.protocols.rest.plugins.jetty.openapi.OpenApiSchemas;
 
 import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlock;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlockBuilder;
 
 public class OpenApiComponents
 {
@@ -27,11 +28,11 @@ public class OpenApiComponents
 
     private YamlBlock schemas()
     {
-        var block = yamlBlock("schemas");
+        var block = yamlBlockBuilder("schemas");
         for (var schema : schemas.schemas().sorted())
         {
-            block = block.with(schema.yaml());
+            block.add(schema.yaml());
         }
-        return block;
+        return block.build();
     }
 }
@@ -11,6 +11,7 @@ import com.telenav.kivakit.microservice.microservlet.MicroservletError;
 
 import static com.telenav.kivakit.core.collections.list.ObjectList.list;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlock;
+import static com.telenav.kivakit.data.formats.yaml.model.YamlBlock.yamlBlockBuilder;
 import static com.telenav.kivakit.data.formats.yaml.model.YamlScalar.yamlScalar;
 
 public class OpenApiPaths extends BaseComponent
@@ -26,7 +27,7 @@ public class OpenApiPaths extends BaseComponent
 
     public YamlNode yaml()
     {
-        var paths = yamlBlock("paths");
+        var paths = yamlBlockBuilder("paths");
 
         var filter = require(JettyMicroservletFilter.class);
         var mountPaths = list(filter.microservletPaths());
@@ -40,7 +41,7 @@ public class OpenApiPaths extends BaseComponent
             {
                 if (mounted.microservlet().requestType() != OpenApiRequest.class)
                 {
-                    paths = paths.with(path(mounted));
+                    paths.add(path(mounted));
                 }
             }
             else
@@ -49,7 +50,7 @@ public class OpenApiPaths extends BaseComponent
             }
         }
 
-        return paths;
+        return paths.build();
     }
 
     private YamlBlock path(MountedMicroservlet mounted)